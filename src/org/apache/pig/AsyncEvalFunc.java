@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+import org.apache.pig.data.Tuple;
+
+/**
+ * An EvalFunc for UDFs that spend their time waiting on I/O, such as calls to
+ * a service or a database. Instead of being called a tuple at a time, the UDF
+ * is given a batch of input tuples and returns a future of their results, so
+ * the latency of the calls can be overlapped with the processing of other
+ * batches. In a foreach the batches hold
+ * {@link PigConfiguration#PIG_UDF_ASYNC_BATCH_SIZE} tuples and at most
+ * {@link PigConfiguration#PIG_UDF_ASYNC_MAX_INFLIGHT} batches are submitted
+ * before Pig waits for the oldest one. The output of the foreach keeps the
+ * order of its input.
+ * <p>
+ * The arguments of the UDF are computed for every input tuple of a batch,
+ * even when the UDF is in a branch of a conditional expression that is not
+ * taken. Where batching is not possible, such as in nested foreach blocks or
+ * illustrate, {@link #exec(Tuple)} calls {@link #execAsync(List)} with one
+ * tuple and waits for its result.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public abstract class AsyncEvalFunc<T> extends EvalFunc<T> {
+
+    /**
+     * Start evaluating the UDF on a batch of tuples.
+     * @param inputs the arguments of the UDF, one tuple per row
+     * @return a future of the results, one per input tuple and in the same
+     *         order. It may complete on any thread, but must not complete
+     *         with a list of a different size.
+     * @throws IOException
+     */
+    public abstract Future<List<T>> execAsync(List<Tuple> inputs) throws IOException;
+
+    /**
+     * Whether foreachs may hand the UDF batches of input. A UDF which only
+     * batches its calls in some configurations returns false otherwise, so
+     * that it is called a tuple at a time, and only on the rows which need
+     * it. A foreach calling such a UDF does not batch its other UDFs either.
+     * @param conf the configuration of the job
+     * @return true by default
+     */
+    public boolean canBatch(Configuration conf) {
+        return true;
+    }
+
+    @Override
+    public T exec(Tuple input) throws IOException {
+        return await(execAsync(Collections.singletonList(input)), 1).get(0);
+    }
+
+    /**
+     * Wait for the results of a batch.
+     * @param future the future returned by {@link #execAsync(List)}
+     * @param size the number of input tuples of the batch
+     * @return the results
+     * @throws IOException if the UDF failed or did not return one result per
+     *         input tuple
+     */
+    public static <T> List<T> await(Future<List<T>> future, int size) throws IOException {
+        List<T> results;
+        try {
+            results = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for UDF results", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        if (results == null || results.size() != size) {
+            throw new IOException("Expected " + size + " results from UDF but got "
+                    + (results == null ? "null" : results.size()));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig;
+
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * An interface to declare that the results of an EvalFunc over parts of a
+ * bag can be merged into its result over the whole bag. More formally, if the
+ * bag X is split into X1 ... Xn, f_merge({f(X1), ..., f(Xn)}) is f(X).
+ * <p>
+ * This is a weaker property than {@link Algebraic}, the function does not
+ * need to be decomposed into initial and intermediate steps. It is used by
+ * skewed group ({@code GROUP ... USING 'skewed'}) in MapReduce mode: the
+ * tuples of a key that is too frequent for a single reducer are split across
+ * several reducers, each of which calls the function on its part of the bag,
+ * and a following job calls the merge function on the partial results of the
+ * key. Algebraic functions do not need to implement this interface.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface Mergeable {
+
+    /**
+     * Get the merge function.
+     * @return A function name of f_merge. f_merge should be an eval func
+     * that is passed a tuple with a single field, a bag of tuples each
+     * holding one partial result, and returns the same type as the eval func
+     * implementing this interface. It is created with the same constructor
+     * arguments as that eval func.
+     */
+    public String getMerge();
+}
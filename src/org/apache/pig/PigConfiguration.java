@@ -63,6 +63,13 @@ public class PigConfiguration {
      */
     public static final String PIG_OPT_FETCH = "opt.fetch";
 
+    /**
+     * Maximum total size in bytes of the inputs of a DUMP whose plan has a GROUP, COGROUP, JOIN,
+     * ORDER or DISTINCT for it to be fetched, running these operators in memory. Plans with inputs
+     * of unknown size are not fetched. 0 by default, which turns this off
+     */
+    public static final String PIG_OPT_FETCH_INPUT_MAXBYTES = "opt.fetch.input.maxbytes";
+
     // Pig query planning and execution optimizations
     /**
      * Boolean value used to enable or disable multiquery optimization. True by default
@@ -113,6 +120,50 @@ public class PigConfiguration {
      */
     public static final String PIG_EXEC_MAP_PARTAGG_MINREDUCTION = "pig.exec.mapPartAgg.minReduction";
 
+    /**
+     * Boolean value to enable or disable the primitive hash table for in-mapper partial
+     * aggregation. When enabled and the group key is an int, long or chararray and all the
+     * aggregate functions are builtin COUNT, COUNT_STAR, SUM, MIN or MAX on numeric values,
+     * intermediate results are folded in place instead of buffering tuples. Disabled by default
+     */
+    public static final String PIG_EXEC_MAP_PARTAGG_PRIMITIVE = "pig.exec.mapPartAgg.primitive";
+
+    /**
+     * Boolean value to enable or disable batch execution of filter and foreach in map.
+     * When enabled, the expression plans of those operators are evaluated on batches of
+     * input tuples, with column vectors for the intermediate values, instead of once per
+     * tuple. Currently only used in MR. Disabled by default
+     */
+    public static final String PIG_EXEC_BATCH = "pig.exec.batch";
+
+    /**
+     * Number of tuples in a batch when {@link #PIG_EXEC_BATCH} is enabled. Default is 1024
+     */
+    public static final String PIG_EXEC_BATCH_SIZE = "pig.exec.batch.size";
+
+    /**
+     * Number of threads evaluating a foreach in map. When greater than 1, a foreach
+     * whose UDFs are all annotated with {@link org.apache.pig.builtin.ThreadSafe}
+     * buffers its input into batches of {@link #PIG_EXEC_FOREACH_BATCH_SIZE} tuples
+     * and evaluates each batch on a pool of that many threads, each with its own
+     * copy of the nested plans. The output keeps the order of the input. Currently
+     * only used in MR. Default is 0, disabled
+     */
+    public static final String PIG_EXEC_FOREACH_THREADS = "pig.exec.foreach.threads";
+
+    /**
+     * Number of tuples in a batch when {@link #PIG_EXEC_FOREACH_THREADS} is set. Default is 1024
+     */
+    public static final String PIG_EXEC_FOREACH_BATCH_SIZE = "pig.exec.foreach.batch.size";
+
+    /**
+     * Turns on compiling the expression plans of filters and foreachs into java
+     * classes instead of interpreting them. Operators that cannot be compiled, like
+     * UDFs, are still interpreted. Needs a java compiler in the task JVMs, plans are
+     * interpreted when there is none. Disabled by default
+     */
+    public static final String PIG_EXEC_CODEGEN = "pig.exec.codegen";
+
     /**
      * Boolean value to enable or disable use of combiners in MapReduce jobs. Enabled by default
      */
@@ -131,6 +182,89 @@ public class PigConfiguration {
      */
     public static final String PIG_EXEC_NO_SECONDARY_KEY = "pig.exec.nosecondarykey";
 
+    /**
+     * Turns on incremental execution of group jobs with algebraic functions over
+     * append-only file inputs in MapReduce. The input files read and the intermediate
+     * results of the aggregations are saved after each run, and the next run only
+     * reads the files added since and merges their results with the saved ones.
+     * Disabled by default
+     */
+    public static final String PIG_EXEC_INCREMENTAL = "pig.exec.incremental";
+
+    /**
+     * Directory the state of incremental execution is kept in between runs. Default is
+     * pig-incremental under pig.temp.dir
+     */
+    public static final String PIG_EXEC_INCREMENTAL_DIR = "pig.exec.incremental.dir";
+
+    /**
+     * Turns on caching the intermediate results of MapReduce jobs across runs. A job
+     * whose plan, UDFs and input files are the same as in an earlier run is replaced
+     * by a load of the result it stored then. Disabled by default
+     */
+    public static final String PIG_EXEC_RESULT_CACHE = "pig.exec.resultcache";
+
+    /**
+     * Directory the results cached with {@link #PIG_EXEC_RESULT_CACHE} are kept in.
+     * Default is pig-resultcache under pig.temp.dir
+     */
+    public static final String PIG_EXEC_RESULT_CACHE_DIR = "pig.exec.resultcache.dir";
+
+    /**
+     * Maximum size in bytes of the results cached with {@link #PIG_EXEC_RESULT_CACHE}.
+     * The least recently used results are evicted once it is exceeded. Default is 10GB
+     */
+    public static final String PIG_EXEC_RESULT_CACHE_SIZE = "pig.exec.resultcache.size";
+
+    /**
+     * Number of threads the in-memory exec type (-x memory) runs the map and reduce
+     * tasks of a job on. Default is the number of available processors
+     */
+    public static final String PIG_EXEC_MEMORY_THREADS = "pig.exec.memory.threads";
+
+    /**
+     * Boolean value to enable or disable the runtime statistics feedback loop. When enabled,
+     * the record counts and sizes of the inputs, outputs and intermediate results of a script
+     * are saved after it runs, and cost based optimizer rules use them on the following runs
+     * of the same script to choose join algorithms, the order of join inputs and parallelism.
+     * Disabled by default
+     */
+    public static final String PIG_OPT_RUNTIME_STATS = "pig.opt.runtime.stats";
+
+    /**
+     * Local directory where the runtime statistics are kept, one file per script signature.
+     * Default is .pig/stats in the home directory of the user
+     */
+    public static final String PIG_OPT_RUNTIME_STATS_DIR = "pig.opt.runtime.stats.dir";
+
+    /**
+     * The maximum total size in bytes of the inputs that the cost based optimizer rules
+     * replicate when they turn a join into a fragment-replicated join, with runtime
+     * statistics or {@link #PIG_OPT_JOIN_AUTO}. Default is 100MB
+     */
+    public static final String PIG_OPT_REPLICATED_MAX_BYTES = "pig.opt.replicated.max.bytes";
+
+    /**
+     * Boolean value to enable or disable the automatic choice of the algorithm of joins
+     * without a join type hint. When enabled, replicated, merge, skewed or hash join is
+     * chosen from the input sizes reported by the loaders or of the input files, the sort
+     * order reported by the loaders and a sample of the join keys. Disabled by default
+     */
+    public static final String PIG_OPT_JOIN_AUTO = "pig.opt.join.auto";
+
+    /**
+     * Number of records of each join input read to look for skewed join keys when
+     * {@link #PIG_OPT_JOIN_AUTO} is enabled. 0 disables the choice of skewed join.
+     * Default is 1000
+     */
+    public static final String PIG_OPT_JOIN_SAMPLE_SIZE = "pig.opt.join.sample.size";
+
+    /**
+     * Share of the sampled records of a join input with the most frequent key above which
+     * skewed join is chosen when {@link #PIG_OPT_JOIN_AUTO} is enabled. Default is 0.1
+     */
+    public static final String PIG_OPT_JOIN_SKEW_THRESHOLD = "pig.opt.join.skew.threshold";
+
     // Pig memory usage control settings
     /**
      * Controls the fraction of total memory that is allowed to be used by
@@ -213,14 +347,56 @@ public class PigConfiguration {
      */
     public static final String PIG_JOIN_REPLICATED_MAX_BYTES = "pig.join.replicated.max.bytes";
 
+    /**
+     * Boolean value to enable or disable keeping the replicated inputs of a fragment-replicate
+     * join serialized in byte pages with a primitive hash index instead of a HashMap of tuple
+     * lists. Takes a fraction of the memory at the cost of deserializing the matching tuples
+     * on each lookup. Disabled by default
+     */
+    public static final String PIG_JOIN_REPLICATED_COMPACT = "pig.join.replicated.compact";
+
+    /**
+     * Boolean value to let the replicated join tables that Tez tasks share through the vertex
+     * ObjectCache be dropped under memory pressure while no task in the container is using
+     * them. A later task that finds them dropped fetches the broadcast input again and
+     * rebuilds them. Disabled by default, the tables are then kept until the vertex completes
+     */
+    public static final String PIG_TEZ_REPLICATED_JOIN_CACHE_EVICTABLE = "pig.tez.replicated.join.cache.evictable";
+
     // Pig cached bag type settings
     /**
-     * Configurations for specifying alternate implementations for cached bags. Rarely used
+     * Configurations for specifying alternate implementations for cached bags. Rarely used.
+     * {@link #PIG_CACHEDBAG_TYPE} can be set to "default" to use the default bag of the
+     * BagFactory or to "offheap" to use {@link org.apache.pig.data.OffHeapDataBag}
      */
     public static final String PIG_CACHEDBAG_TYPE = "pig.cachedbag.type";
     public static final String PIG_CACHEDBAG_DISTINCT_TYPE = "pig.cachedbag.distinct.type";
     public static final String PIG_CACHEDBAG_SORT_TYPE = "pig.cachedbag.sort.type";
 
+    /**
+     * Maximum number of bytes of direct memory used by the pages of all off-heap bags
+     * in a task. Default is 20% of the max heap size.
+     */
+    public static final String PIG_OFFHEAPBAG_MEMORY = "pig.offheapbag.memory";
+
+    /**
+     * Size in bytes of the pages of off-heap bags. Default is 65536
+     */
+    public static final String PIG_OFFHEAPBAG_PAGESIZE = "pig.offheapbag.pagesize";
+
+    /**
+     * Turns on compression of the files bags spill to local disk. The files
+     * are written in compressed pages and read back through memory mapped
+     * windows, which do not keep a file open while sorted bags merge them.
+     * Default is false
+     */
+    public static final String PIG_SPILL_COMPRESS = "pig.spill.compress";
+
+    /**
+     * Codec of compressed spill files, "snappy" (default) or "deflate"
+     */
+    public static final String PIG_SPILL_COMPRESS_CODEC = "pig.spill.compress.codec";
+
     // Pig reducer parallelism estimation settings
     public static final String PIG_EXEC_REDUCER_ESTIMATOR = "pig.exec.reducer.estimator";
     public static final String PIG_EXEC_REDUCER_ESTIMATOR_CONSTRUCTOR_ARG_KEY =  "pig.exec.reducer.estimator.arg";
@@ -239,6 +415,36 @@ public class PigConfiguration {
      */
     public static final String PIG_TEZ_AUTO_PARALLELISM_DISABLE_DAG_RECOVERY = "pig.tez.auto.parallelism.disable.dag.recovery";
 
+    /**
+     * This key is used to let the vertex of a two-way hash join switch to a
+     * broadcast join at runtime in tez. When an input that can be replicated
+     * finishes with an output smaller than
+     * {@link #PIG_TEZ_DYNAMIC_BROADCAST_JOIN_THRESHOLD}, it is sent to every
+     * task of the join vertex and the other input is no longer shuffled, each
+     * join task reads the output of one task of the other input instead.
+     * The join vertex is not started until the decision is made. Default is false.
+     */
+    public static final String PIG_TEZ_DYNAMIC_BROADCAST_JOIN = "pig.tez.dynamic.broadcast.join";
+
+    /**
+     * The largest output in bytes of a join input that is broadcast when
+     * {@link #PIG_TEZ_DYNAMIC_BROADCAST_JOIN} is on. Default is 33554432 (32MB).
+     */
+    public static final String PIG_TEZ_DYNAMIC_BROADCAST_JOIN_THRESHOLD = "pig.tez.dynamic.broadcast.join.threshold";
+    public static final long PIG_TEZ_DYNAMIC_BROADCAST_JOIN_THRESHOLD_DEFAULT = 33554432L;
+
+    /**
+     * The fraction of the tasks sampling the input of an order by in tez whose
+     * samples are used to compute the quantiles. The quantiles are computed as
+     * soon as that fraction of the sampling tasks have finished, from the
+     * samples of the first tasks to finish, so that the output of the other
+     * tasks is partitioned and sorted as they finish instead of after the
+     * whole input has been sampled. The number of rows
+     * used to estimate the parallelism of the sort is extrapolated from the
+     * sampled tasks. Default is 1, the samples of all the tasks are used.
+     */
+    public static final String PIG_TEZ_ORDERBY_SAMPLED_TASK_FRACTION = "pig.tez.orderby.sampled.task.fraction";
+
     /**
      * This key is used to configure compression for the pig input splits which
      * are not FileSplit. Default is false
@@ -262,6 +468,50 @@ public class PigConfiguration {
     public static final String PIG_UDF_PROFILE = "pig.udf.profile";
     public static final String PIG_UDF_PROFILE_FREQUENCY = "pig.udf.profile.frequency";
 
+    // Pig async UDF settings
+    /**
+     * Number of input tuples a foreach hands at once to its
+     * {@link org.apache.pig.AsyncEvalFunc}s. 0 evaluates them a tuple at a time.
+     * Default is 128
+     */
+    public static final String PIG_UDF_ASYNC_BATCH_SIZE = "pig.udf.async.batch.size";
+    public static final int PIG_UDF_ASYNC_BATCH_SIZE_DEFAULT = 128;
+
+    /**
+     * Number of batches of {@link #PIG_UDF_ASYNC_BATCH_SIZE} tuples submitted to
+     * the {@link org.apache.pig.AsyncEvalFunc}s of a foreach before waiting for
+     * the results of the oldest one. Default is 4
+     */
+    public static final String PIG_UDF_ASYNC_MAX_INFLIGHT = "pig.udf.async.max.inflight";
+    public static final int PIG_UDF_ASYNC_MAX_INFLIGHT_DEFAULT = 4;
+
+    /**
+     * Protocol used to exchange data with streaming (CPython) UDFs. "text" sends
+     * one delimited record at a time and waits for its result. "binary" sends
+     * the batches of {@link #PIG_UDF_ASYNC_BATCH_SIZE} tuples as length prefixed
+     * frames and keeps up to {@link #PIG_UDF_ASYNC_MAX_INFLIGHT} of them in the
+     * pipe to the process. Default is text
+     */
+    public static final String PIG_STREAMING_UDF_PROTOCOL = "pig.streaming.udf.protocol";
+
+    /**
+     * Number of processes a task runs a STREAM command or a streaming (CPython)
+     * UDF with, so that CPU heavy commands can use more than one core. The
+     * input of a STREAM is spread over its processes and their output is merged
+     * in no particular order, commands reading or writing files instead of
+     * stdin and stdout always run in one process. Streaming UDFs use the
+     * binary protocol of {@link #PIG_STREAMING_UDF_PROTOCOL} when they have
+     * more than one process, and keep the order of their results. Default is 1
+     */
+    public static final String PIG_STREAMING_WORKERS = "pig.streaming.workers";
+
+    /**
+     * Number of compiled regular expressions kept by the matches operator and
+     * the regex builtins of a task, for patterns which are not constant.
+     * Default is 1000
+     */
+    public static final String PIG_REGEX_CACHE_SIZE = "pig.regex.cache.size";
+
     // Pig schema tuple settings
     /**
      * This key must be set to true by the user for code generation to be used.
@@ -457,6 +707,12 @@ public class PigConfiguration {
      */
     public static final String PIG_BZIP_USE_HADOOP_INPUTFORMAT = "pig.bzip.use.hadoop.inputformat";
 
+    /**
+     * Boolean value to enable or disable lazy tuples in PigStorage. When enabled, PigStorage keeps the line it read
+     * with the offsets of the fields and only copies out the fields which are accessed. False by default
+     */
+    public static final String PIG_STORAGE_LAZY_TUPLE = "pig.storage.lazy.tuple";
+
     /**
      * This key is used to set the download location when registering an artifact using ivy coordinate
      */
@@ -498,6 +754,28 @@ public class PigConfiguration {
      */
     public static final String PIG_SPILL_UNUSED_MEMORY_THRESHOLD_SIZE = "pig.spill.unused.memory.threshold.size";
 
+    /**
+     * Memory manager that decides when Spillables are spilled. "gc" (default)
+     * spills when the JVM notifies that the tenured heap crossed the usage or
+     * collection thresholds above. "budget" ignores the notifications and has
+     * bags, partial aggregation, sort buffers and replicated join tables
+     * reserve their estimated size from a fixed budget, spilling the largest
+     * consumers as soon as a reservation would exceed it.
+     */
+    public static final String PIG_SPILL_MEMORY_MANAGER = "pig.spill.memory.manager";
+
+    /**
+     * Budget of the "budget" memory manager as a fraction of the max heap.
+     * Default is 0.6
+     */
+    public static final String PIG_SPILL_MEMORY_BUDGET_FRACTION = "pig.spill.memory.budget.fraction";
+
+    /**
+     * Budget of the "budget" memory manager in bytes. Overrides
+     * {@link PigConfiguration#PIG_SPILL_MEMORY_BUDGET_FRACTION} when set.
+     */
+    public static final String PIG_SPILL_MEMORY_BUDGET_SIZE = "pig.spill.memory.budget.size";
+
     /**
      * Log tracing id that can be used by upstream clients for tracking respective logs
      */
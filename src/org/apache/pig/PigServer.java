@@ -98,6 +98,7 @@ import org.apache.pig.tools.pigstats.EmptyPigStats;
 import org.apache.pig.tools.pigstats.JobStats;
 import org.apache.pig.tools.pigstats.OutputStats;
 import org.apache.pig.tools.pigstats.PigStats;
+import org.apache.pig.tools.pigstats.RuntimeStatsStore;
 import org.apache.pig.tools.pigstats.PigStats.JobGraph;
 import org.apache.pig.tools.pigstats.ScriptState;
 import org.apache.pig.validator.BlackAndWhitelistFilter;
@@ -1449,8 +1450,10 @@ public class PigServer {
         }
 
         pigContext.getProperties().setProperty("pig.logical.plan.signature", currDAG.lp.getSignature());
+        RuntimeStatsStore.setSignature(pigContext, currDAG.lp);
 
         PigStats stats = executeCompiledLogicalPlan();
+        RuntimeStatsStore.saveStats(pigContext, stats);
 
         return stats;
     }
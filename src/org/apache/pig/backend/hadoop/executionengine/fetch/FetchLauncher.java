@@ -19,9 +19,16 @@ package org.apache.pig.backend.hadoop.executionengine.fetch;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
@@ -33,6 +40,10 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POGlobalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStream;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
@@ -44,6 +55,7 @@ import org.apache.pig.impl.PigImplConstants;
 import org.apache.pig.impl.plan.DependencyOrderWalker;
 import org.apache.pig.impl.plan.PlanException;
 import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.util.Pair;
 import org.apache.pig.impl.util.UDFContext;
 import org.apache.pig.impl.util.Utils;
 import org.apache.pig.tools.pigstats.EmptyPigStats;
@@ -57,6 +69,8 @@ import org.apache.pig.tools.pigstats.PigStatusReporter;
  */
 public class FetchLauncher {
 
+    private static final Log LOG = LogFactory.getLog(FetchLauncher.class);
+
     private final PigContext pigContext;
     private final Configuration conf;
 
@@ -119,6 +133,12 @@ public class FetchLauncher {
     }
 
     private void init(PhysicalPlan pp, POStore poStore) throws IOException {
+        replaceShuffles(pp);
+        //Print the plan before launching if needed
+        if (conf.getBoolean(PigConfiguration.PIG_PRINT_EXEC_PLAN, false)) {
+            LOG.info(pp.toString());
+        }
+
         poStore.setStoreImpl(new FetchPOStoreImpl(pigContext));
         poStore.setUp();
 
@@ -137,6 +157,13 @@ public class FetchLauncher {
         PhysicalOperator.setReporter(new FetchProgressableReporter());
         SchemaTupleBackend.initialize(conf, pigContext);
 
+        // Let the load functions set up their UDFContext properties in the frontend
+        // as JobControlCompiler does, they are then serialized along the others
+        org.apache.hadoop.mapreduce.Job job = new org.apache.hadoop.mapreduce.Job(conf);
+        for (POLoad ld : PlanHelper.getPhysicalOperators(pp, POLoad.class)) {
+            ld.getLoadFunc().setLocation(ld.getLFile().getFileName(), job);
+        }
+
         UDFContext udfContext = UDFContext.getUDFContext();
         udfContext.addJobConf(conf);
         udfContext.setClientSystemProps(pigContext.getProperties());
@@ -154,6 +181,41 @@ public class FetchLauncher {
         PhysicalOperator.setPigLogger(pigHadoopLogger);
     }
 
+    /**
+     * Replaces each POGlobalRearrange and the POPackage following it, which
+     * would need a shuffle, with a {@link POFetchPackage} reading from the
+     * local rearranges directly
+     *
+     * @param pp - Physical plan
+     * @throws PlanException
+     * @throws VisitorException
+     */
+    private void replaceShuffles(PhysicalPlan pp) throws PlanException, VisitorException {
+        for (POGlobalRearrange gr : PlanHelper.getPhysicalOperators(pp, POGlobalRearrange.class)) {
+            POPackage pkg = (POPackage) pp.getSuccessors(gr).get(0);
+            List<PhysicalOperator> rearranges = new ArrayList<PhysicalOperator>(pp.getPredecessors(gr));
+
+            // annotate the package the way POPackageAnnotator does for MR plans
+            Map<Integer, Pair<Boolean, Map<Integer, Integer>>> keyInfo =
+                    new HashMap<Integer, Pair<Boolean, Map<Integer, Integer>>>();
+            for (PhysicalOperator op : rearranges) {
+                POLocalRearrange lr = (POLocalRearrange) op;
+                keyInfo.put(Integer.valueOf(lr.getIndex()), new Pair<Boolean, Map<Integer, Integer>>(
+                        lr.isProjectStar(), lr.getProjectedColsMap()));
+                pkg.getPkgr().setKeyTuple(lr.isKeyTuple());
+                pkg.getPkgr().setKeyCompound(lr.isKeyCompound());
+            }
+            pkg.getPkgr().setKeyInfo(keyInfo);
+
+            POFetchPackage fetchPkg = new POFetchPackage(pkg);
+            pp.replace(pkg, fetchPkg);
+            pp.remove(gr);
+            for (PhysicalOperator lr : rearranges) {
+                pp.connect(lr, fetchPkg);
+            }
+        }
+    }
+
     private void runPipeline(POStore posStore) throws IOException {
         while (true) {
             Result res = posStore.getNextTuple();
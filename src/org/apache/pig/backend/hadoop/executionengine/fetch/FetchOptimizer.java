@@ -25,10 +25,17 @@ import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.pig.LoadFunc;
 import org.apache.pig.PigConfiguration;
 import org.apache.pig.backend.datastorage.DataStorageException;
+import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PhyPlanSetter;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCollectedGroup;
@@ -54,19 +61,25 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSplit;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStream;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.Packager;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.backend.hadoop.executionengine.util.MapRedUtil;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.PigImplConstants;
+import org.apache.pig.impl.builtin.GFCross;
 import org.apache.pig.impl.builtin.SampleLoader;
 import org.apache.pig.impl.plan.DepthFirstWalker;
 import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.util.UriUtil;
 import org.apache.pig.impl.util.Utils;
 
 /**
  * FetchOptimizer determines whether the entire physical plan is fetchable, meaning
  * that the task's result can be directly read (fetched) from the underlying storage
  * rather than creating MR jobs. During the check {@link FetchablePlanVisitor} is used
- * to walk through the plan.
+ * to walk through the plan. Plans with a GROUP, COGROUP, JOIN, ORDER or DISTINCT
+ * are fetched when their input is below {@link PigConfiguration#PIG_OPT_FETCH_INPUT_MAXBYTES},
+ * these operators then run in memory.
  *
  */
 public class FetchOptimizer {
@@ -103,10 +116,17 @@ public class FetchOptimizer {
             if (!fpv.isPlanFetchable()) {
                 return false;
             }
-            for (POLoad load : PlanHelper.getPhysicalOperators(pp, POLoad.class)) {
-                if (load.getLimit() == -1) {
+            if (fpv.hasBlockingOperators()) {
+                // Blocking operators need all of their input in memory
+                if (!isInputSmall(pc, pp)) {
                     return false;
                 }
+            } else {
+                for (POLoad load : PlanHelper.getPhysicalOperators(pp, POLoad.class)) {
+                    if (load.getLimit() == -1) {
+                        return false;
+                    }
+                }
             }
             pc.getProperties().setProperty(PigImplConstants.CONVERTED_TO_FETCH, "true");
             init(pp);
@@ -123,6 +143,52 @@ public class FetchOptimizer {
         }
     }
 
+    /**
+     * Checks whether the total size of the inputs of the plan is known and below
+     * {@link PigConfiguration#PIG_OPT_FETCH_INPUT_MAXBYTES}.
+     *
+     * @param pc PigContext
+     * @param pp the physical plan to be examined
+     * @return true if the input is small enough to be fetched
+     * @throws VisitorException
+     */
+    private static boolean isInputSmall(PigContext pc, PhysicalPlan pp) throws VisitorException {
+        long maxBytes = Long.parseLong(pc.getProperties().getProperty(
+                PigConfiguration.PIG_OPT_FETCH_INPUT_MAXBYTES, "0"));
+        if (maxBytes <= 0) {
+            return false;
+        }
+        Configuration conf = ConfigurationUtil.toConfiguration(pc.getProperties());
+        long totalSize = 0;
+        try {
+            for (POLoad load : PlanHelper.getPhysicalOperators(pp, POLoad.class)) {
+                for (String location : LoadFunc.getPathStrings(load.getLFile().getFileName())) {
+                    if (!UriUtil.isHDFSFileOrLocalOrS3N(location, conf)) {
+                        LOG.debug("Size of input " + location + " is unknown. Fetch optimizer will be disabled.");
+                        return false;
+                    }
+                    Path path = new Path(location);
+                    FileSystem fs = path.getFileSystem(conf);
+                    FileStatus[] status = fs.globStatus(path);
+                    if (status == null) {
+                        return false;
+                    }
+                    for (FileStatus s : status) {
+                        totalSize += MapRedUtil.getPathLength(fs, s, maxBytes);
+                        if (totalSize > maxBytes) {
+                            LOG.debug("Size of input exceeds " + maxBytes + " bytes. Fetch optimizer will be disabled.");
+                            return false;
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.debug("Could not get the size of input. Fetch optimizer will be disabled.", e);
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Checks whether the plan fulfills the prerequisites needed for fetching.
      *
@@ -158,8 +224,10 @@ public class FetchOptimizer {
     /**
      * A plan is considered 'fetchable' if:
      * <pre>
-     * - it contains only: LIMIT, FILTER, FOREACH, STREAM, UNION(no implicit SPLIT is allowed)
+     * - it contains only: LIMIT, FILTER, FOREACH, STREAM, UNION(no implicit SPLIT is allowed),
+     *   GROUP, COGROUP, JOIN(the default hash join), ORDER, DISTINCT
      * - no STORE
+     * - no CROSS
      * - no scalar aliases ({@link org.apache.pig.impl.builtin.ReadScalars ReadScalars})
      * - {@link org.apache.pig.LoadFunc LoadFunc} is not a {@link org.apache.pig.impl.builtin.SampleLoader SampleLoader}
      * </pre>
@@ -167,6 +235,7 @@ public class FetchOptimizer {
     private static class FetchablePlanVisitor extends PhyPlanVisitor {
 
         private boolean planFetchable = true;
+        private boolean hasBlockingOperators = false;
         private PigContext pc;
 
         public FetchablePlanVisitor(PigContext pc, PhysicalPlan plan) {
@@ -224,17 +293,23 @@ public class FetchOptimizer {
 
         @Override
         public void visitLocalRearrange(POLocalRearrange lr) throws VisitorException {
-            planFetchable = false;
+            hasBlockingOperators = true;
+            super.visitLocalRearrange(lr);
         }
 
         @Override
         public void visitGlobalRearrange(POGlobalRearrange gr) throws VisitorException {
-            planFetchable = false;
+            hasBlockingOperators = true;
+            super.visitGlobalRearrange(gr);
         }
 
         @Override
         public void visitPackage(POPackage pkg) throws VisitorException {
-            planFetchable = false;
+            // Packagers set up for MR plans are not supported
+            if (pkg.getPkgr().getClass() != Packager.class) {
+                planFetchable = false;
+            }
+            hasBlockingOperators = true;
         }
 
         @Override
@@ -259,12 +334,22 @@ public class FetchOptimizer {
 
         @Override
         public void visitDistinct(PODistinct distinct) throws VisitorException {
-            planFetchable = false;
+            hasBlockingOperators = true;
+            super.visitDistinct(distinct);
         }
 
         @Override
         public void visitSort(POSort sort) throws VisitorException {
-            planFetchable = false;
+            hasBlockingOperators = true;
+            super.visitSort(sort);
+        }
+
+        @Override
+        public void visitUserFunc(POUserFunc userFunc) throws VisitorException {
+            // GFCross needs the parallelism of the cross job
+            if (userFunc.getFunc() instanceof GFCross) {
+                planFetchable = false;
+            }
         }
 
         @Override
@@ -318,6 +403,10 @@ public class FetchOptimizer {
             return planFetchable;
         }
 
+        private boolean hasBlockingOperators() {
+            return hasBlockingOperators;
+        }
+
         private boolean isTempPath(String basePathName) throws DataStorageException {
             String tdir = pc.getProperties().getProperty("pig.temp.dir", "/tmp");
             String tempStore = pc.getDfs().asContainer(tdir + "/temp").toString();
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.fetch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.HDataType;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.io.NullableTuple;
+import org.apache.pig.impl.io.PigNullableWritable;
+
+/**
+ * Takes the place of a POGlobalRearrange and POPackage pair in a fetched plan.
+ * The whole output of the local rearranges feeding the package is read and
+ * grouped in memory, in key order like the shuffle would do, and each group
+ * is then attached to the package.
+ */
+public class POFetchPackage extends POPackage {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient Iterator<Map.Entry<PigNullableWritable, List<NullableTuple>>> groups;
+    private transient boolean groupAttached;
+
+    public POFetchPackage(POPackage pack) {
+        super(pack);
+        pkgr.setParent(this);
+    }
+
+    @Override
+    public Result getNextTuple() throws ExecException {
+        if (groups == null) {
+            TreeMap<PigNullableWritable, List<NullableTuple>> shuffled =
+                    new TreeMap<PigNullableWritable, List<NullableTuple>>();
+            // The package expects the values of a key ordered by index
+            List<PhysicalOperator> rearranges = new ArrayList<PhysicalOperator>(inputs);
+            Collections.sort(rearranges, new Comparator<PhysicalOperator>() {
+                @Override
+                public int compare(PhysicalOperator o1, PhysicalOperator o2) {
+                    return ((POLocalRearrange) o1).getIndex() - ((POLocalRearrange) o2).getIndex();
+                }
+            });
+            for (PhysicalOperator rearrange : rearranges) {
+                byte keyType = ((POLocalRearrange) rearrange).getKeyType();
+                Result res = rearrange.getNextTuple();
+                while (res.returnStatus != POStatus.STATUS_EOP) {
+                    if (res.returnStatus == POStatus.STATUS_ERR) {
+                        return res;
+                    }
+                    if (res.returnStatus == POStatus.STATUS_OK) {
+                        collect(shuffled, (Tuple) res.result, keyType);
+                    }
+                    res = rearrange.getNextTuple();
+                }
+            }
+            groups = shuffled.entrySet().iterator();
+        }
+
+        while (true) {
+            if (groupAttached) {
+                Result res = super.getNextTuple();
+                if (res.returnStatus != POStatus.STATUS_EOP) {
+                    return res;
+                }
+                groupAttached = false;
+            }
+            if (!groups.hasNext()) {
+                return new Result(POStatus.STATUS_EOP, null);
+            }
+            Map.Entry<PigNullableWritable, List<NullableTuple>> group = groups.next();
+            attachInput(group.getKey(), group.getValue().iterator());
+            groupAttached = true;
+        }
+    }
+
+    @Override
+    public boolean supportsMultipleInputs() {
+        return true;
+    }
+
+    private void collect(Map<PigNullableWritable, List<NullableTuple>> shuffled,
+            Tuple tuple, byte keyType) throws ExecException {
+        Byte index = (Byte) tuple.get(0);
+        PigNullableWritable key = HDataType.getWritableComparableTypes(tuple.get(1), keyType);
+        NullableTuple val = new NullableTuple((Tuple) tuple.get(2));
+        key.setIndex(index);
+        val.setIndex(index);
+
+        List<NullableTuple> values = shuffled.get(key);
+        if (values == null) {
+            values = new ArrayList<NullableTuple>();
+            shuffled.put(key, values);
+        }
+        values.add(val);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorExpressionBuilder;
+import org.apache.pig.data.DataType;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * A visitor that sets the filters and foreachs of the map plans whose
+ * expression plans can be evaluated a batch at a time to batch mode. Only
+ * operators at the top level of the map plan are considered, as the end of
+ * all input is not propagated to nested plans. This needs to run before the
+ * EndOfAllInputSetter so the batches are flushed at the end of the map.
+ */
+public class BatchModeOptimizer extends MROpPlanVisitor {
+
+    private static final Log LOG = LogFactory.getLog(BatchModeOptimizer.class);
+
+    private final int batchSize;
+
+    public BatchModeOptimizer(MROperPlan plan, int batchSize) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        int count = 0;
+        try {
+            for (PhysicalOperator op : mr.mapPlan) {
+                if (op instanceof POFilter) {
+                    POFilter filter = (POFilter) op;
+                    if (isSupported(filter)) {
+                        filter.setBatchSize(batchSize);
+                        count++;
+                    }
+                } else if (op.getClass() == POForEach.class) {
+                    POForEach foreach = (POForEach) op;
+                    if (isSupported(foreach)) {
+                        foreach.setBatchSize(batchSize);
+                        count++;
+                    }
+                }
+            }
+        } catch (ExecException e) {
+            throw new VisitorException(e);
+        }
+        if (count > 0) {
+            LOG.info("Using batch mode for " + count + " operator(s) in the map plan of "
+                    + mr.getOperatorKey());
+        }
+    }
+
+    private static boolean isSupported(POFilter filter) throws ExecException {
+        PhysicalPlan plan = filter.getPlan();
+        if (!VectorExpressionBuilder.isSupported(plan)
+                || plan.getLeaves().get(0).getResultType() != DataType.BOOLEAN) {
+            return false;
+        }
+        return numVectorized(plan) > 0;
+    }
+
+    private static boolean isSupported(POForEach foreach) throws ExecException {
+        if (foreach.isAccumulative() || foreach.getToBeFlattened() == null) {
+            return false;
+        }
+        for (Boolean flatten : foreach.getToBeFlattened()) {
+            if (flatten) {
+                return false;
+            }
+        }
+        int numVectorized = 0;
+        for (PhysicalPlan plan : foreach.getInputPlans()) {
+            if (!VectorExpressionBuilder.isSupported(plan)) {
+                return false;
+            }
+            numVectorized += numVectorized(plan);
+        }
+        return numVectorized > 0;
+    }
+
+    // Batch mode is only worth it if some operators have a batch version
+    private static int numVectorized(PhysicalPlan plan) throws ExecException {
+        VectorExpressionBuilder builder = new VectorExpressionBuilder(plan);
+        builder.build();
+        return builder.getNumVectorized();
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.pig.FileInputLoadFunc;
+import org.apache.pig.FuncSpec;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSplit;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POUnion;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.FileSpec;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.NodeIdGenerator;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.PlanException;
+import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.util.Utils;
+
+/**
+ * Runs group jobs with algebraic functions incrementally over append-only
+ * file inputs, see {@link PigConfiguration#PIG_EXEC_INCREMENTAL}.
+ * <p>
+ * The reducers of an eligible job also apply the combine foreach to the
+ * packaged partial results, which gives the intermediate results of all the
+ * keys, and store them as the state of the job. Along with the state, a
+ * manifest records the input files read. On the next run, if the plan is the
+ * same and none of the recorded files changed, the job only loads the files
+ * added since and the saved state, which has the format of the output of the
+ * map foreach and so goes straight to the map local rearrange. The output is
+ * still computed over all the input. Otherwise the job reads all the input
+ * again and saves a new state.
+ * <p>
+ * A job is eligible if it has a combiner, loads a single non temporary input
+ * with a {@link FileInputLoadFunc} and stores its output in its reducers. The
+ * state is keyed by the output location. The new manifest is only written by
+ * {@link #commit(POStore)} once the job has succeeded.
+ */
+public class IncrementalExecutionOptimizer extends MROpPlanVisitor {
+
+    private static final Log LOG = LogFactory.getLog(IncrementalExecutionOptimizer.class);
+
+    static final String MANIFEST = "manifest";
+
+    private static final String SIGNATURE = "signature";
+    private static final String STATE = "state";
+    private static final String STORAGE = "storage";
+    private static final String OUTPUT = "output";
+    private static final String FILES = "files";
+
+    private PigContext pigContext;
+    private Configuration conf;
+    private Path stateDir;
+    private NodeIdGenerator nig;
+    private String scope;
+
+    // States to commit, by location of their store
+    private Map<String, IncrementalState> pending = new LinkedHashMap<String, IncrementalState>();
+
+    public IncrementalExecutionOptimizer(MROperPlan plan, PigContext pigContext) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+        this.pigContext = pigContext;
+        conf = ConfigurationUtil.toConfiguration(pigContext.getProperties());
+        String dir = pigContext.getProperties().getProperty(PigConfiguration.PIG_EXEC_INCREMENTAL_DIR);
+        if (dir == null) {
+            dir = new Path(pigContext.getProperties().getProperty(PigConfiguration.PIG_TEMP_DIR, "/tmp/"),
+                    "pig-incremental").toString();
+        }
+        stateDir = new Path(dir);
+        nig = NodeIdGenerator.getGenerator();
+        scope = plan.getRoots().get(0).getOperatorKey().getScope();
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        if (!isEligible(mr)) {
+            return;
+        }
+        POLoad load = (POLoad) mr.mapPlan.getRoots().get(0);
+        POStore store = (POStore) mr.reducePlan.getLeaves().get(0);
+        String output = store.getSFile().getFileName();
+        Path dir = new Path(stateDir, output.replaceAll("[^A-Za-z0-9_.-]", "_"));
+        Path manifestPath = new Path(dir, MANIFEST);
+        String signature = getSignature(mr);
+        Map<String, FileStatus> files;
+        Properties manifest;
+        try {
+            files = PlanSignature.listFiles(load.getLFile().getFileName(), conf);
+            FileSystem fs = manifestPath.getFileSystem(conf);
+            manifest = readManifest(fs, manifestPath);
+            if (manifest != null && !canResume(manifest, signature, files, fs)) {
+                manifest = null;
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to set up incremental execution of " + output + ", running it in full", e);
+            return;
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+
+        List<String> newFiles = new ArrayList<String>(files.keySet());
+        FileSpec oldState = null;
+        String location = null;
+        if (manifest != null) {
+            int numFiles = Integer.parseInt(manifest.getProperty(FILES));
+            for (int i = 0; i < numFiles; i++) {
+                newFiles.remove(manifest.getProperty(FILES + "." + i + ".path"));
+            }
+            location = getLocation(newFiles);
+        }
+        if (location != null) {
+            oldState = new FileSpec(manifest.getProperty(STATE),
+                    new FuncSpec(manifest.getProperty(STORAGE)));
+            LOG.info("Incremental execution of " + output + ": reading " + newFiles.size()
+                    + " new of " + files.size() + " input files and the state in "
+                    + oldState.getFileName());
+        } else if (manifest != null) {
+            LOG.info("Incremental execution of " + output + ": the new input files cannot be listed "
+                    + "in a load location, reading all of the " + files.size() + " input files");
+        } else {
+            LOG.info("Incremental execution of " + output + ": no usable state, reading all of the "
+                    + files.size() + " input files");
+        }
+
+        FileSpec newState = new FileSpec(new Path(dir, "state-" + System.currentTimeMillis()).toString(),
+                new FuncSpec(Utils.getTmpFileCompressorName(pigContext)));
+        try {
+            addStateLoad(mr, load, location, oldState);
+            addStateStore(mr, newState);
+        } catch (PlanException e) {
+            int errCode = 2034;
+            String msg = "Error setting up incremental execution of " + output;
+            throw new MRCompilerException(msg, errCode, PigException.BUG, e);
+        }
+
+        Properties newManifest = new Properties();
+        newManifest.setProperty(SIGNATURE, signature);
+        newManifest.setProperty(STATE, newState.getFileName());
+        newManifest.setProperty(STORAGE, newState.getFuncSpec().toString());
+        newManifest.setProperty(OUTPUT, output);
+        newManifest.setProperty(FILES, String.valueOf(files.size()));
+        int i = 0;
+        for (FileStatus status : files.values()) {
+            newManifest.setProperty(FILES + "." + i + ".path", status.getPath().toString());
+            newManifest.setProperty(FILES + "." + i + ".length", String.valueOf(status.getLen()));
+            newManifest.setProperty(FILES + "." + i + ".modtime",
+                    String.valueOf(status.getModificationTime()));
+            i++;
+        }
+        pending.put(newState.getFileName(), new IncrementalState(manifestPath, newManifest,
+                oldState == null ? null : new Path(oldState.getFileName())));
+    }
+
+    private boolean isEligible(MapReduceOper mr) throws VisitorException {
+        if (mr.combinePlan.isEmpty() || mr.isSkewedGroup() || mPlan.getPredecessors(mr) != null) {
+            return false;
+        }
+        List<PhysicalOperator> mapRoots = mr.mapPlan.getRoots();
+        List<PhysicalOperator> mapLeaves = mr.mapPlan.getLeaves();
+        if (mapRoots.size() != 1 || !(mapRoots.get(0) instanceof POLoad)
+                || mapLeaves.size() != 1 || !(mapLeaves.get(0) instanceof POLocalRearrange)) {
+            return false;
+        }
+        POLoad load = (POLoad) mapRoots.get(0);
+        if (load.isTmpLoad() || !(load.getLoadFunc() instanceof FileInputLoadFunc)) {
+            return false;
+        }
+        List<PhysicalOperator> reduceRoots = mr.reducePlan.getRoots();
+        List<PhysicalOperator> reduceLeaves = mr.reducePlan.getLeaves();
+        if (reduceRoots.size() != 1 || !(reduceRoots.get(0) instanceof POPackage)
+                || reduceLeaves.size() != 1 || !(reduceLeaves.get(0) instanceof POStore)
+                || ((POStore) reduceLeaves.get(0)).isTmpStore()
+                || PlanHelper.containsPhysicalOperator(mr.reducePlan, POSplit.class)) {
+            return false;
+        }
+        PhysicalOperator combineRoot = mr.combinePlan.getRoots().get(0);
+        List<PhysicalOperator> succs = mr.combinePlan.getSuccessors(combineRoot);
+        return succs != null && succs.size() == 1 && succs.get(0) instanceof POForEach;
+    }
+
+    /**
+     * The saved state is only valid for the same input, map and combine plans.
+     */
+    private static String getSignature(MapReduceOper mr) {
+        StringBuilder sb = new StringBuilder();
+        PlanSignature.append(sb, mr.mapPlan, Collections.<String, String>emptyMap());
+        PlanSignature.append(sb, mr.combinePlan, Collections.<String, String>emptyMap());
+        return sb.toString();
+    }
+
+    private static Properties readManifest(FileSystem fs, Path manifestPath) throws IOException {
+        if (!fs.exists(manifestPath)) {
+            return null;
+        }
+        Properties manifest = new Properties();
+        InputStream in = fs.open(manifestPath);
+        try {
+            manifest.load(in);
+        } finally {
+            in.close();
+        }
+        return manifest;
+    }
+
+    private static boolean canResume(Properties manifest, String signature,
+            Map<String, FileStatus> files, FileSystem fs) throws IOException {
+        if (!signature.equals(manifest.getProperty(SIGNATURE))) {
+            LOG.info("Plan changed since the state was saved");
+            return false;
+        }
+        if (!fs.exists(new Path(manifest.getProperty(STATE)))) {
+            LOG.info("State " + manifest.getProperty(STATE) + " is missing");
+            return false;
+        }
+        int numFiles = Integer.parseInt(manifest.getProperty(FILES));
+        for (int i = 0; i < numFiles; i++) {
+            String path = manifest.getProperty(FILES + "." + i + ".path");
+            FileStatus status = files.get(path);
+            if (status == null
+                    || status.getLen() != Long.parseLong(manifest.getProperty(FILES + "." + i + ".length"))
+                    || status.getModificationTime()
+                            != Long.parseLong(manifest.getProperty(FILES + "." + i + ".modtime"))) {
+                LOG.info("Input file " + path + " was removed or changed since the state was saved");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds a load location matching exactly the given files. Glob characters
+     * are escaped and commas, which separate the paths of a location, are
+     * matched by a glob group.
+     * @return the location, the empty string if there are no files, or null
+     * if the path of a file has unbalanced braces, which cannot be escaped as
+     * the paths are split at the commas outside of braces
+     */
+    static String getLocation(List<String> files) {
+        StringBuilder location = new StringBuilder();
+        for (String file : files) {
+            if (location.length() > 0) {
+                location.append(',');
+            }
+            int braces = 0;
+            for (int i = 0; i < file.length(); i++) {
+                char c = file.charAt(i);
+                switch (c) {
+                case ',':
+                    location.append("{\\,}");
+                    break;
+                case '{':
+                    braces++;
+                    location.append('\\').append(c);
+                    break;
+                case '}':
+                    if (--braces < 0) {
+                        return null;
+                    }
+                    location.append('\\').append(c);
+                    break;
+                case '*':
+                case '?':
+                case '[':
+                case ']':
+                case '\\':
+                    location.append('\\').append(c);
+                    break;
+                default:
+                    location.append(c);
+                }
+            }
+            if (braces != 0) {
+                return null;
+            }
+        }
+        return location.toString();
+    }
+
+    /**
+     * Loads the given location only, and the old state if there is one. The
+     * state has the format of the output of the map foreach, so it is fed to
+     * the map local rearrange through a union.
+     * @param location location of the new files, empty if there are none, or
+     * null to load all of the input
+     */
+    private void addStateLoad(MapReduceOper mr, POLoad load, String location, FileSpec oldState)
+            throws PlanException {
+        if (location != null && !location.isEmpty()) {
+            load.setLFile(new FileSpec(location, load.getLFile().getFuncSpec()));
+        }
+        if (oldState == null) {
+            return;
+        }
+        POLocalRearrange lr = (POLocalRearrange) mr.mapPlan.getLeaves().get(0);
+        POLoad stateLoad = new POLoad(getOperatorKey());
+        stateLoad.setPc(pigContext);
+        stateLoad.setLFile(oldState);
+        stateLoad.setIsTmpLoad(true);
+        mr.mapPlan.add(stateLoad);
+        if (location.isEmpty()) {
+            // Nothing new to read, the output is computed from the state only
+            removeAbove(mr.mapPlan, lr);
+            mr.mapPlan.connect(stateLoad, lr);
+        } else {
+            PhysicalOperator pred = mr.mapPlan.getPredecessors(lr).get(0);
+            POUnion union = new POUnion(getOperatorKey());
+            mr.mapPlan.disconnect(pred, lr);
+            mr.mapPlan.add(union);
+            mr.mapPlan.connect(pred, union);
+            mr.mapPlan.connect(stateLoad, union);
+            mr.mapPlan.connect(union, lr);
+        }
+    }
+
+    private static void removeAbove(PhysicalPlan plan, PhysicalOperator op) {
+        Set<PhysicalOperator> above = new HashSet<PhysicalOperator>();
+        List<PhysicalOperator> todo = new ArrayList<PhysicalOperator>();
+        todo.add(op);
+        while (!todo.isEmpty()) {
+            List<PhysicalOperator> preds = plan.getPredecessors(todo.remove(todo.size() - 1));
+            if (preds != null) {
+                for (PhysicalOperator pred : preds) {
+                    if (above.add(pred)) {
+                        todo.add(pred);
+                    }
+                }
+            }
+        }
+        for (PhysicalOperator pred : above) {
+            plan.remove(pred);
+        }
+    }
+
+    /**
+     * Splits the output of the reduce package between the original reduce
+     * plan and the combine foreach storing the new state.
+     */
+    private void addStateStore(MapReduceOper mr, FileSpec newState)
+            throws PlanException, VisitorException {
+        POPackage pack = (POPackage) mr.reducePlan.getRoots().get(0);
+        POForEach cfe = (POForEach) mr.combinePlan.getSuccessors(mr.combinePlan.getRoots().get(0)).get(0);
+
+        PhysicalPlan statePlan = new PhysicalPlan();
+        try {
+            statePlan.add(cfe.clone());
+        } catch (CloneNotSupportedException e) {
+            int errCode = 2127;
+            String msg = "Problem in cloning the combine plan for incremental execution.";
+            throw new MRCompilerException(msg, errCode, PigException.BUG, e);
+        }
+        POStore stateStore = new POStore(getOperatorKey());
+        stateStore.setSFile(newState);
+        stateStore.setIsTmpStore(true);
+        statePlan.addAsLeaf(stateStore);
+
+        PhysicalPlan outputPlan = mr.reducePlan;
+        outputPlan.remove(pack);
+
+        POSplit split = new POSplit(getOperatorKey());
+        split.addPlan(outputPlan);
+        split.addPlan(statePlan);
+        PhysicalPlan reducePlan = new PhysicalPlan();
+        reducePlan.add(pack);
+        reducePlan.addAsLeaf(split);
+        mr.reducePlan = reducePlan;
+    }
+
+    private OperatorKey getOperatorKey() {
+        return new OperatorKey(scope, nig.getNextNodeId(scope));
+    }
+
+    /**
+     * Records the state stored by the given store of a successful job as
+     * the state to resume from on the next run, and deletes the state it
+     * replaces.
+     * @param store a store of a successful job
+     */
+    public void commit(POStore store) throws IOException {
+        IncrementalState state = pending.remove(store.getSFile().getFileName());
+        if (state == null) {
+            return;
+        }
+        FileSystem fs = state.manifestPath.getFileSystem(conf);
+        Path tmpPath = state.manifestPath.suffix(".tmp");
+        OutputStream out = fs.create(tmpPath, true);
+        try {
+            state.manifest.store(out, "Pig incremental execution state");
+        } finally {
+            out.close();
+        }
+        fs.delete(state.manifestPath, false);
+        if (!fs.rename(tmpPath, state.manifestPath)) {
+            throw new IOException("Unable to rename " + tmpPath + " to " + state.manifestPath);
+        }
+        if (state.oldState != null) {
+            fs.delete(state.oldState, true);
+        }
+        LOG.info("Saved incremental execution state of " + state.manifest.getProperty(OUTPUT)
+                + " in " + state.manifest.getProperty(STATE));
+    }
+
+    /**
+     * @param location location of a temporary store
+     * @return true if the store saves the state of incremental execution,
+     * in which case it must not be deleted with the other temporary files
+     */
+    public boolean isState(String location) {
+        return pending.containsKey(location);
+    }
+
+    /**
+     * Deletes the states stored by jobs that did not succeed.
+     */
+    public void discardPending() throws IOException {
+        for (String location : pending.keySet()) {
+            Path path = new Path(location);
+            FileSystem fs = path.getFileSystem(conf);
+            if (fs.exists(path)) {
+                fs.delete(path, true);
+            }
+        }
+        pending.clear();
+    }
+
+    private static class IncrementalState {
+        private final Path manifestPath;
+        private final Properties manifest;
+        private final Path oldState;
+
+        IncrementalState(Path manifestPath, Properties manifest, Path oldState) {
+            this.manifestPath = manifestPath;
+            this.manifest = manifest;
+            this.oldState = oldState;
+        }
+    }
+}
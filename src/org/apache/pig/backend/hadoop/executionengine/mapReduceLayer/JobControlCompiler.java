@@ -87,6 +87,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlan
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.UdfCacheShipFilesVisitor;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFRJoin;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeCogroup;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeJoin;
@@ -771,9 +772,13 @@ public class JobControlCompiler{
             //Process POStore and remove it from the plan
             LinkedList<POStore> mapStores = PlanHelper.getPhysicalOperators(mro.mapPlan, POStore.class);
             LinkedList<POStore> reduceStores = PlanHelper.getPhysicalOperators(mro.reducePlan, POStore.class);
+            boolean runtimeStats = conf.getBoolean(PigConfiguration.PIG_OPT_RUNTIME_STATS, false);
 
             for (POStore st : mapStores) {
                 storeLocations.add(st);
+                if (runtimeStats) {
+                    setTmpStoreAlias(mro.mapPlan, st);
+                }
                 StoreFuncInterface sFunc = st.getStoreFunc();
                 sFunc.setStoreLocation(st.getSFile().getFileName(), nwJob);
                 if (sFunc instanceof OverwritableStoreFunc) {
@@ -787,6 +792,9 @@ public class JobControlCompiler{
 
             for (POStore st : reduceStores) {
                 storeLocations.add(st);
+                if (runtimeStats) {
+                    setTmpStoreAlias(mro.reducePlan, st);
+                }
                 StoreFuncInterface sFunc = st.getStoreFunc();
                 sFunc.setStoreLocation(st.getSFile().getFileName(), nwJob);
                 if (sFunc instanceof OverwritableStoreFunc) {
@@ -849,6 +857,10 @@ public class JobControlCompiler{
             // serialized
             setupDistributedCacheForJoin(mro, pigContext, conf);
 
+            // the batch, thread and async settings of the foreachs are not
+            // serialized with the plans
+            POForEach.storeExecSettings(conf, mro.mapPlan, mro.reducePlan);
+
             SchemaTupleFrontend.copyAllGeneratedToDistributedCache(pigContext, conf);
 
             POPackage pack = null;
@@ -1043,6 +1055,20 @@ public class JobControlCompiler{
         }
     }
 
+    /**
+     * Names a temporary store after the relation it writes, so that the
+     * statistics of the intermediate output can be tracked by alias.
+     */
+    private static void setTmpStoreAlias(PhysicalPlan plan, POStore st) {
+        if (!st.isTmpStore() || st.getAlias() != null) {
+            return;
+        }
+        List<PhysicalOperator> preds = plan.getPredecessors(st);
+        if (preds != null && preds.size() == 1) {
+            st.copyAliasFrom(preds.get(0));
+        }
+    }
+
     public static void configureCompression(Configuration conf) {
         // Convert mapred.output.* to output.compression.*, See PIG-1791
         if( "true".equals( conf.get(MRConfiguration.OUTPUT_COMPRESS) ) ) {
@@ -1378,6 +1404,64 @@ public class JobControlCompiler{
         }
     }
 
+    /**
+     * Returns the sort comparator of the keys of an order by, which honors
+     * the sort order set in pig.sortOrder.
+     * @param keyType the type of the keys
+     * @return the comparator, or null if the type has none
+     * @throws JobCreationException if the type cannot be sorted on
+     */
+    public static Class<? extends WritableComparator> getOrderByComparatorClass(byte keyType)
+            throws JobCreationException {
+        switch (keyType) {
+        case DataType.BOOLEAN:
+            return PigBooleanRawComparator.class;
+
+        case DataType.INTEGER:
+            return PigIntRawComparator.class;
+
+        case DataType.LONG:
+            return PigLongRawComparator.class;
+
+        case DataType.FLOAT:
+            return PigFloatRawComparator.class;
+
+        case DataType.DOUBLE:
+            return PigDoubleRawComparator.class;
+
+        case DataType.DATETIME:
+            return PigDateTimeRawComparator.class;
+
+        case DataType.CHARARRAY:
+            return PigTextRawComparator.class;
+
+        case DataType.BYTEARRAY:
+            return PigBytesRawComparator.class;
+
+        case DataType.BIGINTEGER:
+            return PigBigIntegerRawComparator.class;
+
+        case DataType.BIGDECIMAL:
+            return PigBigDecimalRawComparator.class;
+
+        case DataType.MAP:
+            int errCode = 1068;
+            String msg = "Using Map as key not supported.";
+            throw new JobCreationException(msg, errCode, PigException.INPUT);
+
+        case DataType.TUPLE:
+            return PigTupleSortComparator.class;
+
+        case DataType.BAG:
+            errCode = 1068;
+            msg = "Using Bag as key not supported.";
+            throw new JobCreationException(msg, errCode, PigException.INPUT);
+
+        default:
+            return null;
+        }
+    }
+
     private void selectComparator(
             MapReduceOper mro,
             byte keyType,
@@ -1402,63 +1486,9 @@ public class JobControlCompiler{
             }
         }
         if (hasOrderBy) {
-            switch (keyType) {
-            case DataType.BOOLEAN:
-                job.setSortComparatorClass(PigBooleanRawComparator.class);
-                break;
-
-            case DataType.INTEGER:
-                job.setSortComparatorClass(PigIntRawComparator.class);
-                break;
-
-            case DataType.LONG:
-                job.setSortComparatorClass(PigLongRawComparator.class);
-                break;
-
-            case DataType.FLOAT:
-                job.setSortComparatorClass(PigFloatRawComparator.class);
-                break;
-
-            case DataType.DOUBLE:
-                job.setSortComparatorClass(PigDoubleRawComparator.class);
-                break;
-
-            case DataType.DATETIME:
-                job.setSortComparatorClass(PigDateTimeRawComparator.class);
-                break;
-
-            case DataType.CHARARRAY:
-                job.setSortComparatorClass(PigTextRawComparator.class);
-                break;
-
-            case DataType.BYTEARRAY:
-                job.setSortComparatorClass(PigBytesRawComparator.class);
-                break;
-
-            case DataType.BIGINTEGER:
-                job.setSortComparatorClass(PigBigIntegerRawComparator.class);
-                break;
-
-            case DataType.BIGDECIMAL:
-                job.setSortComparatorClass(PigBigDecimalRawComparator.class);
-                break;
-
-            case DataType.MAP:
-                int errCode = 1068;
-                String msg = "Using Map as key not supported.";
-                throw new JobCreationException(msg, errCode, PigException.INPUT);
-
-            case DataType.TUPLE:
-                job.setSortComparatorClass(PigTupleSortComparator.class);
-                break;
-
-            case DataType.BAG:
-                errCode = 1068;
-                msg = "Using Bag as key not supported.";
-                throw new JobCreationException(msg, errCode, PigException.INPUT);
-
-            default:
-                break;
+            Class<? extends WritableComparator> comparator = getOrderByComparatorClass(keyType);
+            if (comparator != null) {
+                job.setSortComparatorClass(comparator);
             }
             return;
         }
@@ -1958,7 +1988,11 @@ public class JobControlCompiler{
         }
     }
 
-    private static class ParallelConstantVisitor extends PhyPlanVisitor {
+    /**
+     * Sets the number of partitions of the next job in the reduce plan of a
+     * sampling job.
+     */
+    public static class ParallelConstantVisitor extends PhyPlanVisitor {
 
         private int rp;
 
@@ -1101,7 +1101,13 @@ public class MRCompiler extends PhyPlanVisitor {
     @Override
     public void visitGlobalRearrange(POGlobalRearrange op) throws VisitorException{
         try{
-            blocking(op);
+            if (op.isSkewed() && isSkewedGroupSupported(op)) {
+                int rp = compileSkewedGroupSample(op);
+                blocking(op);
+                curMROp.requestedParallelism = rp;
+            } else {
+                blocking(op);
+            }
             curMROp.customPartitioner = op.getCustomPartitioner();
             phyToMROpMap.put(op, curMROp);
         }catch(Exception e){
@@ -1111,6 +1117,77 @@ public class MRCompiler extends PhyPlanVisitor {
         }
     }
 
+    /**
+     * Skewed group splits the frequent keys across reducers, so it needs a
+     * single input and a foreach after the package whose results over parts
+     * of a bag can be merged. Otherwise it runs as a regular group.
+     */
+    private boolean isSkewedGroupSupported(POGlobalRearrange op) throws VisitorException {
+        String reason = null;
+        List<PhysicalOperator> preds = plan.getPredecessors(op);
+        List<PhysicalOperator> pkgSuccs = plan.getSuccessors(plan.getSuccessors(op).get(0));
+        if (pigContext.inIllustrator) {
+            reason = "of illustrate";
+        } else if (op.getCustomPartitioner() != null) {
+            reason = "a custom partitioner is used";
+        } else if (compiledInputs.length != 1 || preds.size() != 1
+                || !(preds.get(0) instanceof POLocalRearrange)) {
+            reason = "it has more than one input";
+        } else if (pkgSuccs == null || pkgSuccs.size() != 1
+                || !(pkgSuccs.get(0) instanceof POForEach)) {
+            reason = "it is not followed by a foreach";
+        } else if (!SkewedGroupOptimizer.isSplittable((POForEach) pkgSuccs.get(0))) {
+            reason = "the foreach after it calls functions that are neither algebraic nor mergeable";
+        }
+        if (reason != null) {
+            messageCollector.collect("Skewed group " + op.getAlias() + " is run as a regular group because "
+                    + reason, MessageType.Warning);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stores the input of a skewed group into a temporary file and adds a job
+     * sampling its keys, the same way as for the first input of a skewed
+     * join. The group job loads the temporary file and partitions the frequent
+     * keys found by the sampler across several reducers.
+     * @return parallelism of the group job
+     */
+    private int compileSkewedGroupSample(POGlobalRearrange op) throws IOException, PlanException, VisitorException {
+        // the local rearrange has been added as the leaf of the map plan
+        POLocalRearrange lr = (POLocalRearrange) plan.getPredecessors(op).get(0);
+        compiledInputs[0].mapPlan.remove(lr);
+
+        FileSpec fSpec = getTempFileSpec();
+        MapReduceOper mro = endSingleInputPlanWithStr(fSpec);
+
+        List<PhysicalPlan> keyPlans = new ArrayList<PhysicalPlan>();
+        try {
+            for (PhysicalPlan keyPlan : lr.getPlans()) {
+                keyPlans.add(keyPlan.clone());
+            }
+        } catch (CloneNotSupportedException e) {
+            int errCode = 2127;
+            String msg = "Cloning of plan failed.";
+            throw new PlanException(msg, errCode, PigException.BUG, e);
+        }
+
+        FileSpec partitionFile = getTempFileSpec();
+        Pair<MapReduceOper, Integer> sampleJobPair = getSkewedSampleJob(op, keyPlans, mro, fSpec,
+                partitionFile, op.getRequestedParallelism());
+        int rp = sampleJobPair.second;
+        op.setRequestedParallelism(rp);
+
+        MapReduceOper groupMROp = startNew(fSpec, sampleJobPair.first);
+        groupMROp.mapPlan.addAsLeaf(lr);
+        groupMROp.setSkewedJoinPartitionFile(partitionFile.getFileName());
+        groupMROp.setSkewedGroup(true);
+        phyToMROpMap.put(lr, groupMROp);
+        compiledInputs[0] = groupMROp;
+        return rp;
+    }
+
     @Override
     public void visitPackage(POPackage op) throws VisitorException{
         try{
@@ -1834,7 +1911,8 @@ public class MRCompiler extends PhyPlanVisitor {
             FileSpec partitionFile = getTempFileSpec();
             int rp = op.getRequestedParallelism();
 
-            Pair<MapReduceOper, Integer> sampleJobPair = getSkewedJoinSampleJob(op, mro, fSpec, partitionFile, rp);
+            Pair<MapReduceOper, Integer> sampleJobPair = getSkewedSampleJob(op,
+                    op.getJoinPlans().get(plan.getPredecessors(op).get(0)), mro, fSpec, partitionFile, rp);
             rp = sampleJobPair.second;
 
             // set parallelism of SkewedJoin as the value calculated by sampling job
@@ -2282,15 +2360,12 @@ public class MRCompiler extends PhyPlanVisitor {
     }
 
     /**
-     * Create Sampling job for skewed join.
+     * Create Sampling job for skewed join and skewed group.
+     * @param groups plans of the keys to sample
      */
-    private Pair<MapReduceOper, Integer> getSkewedJoinSampleJob(POSkewedJoin op, MapReduceOper prevJob,
-            FileSpec lFile, FileSpec sampleFile, int rp ) throws PlanException, VisitorException {
-
-        MultiMap<PhysicalOperator, PhysicalPlan> joinPlans = op.getJoinPlans();
+    private Pair<MapReduceOper, Integer> getSkewedSampleJob(PhysicalOperator op, List<PhysicalPlan> groups,
+            MapReduceOper prevJob, FileSpec lFile, FileSpec sampleFile, int rp ) throws PlanException, VisitorException {
 
-        List<PhysicalOperator> l = plan.getPredecessors(op);
-        List<PhysicalPlan> groups = joinPlans.get(l.get(0));
         List<Boolean> ascCol = new ArrayList<Boolean>();
         for(int i=0; i<groups.size(); i++) {
             ascCol.add(false);
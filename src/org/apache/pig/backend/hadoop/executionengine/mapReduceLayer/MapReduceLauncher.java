@@ -57,6 +57,7 @@ import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
 import org.apache.pig.backend.hadoop.executionengine.JobCreationException;
 import org.apache.pig.backend.hadoop.executionengine.Launcher;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MRCompiler.LastInputStreamingOptimizer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.AsyncForEachSetter;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.DotMRPrinter;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.EndOfAllInputSetter;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MRIntermediateDataVisitor;
@@ -67,6 +68,7 @@ import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.XMLMRP
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.JoinPackager;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.TupleBatch;
 import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.PigImplConstants;
@@ -99,6 +101,10 @@ public class MapReduceLauncher extends Launcher {
 
     private boolean aggregateWarning = false;
 
+    private IncrementalExecutionOptimizer incrementalOptimizer;
+
+    private ResultCacheOptimizer resultCache;
+
     public MapReduceLauncher() {
         super();
         Utils.addShutdownHookWithPriority(new HangingJobKiller(),
@@ -168,9 +174,15 @@ public class MapReduceLauncher extends Launcher {
             ExecException,
             JobCreationException,
             Exception {
-        long sleepTime = 500;
-        aggregateWarning = Boolean.valueOf(pc.getProperties().getProperty("aggregate.warning"));
         MROperPlan mrp = compile(php, pc);
+        return launchPlan(mrp, grpName, pc);
+    }
+
+    /**
+     * Runs the jobs of a plan compiled by {@link #compile(PhysicalPlan, PigContext)}.
+     */
+    protected PigStats launchPlan(MROperPlan mrp, String grpName, PigContext pc) throws Exception {
+        long sleepTime = 500;
 
         ConfigurationValidator.validatePigProperties(pc.getProperties());
         Configuration conf = ConfigurationUtil.toConfiguration(pc.getProperties());
@@ -454,6 +466,9 @@ public class MapReduceLauncher extends Launcher {
         if (Boolean.valueOf(pc.getProperties().getProperty(PigConfiguration.PIG_DELETE_TEMP_FILE, "true"))) {
             // Clean up all the intermediate data
             for (String path : intermediateVisitor.getIntermediate()) {
+                if (isKeptIntermediate(path)) {
+                    continue;
+                }
                 // Skip non-file system paths such as hbase, see PIG-3617
                 if (HadoopShims.hasFileSystemImpl(new Path(path), conf)) {
                     FileLocalizer.delete(path, pc);
@@ -493,6 +508,7 @@ public class MapReduceLauncher extends Launcher {
             for (Job job : succJobs) {
                 List<POStore> sts = jcc.getStores(job);
                 for (POStore st : sts) {
+                    commitIntermediate(st);
                     if (!st.isTmpStore()) {
                         // create an "_SUCCESS" file in output location if
                         // output location is a filesystem dir
@@ -511,6 +527,8 @@ public class MapReduceLauncher extends Launcher {
 
         }
 
+        discardPendingIntermediates();
+
         if(aggregateWarning) {
             CompilationMessageCollector.logAggregate(warningAggMap, MessageType.Warning, log) ;
         }
@@ -644,6 +662,7 @@ public class MapReduceLauncher extends Launcher {
     public MROperPlan compile(
             PhysicalPlan php,
             PigContext pc) throws PlanException, IOException, VisitorException {
+        aggregateWarning = Boolean.valueOf(pc.getProperties().getProperty("aggregate.warning"));
         MRCompiler comp = new MRCompiler(php, pc);
         comp.compile();
         comp.aggregateScalarsFiles();
@@ -667,6 +686,24 @@ public class MapReduceLauncher extends Launcher {
             co.getMessageCollector().logMessages(MessageType.Warning, aggregateWarning, log);
         }
 
+        // Save the intermediate results of group jobs over append-only inputs
+        // so that the next run only has to read the new input
+        incrementalOptimizer = null;
+        if (!pc.inIllustrator && Boolean.valueOf(pc.getProperties().getProperty(
+                PigConfiguration.PIG_EXEC_INCREMENTAL, "false"))) {
+            incrementalOptimizer = new IncrementalExecutionOptimizer(plan, pc);
+            incrementalOptimizer.visit();
+        }
+
+        // Split skewed groups into a job computing partial results for the
+        // parts of the frequent keys and a job merging them
+        if (!pc.inIllustrator) {
+            SkewedGroupOptimizer sgo = new SkewedGroupOptimizer(plan, pc, !("true".equals(prop)));
+            sgo.visit();
+            sgo.adjust();
+            sgo.getMessageCollector().logMessages(MessageType.Warning, aggregateWarning, log);
+        }
+
         // Optimize the jobs that have a load/store only first MR job followed
         // by a sample job.
         SampleOptimizer so = new SampleOptimizer(plan, pc);
@@ -705,6 +742,17 @@ public class MapReduceLauncher extends Launcher {
         NoopFilterRemover fRem = new NoopFilterRemover(plan);
         fRem.visit();
 
+        // replaces jobs computing the same intermediate results as in an
+        // earlier run by loads of the cached results. Has to run before
+        // MultiQueryOptimizer merges the jobs.
+        resultCache = null;
+        if (!pc.inIllustrator && Boolean.valueOf(pc.getProperties().getProperty(
+                PigConfiguration.PIG_EXEC_RESULT_CACHE, "false"))) {
+            resultCache = new ResultCacheOptimizer(plan, pc);
+            resultCache.visit();
+            resultCache.adjust();
+        }
+
         boolean isMultiQuery =
             Boolean.valueOf(pc.getProperties().getProperty(PigConfiguration.PIG_OPT_MULTIQUERY, "true"));
 
@@ -721,6 +769,42 @@ public class MapReduceLauncher extends Launcher {
         NoopStoreRemover sRem = new NoopStoreRemover(plan);
         sRem.visit();
 
+        // evaluates filter and foreach in map a batch of tuples at a time.
+        // Has to run before EndOfAllInputSetter as batches are flushed at
+        // the end of all input.
+        boolean isBatch =
+            Boolean.valueOf(pc.getProperties().getProperty(PigConfiguration.PIG_EXEC_BATCH, "false"));
+        if (isBatch && !pc.inIllustrator) {
+            int batchSize = Integer.parseInt(pc.getProperties().getProperty(
+                    PigConfiguration.PIG_EXEC_BATCH_SIZE, String.valueOf(TupleBatch.DEFAULT_BATCH_SIZE)));
+            BatchModeOptimizer batchOptimizer = new BatchModeOptimizer(plan, batchSize);
+            batchOptimizer.visit();
+        }
+
+        // evaluates foreach with thread safe UDFs in map on a pool of
+        // threads. Has to run before EndOfAllInputSetter for the same reason.
+        int numThreads = Integer.parseInt(pc.getProperties().getProperty(
+                PigConfiguration.PIG_EXEC_FOREACH_THREADS, "0"));
+        if (numThreads > 1 && !pc.inIllustrator) {
+            int batchSize = Integer.parseInt(pc.getProperties().getProperty(
+                    PigConfiguration.PIG_EXEC_FOREACH_BATCH_SIZE, String.valueOf(TupleBatch.DEFAULT_BATCH_SIZE)));
+            ParallelForEachOptimizer parallelOptimizer = new ParallelForEachOptimizer(plan, numThreads, batchSize);
+            parallelOptimizer.visit();
+        }
+
+        // hands the input of foreachs calling async UDFs to them a batch at
+        // a time. Has to run before EndOfAllInputSetter for the same reason.
+        int asyncBatchSize = Integer.parseInt(pc.getProperties().getProperty(
+                PigConfiguration.PIG_UDF_ASYNC_BATCH_SIZE,
+                String.valueOf(PigConfiguration.PIG_UDF_ASYNC_BATCH_SIZE_DEFAULT)));
+        if (asyncBatchSize > 0 && !pc.inIllustrator) {
+            int maxInFlight = Integer.parseInt(pc.getProperties().getProperty(
+                    PigConfiguration.PIG_UDF_ASYNC_MAX_INFLIGHT,
+                    String.valueOf(PigConfiguration.PIG_UDF_ASYNC_MAX_INFLIGHT_DEFAULT)));
+            new AsyncForEachSetter(plan, asyncBatchSize, Math.max(1, maxInFlight),
+                    ConfigurationUtil.toConfiguration(pc.getProperties())).visit();
+        }
+
         // check whether stream operator is present
         // after MultiQueryOptimizer because it can shift streams from
         // map to reduce, etc.
@@ -736,6 +820,43 @@ public class MapReduceLauncher extends Launcher {
         return plan;
     }
 
+    /**
+     * Returns whether an intermediate path of the last compiled plan has to be
+     * kept after the run, as it holds the state of incremental execution or
+     * a result added to the result cache.
+     */
+    protected boolean isKeptIntermediate(String path) {
+        return (incrementalOptimizer != null && incrementalOptimizer.isState(path))
+                || (resultCache != null && resultCache.isPending(path));
+    }
+
+    /**
+     * Records the output of a store of a successful job as the state of
+     * incremental execution or as a cached result, if it is one.
+     */
+    protected void commitIntermediate(POStore store) throws IOException {
+        if (incrementalOptimizer != null) {
+            incrementalOptimizer.commit(store);
+        }
+        if (resultCache != null) {
+            resultCache.commit(store);
+        }
+    }
+
+    /**
+     * Deletes the state and cached results whose jobs did not succeed, and
+     * lets the cached results used by the run be evicted.
+     */
+    protected void discardPendingIntermediates() throws IOException {
+        if (incrementalOptimizer != null) {
+            incrementalOptimizer.discardPending();
+        }
+        if (resultCache != null) {
+            resultCache.discardPending();
+            resultCache.release();
+        }
+    }
+
     private boolean shouldMarkOutputDir(Job job) {
         return job.getJobConf().getBoolean(MRConfiguration.FILEOUTPUTCOMMITTER_MARKSUCCESSFULJOBS,
                 false);
@@ -151,8 +151,12 @@ public class MapReduceOper extends Operator<MROpPlanVisitor> {
 	private boolean skewedJoin = false;
 
     // Name of the partition file generated by sampling process,
-    // Used by Skewed Join
+    // Used by Skewed Join and Skewed Group
 	private String skewedJoinPartitionFile;
+
+    // Set to true if it is the job of a skewed group that splits the
+    // frequent keys, its partial results are merged by the following job
+    private boolean skewedGroup = false;
 	
 	// Flag to communicate from MRCompiler to JobControlCompiler what kind of
 	// comparator is used by Hadoop for sorting for this MROper. 
@@ -307,6 +311,10 @@ public class MapReduceOper extends Operator<MROpPlanVisitor> {
     public boolean isGlobalSort() {
         return globalSort;
     }
+
+    public boolean isUDFComparatorUsed() {
+        return isUDFComparatorUsed;
+    }
     
     public boolean isSkewedJoin() {
     	return (skewedJoinPartitionFile != null);
@@ -328,6 +336,14 @@ public class MapReduceOper extends Operator<MROpPlanVisitor> {
 		return skewedJoin;
 	}
 
+    public boolean isSkewedGroup() {
+        return skewedGroup;
+    }
+
+    public void setSkewedGroup(boolean skewedGroup) {
+        this.skewedGroup = skewedGroup;
+    }
+
     public void setGlobalSort(boolean globalSort) {
         this.globalSort = globalSort;
     }
@@ -480,7 +496,7 @@ public class MapReduceOper extends Operator<MROpPlanVisitor> {
         this.useSecondaryKey = useSecondaryKey;
     }
 
-    protected boolean usingTypedComparator() {
+    public boolean usingTypedComparator() {
         return usingTypedComparator;
     }
 
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserComparisonFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.builtin.ThreadSafe;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * A visitor that sets the foreachs of the map plans whose UDFs are all
+ * annotated with {@link ThreadSafe} to be evaluated on a pool of threads. As
+ * for batch mode, only foreachs at the top level of the map plan are
+ * considered and this needs to run before the EndOfAllInputSetter. Foreachs
+ * already in batch mode are left alone.
+ */
+public class ParallelForEachOptimizer extends MROpPlanVisitor {
+
+    private static final Log LOG = LogFactory.getLog(ParallelForEachOptimizer.class);
+
+    private final int numThreads;
+
+    private final int batchSize;
+
+    public ParallelForEachOptimizer(MROperPlan plan, int numThreads, int batchSize) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+        this.numThreads = numThreads;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        int count = 0;
+        try {
+            for (PhysicalOperator op : mr.mapPlan) {
+                if (op.getClass() == POForEach.class) {
+                    POForEach foreach = (POForEach) op;
+                    if (isSupported(foreach)) {
+                        foreach.setNumThreads(numThreads, batchSize);
+                        count++;
+                    }
+                }
+            }
+        } catch (ExecException e) {
+            throw new VisitorException(e);
+        }
+        if (count > 0) {
+            LOG.info("Using " + numThreads + " threads for " + count
+                    + " foreach(s) in the map plan of " + mr.getOperatorKey());
+        }
+    }
+
+    private static boolean isSupported(POForEach foreach) throws ExecException, VisitorException {
+        if (foreach.getBatchSize() > 0 || foreach.isAccumulative()
+                || foreach.needEndOfAllInputProcessing()) {
+            return false;
+        }
+        // Only worth it if there is a UDF to spend the time in
+        int numUdfs = 0;
+        for (PhysicalPlan plan : foreach.getInputPlans()) {
+            if (!PlanHelper.getPhysicalOperators(plan, POUserComparisonFunc.class).isEmpty()) {
+                return false;
+            }
+            List<POUserFunc> funcs = PlanHelper.getPhysicalOperators(plan, POUserFunc.class);
+            for (POUserFunc func : funcs) {
+                if (!func.getFunc().getClass().isAnnotationPresent(ThreadSafe.class)) {
+                    return false;
+                }
+            }
+            numUdfs += funcs.size();
+        }
+        return numUdfs > 0;
+    }
+}
@@ -36,6 +36,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POCast;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POMapLookUp;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POMatchIndex;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONegative;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONot;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POOr;
@@ -283,6 +284,11 @@ public class PhyPlanSetter extends PhyPlanVisitor {
         negative.setParentPlan(parent);
     }
 
+    @Override
+    public void visitMatchIndex(POMatchIndex matchIndex) {
+        matchIndex.setParentPlan(parent);
+    }
+
     @Override
     public void visitUserFunc(POUserFunc userFunc) throws VisitorException {
         userFunc.setParentPlan(parent);
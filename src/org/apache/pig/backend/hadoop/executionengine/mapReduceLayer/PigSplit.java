@@ -471,10 +471,9 @@ public class PigSplit extends InputSplit implements Writable, Configurable {
         this.conf = conf;
     }
 
-    // package level access because we don't want LoadFunc implementations
-    // to get this information - this is to be used only from
-    // PigInputFormat
-    int getInputIndex() {
+    // LoadFunc implementations should not use this information - this is to
+    // be used only from PigInputFormat and the backends running the splits
+    public int getInputIndex() {
         return inputIndex;
     }
 
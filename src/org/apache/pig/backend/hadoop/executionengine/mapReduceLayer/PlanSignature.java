@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.JoinPackager;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCollectedGroup;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLimit;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartialAgg;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPreCombinerLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSort;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSplit;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POUnion;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.Packager;
+
+/**
+ * Describes physical plans and their file inputs in a way that does not
+ * depend on the operator keys, which change from run to run, so that the
+ * results of a plan can be reused by a later run of the same plan.
+ */
+final class PlanSignature {
+
+    private PlanSignature() {
+    }
+
+    /**
+     * Appends the signature of a plan. Each leaf is described as a tree of
+     * its inputs, in the order of the inputs, with the operators, their
+     * functions, constants, projections and nested plans.
+     * @param locations names to describe temporary load locations with, as
+     * they change from run to run
+     */
+    static void append(StringBuilder sb, PhysicalPlan plan, Map<String, String> locations) {
+        List<String> trees = new ArrayList<String>();
+        for (PhysicalOperator leaf : plan.getLeaves()) {
+            StringBuilder tree = new StringBuilder();
+            appendTree(tree, plan, leaf, locations);
+            trees.add(tree.toString());
+        }
+        // The order of the leaves of a plan is not stable
+        Collections.sort(trees);
+        sb.append('{');
+        for (String tree : trees) {
+            sb.append(tree).append(';');
+        }
+        sb.append('}');
+    }
+
+    private static void appendTree(StringBuilder sb, PhysicalPlan plan, PhysicalOperator op,
+            Map<String, String> locations) {
+        appendOperator(sb, op, locations);
+        List<PhysicalOperator> preds = plan.getPredecessors(op);
+        if (preds != null) {
+            List<String> inputs = new ArrayList<String>();
+            for (PhysicalOperator pred : preds) {
+                StringBuilder input = new StringBuilder();
+                appendTree(input, plan, pred, locations);
+                inputs.add(input.toString());
+            }
+            if (op instanceof POUnion) {
+                // The inputs of a union are not ordered
+                Collections.sort(inputs);
+            }
+            sb.append('(');
+            for (String input : inputs) {
+                sb.append(input).append(',');
+            }
+            sb.append(')');
+        }
+    }
+
+    private static void appendOperator(StringBuilder sb, PhysicalOperator op, Map<String, String> locations) {
+        sb.append(op.getClass().getSimpleName()).append(op.getResultType());
+        if (op instanceof POLoad) {
+            POLoad load = (POLoad) op;
+            String location = load.getLFile().getFileName();
+            if (locations.containsKey(location)) {
+                location = locations.get(location);
+            } else if (load.isTmpLoad()) {
+                location = "tmp";
+            }
+            sb.append('[').append(location).append(',').append(load.getLFile().getFuncSpec()).append(']');
+        } else if (op instanceof POUserFunc) {
+            sb.append('[').append(((POUserFunc) op).getFuncSpec()).append(']');
+        } else if (op instanceof ConstantExpression) {
+            sb.append('[').append(((ConstantExpression) op).getValue()).append(']');
+        } else if (op instanceof POProject) {
+            POProject proj = (POProject) op;
+            sb.append(proj.isStar() ? "[*]" : proj.isProjectToEnd()
+                    ? "[" + proj.getStartCol() + "..]" : proj.getColumns().toString());
+        } else if (op instanceof POLocalRearrange) {
+            POLocalRearrange lr = (POLocalRearrange) op;
+            sb.append('[').append(lr.getKeyType()).append(',').append(lr.getIndex()).append(']');
+            appendPlans(sb, lr.getPlans(), locations);
+        } else if (op instanceof POPackage) {
+            Packager pkgr = ((POPackage) op).getPkgr();
+            sb.append('[').append(pkgr.getClass().getSimpleName())
+                    .append(Arrays.toString(pkgr.getInner())).append(']');
+            if (pkgr instanceof JoinPackager) {
+                appendPlans(sb, ((JoinPackager) pkgr).getInputPlans(), locations);
+            }
+        } else if (op instanceof POForEach) {
+            sb.append(((POForEach) op).getToBeFlattened());
+            appendPlans(sb, ((POForEach) op).getInputPlans(), locations);
+        } else if (op instanceof POFilter) {
+            append(sb, ((POFilter) op).getPlan(), locations);
+        } else if (op instanceof POSort) {
+            POSort sort = (POSort) op;
+            sb.append(sort.getMAscCols()).append(sort.getLimit());
+            appendPlans(sb, sort.getSortPlans(), locations);
+        } else if (op instanceof POLimit) {
+            sb.append('[').append(((POLimit) op).getLimit()).append(']');
+            if (((POLimit) op).getLimitPlan() != null) {
+                append(sb, ((POLimit) op).getLimitPlan(), locations);
+            }
+        } else if (op instanceof POSplit) {
+            appendPlans(sb, ((POSplit) op).getPlans(), locations);
+        } else if (op instanceof POPreCombinerLocalRearrange) {
+            appendPlans(sb, ((POPreCombinerLocalRearrange) op).getPlans(), locations);
+        } else if (op instanceof POCollectedGroup) {
+            appendPlans(sb, ((POCollectedGroup) op).getPlans(), locations);
+        } else if (op instanceof POPartialAgg) {
+            append(sb, ((POPartialAgg) op).getKeyPlan(), locations);
+            appendPlans(sb, ((POPartialAgg) op).getValuePlans(), locations);
+        }
+    }
+
+    private static void appendPlans(StringBuilder sb, List<PhysicalPlan> plans,
+            Map<String, String> locations) {
+        if (plans == null) {
+            return;
+        }
+        for (PhysicalPlan plan : plans) {
+            append(sb, plan, locations);
+        }
+    }
+
+    /**
+     * Lists the files under a load location, in the order they are found,
+     * skipping hidden files as FileInputFormat does.
+     * @return the status of the files by path
+     */
+    static Map<String, FileStatus> listFiles(String location, Configuration conf) throws IOException {
+        Map<String, FileStatus> files = new LinkedHashMap<String, FileStatus>();
+        for (String pathString : LoadFunc.getPathStrings(location)) {
+            Path path = new Path(pathString);
+            FileStatus[] matches = path.getFileSystem(conf).globStatus(path);
+            if (matches == null) {
+                continue;
+            }
+            for (FileStatus status : matches) {
+                addFiles(status, files, conf);
+            }
+        }
+        return files;
+    }
+
+    private static void addFiles(FileStatus status, Map<String, FileStatus> files, Configuration conf)
+            throws IOException {
+        String name = status.getPath().getName();
+        if (name.startsWith("_") || name.startsWith(".")) {
+            return;
+        }
+        if (status.isDirectory()) {
+            FileSystem fs = status.getPath().getFileSystem(conf);
+            for (FileStatus child : fs.listStatus(status.getPath())) {
+                addFiles(child, files, conf);
+            }
+        } else {
+            files.put(status.getPath().toString(), status);
+        }
+    }
+}
@@ -0,0 +1,473 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.pig.FileInputLoadFunc;
+import org.apache.pig.FuncSpec;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCounter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFRJoin;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeCogroup;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeJoin;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.PONative;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartitionRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.PORank;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStream;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.builtin.Nondeterministic;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.builtin.ReadScalars;
+import org.apache.pig.impl.io.FileSpec;
+import org.apache.pig.impl.plan.DependencyOrderWalker;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * Caches the intermediate results of MapReduce jobs across runs, see
+ * {@link PigConfiguration#PIG_EXEC_RESULT_CACHE}.
+ * <p>
+ * Each job storing a temporary result is fingerprinted with its plans, the
+ * functions it calls with their arguments, and its inputs: the files under
+ * the locations it loads with their lengths and modification times, or the
+ * fingerprints of the jobs producing the temporary files it loads. If the
+ * cache has a result for the fingerprint, the loads of the result in the
+ * following jobs read the cached result instead, and the job is removed from
+ * the plan along with the jobs only it depended on. Otherwise the job stores
+ * its result in the cache, and {@link #commit(POStore)} adds it to the cache
+ * once the job has succeeded.
+ * <p>
+ * Jobs with non deterministic functions, streaming, native jobs, scalars,
+ * sampling, ranking, and merge or replicated joins are not cached. The cache
+ * evicts the least recently used results once it goes over
+ * {@link PigConfiguration#PIG_EXEC_RESULT_CACHE_SIZE}, except for the results
+ * the run reads or adds, which are only evicted by {@link #release()} once
+ * the run is over.
+ */
+public class ResultCacheOptimizer extends MROpPlanVisitor {
+
+    private static final Log LOG = LogFactory.getLog(ResultCacheOptimizer.class);
+
+    static final String ENTRY = "entry";
+
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String DATA = "data";
+    private static final String STORAGE = "storage";
+    private static final String SIZE = "size";
+    private static final String LAST_ACCESS = "lastaccess";
+
+    private static final long DEFAULT_CACHE_SIZE = 10L * 1024 * 1024 * 1024;
+
+    private PigContext pigContext;
+    private Configuration conf;
+    private Path cacheDir;
+    private long maxSize;
+
+    // Jobs in dependency order, with the fingerprints of those that can be cached
+    private List<MapReduceOper> mrOps = new ArrayList<MapReduceOper>();
+    private Map<MapReduceOper, String> fingerprints = new HashMap<MapReduceOper, String>();
+
+    // Hashes of the fingerprints of the temporary files stored by the jobs
+    private Map<String, String> fileFingerprints = new HashMap<String, String>();
+
+    // Results to add to the cache, by location
+    private Map<String, Properties> pending = new LinkedHashMap<String, Properties>();
+
+    // Names of the entries read or added by the run, which must not be
+    // evicted before it is over
+    private Set<String> inUse = new HashSet<String>();
+
+    public ResultCacheOptimizer(MROperPlan plan, PigContext pigContext) {
+        super(plan, new DependencyOrderWalker<MapReduceOper, MROperPlan>(plan));
+        this.pigContext = pigContext;
+        conf = ConfigurationUtil.toConfiguration(pigContext.getProperties());
+        String dir = pigContext.getProperties().getProperty(PigConfiguration.PIG_EXEC_RESULT_CACHE_DIR);
+        if (dir == null) {
+            dir = new Path(pigContext.getProperties().getProperty(PigConfiguration.PIG_TEMP_DIR, "/tmp/"),
+                    "pig-resultcache").toString();
+        }
+        cacheDir = new Path(dir);
+        maxSize = Long.parseLong(pigContext.getProperties().getProperty(
+                PigConfiguration.PIG_EXEC_RESULT_CACHE_SIZE, String.valueOf(DEFAULT_CACHE_SIZE)));
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        mrOps.add(mr);
+        String fingerprint;
+        try {
+            fingerprint = getFingerprint(mr);
+        } catch (IOException e) {
+            LOG.warn("Unable to fingerprint " + mr.getOperatorKey() + ", not caching its result", e);
+            return;
+        }
+        if (fingerprint != null) {
+            fingerprints.put(mr, fingerprint);
+            fileFingerprints.put(getStore(mr).getSFile().getFileName(), hash(fingerprint));
+        }
+    }
+
+    /**
+     * Replaces the jobs whose results are cached by loads of the results, and
+     * has the other jobs that can be cached store their results in the cache.
+     */
+    public void adjust() throws IOException, VisitorException {
+        int hits = 0;
+        for (MapReduceOper mr : mrOps) {
+            String fingerprint = fingerprints.get(mr);
+            if (fingerprint == null || !mPlan.getKeys().containsKey(mr.getOperatorKey())
+                    || !isReadByLoadsOnly(mr)) {
+                continue;
+            }
+            POStore store = getStore(mr);
+            Path entryDir = new Path(cacheDir, hash(fingerprint));
+            FileSystem fs = entryDir.getFileSystem(conf);
+            Properties entry = readEntry(fs, entryDir);
+            if (entry != null && fingerprint.equals(entry.getProperty(FINGERPRINT))
+                    && fs.exists(new Path(entry.getProperty(DATA)))) {
+                FileSpec cached = new FileSpec(entry.getProperty(DATA),
+                        new FuncSpec(entry.getProperty(STORAGE)));
+                LOG.info("Using the result of " + mr.getOperatorKey() + " cached in " + cached.getFileName());
+                redirectLoads(mr, cached);
+                removeWithDeadPredecessors(mr);
+                entry.setProperty(LAST_ACCESS, String.valueOf(System.currentTimeMillis()));
+                writeEntry(fs, entryDir, entry);
+                inUse.add(entryDir.getName());
+                hits++;
+            } else {
+                FileSpec cached = new FileSpec(
+                        new Path(entryDir, DATA + "-" + System.currentTimeMillis()).toString(),
+                        store.getSFile().getFuncSpec());
+                redirectLoads(mr, cached);
+                store.setSFile(cached);
+                Properties newEntry = new Properties();
+                newEntry.setProperty(FINGERPRINT, fingerprint);
+                newEntry.setProperty(DATA, cached.getFileName());
+                newEntry.setProperty(STORAGE, cached.getFuncSpec().toString());
+                pending.put(cached.getFileName(), newEntry);
+            }
+        }
+        if (hits > 0) {
+            LOG.info("Found " + hits + " of " + (hits + pending.size()) + " results in the cache");
+        }
+    }
+
+    private String getFingerprint(MapReduceOper mr) throws IOException {
+        if (mr instanceof NativeMapReduceOper || mr.isSampler() || mr.isIndexer() || mr.isGlobalSort()
+                || mr.isSkewedJoin() || mr.isSkewedGroup() || mr.isRankOperation()
+                || mr.isCounterOperation() || mr.getQuantFile() != null
+                || mr.getSkewedJoinPartitionFile() != null || !mr.scalars.isEmpty()) {
+            return null;
+        }
+        POStore store = getStore(mr);
+        if (store == null || !store.isTmpStore()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(mr.limit).append(';');
+        for (PhysicalPlan plan : new PhysicalPlan[] { mr.mapPlan, mr.combinePlan, mr.reducePlan }) {
+            if (!isDeterministic(plan)) {
+                return null;
+            }
+            PlanSignature.append(sb, plan, fileFingerprints);
+        }
+        // The loads are described by their location in the plans, add the
+        // files they read
+        List<String> inputs = new ArrayList<String>();
+        for (POLoad load : PlanHelper.getPhysicalOperators(mr.mapPlan, POLoad.class)) {
+            String location = load.getLFile().getFileName();
+            if (load.isTmpLoad()) {
+                if (!fileFingerprints.containsKey(location)) {
+                    return null;
+                }
+            } else {
+                if (!(load.getLoadFunc() instanceof FileInputLoadFunc)) {
+                    return null;
+                }
+                StringBuilder input = new StringBuilder(location).append('[');
+                for (FileStatus status : PlanSignature.listFiles(location, conf).values()) {
+                    input.append(status.getPath()).append(',').append(status.getLen()).append(',')
+                            .append(status.getModificationTime()).append(';');
+                }
+                inputs.add(input.append(']').toString());
+            }
+        }
+        Collections.sort(inputs);
+        sb.append(inputs);
+        return sb.toString();
+    }
+
+    private static boolean isDeterministic(PhysicalPlan plan) throws VisitorException {
+        for (PhysicalOperator op : PlanHelper.getPhysicalOperators(plan, PhysicalOperator.class)) {
+            if (op instanceof POStream || op instanceof PONative || op instanceof POFRJoin
+                    || op instanceof POMergeJoin || op instanceof POMergeCogroup
+                    || op instanceof POPartitionRearrange || op instanceof PORank
+                    || op instanceof POCounter) {
+                return false;
+            }
+            if (op instanceof POUserFunc) {
+                Object func = ((POUserFunc) op).getFunc();
+                if (func instanceof ReadScalars
+                        || func.getClass().isAnnotationPresent(Nondeterministic.class)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Returns the only store of the job
+    private static POStore getStore(MapReduceOper mr) throws VisitorException {
+        List<POStore> stores = new ArrayList<POStore>(PlanHelper.getPhysicalOperators(mr.mapPlan, POStore.class));
+        stores.addAll(PlanHelper.getPhysicalOperators(mr.reducePlan, POStore.class));
+        return stores.size() == 1 ? stores.get(0) : null;
+    }
+
+    /**
+     * Checks that the following jobs only read the result of the job through
+     * loads, which can be pointed to another location.
+     */
+    private boolean isReadByLoadsOnly(MapReduceOper mr) throws VisitorException {
+        List<MapReduceOper> succs = mPlan.getSuccessors(mr);
+        if (succs == null) {
+            return false;
+        }
+        String location = getStore(mr).getSFile().getFileName();
+        for (MapReduceOper succ : succs) {
+            if (location.equals(succ.getQuantFile())
+                    || location.equals(succ.getSkewedJoinPartitionFile())) {
+                return false;
+            }
+            boolean loaded = false;
+            for (PhysicalPlan plan : new PhysicalPlan[] { succ.mapPlan, succ.reducePlan }) {
+                for (PhysicalOperator op : PlanHelper.getPhysicalOperators(plan, PhysicalOperator.class)) {
+                    if (op instanceof POLoad) {
+                        loaded |= location.equals(((POLoad) op).getLFile().getFileName());
+                    } else if (op instanceof POUserFunc) {
+                        if (((POUserFunc) op).getFuncSpec().toString().contains(location)) {
+                            return false;
+                        }
+                    } else if (op instanceof POFRJoin || op instanceof POMergeJoin
+                            || op instanceof POMergeCogroup) {
+                        return false;
+                    }
+                }
+            }
+            if (!loaded) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void redirectLoads(MapReduceOper mr, FileSpec target) throws VisitorException {
+        String location = getStore(mr).getSFile().getFileName();
+        for (MapReduceOper succ : mPlan.getSuccessors(mr)) {
+            for (POLoad load : PlanHelper.getPhysicalOperators(succ.mapPlan, POLoad.class)) {
+                if (location.equals(load.getLFile().getFileName())) {
+                    load.setLFile(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a job whose result is cached, and the jobs that only ran to
+     * provide its input.
+     */
+    private void removeWithDeadPredecessors(MapReduceOper mr) throws VisitorException {
+        List<MapReduceOper> preds = mPlan.getPredecessors(mr) == null
+                ? new ArrayList<MapReduceOper>()
+                : new ArrayList<MapReduceOper>(mPlan.getPredecessors(mr));
+        mPlan.remove(mr);
+        for (MapReduceOper pred : preds) {
+            if (mPlan.getSuccessors(pred) != null) {
+                continue;
+            }
+            POStore store = getStore(pred);
+            if (store != null && store.isTmpStore()) {
+                pending.remove(store.getSFile().getFileName());
+                removeWithDeadPredecessors(pred);
+            }
+        }
+    }
+
+    /**
+     * @param location location of a temporary store
+     * @return true if the store saves a result to add to the cache, in which
+     * case it must not be deleted with the other temporary files
+     */
+    public boolean isPending(String location) {
+        return pending.containsKey(location);
+    }
+
+    /**
+     * Adds the result stored by the given store of a successful job to the
+     * cache, and evicts the least recently used results if the cache is full.
+     * @param store a store of a successful job
+     */
+    public void commit(POStore store) throws IOException {
+        Properties entry = pending.remove(store.getSFile().getFileName());
+        if (entry == null) {
+            return;
+        }
+        Path data = new Path(entry.getProperty(DATA));
+        FileSystem fs = data.getFileSystem(conf);
+        Path entryDir = data.getParent();
+        Properties oldEntry = readEntry(fs, entryDir);
+        entry.setProperty(SIZE, String.valueOf(fs.getContentSummary(data).getLength()));
+        entry.setProperty(LAST_ACCESS, String.valueOf(System.currentTimeMillis()));
+        writeEntry(fs, entryDir, entry);
+        if (oldEntry != null && !data.toString().equals(oldEntry.getProperty(DATA))) {
+            fs.delete(new Path(oldEntry.getProperty(DATA)), true);
+        }
+        inUse.add(entryDir.getName());
+        evict(fs);
+    }
+
+    /**
+     * Lets the results read or added by the run be evicted, once the run is
+     * over, and evicts the least recently used results if the cache is full.
+     */
+    public void release() throws IOException {
+        if (inUse.isEmpty()) {
+            return;
+        }
+        inUse.clear();
+        evict(cacheDir.getFileSystem(conf));
+    }
+
+    /**
+     * Deletes the results stored by jobs that did not succeed.
+     */
+    public void discardPending() throws IOException {
+        for (String location : pending.keySet()) {
+            Path path = new Path(location);
+            FileSystem fs = path.getFileSystem(conf);
+            if (fs.exists(path)) {
+                fs.delete(path, true);
+            }
+        }
+        pending.clear();
+    }
+
+    private void evict(FileSystem fs) throws IOException {
+        List<Properties> entries = new ArrayList<Properties>();
+        final Map<Properties, Path> entryDirs = new HashMap<Properties, Path>();
+        long size = 0;
+        for (FileStatus status : fs.listStatus(cacheDir)) {
+            Properties entry = readEntry(fs, status.getPath());
+            if (entry != null && entry.getProperty(SIZE) != null) {
+                entries.add(entry);
+                entryDirs.put(entry, status.getPath());
+                size += Long.parseLong(entry.getProperty(SIZE));
+            }
+        }
+        Collections.sort(entries, new Comparator<Properties>() {
+            @Override
+            public int compare(Properties e1, Properties e2) {
+                return Long.compare(Long.parseLong(e1.getProperty(LAST_ACCESS)),
+                        Long.parseLong(e2.getProperty(LAST_ACCESS)));
+            }
+        });
+        for (Properties entry : entries) {
+            if (size <= maxSize) {
+                break;
+            }
+            if (inUse.contains(entryDirs.get(entry).getName())) {
+                continue;
+            }
+            LOG.info("Evicting " + entry.getProperty(DATA) + " from the result cache");
+            fs.delete(entryDirs.get(entry), true);
+            size -= Long.parseLong(entry.getProperty(SIZE));
+        }
+    }
+
+    private static Properties readEntry(FileSystem fs, Path entryDir) throws IOException {
+        Path path = new Path(entryDir, ENTRY);
+        if (!fs.exists(path)) {
+            return null;
+        }
+        Properties entry = new Properties();
+        InputStream in = fs.open(path);
+        try {
+            entry.load(in);
+        } finally {
+            in.close();
+        }
+        return entry;
+    }
+
+    private static void writeEntry(FileSystem fs, Path entryDir, Properties entry) throws IOException {
+        Path path = new Path(entryDir, ENTRY);
+        Path tmpPath = path.suffix(".tmp");
+        OutputStream out = fs.create(tmpPath, true);
+        try {
+            entry.store(out, "Pig result cache entry");
+        } finally {
+            out.close();
+        }
+        fs.delete(path, false);
+        if (!fs.rename(tmpPath, path)) {
+            throw new IOException("Unable to rename " + tmpPath + " to " + path);
+        }
+    }
+
+    private static String hash(String fingerprint) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest(fingerprint.getBytes("UTF-8"))) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.FuncSpec;
+import org.apache.pig.Mergeable;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROpPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.util.CombinerOptimizerUtil;
+import org.apache.pig.data.DataType;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.FileLocalizer;
+import org.apache.pig.impl.io.FileSpec;
+import org.apache.pig.impl.plan.CompilationMessageCollector;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.NodeIdGenerator;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.PlanException;
+import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.util.Utils;
+
+/**
+ * Splits the job of a skewed group into two jobs. The partitioner of the
+ * skewed group job spreads the tuples of the keys found to be too frequent
+ * by sampling over several reducers, so its reducers only compute partial
+ * results for those keys. A following job groups the partial results by key
+ * again and merges them.
+ * <p>
+ * If the foreach after the group only uses algebraic functions, the reducers
+ * of the first job run the intermediate form of the functions, as the
+ * combiner does, and the second job runs the combine and reduce plans of the
+ * original job. Otherwise the foreach may only project the group key and call
+ * functions implementing {@link Mergeable}. The first job runs the foreach as
+ * it is and the second job calls the merge functions on the partial results.
+ */
+public class SkewedGroupOptimizer extends MROpPlanVisitor {
+
+    private static final Log LOG = LogFactory.getLog(SkewedGroupOptimizer.class);
+
+    private List<MapReduceOper> opsToSplit = new ArrayList<MapReduceOper>();
+    private CompilationMessageCollector messageCollector = new CompilationMessageCollector();
+    private PigContext pigContext;
+    private boolean useCombiner;
+    private NodeIdGenerator nig;
+    private String scope;
+
+    /**
+     * @param plan MR plan to optimize
+     * @param pigContext pig context
+     * @param useCombiner whether the job merging the partial results of
+     * algebraic functions uses the combiner
+     */
+    public SkewedGroupOptimizer(MROperPlan plan, PigContext pigContext, boolean useCombiner) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+        this.pigContext = pigContext;
+        this.useCombiner = useCombiner;
+        nig = NodeIdGenerator.getGenerator();
+        scope = plan.getRoots().get(0).getOperatorKey().getScope();
+    }
+
+    public CompilationMessageCollector getMessageCollector() {
+        return messageCollector;
+    }
+
+    /**
+     * Checks whether the partial results of a foreach following the package
+     * of a skewed group can be merged by a following job.
+     *
+     * @param foreach the foreach after the package
+     * @return true if the foreach only uses algebraic functions, or only
+     * projects the group key and calls functions implementing {@link Mergeable}
+     * @throws VisitorException
+     */
+    public static boolean isSplittable(POForEach foreach) throws VisitorException {
+        if (isMergeable(foreach)) {
+            return true;
+        }
+        List<?> algebraicOps = CombinerOptimizerUtil.findAlgebraicOps(foreach.getInputPlans());
+        return algebraicOps != null && !algebraicOps.isEmpty();
+    }
+
+    private static boolean isMergeable(POForEach foreach) {
+        List<PhysicalPlan> plans = foreach.getInputPlans();
+        List<Boolean> flattens = foreach.getToBeFlattened();
+        for (int i = 0; i < plans.size(); i++) {
+            if (flattens.get(i)) {
+                return false;
+            }
+            PhysicalPlan plan = plans.get(i);
+            if (isGroupProjection(plan)) {
+                continue;
+            }
+            List<PhysicalOperator> leaves = plan.getLeaves();
+            if (leaves.size() != 1 || !(leaves.get(0) instanceof POUserFunc)
+                    || !(((POUserFunc) leaves.get(0)).getFunc() instanceof Mergeable)
+                    || !isGroupedBagArgument(plan, (POUserFunc) leaves.get(0))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The partial results can only be merged if the function is called on
+    // the grouped bag alone, which is what gets split across reducers
+    private static boolean isGroupedBagArgument(PhysicalPlan plan, POUserFunc func) {
+        List<PhysicalOperator> inputs = func.getInputs();
+        if (plan.size() != 2 || inputs == null || inputs.size() != 1
+                || !(inputs.get(0) instanceof POProject)) {
+            return false;
+        }
+        POProject proj = (POProject) inputs.get(0);
+        return !proj.isStar() && !proj.isProjectToEnd()
+                && proj.getColumns().size() == 1 && proj.getColumns().get(0) == 1;
+    }
+
+    private static boolean isGroupProjection(PhysicalPlan plan) {
+        if (plan.size() != 1 || !(plan.getRoots().get(0) instanceof POProject)) {
+            return false;
+        }
+        POProject proj = (POProject) plan.getRoots().get(0);
+        return !proj.isStar() && !proj.isProjectToEnd()
+                && proj.getColumns().size() == 1 && proj.getColumns().get(0) == 0;
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        if (mr.isSkewedGroup()) {
+            opsToSplit.add(mr);
+        }
+    }
+
+    public void adjust() throws IOException, PlanException {
+        for (MapReduceOper mr : opsToSplit) {
+            POPackage pack = (POPackage) mr.reducePlan.getRoots().get(0);
+            POForEach foreach = (POForEach) mr.reducePlan.getSuccessors(pack).get(0);
+
+            MapReduceOper mergeMROp;
+            if (mr.combinePlan.isEmpty() && isMergeable(foreach)) {
+                mergeMROp = splitMergeable(mr, pack, foreach);
+            } else {
+                if (mr.combinePlan.isEmpty()) {
+                    // Combiner is disabled, the algebraic functions are still
+                    // split into their initial, intermediate and final forms
+                    CombinerOptimizerUtil.addCombiner(mr.mapPlan, mr.reducePlan,
+                            mr.combinePlan, messageCollector, false);
+                }
+                if (mr.combinePlan.isEmpty()) {
+                    // The reducers have to see all the tuples of a key
+                    LOG.warn("Unable to merge partial results of skewed group, "
+                            + "running it as a regular group");
+                    mr.setSkewedJoinPartitionFile(null);
+                    mr.setSkewedGroup(false);
+                    continue;
+                }
+                mergeMROp = splitAlgebraic(mr, pack);
+            }
+
+            for (String udf : mr.UDFs) {
+                mergeMROp.UDFs.add(udf);
+            }
+            mergeMROp.requestedParallelism = mr.requestedParallelism;
+            mergeMROp.markGroupBy();
+            // limit applies to the merged results
+            mergeMROp.limit = mr.limit;
+            mergeMROp.limitPlan = mr.limitPlan;
+            mr.limit = -1;
+            mr.limitPlan = null;
+
+            List<MapReduceOper> successors = mPlan.getSuccessors(mr) == null
+                    ? new ArrayList<MapReduceOper>()
+                    : new ArrayList<MapReduceOper>(mPlan.getSuccessors(mr));
+            mPlan.add(mergeMROp);
+            for (MapReduceOper succ : successors) {
+                mPlan.disconnect(mr, succ);
+                mPlan.connect(mergeMROp, succ);
+            }
+            mPlan.connect(mr, mergeMROp);
+            LOG.info("Split skewed group " + mr.getOperatorKey() + ", partial results are merged by "
+                    + mergeMROp.getOperatorKey());
+        }
+    }
+
+    /**
+     * The reducers of the skewed group job apply the combine foreach to get
+     * the intermediate results, the merge job runs the original combine and
+     * reduce plans.
+     */
+    private MapReduceOper splitAlgebraic(MapReduceOper mr, POPackage pack)
+            throws IOException, PlanException {
+        POPackage combinePack = (POPackage) mr.combinePlan.getRoots().get(0);
+        POForEach cfe = (POForEach) mr.combinePlan.getSuccessors(combinePack).get(0);
+        POLocalRearrange clr = (POLocalRearrange) mr.combinePlan.getLeaves().get(0);
+
+        MapReduceOper mergeMROp = getMROp();
+        FileSpec fSpec = getTempFileSpec();
+        try {
+            mergeMROp.mapPlan.add(getLoad(fSpec));
+            mergeMROp.mapPlan.addAsLeaf(clr.clone());
+
+            PhysicalPlan partialPlan = new PhysicalPlan();
+            partialPlan.add(pack.clone());
+            partialPlan.addAsLeaf(cfe.clone());
+            partialPlan.addAsLeaf(getStore(fSpec));
+
+            mergeMROp.reducePlan = mr.reducePlan;
+            if (useCombiner) {
+                mergeMROp.combinePlan = mr.combinePlan;
+            }
+            mr.reducePlan = partialPlan;
+            // The combiner can not run in the skewed group job, its output
+            // key does not carry the partition index
+            mr.combinePlan = new PhysicalPlan();
+        } catch (CloneNotSupportedException e) {
+            int errCode = 2127;
+            String msg = "Problem in cloning the combine plan of skewed group.";
+            throw new MRCompilerException(msg, errCode, PigException.BUG, e);
+        }
+        return mergeMROp;
+    }
+
+    /**
+     * The reducers of the skewed group job apply the foreach, the merge job
+     * groups its output by the key again and calls the merge functions.
+     */
+    private MapReduceOper splitMergeable(MapReduceOper mr, POPackage pack, POForEach foreach)
+            throws IOException, PlanException {
+        POLocalRearrange lr = (POLocalRearrange) mr.mapPlan.getLeaves().get(0);
+
+        MapReduceOper mergeMROp = getMROp();
+        FileSpec fSpec = getTempFileSpec();
+        try {
+            mergeMROp.mapPlan.add(getLoad(fSpec));
+            mergeMROp.mapPlan.addAsLeaf(CombinerOptimizerUtil.getNewRearrange(lr));
+
+            POForEach mergeFE = createMergeForEach(foreach, lr.getKeyType(), mergeMROp);
+            mr.reducePlan.replace(foreach, mergeFE);
+            mergeFE.setInputs(mr.reducePlan.getPredecessors(mergeFE));
+
+            PhysicalPlan partialPlan = new PhysicalPlan();
+            partialPlan.add(pack.clone());
+            partialPlan.addAsLeaf(foreach);
+            partialPlan.addAsLeaf(getStore(fSpec));
+
+            mergeMROp.reducePlan = mr.reducePlan;
+            mr.reducePlan = partialPlan;
+        } catch (CloneNotSupportedException e) {
+            int errCode = 2127;
+            String msg = "Problem in cloning the package of skewed group.";
+            throw new MRCompilerException(msg, errCode, PigException.BUG, e);
+        }
+        return mergeMROp;
+    }
+
+    /**
+     * Create the foreach of the merge job. Its input is the key and a bag of
+     * the partial results, which have the fields of the original foreach.
+     */
+    private POForEach createMergeForEach(POForEach foreach, byte keyType, MapReduceOper mergeMROp)
+            throws PlanException {
+        POForEach mergeFE = new POForEach(getOperatorKey(), new ArrayList<PhysicalPlan>());
+        mergeFE.addOriginalLocation(foreach.getAlias(), foreach.getOriginalLocations());
+        mergeFE.setResultType(foreach.getResultType());
+
+        List<PhysicalPlan> plans = foreach.getInputPlans();
+        for (int i = 0; i < plans.size(); i++) {
+            PhysicalPlan plan = plans.get(i);
+            PhysicalPlan mergePlan = new PhysicalPlan();
+            if (isGroupProjection(plan)) {
+                POProject proj = new POProject(getOperatorKey(), -1, 0);
+                proj.setResultType(keyType);
+                mergePlan.add(proj);
+            } else {
+                POUserFunc func = (POUserFunc) plan.getLeaves().get(0);
+                POProject bagProj = new POProject(getOperatorKey(), -1, 1);
+                bagProj.setResultType(DataType.BAG);
+                POProject partProj = new POProject(getOperatorKey(), -1, i);
+                partProj.setResultType(DataType.BAG);
+                FuncSpec mergeSpec = new FuncSpec(((Mergeable) func.getFunc()).getMerge(),
+                        func.getFuncSpec().getCtorArgs());
+                POUserFunc merge = new POUserFunc(getOperatorKey(), -1, null, mergeSpec);
+                merge.setSignature(func.getSignature());
+                merge.setResultType(func.getResultType());
+                mergePlan.add(bagProj);
+                mergePlan.addAsLeaf(partProj);
+                mergePlan.addAsLeaf(merge);
+                mergeMROp.UDFs.add(mergeSpec.toString());
+            }
+            mergeFE.addInputPlan(mergePlan, false);
+        }
+        return mergeFE;
+    }
+
+    private OperatorKey getOperatorKey() {
+        return new OperatorKey(scope, nig.getNextNodeId(scope));
+    }
+
+    private MapReduceOper getMROp() {
+        return new MapReduceOper(getOperatorKey());
+    }
+
+    private FileSpec getTempFileSpec() throws IOException {
+        return new FileSpec(FileLocalizer.getTemporaryPath(pigContext).toString(),
+                new FuncSpec(Utils.getTmpFileCompressorName(pigContext)));
+    }
+
+    private POLoad getLoad(FileSpec fSpec) {
+        POLoad ld = new POLoad(getOperatorKey());
+        ld.setPc(pigContext);
+        ld.setLFile(fSpec);
+        ld.setIsTmpLoad(true);
+        return ld;
+    }
+
+    private POStore getStore(FileSpec fSpec) {
+        POStore st = new POStore(getOperatorKey());
+        st.setSFile(fSpec);
+        st.setIsTmpStore(true);
+        return st;
+    }
+}
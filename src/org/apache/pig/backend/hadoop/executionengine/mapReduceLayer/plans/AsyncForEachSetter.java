@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans;
+
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.AsyncEvalFunc;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.impl.plan.DepthFirstWalker;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * This visitor visits the MRPlan and sets the foreachs of the map and reduce
+ * plans that call an {@link AsyncEvalFunc} to hand it their input a batch at
+ * a time, if all the AsyncEvalFuncs they call can batch their calls in the
+ * configuration of the job. Only foreachs at the top level of the plans are
+ * considered, as the end of all input is not propagated to nested plans. This
+ * needs to run before the EndOfAllInputSetter so the batches are flushed at
+ * the end of the input.
+ */
+public class AsyncForEachSetter extends MROpPlanVisitor {
+
+    private final int batchSize;
+
+    private final int maxInFlight;
+
+    private final Configuration conf;
+
+    /**
+     * @param plan MR plan to visit
+     * @param batchSize number of tuples handed to the UDFs at once
+     * @param maxInFlight number of batches submitted before waiting for the oldest
+     * @param conf configuration of the jobs
+     */
+    public AsyncForEachSetter(MROperPlan plan, int batchSize, int maxInFlight, Configuration conf) {
+        super(plan, new DepthFirstWalker<MapReduceOper, MROperPlan>(plan));
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.conf = conf;
+    }
+
+    @Override
+    public void visitMROp(MapReduceOper mr) throws VisitorException {
+        new AsyncForEachMarker(mr.mapPlan, batchSize, maxInFlight, conf).visit();
+        new AsyncForEachMarker(mr.reducePlan, batchSize, maxInFlight, conf).visit();
+    }
+
+    public static class AsyncForEachMarker extends PhyPlanVisitor {
+
+        private final int batchSize;
+
+        private final int maxInFlight;
+
+        private final Configuration conf;
+
+        public AsyncForEachMarker(PhysicalPlan plan, int batchSize, int maxInFlight, Configuration conf) {
+            super(plan, new DepthFirstWalker<PhysicalOperator, PhysicalPlan>(plan));
+            this.batchSize = batchSize;
+            this.maxInFlight = maxInFlight;
+            this.conf = conf;
+        }
+
+        @Override
+        public void visitPOForEach(POForEach foreach) throws VisitorException {
+            if (foreach.getClass() == POForEach.class && isSupported(foreach)) {
+                foreach.setAsync(batchSize, maxInFlight);
+            }
+        }
+
+        private boolean isSupported(POForEach foreach) {
+            if (foreach.getBatchSize() > 0 || foreach.getNumThreads() > 1
+                    || foreach.isAccumulative()) {
+                return false;
+            }
+            boolean hasAsync = false;
+            for (PhysicalPlan plan : foreach.getInputPlans()) {
+                for (PhysicalOperator op : plan) {
+                    // The plans are evaluated out of order, which nested
+                    // relational operators do not support
+                    if (!(op instanceof ExpressionOperator)) {
+                        return false;
+                    }
+                    if (op instanceof POUserFunc && ((POUserFunc) op).isAsync()) {
+                        // All the async UDFs of the foreach are batched
+                        if (!((AsyncEvalFunc<?>) ((POUserFunc) op).getFunc()).canBatch(conf)) {
+                            return false;
+                        }
+                        // The arguments are computed before any result is known
+                        if (dependsOnAsync(plan, op)) {
+                            return false;
+                        }
+                        hasAsync = true;
+                    }
+                }
+            }
+            return hasAsync;
+        }
+
+        private static boolean dependsOnAsync(PhysicalPlan plan, PhysicalOperator op) {
+            List<PhysicalOperator> preds = plan.getPredecessors(op);
+            if (preds != null) {
+                for (PhysicalOperator pred : preds) {
+                    if ((pred instanceof POUserFunc && ((POUserFunc) pred).isAsync())
+                            || dependsOnAsync(plan, pred)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOpera
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POCollectedGroup;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeCogroup;
@@ -115,10 +116,21 @@ public class EndOfAllInputSetter extends MROpPlanVisitor {
             endOfAllInputFlag = true;
         }
 
+        @Override
+        public void visitFilter(POFilter filter) throws VisitorException {
+            // a filter in batch mode holds tuples until its batch is full
+            if (filter.getBatchSize() > 0) {
+                endOfAllInputFlag = true;
+            }
+            super.visitFilter(filter);
+        }
+
         @Override
         public void visitPOForEach(POForEach foreach) throws VisitorException {
             try {
-                if (foreach.needEndOfAllInputProcessing()) {
+                if (foreach.getBatchSize() > 0 || foreach.getNumThreads() > 1
+                        || foreach.getAsyncBatchSize() > 0
+                        || foreach.needEndOfAllInputProcessing()) {
                     endOfAllInputFlag = true;
                 }
             } catch (Exception e) {
@@ -76,8 +76,10 @@ public class POPackageAnnotator extends MROpPlanVisitor {
             POPackage pkg = pkgDiscoverer.getPkg();
             if(pkg != null) {
                 // if the POPackage is actually a POPostCombinerPackage, then we should
-                // just look for the corresponding LocalRearrange(s) in the combine plan
-                if (pkg.getPkgr() instanceof CombinerPackager) {
+                // just look for the corresponding LocalRearrange(s) in the combine plan.
+                // Without a combine plan, as in the first job of a skewed group, it
+                // gets the output of the map.
+                if (pkg.getPkgr() instanceof CombinerPackager && !mr.combinePlan.isEmpty()) {
                     if(patchPackage(mr.combinePlan, pkg) != pkg.getNumInps()) {
                         int errCode = 2085;
                         String msg = "Unexpected problem during optimization." +
@@ -0,0 +1,774 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.memory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.JobStatus;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.pig.FuncSpec;
+import org.apache.pig.OverwritableStoreFunc;
+import org.apache.pig.PigConstants;
+import org.apache.pig.PigException;
+import org.apache.pig.StoreFuncInterface;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.HDataType;
+import org.apache.pig.backend.hadoop.executionengine.fetch.FetchProgressableReporter;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.JobControlCompiler;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MRConfiguration;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PhyPlanSetter;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigInputFormat;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigOutputFormat;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.UDFFinishVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.JoinPackager;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.PigImplConstants;
+import org.apache.pig.impl.builtin.GFCross;
+import org.apache.pig.impl.io.NullableTuple;
+import org.apache.pig.impl.io.PigNullableWritable;
+import org.apache.pig.impl.plan.DependencyOrderWalker;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.util.ObjectSerializer;
+import org.apache.pig.impl.util.UDFContext;
+import org.apache.pig.impl.util.Utils;
+
+/**
+ * Runs the map and reduce plans of a {@link MapReduceOper} in-process. Each
+ * input split is read by a map task and, for jobs with a reduce phase, the
+ * map output is hash partitioned into sorted bags, each of which is grouped
+ * and packaged by a reduce task, in the order and with the grouping Hadoop
+ * would sort and group the keys with. The tasks run on a shared pool of
+ * threads and write through the output formats and committers of the
+ * stores, as Hadoop tasks would.
+ */
+class MemoryJob {
+
+    private static final Log log = LogFactory.getLog(MemoryJob.class);
+
+    private static final TupleFactory tf = TupleFactory.getInstance();
+
+    // Number of map output tuples buffered per partition by a map task
+    // before being added to the shared sorted bag of the partition
+    private static final int MAP_OUTPUT_BUFFER = 1024;
+
+    private final MROperPlan plan;
+    private final MapReduceOper mro;
+    private final PigContext pigContext;
+    private final ExecutorService pool;
+    private final int numThreads;
+    private final String jtIdentifier;
+    private final int jobNumber;
+
+    private final JobID jobID;
+    private Configuration conf;
+    private final List<POLoad> loads;
+    private final LinkedList<POStore> mapStores;
+    private final LinkedList<POStore> reduceStores;
+    private final List<POStore> stores;
+    private OutputCommitter jobCommitter;
+    private JobContext jobContext;
+    private String mapPlan;
+    private String reducePlan;
+    private String pack;
+    private int numPartitions;
+    private DataBag[] partitions;
+    private Comparator<Tuple> sortComparator;
+
+    private final List<AtomicLong> inputRecords = new ArrayList<AtomicLong>();
+    private final Map<OperatorKey, AtomicLong> storeRecords = new HashMap<OperatorKey, AtomicLong>();
+    private final AtomicLong mapOutputRecords = new AtomicLong();
+    private final List<Long> mapTimes = Collections.synchronizedList(new ArrayList<Long>());
+    private final List<Long> reduceTimes = Collections.synchronizedList(new ArrayList<Long>());
+
+    /**
+     * @param plan the plan of the job, to find whether it samples for an
+     * order by
+     * @param jtIdentifier identifies the launch the job belongs to in the ids
+     * of the tasks
+     * @param jobNumber the number of the job in the launch
+     */
+    MemoryJob(MROperPlan plan, MapReduceOper mro, PigContext pigContext, ExecutorService pool,
+            int numThreads, String jtIdentifier, int jobNumber) {
+        this.plan = plan;
+        this.mro = mro;
+        this.pigContext = pigContext;
+        this.pool = pool;
+        this.numThreads = numThreads;
+        this.jtIdentifier = jtIdentifier;
+        this.jobNumber = jobNumber;
+        this.jobID = new JobID(jtIdentifier, jobNumber);
+        try {
+            loads = PlanHelper.getPhysicalOperators(mro.mapPlan, POLoad.class);
+            mapStores = PlanHelper.getPhysicalOperators(mro.mapPlan, POStore.class);
+            reduceStores = PlanHelper.getPhysicalOperators(mro.reducePlan, POStore.class);
+        } catch (VisitorException e) {
+            throw new RuntimeException(e);
+        }
+        stores = new ArrayList<POStore>(mapStores);
+        stores.addAll(reduceStores);
+    }
+
+    List<POLoad> getLoads() {
+        return loads;
+    }
+
+    List<POStore> getStores() {
+        return stores;
+    }
+
+    List<POStore> getReduceStores() {
+        return reduceStores;
+    }
+
+    String getJobId() {
+        return jobID.toString();
+    }
+
+    Configuration getConf() {
+        return conf;
+    }
+
+    MapReduceOper getMapReduceOper() {
+        return mro;
+    }
+
+    /**
+     * Returns the number of records read from an input of the job, by the
+     * order of the loads in the map plan.
+     */
+    long getInputRecords(int input) {
+        return input < inputRecords.size() ? inputRecords.get(input).get() : -1;
+    }
+
+    /**
+     * Returns the number of records written by a store of the job.
+     */
+    long getStoreRecords(POStore store) {
+        AtomicLong records = storeRecords.get(store.getOperatorKey());
+        return records == null ? -1 : records.get();
+    }
+
+    long getMapOutputRecords() {
+        return mapOutputRecords.get();
+    }
+
+    List<Long> getMapTimes() {
+        return mapTimes;
+    }
+
+    List<Long> getReduceTimes() {
+        return reduceTimes;
+    }
+
+    /**
+     * Runs the job and commits its output.
+     */
+    void run(Configuration baseConf) throws Exception {
+        prepare(baseConf);
+        try {
+            runMaps();
+            if (!mro.reducePlan.isEmpty()) {
+                runReduces();
+            }
+            jobCommitter.commitJob(jobContext);
+        } catch (Exception e) {
+            if (jobCommitter != null) {
+                try {
+                    jobCommitter.abortJob(jobContext, JobStatus.State.FAILED);
+                } catch (IOException ioe) {
+                    log.warn("Unable to abort the output of " + getJobId(), ioe);
+                }
+            }
+            throw e;
+        } finally {
+            partitions = null;
+        }
+    }
+
+    /**
+     * Sets up the configuration, the inputs and the outputs of the job on the
+     * front end, as {@link JobControlCompiler} does for a Hadoop job.
+     */
+    private void prepare(Configuration baseConf) throws Exception {
+        org.apache.hadoop.mapreduce.Job job = new org.apache.hadoop.mapreduce.Job(baseConf);
+        conf = job.getConfiguration();
+
+        boolean hasOrderBy = mro.isGlobalSort() || mro.isLimitAfterSort() || mro.usingTypedComparator();
+        if (mro.isGlobalSort() || mro.isLimitAfterSort()) {
+            conf.set("pig.sortOrder", ObjectSerializer.serialize(mro.getSortOrder()));
+        }
+        conf.set(PigImplConstants.PIG_LOG4J_PROPERTIES, ObjectSerializer.serialize(pigContext.getLog4jProperties()));
+        conf.set("udf.import.list", ObjectSerializer.serialize(PigContext.getPackageImportList()));
+        conf.set("pig.map.keytype", ObjectSerializer.serialize(new byte[] { mro.mapKeyType }));
+
+        // operators such as POSplit consult their parent plan for endOfAllInput
+        new PhyPlanSetter(mro.mapPlan).visit();
+        new PhyPlanSetter(mro.reducePlan).visit();
+
+        // A single reduce task is run where Hadoop would run a single
+        // reducer or a total order is needed
+        if (!mro.reducePlan.isEmpty()) {
+            boolean single = hasOrderBy || mro.isSampler() || mro.isLimitOnly()
+                    || mro.getRequestedParallelism() == 1;
+            numPartitions = single ? 1 : numThreads;
+            if (mro.isSampler() && plan.getSuccessors(mro) != null) {
+                // The next job is run as a single partition
+                new JobControlCompiler.ParallelConstantVisitor(mro.reducePlan, 1).visit();
+            }
+        }
+
+        // GFCross spreads its tuples over as many keys as there are reducers
+        for (String udf : mro.UDFs) {
+            if (udf.contains("GFCross")) {
+                Object func = PigContext.instantiateFuncFromSpec(new FuncSpec(udf));
+                if (func instanceof GFCross) {
+                    conf.set(PigImplConstants.PIG_CROSS_PARALLELISM + "." + ((GFCross) func).getCrossKey(),
+                            Integer.toString(Math.max(numPartitions, 1)));
+                }
+            }
+        }
+
+        // Inputs
+        ArrayList<POLoad> inp = new ArrayList<POLoad>();
+        ArrayList<List<OperatorKey>> inpTargets = new ArrayList<List<OperatorKey>>();
+        ArrayList<String> inpSignatureLists = new ArrayList<String>();
+        ArrayList<Long> inpLimits = new ArrayList<Long>();
+        for (POLoad ld : loads) {
+            ld.getLoadFunc().setLocation(ld.getLFile().getFileName(), job);
+            List<OperatorKey> ldSucKeys = new ArrayList<OperatorKey>();
+            List<PhysicalOperator> ldSucs = mro.mapPlan.getSuccessors(ld);
+            if (ldSucs != null) {
+                for (PhysicalOperator suc : ldSucs) {
+                    ldSucKeys.add(suc.getOperatorKey());
+                }
+            }
+            ld.setParentPlan(null);
+            inp.add(ld);
+            inpTargets.add(ldSucKeys);
+            inpSignatureLists.add(ld.getSignature());
+            inpLimits.add(ld.getLimit());
+            inputRecords.add(new AtomicLong());
+        }
+        for (POLoad ld : loads) {
+            mro.mapPlan.remove(ld);
+        }
+        conf.set(PigInputFormat.PIG_LOADS, ObjectSerializer.serialize(inp));
+        conf.set(PigInputFormat.PIG_INPUT_TARGETS, ObjectSerializer.serialize(inpTargets));
+        conf.set(PigInputFormat.PIG_INPUT_SIGNATURES, ObjectSerializer.serialize(inpSignatureLists));
+        conf.set(PigInputFormat.PIG_INPUT_LIMITS, ObjectSerializer.serialize(inpLimits));
+
+        // Outputs
+        Utils.setTmpFileCompressionOnConf(pigContext, conf);
+        for (POStore st : stores) {
+            StoreFuncInterface sFunc = st.getStoreFunc();
+            sFunc.setStoreLocation(st.getSFile().getFileName(), job);
+            if (sFunc instanceof OverwritableStoreFunc && ((OverwritableStoreFunc) sFunc).shouldOverwrite()) {
+                ((OverwritableStoreFunc) sFunc).cleanupOutput(st, job);
+            }
+            storeRecords.put(st.getOperatorKey(), new AtomicLong());
+        }
+        conf.set(JobControlCompiler.PIG_MAP_STORES, ObjectSerializer.serialize(mapStores));
+        conf.set(JobControlCompiler.PIG_REDUCE_STORES, ObjectSerializer.serialize(reduceStores));
+
+        // Plans
+        POForEach.storeExecSettings(conf, mro.mapPlan, mro.reducePlan);
+        if (!mro.reducePlan.isEmpty()) {
+            POPackage pkg = (POPackage) mro.reducePlan.getRoots().get(0);
+            mro.reducePlan.remove(pkg);
+            pack = ObjectSerializer.serialize(pkg);
+            reducePlan = ObjectSerializer.serialize(mro.reducePlan);
+            sortComparator = new KeyComparator(hasOrderBy ? JobControlCompiler.getOrderByComparatorClass(
+                    mro.mapKeyType) : null, mro.mapKeyType, conf, true);
+        }
+        mapPlan = ObjectSerializer.serialize(mro.mapPlan);
+
+        UDFContext.getUDFContext().serialize(conf);
+
+        jobContext = HadoopShims.createJobContext(conf, jobID);
+        PigOutputFormat outputFormat = new PigOutputFormat();
+        outputFormat.checkOutputSpecs(jobContext);
+        jobCommitter = outputFormat.getOutputCommitter(HadoopShims.createTaskAttemptContext(
+                new Configuration(conf), HadoopShims.createTaskAttemptID(jtIdentifier, jobNumber, true, 0, 0)));
+        jobCommitter.setupJob(jobContext);
+    }
+
+    private void runMaps() throws Exception {
+        List<InputSplit> splits = new PigInputFormat().getSplits(jobContext);
+        if (numPartitions > 0) {
+            partitions = new DataBag[numPartitions];
+            for (int i = 0; i < numPartitions; i++) {
+                partitions[i] = BagFactory.getInstance().newSortedBag(sortComparator);
+            }
+        }
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < splits.size(); i++) {
+            final PigSplit split = (PigSplit) splits.get(i);
+            final int taskId = i;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    long start = System.currentTimeMillis();
+                    runMap(split, taskId);
+                    mapTimes.add(System.currentTimeMillis() - start);
+                    return null;
+                }
+            });
+        }
+        runTasks(tasks);
+    }
+
+    private void runReduces() throws Exception {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < numPartitions; i++) {
+            final int taskId = i;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    long start = System.currentTimeMillis();
+                    runReduce(taskId);
+                    reduceTimes.add(System.currentTimeMillis() - start);
+                    return null;
+                }
+            });
+        }
+        runTasks(tasks);
+    }
+
+    /**
+     * Runs tasks on the pool and waits for all of them, failing with the
+     * error of the first task failed.
+     */
+    private void runTasks(List<Callable<Void>> tasks) throws Exception {
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (Callable<Void> task : tasks) {
+            futures.add(pool.submit(task));
+        }
+        Exception error = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    for (Future<Void> other : futures) {
+                        other.cancel(false);
+                    }
+                }
+            } catch (java.util.concurrent.CancellationException e) {
+                // cancelled after an earlier task failed
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private Configuration setUpTask(boolean isMap, int taskId, TaskAttemptID taskAttemptID) throws IOException {
+        Configuration taskConf = new Configuration(conf);
+        taskConf.set(MRConfiguration.TASK_ID, taskAttemptID.toString());
+        taskConf.setInt(MRConfiguration.JOB_APPLICATION_ATTEMPT_ID, 0);
+        taskConf.setBoolean(MRConfiguration.TASK_IS_MAP, isMap);
+        taskConf.setInt(MRConfiguration.TASK_PARTITION, taskId);
+        taskConf.set(PigConstants.TASK_INDEX, Integer.toString(taskId));
+        PigMapReduce.sJobConfInternal.set(taskConf);
+        UDFContext udfContext = UDFContext.getUDFContext();
+        udfContext.addJobConf(taskConf);
+        udfContext.deserialize();
+        PhysicalOperator.setReporter(new FetchProgressableReporter());
+        return taskConf;
+    }
+
+    private void tearDownTask() {
+        PhysicalOperator.setReporter(null);
+        UDFContext.getUDFContext().addJobConf(null);
+        PigMapReduce.sJobConfInternal.set(null);
+    }
+
+    private List<POStore> setUpStores(PhysicalPlan taskPlan, Configuration taskConf,
+            TaskAttemptID taskAttemptID) throws IOException {
+        List<POStore> taskStores = PlanHelper.getPhysicalOperators(taskPlan, POStore.class);
+        for (POStore store : taskStores) {
+            store.setStoreImpl(new MemoryPOStoreImpl(taskConf, taskAttemptID,
+                    storeRecords.get(store.getOperatorKey())));
+            store.setUp();
+        }
+        return taskStores;
+    }
+
+    private void finishTask(PhysicalPlan taskPlan, List<POStore> taskStores) throws IOException {
+        for (POStore store : taskStores) {
+            store.tearDown();
+        }
+        new UDFFinishVisitor(taskPlan, new DependencyOrderWalker<PhysicalOperator, PhysicalPlan>(taskPlan)).visit();
+    }
+
+    private void abortTask(List<POStore> taskStores) {
+        if (taskStores == null) {
+            return;
+        }
+        for (POStore store : taskStores) {
+            try {
+                store.cleanUp();
+            } catch (IOException e) {
+                log.warn("Unable to clean up the output of a task of " + getJobId(), e);
+            }
+        }
+    }
+
+    private void runMap(PigSplit split, int taskId) throws Exception {
+        TaskAttemptID taskAttemptID = HadoopShims.createTaskAttemptID(jtIdentifier, jobNumber, true, taskId, 0);
+        List<POStore> taskStores = null;
+        RecordReader<Text, Tuple> reader = null;
+        try {
+            Configuration taskConf = setUpTask(true, taskId, taskAttemptID);
+            TaskAttemptContext context = HadoopShims.createTaskAttemptContext(taskConf, taskAttemptID);
+            PhysicalPlan mp = (PhysicalPlan) ObjectSerializer.deserialize(mapPlan);
+            taskStores = setUpStores(mp, taskConf, taskAttemptID);
+            List<PhysicalOperator> roots = new ArrayList<PhysicalOperator>();
+            for (OperatorKey target : split.getTargetOps()) {
+                roots.add(mp.getOperator(target));
+            }
+            PhysicalOperator leaf = mp.getLeaves().get(0);
+            MapOutput output = partitions == null ? null : new MapOutput();
+            AtomicLong records = inputRecords.get(split.getInputIndex());
+
+            reader = new PigInputFormat().createRecordReader(split, context);
+            reader.initialize(split, context);
+            while (reader.nextKeyValue()) {
+                Tuple tuple = reader.getCurrentValue();
+                records.incrementAndGet();
+                for (PhysicalOperator root : roots) {
+                    root.attachInput(tf.newTupleNoCopy(tuple.getAll()));
+                }
+                runMapPipeline(leaf, output);
+            }
+            if (mro.isEndOfAllInputSetInMap()) {
+                mp.endOfAllInput = true;
+                runMapPipeline(leaf, output);
+            }
+            finishTask(mp, taskStores);
+            if (output != null) {
+                output.flush();
+            }
+        } catch (Exception e) {
+            abortTask(taskStores);
+            throw e;
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+            tearDownTask();
+        }
+    }
+
+    private void runMapPipeline(PhysicalOperator leaf, MapOutput output) throws IOException {
+        while (true) {
+            Result res = leaf.getNextTuple();
+            if (res.returnStatus == POStatus.STATUS_OK) {
+                if (output != null) {
+                    output.collect((Tuple) res.result);
+                }
+                continue;
+            }
+            if (res.returnStatus == POStatus.STATUS_EOP) {
+                return;
+            }
+            if (res.returnStatus == POStatus.STATUS_NULL) {
+                continue;
+            }
+            if (res.returnStatus == POStatus.STATUS_ERR) {
+                String errMsg = "Received Error while processing the map plan"
+                        + (res.result != null ? ": " + res.result : ".");
+                throw new ExecException(errMsg, 2055, PigException.BUG);
+            }
+        }
+    }
+
+    private void runReduce(int taskId) throws Exception {
+        TaskAttemptID taskAttemptID = HadoopShims.createTaskAttemptID(jtIdentifier, jobNumber, false, taskId, 0);
+        List<POStore> taskStores = null;
+        DataBag partition = partitions[taskId];
+        try {
+            Configuration taskConf = setUpTask(false, taskId, taskAttemptID);
+            PhysicalPlan rp = (PhysicalPlan) ObjectSerializer.deserialize(reducePlan);
+            POPackage pkg = (POPackage) ObjectSerializer.deserialize(pack);
+            taskStores = setUpStores(rp, taskConf, taskAttemptID);
+            List<PhysicalOperator> roots = rp.getRoots();
+            PhysicalOperator leaf = rp.getLeaves().get(0);
+            KeyComparator grouping = new KeyComparator(((KeyComparator) sortComparator).orderComparatorClass,
+                    mro.mapKeyType, taskConf, false);
+
+            Iterator<Tuple> it = partition.iterator();
+            Tuple next = it.hasNext() ? it.next() : null;
+            while (next != null) {
+                Group group = new Group(next, it, grouping);
+                pkg.attachInput(grouping.toWritable(next), group);
+                if (pkg.getPkgr() instanceof JoinPackager) {
+                    while (!processOnePackageOutput(pkg, roots, leaf)) {
+                    }
+                } else {
+                    processOnePackageOutput(pkg, roots, leaf);
+                }
+                next = group.drain();
+            }
+            if (mro.isEndOfAllInputSetInReduce()) {
+                rp.endOfAllInput = true;
+                runReducePipeline(leaf);
+            }
+            finishTask(rp, taskStores);
+        } catch (Exception e) {
+            abortTask(taskStores);
+            throw e;
+        } finally {
+            partition.clear();
+            tearDownTask();
+        }
+    }
+
+    // Returns whether the package is done with the current key
+    private boolean processOnePackageOutput(POPackage pkg, List<PhysicalOperator> roots,
+            PhysicalOperator leaf) throws IOException {
+        Result res = pkg.getNextTuple();
+        if (res.returnStatus == POStatus.STATUS_OK) {
+            for (PhysicalOperator root : roots) {
+                root.attachInput((Tuple) res.result);
+            }
+            runReducePipeline(leaf);
+            return false;
+        }
+        if (res.returnStatus == POStatus.STATUS_ERR) {
+            throw new ExecException("Encountered error in package operator while processing group.",
+                    2093, PigException.BUG);
+        }
+        return res.returnStatus == POStatus.STATUS_EOP;
+    }
+
+    private void runReducePipeline(PhysicalOperator leaf) throws IOException {
+        while (true) {
+            Result res = leaf.getNextTuple();
+            if (res.returnStatus == POStatus.STATUS_OK || res.returnStatus == POStatus.STATUS_NULL) {
+                continue;
+            }
+            if (res.returnStatus == POStatus.STATUS_EOP) {
+                return;
+            }
+            if (res.returnStatus == POStatus.STATUS_ERR) {
+                String msg = "Received Error while processing the reduce plan"
+                        + (res.result != null ? ": " + res.result : ".");
+                throw new ExecException(msg, 2090, PigException.BUG);
+            }
+        }
+    }
+
+    /**
+     * Partitions the (index, key, value) tuples output by the local
+     * rearranges of a map task by the hash of their key, as the default
+     * partitioner of Hadoop does.
+     */
+    private class MapOutput {
+
+        private final List<List<Tuple>> buffers = new ArrayList<List<Tuple>>();
+
+        MapOutput() {
+            for (int i = 0; i < partitions.length; i++) {
+                buffers.add(new ArrayList<Tuple>(MAP_OUTPUT_BUFFER));
+            }
+        }
+
+        void collect(Tuple tuple) throws ExecException {
+            Object key = tuple.get(1);
+            int partition = key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % partitions.length;
+            List<Tuple> buffer = buffers.get(partition);
+            buffer.add(tuple);
+            if (buffer.size() >= MAP_OUTPUT_BUFFER) {
+                flush(partition);
+            }
+        }
+
+        void flush() {
+            for (int i = 0; i < partitions.length; i++) {
+                flush(i);
+            }
+        }
+
+        private void flush(int partition) {
+            List<Tuple> buffer = buffers.get(partition);
+            DataBag bag = partitions[partition];
+            synchronized (bag) {
+                for (Tuple t : buffer) {
+                    bag.add(t);
+                }
+            }
+            mapOutputRecords.addAndGet(buffer.size());
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Orders and groups (index, key, value) tuples by their key as the sort
+     * and grouping comparators of a Hadoop job would: by the comparator of
+     * the order by, if the job has one, or else as {@link PigNullableWritable}
+     * keys. The sort order also breaks ties by the index, as the raw
+     * comparators do, so that the inputs of a key are packaged in order.
+     */
+    private static class KeyComparator implements Comparator<Tuple> {
+
+        final Class<? extends WritableComparator> orderComparatorClass;
+        private final WritableComparator orderComparator;
+        private final byte keyType;
+        private final boolean sort;
+
+        KeyComparator(Class<? extends WritableComparator> orderComparatorClass, byte keyType,
+                Configuration conf, boolean sort) {
+            this.orderComparatorClass = orderComparatorClass;
+            this.orderComparator = orderComparatorClass == null ? null
+                    : ReflectionUtils.newInstance(orderComparatorClass, conf);
+            this.keyType = keyType;
+            this.sort = sort;
+        }
+
+        PigNullableWritable toWritable(Tuple tuple) throws ExecException {
+            PigNullableWritable key = HDataType.getWritableComparableTypes(tuple.get(1), keyType);
+            key.setIndex((Byte) tuple.get(0));
+            return key;
+        }
+
+        @Override
+        public int compare(Tuple t1, Tuple t2) {
+            try {
+                PigNullableWritable k1 = toWritable(t1);
+                PigNullableWritable k2 = toWritable(t2);
+                int rc;
+                if (orderComparator != null) {
+                    // the raw comparators keep state between calls
+                    synchronized (this) {
+                        rc = orderComparator.compare((Object) k1, (Object) k2);
+                    }
+                } else {
+                    rc = k1.compareTo(k2);
+                }
+                if (rc == 0 && sort) {
+                    rc = (k1.getIndex() & 0xff) - (k2.getIndex() & 0xff);
+                }
+                return rc;
+            } catch (ExecException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Iterates the values of the tuples of a partition with the same key as
+     * the first one, as the values of a reduce call.
+     */
+    private static class Group implements Iterator<NullableTuple> {
+
+        private final Tuple first;
+        private final Iterator<Tuple> it;
+        private final KeyComparator grouping;
+        private Tuple next;
+
+        Group(Tuple first, Iterator<Tuple> it, KeyComparator grouping) {
+            this.first = first;
+            this.it = it;
+            this.grouping = grouping;
+            this.next = first;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null && (next == first || grouping.compare(first, next) == 0);
+        }
+
+        @Override
+        public NullableTuple next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                NullableTuple value = new NullableTuple((Tuple) next.get(2));
+                value.setIndex((Byte) next.get(0));
+                next = it.hasNext() ? it.next() : null;
+                return value;
+            } catch (ExecException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Skips the values not read by the package and returns the first
+         * tuple of the next key, or null at the end of the partition.
+         */
+        Tuple drain() {
+            while (hasNext()) {
+                next();
+            }
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
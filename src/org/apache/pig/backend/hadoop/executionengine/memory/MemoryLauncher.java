@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.memory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
+import org.apache.pig.backend.hadoop.executionengine.fetch.FetchContext;
+import org.apache.pig.backend.hadoop.executionengine.fetch.FetchTaskContext;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceLauncher;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.NativeMapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigHadoopLogger;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MRIntermediateDataVisitor;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeCogroup;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeJoin;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.PONative;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPartitionRearrange;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStream;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
+import org.apache.pig.data.SchemaTupleBackend;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.FileLocalizer;
+import org.apache.pig.impl.plan.PlanException;
+import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.util.ConfigurationValidator;
+import org.apache.pig.impl.util.LogUtils;
+import org.apache.pig.impl.util.UDFContext;
+import org.apache.pig.impl.util.Utils;
+import org.apache.pig.tools.pigstats.OutputStats;
+import org.apache.pig.tools.pigstats.PigStats;
+import org.apache.pig.tools.pigstats.PigStatusReporter;
+import org.apache.pig.tools.pigstats.mapreduce.MRScriptState;
+import org.apache.pig.tools.pigstats.memory.MemoryJobStats;
+import org.apache.pig.tools.pigstats.memory.MemoryPigStats;
+
+/**
+ * Launcher of the memory exec type. Plans are compiled into MapReduce jobs,
+ * which are run one after the other in-process, their tasks on a pool of
+ * threads, without submitting Hadoop jobs. Plans with jobs that depend on
+ * the Hadoop runtime, such as skewed joins, merge joins, streaming or rank,
+ * are launched as MapReduce jobs instead.
+ */
+public class MemoryLauncher extends MapReduceLauncher {
+
+    private static final Log log = LogFactory.getLog(MemoryLauncher.class);
+
+    private static final List<Class<? extends PhysicalOperator>> UNSUPPORTED_OPERATORS =
+            Arrays.<Class<? extends PhysicalOperator>>asList(POStream.class, POMergeJoin.class,
+                    POMergeCogroup.class, POPartitionRearrange.class, PONative.class);
+
+    @Override
+    public PigStats launchPig(PhysicalPlan php, String grpName, PigContext pc) throws Exception {
+        MROperPlan mrp = compile(php, pc);
+        String unsupported = findUnsupported(mrp);
+        if (unsupported != null) {
+            log.info("Launching the plan as MapReduce jobs as it has " + unsupported);
+            return launchPlan(mrp, grpName, pc);
+        }
+        return runPlan(mrp, pc);
+    }
+
+    /**
+     * Compiles a plan without the secondary key optimization, as the secondary
+     * sort of the keys is done by the Hadoop shuffle.
+     */
+    @Override
+    public MROperPlan compile(PhysicalPlan php, PigContext pc) throws PlanException, IOException,
+            VisitorException {
+        Properties props = pc.getProperties();
+        String noSecondaryKey = props.getProperty(PigConfiguration.PIG_EXEC_NO_SECONDARY_KEY);
+        props.setProperty(PigConfiguration.PIG_EXEC_NO_SECONDARY_KEY, "true");
+        try {
+            return super.compile(php, pc);
+        } finally {
+            if (noSecondaryKey == null) {
+                props.remove(PigConfiguration.PIG_EXEC_NO_SECONDARY_KEY);
+            } else {
+                props.setProperty(PigConfiguration.PIG_EXEC_NO_SECONDARY_KEY, noSecondaryKey);
+            }
+        }
+    }
+
+    /**
+     * Returns what keeps a plan from running in-process, or null if nothing
+     * does.
+     */
+    private String findUnsupported(MROperPlan mrp) throws VisitorException {
+        for (MapReduceOper mro : mrp) {
+            if (mro instanceof NativeMapReduceOper) {
+                return "a native MapReduce job";
+            }
+            if (mro.isSkewedJoin() || mro.isSkewedGroup()) {
+                return "a skewed join or group";
+            }
+            if (mro.isCounterOperation() || mro.isRankOperation()) {
+                return "a rank";
+            }
+            if (mro.isUDFComparatorUsed() || mro.getUseSecondaryKey() || mro.isIndexer()) {
+                return "a job depending on the Hadoop shuffle";
+            }
+            for (Class<? extends PhysicalOperator> op : UNSUPPORTED_OPERATORS) {
+                if (PlanHelper.containsPhysicalOperator(mro.mapPlan, op)
+                        || PlanHelper.containsPhysicalOperator(mro.reducePlan, op)) {
+                    return "a " + op.getSimpleName() + " operator";
+                }
+            }
+        }
+        return null;
+    }
+
+    private PigStats runPlan(MROperPlan mrp, PigContext pc) throws Exception {
+        ConfigurationValidator.validatePigProperties(pc.getProperties());
+        Configuration conf = ConfigurationUtil.toConfiguration(pc.getProperties());
+        if (Utils.isLocal(pc, conf)) {
+            ConfigurationUtil.replaceConfigForLocalMode(conf);
+        }
+        MRScriptState.get().addWorkflowAdjacenciesToConf(mrp, conf);
+        int numThreads = conf.getInt(PigConfiguration.PIG_EXEC_MEMORY_THREADS,
+                Runtime.getRuntime().availableProcessors());
+        boolean stopOnFailure = Boolean.valueOf(pc.getProperties().getProperty("stop.on.failure", "false"));
+
+        // Job ids are assigned up front so that the job graph of the
+        // statistics has them
+        String jtIdentifier = "memory" + System.currentTimeMillis();
+        Map<MapReduceOper, MemoryJob> jobs = new HashMap<MapReduceOper, MemoryJob>();
+        Map<MapReduceOper, String> jobIds = new HashMap<MapReduceOper, String>();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads), new TaskThreadFactory());
+        for (MapReduceOper mro : mrp) {
+            MemoryJob job = new MemoryJob(mrp, mro, pc, pool, Math.max(1, numThreads), jtIdentifier,
+                    jobs.size() + 1);
+            jobs.put(mro, job);
+            jobIds.put(mro, job.getJobId());
+        }
+
+        MemoryPigStats stats = new MemoryPigStats();
+        PigStats.start(stats);
+        stats.initialize(pc, mrp, jobIds);
+        MRScriptState.get().emitInitialPlanNotification(mrp);
+        MRScriptState.get().emitLaunchStartedNotification(mrp.size());
+
+        // Find all the intermediate data stores before the plan is run down
+        MRIntermediateDataVisitor intermediateVisitor = new MRIntermediateDataVisitor(mrp);
+        intermediateVisitor.visit();
+
+        setUpFrontend(conf, pc);
+        int totalJobs = mrp.size();
+        int numJobsCompl = 0;
+        boolean stoppedOnFailure = false;
+        try {
+            while (mrp.size() != 0 && !stoppedOnFailure) {
+                MapReduceOper mro = mrp.getRoots().get(0);
+                MemoryJob job = jobs.get(mro);
+                MemoryJobStats js = stats.getJobStats(mro);
+                log.info("Running job " + job.getJobId() + " in memory, processing aliases "
+                        + MRScriptState.get().getAlias(mro));
+                MRScriptState.get().emitJobsSubmittedNotification(1);
+                MRScriptState.get().emitJobStartedNotification(job.getJobId());
+
+                boolean success = true;
+                try {
+                    job.run(conf);
+                } catch (Exception e) {
+                    success = false;
+                    String msg = "Error running job " + job.getJobId() + " in memory: " + e.getMessage();
+                    LogUtils.writeLog(msg, Utils.getStackStraceStr(e),
+                            pc.getProperties().getProperty("pig.logfile"), log);
+                    js.setErrorMsg(e.getMessage());
+                    js.setBackendException(e);
+                    for (POStore st : job.getStores()) {
+                        failureMap.put(st.getSFile(), e);
+                    }
+                    mrp.trimBelow(mro);
+                    stoppedOnFailure = stopOnFailure;
+                }
+                addJobStats(js, job, success);
+                if (success) {
+                    for (POStore st : job.getStores()) {
+                        commitIntermediate(st);
+                    }
+                    MRScriptState.get().emitjobFinishedNotification(js);
+                } else {
+                    MRScriptState.get().emitJobFailedNotification(js);
+                }
+                mrp.remove(mro);
+                numJobsCompl++;
+                int progress = (int) (100.0 * numJobsCompl / totalJobs);
+                if (progress < 100) {
+                    log.info(progress + "% complete");
+                    MRScriptState.get().emitProgressUpdatedNotification(progress);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            UDFContext.getUDFContext().addJobConf(null);
+        }
+        MRScriptState.get().emitProgressUpdatedNotification(100);
+        log.info("100% complete");
+
+        discardPendingIntermediates();
+
+        if (Boolean.valueOf(pc.getProperties().getProperty(PigConfiguration.PIG_DELETE_TEMP_FILE, "true"))) {
+            for (String path : intermediateVisitor.getIntermediate()) {
+                if (!isKeptIntermediate(path) && HadoopShims.hasFileSystemImpl(new Path(path), conf)) {
+                    FileLocalizer.delete(path, pc);
+                }
+            }
+        }
+
+        stats.finish();
+        MRScriptState.get().emitLaunchCompletedNotification(stats.getNumberSuccessfulJobs());
+        log.info(stats.isSuccessful() ? "Success!" : "Failed!");
+
+        // run cleanup for all of the stores
+        for (OutputStats output : stats.getOutputStats()) {
+            POStore store = output.getPOStore();
+            try {
+                if (!output.isSuccessful()) {
+                    store.getStoreFunc().cleanupOnFailure(store.getSFile().getFileName(),
+                            new org.apache.hadoop.mapreduce.Job(output.getConf()));
+                } else {
+                    store.getStoreFunc().cleanupOnSuccess(store.getSFile().getFileName(),
+                            new org.apache.hadoop.mapreduce.Job(output.getConf()));
+                }
+            } catch (IOException e) {
+                throw new ExecException(e);
+            }
+        }
+
+        if (stoppedOnFailure) {
+            throw new ExecException("Stopping execution on job failure with -stop_on_failure option", 6017,
+                    PigException.REMOTE_ENVIRONMENT);
+        }
+        return stats;
+    }
+
+    private void addJobStats(MemoryJobStats js, MemoryJob job, boolean success) {
+        js.setSuccessful(success);
+        js.setConf(job.getConf());
+        js.setTaskTimes(job.getMapTimes(), job.getReduceTimes());
+        List<POLoad> loads = job.getLoads();
+        long mapInputRecords = 0;
+        for (int i = 0; i < loads.size(); i++) {
+            long records = job.getInputRecords(i);
+            mapInputRecords += Math.max(0, records);
+            js.addInputStats(loads.get(i), records, success);
+        }
+        long reduceOutputRecords = 0;
+        for (POStore st : job.getReduceStores()) {
+            reduceOutputRecords += Math.max(0, job.getStoreRecords(st));
+        }
+        js.setRecords(mapInputRecords, job.getMapOutputRecords(), reduceOutputRecords);
+        if (job.getConf() != null) {
+            for (POStore st : job.getStores()) {
+                js.addOutputStats(st, job.getStoreRecords(st), success);
+            }
+        }
+    }
+
+    private void setUpFrontend(Configuration conf, PigContext pc) throws IOException {
+        SchemaTupleBackend.initialize(conf, pc);
+        Utils.setDefaultTimeZone(conf);
+        boolean aggregateWarning = "true".equalsIgnoreCase(conf.get("aggregate.warning"));
+        PigStatusReporter pigStatusReporter = PigStatusReporter.getInstance();
+        pigStatusReporter.setContext(new FetchTaskContext(new FetchContext()));
+        PigHadoopLogger pigHadoopLogger = PigHadoopLogger.getInstance();
+        pigHadoopLogger.setReporter(pigStatusReporter);
+        pigHadoopLogger.setAggregate(aggregateWarning);
+        PhysicalOperator.setPigLogger(pigHadoopLogger);
+    }
+
+    /**
+     * Creates the daemon threads running the tasks, which load the classes
+     * of the script.
+     */
+    private static class TaskThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "MemoryTask-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(PigContext.getClassLoader());
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.memory;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.pig.StoreFuncInterface;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigOutputFormat;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStoreImpl;
+import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
+
+/**
+ * Has a POStore of an in-memory task write through the record writer and
+ * output committer of its store function, as a Hadoop task would, and counts
+ * the records stored.
+ */
+class MemoryPOStoreImpl extends POStoreImpl {
+
+    private final Configuration conf;
+    private final TaskAttemptID taskAttemptID;
+    private final AtomicLong records;
+    private RecordWriter<?, ?> writer;
+    private TaskAttemptContext context;
+    private OutputCommitter outputCommitter;
+
+    /**
+     * @param conf the configuration of the task
+     * @param taskAttemptID the id of the task, which the name of the part
+     * file written is derived from
+     * @param records the counter of the records stored
+     */
+    MemoryPOStoreImpl(Configuration conf, TaskAttemptID taskAttemptID, AtomicLong records) {
+        this.conf = conf;
+        this.taskAttemptID = taskAttemptID;
+        this.records = records;
+    }
+
+    @Override
+    public StoreFuncInterface createStoreFunc(POStore store) throws IOException {
+        StoreFuncInterface storeFunc = store.getStoreFunc();
+        context = HadoopShims.createTaskAttemptContext(new Configuration(conf), taskAttemptID);
+        PigOutputFormat.setLocation(context, store);
+        OutputFormat<?, ?> outputFormat = storeFunc.getOutputFormat();
+        try {
+            outputCommitter = outputFormat.getOutputCommitter(context);
+            outputCommitter.setupTask(context);
+            writer = outputFormat.getRecordWriter(context);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+        // Store functions are not expected to be prepared by several threads
+        // at once, some register their writers in shared state
+        synchronized (MemoryPOStoreImpl.class) {
+            storeFunc.prepareToWrite(writer);
+        }
+        return storeFunc;
+    }
+
+    @Override
+    public void recordWritten() {
+        records.incrementAndGet();
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        closeWriter();
+        if (outputCommitter != null && outputCommitter.needsTaskCommit(context)) {
+            outputCommitter.commitTask(context);
+        }
+    }
+
+    @Override
+    public void cleanUp() throws IOException {
+        closeWriter();
+        if (outputCommitter != null) {
+            outputCommitter.abortTask(context);
+        }
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            try {
+                writer.close(context);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            writer = null;
+        }
+    }
+}
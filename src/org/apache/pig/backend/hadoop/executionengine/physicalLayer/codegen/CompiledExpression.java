@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.LoadCaster;
+import org.apache.pig.PigException;
+import org.apache.pig.PigWarning;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POCast;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+
+/**
+ * Base class of the classes generated by {@link ExpressionCompiler}. A
+ * generated class evaluates the whole expression plan on an input tuple, with
+ * the values of the operators held in typed local variables. The operators
+ * of the plan are numbered in the order they were translated and the helpers
+ * of this class take that number to find the operator they work for.
+ */
+public abstract class CompiledExpression {
+
+    private static final Log log = LogFactory.getLog(CompiledExpression.class);
+
+    private PhysicalPlan plan;
+
+    private ExpressionOperator[] ops;
+
+    private LoadCaster[] casters;
+
+    void init(PhysicalPlan plan, ExpressionOperator[] ops) throws ExecException {
+        this.plan = plan;
+        this.ops = ops;
+        this.casters = new LoadCaster[ops.length];
+        for (int i = 0; i < ops.length; i++) {
+            if (ops[i] instanceof POCast) {
+                try {
+                    casters[i] = ((POCast) ops[i]).getLoadCaster();
+                } catch (IOException e) {
+                    throw new ExecException(e);
+                }
+            }
+        }
+        setUp();
+    }
+
+    /**
+     * Initialize the fields of the generated class, like the typed values of
+     * the constants.
+     */
+    protected abstract void setUp() throws ExecException;
+
+    /**
+     * Evaluate the plan on a tuple.
+     * @param input input tuple of the plan
+     * @return the value of the leaf of the plan, null if it is null
+     */
+    public abstract Object evaluate(Tuple input) throws ExecException;
+
+    protected final Object constant(int op) {
+        return ((ConstantExpression) ops[op]).getValue();
+    }
+
+    protected final Object project(Tuple t, int op, int column) throws ExecException {
+        if (t == null) {
+            return null;
+        }
+        if (t.size() > column) {
+            return t.get(column);
+        }
+        if (PhysicalOperator.getPigLogger() != null) {
+            PhysicalOperator.getPigLogger().warn(ops[op], "Attempt to access field " +
+                    "which was not found in the input", PigWarning.ACCESSING_NON_EXISTENT_FIELD);
+        }
+        return null;
+    }
+
+    /**
+     * Evaluate an operator that is not compiled, like a UDF, by attaching the
+     * input to the plan and calling the operator as its parent would.
+     */
+    protected final Object interpret(Tuple t, int op) throws ExecException {
+        ExpressionOperator operator = ops[op];
+        try {
+            plan.attachInput(t);
+            Result res = operator.getNext(operator.getResultType());
+            if (res.returnStatus == POStatus.STATUS_OK) {
+                return res.result;
+            } else if (res.returnStatus == POStatus.STATUS_ERR) {
+                int errCode = 2273;
+                String msg = "Error while evaluating " + operator.name() + " in compiled expression";
+                throw new ExecException(msg, errCode, PigException.BUG);
+            }
+            return null;
+        } finally {
+            plan.detachInput();
+        }
+    }
+
+    protected final void divideByZero(int op) {
+        if (PhysicalOperator.getPigLogger() != null) {
+            PhysicalOperator.getPigLogger().warn(ops[op], "Divide by zero. Converting it to NULL.",
+                    PigWarning.DIVIDE_BY_ZERO);
+        }
+    }
+
+    /**
+     * Cast a bytearray to int, long, float, double or chararray with the load
+     * caster of the cast.
+     */
+    protected final Object castBytes(int op, Object o) throws ExecException {
+        byte resultType = ops[op].getResultType();
+        if (!(o instanceof DataByteArray)) {
+            // Not really a bytearray, like the output of a UDF without a
+            // declared schema
+            switch (resultType) {
+            case DataType.INTEGER:
+                return DataType.toInteger(o);
+            case DataType.LONG:
+                return DataType.toLong(o);
+            case DataType.FLOAT:
+                return DataType.toFloat(o);
+            case DataType.DOUBLE:
+                return DataType.toDouble(o);
+            default:
+                return DataType.toString(o);
+            }
+        }
+        LoadCaster caster = casters[op];
+        if (caster == null) {
+            int errCode = 1075;
+            String msg = "Received a bytearray from the UDF or Union from two different Loaders. "
+                    + "Cannot determine how to convert the bytearray to "
+                    + DataType.findTypeName(resultType) + " for " + ops[op].getOriginalLocations();
+            throw new ExecException(msg, errCode, PigException.INPUT);
+        }
+        byte[] bytes = ((DataByteArray) o).get();
+        try {
+            switch (resultType) {
+            case DataType.INTEGER:
+                return caster.bytesToInteger(bytes);
+            case DataType.LONG:
+                return caster.bytesToLong(bytes);
+            case DataType.FLOAT:
+                return caster.bytesToFloat(bytes);
+            case DataType.DOUBLE:
+                return caster.bytesToDouble(bytes);
+            default:
+                return caster.bytesToCharArray(bytes);
+            }
+        } catch (IOException e) {
+            log.error("Error while casting from ByteArray to " + DataType.findTypeName(resultType));
+            return null;
+        }
+    }
+}
@@ -0,0 +1,626 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Add;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.BinaryComparisonOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.BinaryExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Divide;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.EqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GTOrEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GreaterThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.LTOrEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.LessThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Mod;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Multiply;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.NotEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POAnd;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POBinCond;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POCast;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONegative;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONot;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POOr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Subtract;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.UnaryComparisonOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.UnaryExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorExpressionBuilder;
+import org.apache.pig.data.DataType;
+import org.apache.pig.impl.util.JavaCompilerHelper;
+import org.apache.pig.impl.util.UDFContext;
+
+/**
+ * Generates the java source of a {@link CompiledExpression} for an expression
+ * plan and compiles it with {@link JavaCompilerHelper}. Projections,
+ * constants, comparisons, arithmetic, boolean operators, casts between
+ * numbers, chararray and bytearray, and bincond are translated to code on
+ * typed local variables with the same null semantics as the operators. Any
+ * other operator, like a UDF, is evaluated by the interpreted operator.
+ * <p>
+ * The generated source only depends on the shape and types of the plan, not
+ * on the values of its constants, so the compiled classes are shared by the
+ * plans of the same shape in the JVM.
+ */
+public class ExpressionCompiler {
+
+    private static final Log LOG = LogFactory.getLog(ExpressionCompiler.class);
+
+    private static final String PACKAGE = ExpressionCompiler.class.getPackage().getName();
+
+    private static final String CLASS_NAME = "$CLASS$";
+
+    private static final String TUPLE = "org.apache.pig.data.Tuple";
+
+    // Compiled classes by generated source, null if the source could not be
+    // compiled
+    private static final Map<String, Class<? extends CompiledExpression>> classes =
+            new HashMap<String, Class<? extends CompiledExpression>>();
+
+    private static File codeDir;
+
+    private static boolean compilerUnavailable = false;
+
+    private final PhysicalPlan plan;
+
+    private final List<ExpressionOperator> ops = new ArrayList<ExpressionOperator>();
+
+    private final StringBuilder fields = new StringBuilder();
+
+    private final StringBuilder setUp = new StringBuilder();
+
+    private final StringBuilder body = new StringBuilder();
+
+    // Number of operators translated to code, other than projections and
+    // constants
+    private int numCompiled = 0;
+
+    public ExpressionCompiler(PhysicalPlan plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * Compile a plan if {@link PigConfiguration#PIG_EXEC_CODEGEN} is set in
+     * the job configuration. Compilation errors are logged and the plan is
+     * then interpreted.
+     * @param plan expression plan
+     * @return the compiled plan, or null if it is to be interpreted
+     */
+    public static CompiledExpression compileIfEnabled(PhysicalPlan plan) {
+        Configuration conf = UDFContext.getUDFContext().getJobConf();
+        if (conf == null || !conf.getBoolean(PigConfiguration.PIG_EXEC_CODEGEN, false)) {
+            return null;
+        }
+        try {
+            return new ExpressionCompiler(plan).compile();
+        } catch (Exception e) {
+            LOG.warn("Unable to compile expression plan, interpreting it", e);
+            return null;
+        }
+    }
+
+    /**
+     * Check whether a plan can be compiled. The plan must have a single leaf
+     * and contain expression operators only, as for batch mode.
+     * @param plan expression plan
+     * @return true if the plan can be compiled
+     */
+    public static boolean isSupported(PhysicalPlan plan) throws ExecException {
+        return VectorExpressionBuilder.isSupported(plan);
+    }
+
+    /**
+     * @return the compiled plan, or null if the plan is not supported or
+     *         compiling it would not translate any operator
+     */
+    public CompiledExpression compile() throws ExecException {
+        if (!isSupported(plan)) {
+            return null;
+        }
+        ExpressionOperator leaf = (ExpressionOperator) plan.getLeaves().get(0);
+        if (!canTranslate(leaf)) {
+            return null;
+        }
+        int id = emit(leaf, 2);
+        if (numCompiled == 0) {
+            return null;
+        }
+        body.append("        return n").append(id).append(" ? null : ")
+            .append(box(leaf.getResultType(), "v" + id)).append(";\n");
+
+        Class<? extends CompiledExpression> c = getClass(source());
+        if (c == null) {
+            return null;
+        }
+        try {
+            CompiledExpression expr = c.newInstance();
+            expr.init(plan, ops.toArray(new ExpressionOperator[ops.size()]));
+            return expr;
+        } catch (InstantiationException e) {
+            throw new ExecException(e);
+        } catch (IllegalAccessException e) {
+            throw new ExecException(e);
+        }
+    }
+
+    /**
+     * @return number of operators translated to code by {@link #compile()},
+     *         other than projections and constants
+     */
+    public int getNumCompiled() {
+        return numCompiled;
+    }
+
+    String source() {
+        return "package " + PACKAGE + ";\n\n"
+            + "public class " + CLASS_NAME + " extends CompiledExpression {\n"
+            + fields
+            + "\n    @Override\n"
+            + "    protected void setUp() throws org.apache.pig.backend.executionengine.ExecException {\n"
+            + setUp
+            + "    }\n\n"
+            + "    @Override\n"
+            + "    @SuppressWarnings({\"unchecked\", \"rawtypes\"})\n"
+            + "    public Object evaluate(" + TUPLE + " t)"
+            + " throws org.apache.pig.backend.executionengine.ExecException {\n"
+            + body
+            + "    }\n"
+            + "}\n";
+    }
+
+    private static synchronized Class<? extends CompiledExpression> getClass(String source) {
+        if (classes.containsKey(source)) {
+            return classes.get(source);
+        }
+        Class<? extends CompiledExpression> c = null;
+        if (!compilerUnavailable) {
+            try {
+                c = compileClass(source);
+            } catch (Throwable t) {
+                // Like when the JVM has no java compiler
+                LOG.warn("Unable to compile expression, interpreting it", t);
+                compilerUnavailable = true;
+            }
+        }
+        classes.put(source, c);
+        return c;
+    }
+
+    private static Class<? extends CompiledExpression> compileClass(String source)
+            throws IOException, ClassNotFoundException {
+        if (codeDir == null) {
+            codeDir = Files.createTempDirectory("pig-codegen").toFile();
+            codeDir.deleteOnExit();
+        }
+        String name = "CompiledExpression" + classes.size();
+        JavaCompilerHelper compiler = new JavaCompilerHelper();
+        compiler.compile(codeDir.getAbsolutePath(), new JavaCompilerHelper.JavaSourceFromString(
+                PACKAGE + "." + name, source.replace(CLASS_NAME, name)));
+        new File(codeDir, PACKAGE.replace('.', File.separatorChar) + File.separator + name + ".class")
+                .deleteOnExit();
+        URLClassLoader loader = new URLClassLoader(new URL[] { codeDir.toURI().toURL() },
+                CompiledExpression.class.getClassLoader());
+        LOG.info("Compiled expression class " + name);
+        return loader.loadClass(PACKAGE + "." + name).asSubclass(CompiledExpression.class);
+    }
+
+    // Translation
+
+    private static boolean isScalar(byte type) {
+        switch (type) {
+        case DataType.INTEGER:
+        case DataType.LONG:
+        case DataType.FLOAT:
+        case DataType.DOUBLE:
+        case DataType.BOOLEAN:
+        case DataType.CHARARRAY:
+        case DataType.BYTEARRAY:
+        case DataType.DATETIME:
+        case DataType.BIGINTEGER:
+        case DataType.BIGDECIMAL:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static boolean hasType(PhysicalOperator op, byte type) {
+        return op != null && op.getResultType() == type;
+    }
+
+    private static boolean isNumber(byte type) {
+        return type == DataType.INTEGER || type == DataType.LONG
+            || type == DataType.FLOAT || type == DataType.DOUBLE;
+    }
+
+    private boolean canTranslate(ExpressionOperator op) throws ExecException {
+        Class<?> c = op.getClass();
+        byte type = op.getResultType();
+        if (!isScalar(type)) {
+            return false;
+        }
+        if (c == POProject.class) {
+            POProject project = (POProject) op;
+            return !project.isProjectToEnd() && project.getColumns().size() == 1
+                && !project.isOverloaded() && plan.getPredecessors(project) == null;
+        }
+        if (c == ConstantExpression.class) {
+            return true;
+        }
+        if (c == POAnd.class || c == POOr.class) {
+            BinaryExpressionOperator bin = (BinaryExpressionOperator) op;
+            return hasType(bin.getLhs(), DataType.BOOLEAN) && hasType(bin.getRhs(), DataType.BOOLEAN);
+        }
+        if (comparison(c) != null) {
+            BinaryComparisonOperator bin = (BinaryComparisonOperator) op;
+            byte operandType = bin.getOperandType();
+            return isScalar(operandType)
+                && hasType(bin.getLhs(), operandType) && hasType(bin.getRhs(), operandType);
+        }
+        if (arithmetic(c) != null) {
+            BinaryExpressionOperator bin = (BinaryExpressionOperator) op;
+            return isNumber(type) && !(c == Mod.class && (type == DataType.FLOAT || type == DataType.DOUBLE))
+                && hasType(bin.getLhs(), type) && hasType(bin.getRhs(), type);
+        }
+        if (c == PONot.class) {
+            return hasType(((UnaryComparisonOperator) op).getExpr(), DataType.BOOLEAN);
+        }
+        if (c == POIsNull.class) {
+            return true;
+        }
+        if (c == PONegative.class) {
+            return isNumber(type) && hasType(((UnaryExpressionOperator) op).getExpr(), type);
+        }
+        if (c == POCast.class) {
+            byte inputType = op.getInputs().get(0).getResultType();
+            if (type == DataType.CHARARRAY) {
+                return inputType == DataType.BYTEARRAY;
+            }
+            return isNumber(type) && (isNumber(inputType)
+                || inputType == DataType.CHARARRAY || inputType == DataType.BYTEARRAY);
+        }
+        if (c == POBinCond.class) {
+            POBinCond binCond = (POBinCond) op;
+            return hasType(binCond.getCond(), DataType.BOOLEAN)
+                && hasType(binCond.getLhs(), type) && hasType(binCond.getRhs(), type);
+        }
+        return false;
+    }
+
+    /**
+     * Append the code computing the value of an operator to the body. The
+     * value is held in the local variables n&lt;id&gt;, true if it is null,
+     * and v&lt;id&gt;.
+     * @return the id of the operator
+     */
+    private int emit(ExpressionOperator op, int indent) throws ExecException {
+        int id = ops.size();
+        ops.add(op);
+        byte type = op.getResultType();
+        line(indent, "boolean n" + id + " = true;");
+        line(indent, javaType(type) + " v" + id + " = " + defaultValue(type) + ";");
+        if (!canTranslate(op)) {
+            line(indent, "Object o" + id + " = interpret(t, " + id + ");");
+            assignObject(indent, id, type, "o" + id);
+            return id;
+        }
+
+        Class<?> c = op.getClass();
+        if (c == POProject.class) {
+            line(indent, "Object o" + id + " = project(t, " + id + ", "
+                    + ((POProject) op).getColumn() + ");");
+            assignObject(indent, id, type, "o" + id);
+            return id;
+        }
+        if (c == ConstantExpression.class) {
+            fields.append("    private boolean cn").append(id).append(";\n");
+            fields.append("    private ").append(javaType(type)).append(" c").append(id).append(";\n");
+            setUp.append("        Object o").append(id).append(" = constant(").append(id).append(");\n");
+            setUp.append("        cn").append(id).append(" = o").append(id).append(" == null;\n");
+            setUp.append("        if (!cn").append(id).append(") {\n");
+            setUp.append("            c").append(id).append(" = ").append(unbox(type, "o" + id)).append(";\n");
+            setUp.append("        }\n");
+            line(indent, "n" + id + " = cn" + id + ";");
+            line(indent, "v" + id + " = c" + id + ";");
+            return id;
+        }
+
+        numCompiled++;
+        if (c == POAnd.class || c == POOr.class) {
+            // Same three valued logic and short circuit as POAnd and POOr:
+            // AND is decided by a false left operand, OR by a true one
+            boolean isAnd = c == POAnd.class;
+            BinaryExpressionOperator bin = (BinaryExpressionOperator) op;
+            int l = emit(bin.getLhs(), indent);
+            line(indent, "if (!n" + l + " && v" + l + " == " + !isAnd + ") {");
+            line(indent + 1, "n" + id + " = false;");
+            line(indent + 1, "v" + id + " = " + !isAnd + ";");
+            line(indent, "} else {");
+            int r = emit(bin.getRhs(), indent + 1);
+            line(indent + 1, "if (!n" + r + " && !(n" + l + " && v" + r + " == " + isAnd + ")) {");
+            line(indent + 2, "n" + id + " = false;");
+            line(indent + 2, "v" + id + " = v" + r + ";");
+            line(indent + 1, "}");
+            line(indent, "}");
+            return id;
+        }
+        String cmp = comparison(c);
+        if (cmp != null) {
+            BinaryComparisonOperator bin = (BinaryComparisonOperator) op;
+            int l = emit(bin.getLhs(), indent);
+            int r = emit(bin.getRhs(), indent);
+            line(indent, "if (!n" + l + " && !n" + r + ") {");
+            line(indent + 1, "n" + id + " = false;");
+            line(indent + 1, "v" + id + " = " + compare(bin.getOperandType(), "v" + l, "v" + r)
+                    + " " + cmp + " 0;");
+            line(indent, "}");
+            return id;
+        }
+        String arith = arithmetic(c);
+        if (arith != null) {
+            // The right operand is not evaluated if the left one is null
+            BinaryExpressionOperator bin = (BinaryExpressionOperator) op;
+            int l = emit(bin.getLhs(), indent);
+            line(indent, "if (!n" + l + ") {");
+            int r = emit(bin.getRhs(), indent + 1);
+            line(indent + 1, "if (!n" + r + ") {");
+            if (c == Divide.class) {
+                line(indent + 2, "if (" + isZero(type, "v" + r) + ") {");
+                line(indent + 3, "divideByZero(" + id + ");");
+                line(indent + 2, "} else {");
+                line(indent + 3, "n" + id + " = false;");
+                line(indent + 3, "v" + id + " = v" + l + " / v" + r + ";");
+                line(indent + 2, "}");
+            } else {
+                line(indent + 2, "n" + id + " = false;");
+                line(indent + 2, "v" + id + " = v" + l + " " + arith + " v" + r + ";");
+            }
+            line(indent + 1, "}");
+            line(indent, "}");
+            return id;
+        }
+        if (c == PONot.class || c == POIsNull.class) {
+            int in = emit(((UnaryComparisonOperator) op).getExpr(), indent);
+            if (c == POIsNull.class) {
+                line(indent, "n" + id + " = false;");
+                line(indent, "v" + id + " = n" + in + ";");
+            } else {
+                line(indent, "if (!n" + in + ") {");
+                line(indent + 1, "n" + id + " = false;");
+                line(indent + 1, "v" + id + " = !v" + in + ";");
+                line(indent, "}");
+            }
+            return id;
+        }
+        if (c == PONegative.class) {
+            int in = emit(((UnaryExpressionOperator) op).getExpr(), indent);
+            line(indent, "if (!n" + in + ") {");
+            line(indent + 1, "n" + id + " = false;");
+            line(indent + 1, "v" + id + " = -1 * v" + in + ";");
+            line(indent, "}");
+            return id;
+        }
+        if (c == POCast.class) {
+            ExpressionOperator input = (ExpressionOperator) op.getInputs().get(0);
+            byte inputType = input.getResultType();
+            int in = emit(input, indent);
+            line(indent, "if (!n" + in + ") {");
+            if (isNumber(inputType)) {
+                line(indent + 1, "n" + id + " = false;");
+                line(indent + 1, "v" + id + " = (" + javaType(type) + ") v" + in + ";");
+            } else {
+                String value = inputType == DataType.BYTEARRAY
+                    ? "castBytes(" + id + ", v" + in + ")"
+                    : "org.apache.pig.impl.util.CastUtils." + stringCast(type) + "((String) v" + in + ")";
+                line(indent + 1, "Object o" + id + " = " + value + ";");
+                assignObject(indent + 1, id, type, "o" + id);
+            }
+            line(indent, "}");
+            return id;
+        }
+        // POBinCond, each branch is only evaluated if the condition selects it
+        POBinCond binCond = (POBinCond) op;
+        int cond = emit(binCond.getCond(), indent);
+        line(indent, "if (!n" + cond + " && v" + cond + ") {");
+        int l = emit(binCond.getLhs(), indent + 1);
+        line(indent + 1, "n" + id + " = n" + l + ";");
+        line(indent + 1, "v" + id + " = v" + l + ";");
+        line(indent, "} else if (!n" + cond + ") {");
+        int r = emit(binCond.getRhs(), indent + 1);
+        line(indent + 1, "n" + id + " = n" + r + ";");
+        line(indent + 1, "v" + id + " = v" + r + ";");
+        line(indent, "}");
+        return id;
+    }
+
+    private void line(int indent, String code) {
+        for (int i = 0; i < indent; i++) {
+            body.append("    ");
+        }
+        body.append(code).append('\n');
+    }
+
+    private void assignObject(int indent, int id, byte type, String o) {
+        line(indent, "n" + id + " = " + o + " == null;");
+        line(indent, "if (!n" + id + ") {");
+        line(indent + 1, "v" + id + " = " + unbox(type, o) + ";");
+        line(indent, "}");
+    }
+
+    private static String comparison(Class<?> c) {
+        if (c == EqualToExpr.class) {
+            return "==";
+        } else if (c == NotEqualToExpr.class) {
+            return "!=";
+        } else if (c == LessThanExpr.class) {
+            return "<";
+        } else if (c == LTOrEqualToExpr.class) {
+            return "<=";
+        } else if (c == GreaterThanExpr.class) {
+            return ">";
+        } else if (c == GTOrEqualToExpr.class) {
+            return ">=";
+        }
+        return null;
+    }
+
+    private static String arithmetic(Class<?> c) {
+        if (c == Add.class) {
+            return "+";
+        } else if (c == Subtract.class) {
+            return "-";
+        } else if (c == Multiply.class) {
+            return "*";
+        } else if (c == Divide.class) {
+            return "/";
+        } else if (c == Mod.class) {
+            return "%";
+        }
+        return null;
+    }
+
+    // Values are compared like their java objects are by compareTo
+    private static String compare(byte type, String l, String r) {
+        switch (type) {
+        case DataType.INTEGER:
+            return "Integer.compare(" + l + ", " + r + ")";
+        case DataType.LONG:
+            return "Long.compare(" + l + ", " + r + ")";
+        case DataType.FLOAT:
+            return "Float.compare(" + l + ", " + r + ")";
+        case DataType.DOUBLE:
+            return "Double.compare(" + l + ", " + r + ")";
+        case DataType.BOOLEAN:
+            return "Boolean.compare(" + l + ", " + r + ")";
+        default:
+            return "((Comparable) " + l + ").compareTo(" + r + ")";
+        }
+    }
+
+    // Like Float.equals and Double.equals, only positive zero is zero
+    private static String isZero(byte type, String v) {
+        switch (type) {
+        case DataType.FLOAT:
+            return "Float.floatToIntBits(" + v + ") == 0";
+        case DataType.DOUBLE:
+            return "Double.doubleToLongBits(" + v + ") == 0L";
+        default:
+            return v + " == 0";
+        }
+    }
+
+    private static String stringCast(byte type) {
+        switch (type) {
+        case DataType.INTEGER:
+            return "stringToInteger";
+        case DataType.LONG:
+            return "stringToLong";
+        case DataType.FLOAT:
+            return "stringToFloat";
+        default:
+            return "stringToDouble";
+        }
+    }
+
+    private static String javaType(byte type) {
+        switch (type) {
+        case DataType.INTEGER:
+            return "int";
+        case DataType.LONG:
+            return "long";
+        case DataType.FLOAT:
+            return "float";
+        case DataType.DOUBLE:
+            return "double";
+        case DataType.BOOLEAN:
+            return "boolean";
+        default:
+            return "Object";
+        }
+    }
+
+    private static String defaultValue(byte type) {
+        switch (type) {
+        case DataType.INTEGER:
+            return "0";
+        case DataType.LONG:
+            return "0L";
+        case DataType.FLOAT:
+            return "0.0F";
+        case DataType.DOUBLE:
+            return "0.0";
+        case DataType.BOOLEAN:
+            return "false";
+        default:
+            return "null";
+        }
+    }
+
+    private static String unbox(byte type, String o) {
+        switch (type) {
+        case DataType.INTEGER:
+            return "((Number) " + o + ").intValue()";
+        case DataType.LONG:
+            return "((Number) " + o + ").longValue()";
+        case DataType.FLOAT:
+            return "((Number) " + o + ").floatValue()";
+        case DataType.DOUBLE:
+            return "((Number) " + o + ").doubleValue()";
+        case DataType.BOOLEAN:
+            return "((Boolean) " + o + ").booleanValue()";
+        default:
+            return o;
+        }
+    }
+
+    private static String box(byte type, String v) {
+        switch (type) {
+        case DataType.INTEGER:
+            return "Integer.valueOf(" + v + ")";
+        case DataType.LONG:
+            return "Long.valueOf(" + v + ")";
+        case DataType.FLOAT:
+            return "Float.valueOf(" + v + ")";
+        case DataType.DOUBLE:
+            return "Double.valueOf(" + v + ")";
+        case DataType.BOOLEAN:
+            return "Boolean.valueOf(" + v + ")";
+        default:
+            return v;
+        }
+    }
+}
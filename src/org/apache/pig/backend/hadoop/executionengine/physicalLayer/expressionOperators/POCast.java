@@ -2055,6 +2055,16 @@ public class POCast extends ExpressionOperator {
         return funcSpec;
     }
 
+    /**
+     * @return the caster used to convert bytearrays, or null if it is not
+     * known where the bytearrays come from
+     * @throws IOException
+     */
+    public LoadCaster getLoadCaster() throws IOException {
+        instantiateFunc();
+        return caster;
+    }
+
     @Override
     public Tuple illustratorMarkup(Object in, Object out, int eqClassIndex) {
       return (Tuple) out;
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.MultiPatternMatcher;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.plan.NodeIdGenerator;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.pig.impl.plan.VisitorException;
+
+/**
+ * Index of the first of several patterns which the value of its input
+ * matches, or -1 if it matches none of them. The operators of the conditions
+ * of a chain of bincond share a matcher, which scans the value once.
+ */
+public class POMatchIndex extends UnaryExpressionOperator {
+
+    private static final long serialVersionUID = 1L;
+
+    private MultiPatternMatcher matcher;
+
+    public POMatchIndex(OperatorKey k, MultiPatternMatcher matcher) {
+        super(k);
+        this.matcher = matcher;
+        resultType = DataType.INTEGER;
+    }
+
+    public MultiPatternMatcher getMatcher() {
+        return matcher;
+    }
+
+    @Override
+    public void visit(PhyPlanVisitor v) throws VisitorException {
+        v.visitMatchIndex(this);
+    }
+
+    @Override
+    public String name() {
+        return "MatchIndex" + matcher.getPatterns() + " - " + mKey.toString();
+    }
+
+    @Override
+    public Result getNextInteger() throws ExecException {
+        Result res = expr.getNextString();
+        if (res.returnStatus == POStatus.STATUS_OK && res.result != null) {
+            res.result = matcher.match((String) res.result);
+        }
+        return res;
+    }
+
+    @Override
+    public POMatchIndex clone() throws CloneNotSupportedException {
+        POMatchIndex clone = new POMatchIndex(new OperatorKey(mKey.scope,
+            NodeIdGenerator.getGenerator().getNextNodeId(mKey.scope)), matcher);
+        clone.cloneHelper(this);
+        return clone;
+    }
+
+    @Override
+    public Tuple illustratorMarkup(Object in, Object out, int eqClassIndex) {
+        return (Tuple) out;
+    }
+}
@@ -26,8 +26,14 @@ import static org.apache.pig.PigConstants.TIME_UDFS_INVOCATION_COUNTER;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -35,6 +41,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.security.Credentials;
 import org.apache.pig.Accumulator;
 import org.apache.pig.Algebraic;
+import org.apache.pig.AsyncEvalFunc;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.FuncSpec;
 import org.apache.pig.PigException;
@@ -88,6 +95,21 @@ public class POUserFunc extends ExpressionOperator {
     private long timingFrequency = 100L;
     private boolean doTiming = false;
 
+    // Batches of arguments of an AsyncEvalFunc: the one being filled, the
+    // ones submitted to the UDF, oldest first, and the one whose results are
+    // returned for the row set by the foreach
+    private transient AsyncBatch asyncInput;
+    private transient LinkedList<AsyncBatch> asyncBatches;
+    private transient AsyncBatch asyncOutput;
+    private transient int asyncRow;
+
+    private static class AsyncBatch {
+        // Arguments of each row, replaced by the result of the UDF once done
+        final List<Result> rows = new ArrayList<Result>();
+        final List<Tuple> inputs = new ArrayList<Tuple>();
+        Future<List<Object>> future;
+    }
+
     public PhysicalOperator getReferencedOperator() {
         return referencedOperator;
     }
@@ -273,6 +295,15 @@ public class POUserFunc extends ExpressionOperator {
     }
 
     private Result getNext() throws ExecException {
+        if (asyncOutput != null) {
+            // Like the inputs of the UDF, the result of a row is read once
+            if (asyncRow < 0) {
+                return new Result(POStatus.STATUS_EOP, null);
+            }
+            Result row = asyncOutput.rows.get(asyncRow);
+            asyncRow = -1;
+            return new Result(row.returnStatus, row.result);
+        }
         Result result = processInput();
         long startNanos = 0;
         boolean timeThis = doTiming && (numInvocations++ % timingFrequency == 0);
@@ -341,23 +372,7 @@ public class POUserFunc extends ExpressionOperator {
         } catch (ExecException ee) {
             throw ee;
         } catch (IOException ioe) {
-            int errCode = 2078;
-            String msg = "Caught error from UDF: " + funcSpec.getClassName();
-            String footer = " [" + ioe.getMessage() + "]";
-
-            if(ioe instanceof PigException) {
-                int udfErrorCode = ((PigException)ioe).getErrorCode();
-                if(udfErrorCode != 0) {
-                    errCode = udfErrorCode;
-                    msg = ((PigException)ioe).getMessage();
-                } else {
-                    msg += " [" + ((PigException)ioe).getMessage() + " ]";
-                }
-            } else {
-                msg += footer;
-            }
-
-            throw new ExecException(msg, errCode, PigException.BUG, ioe);
+            throw udfException(ioe);
         } catch (IndexOutOfBoundsException ie) {
             int errCode = 2078;
             String msg = "Caught error from UDF: " + funcSpec.getClassName() +
@@ -366,6 +381,119 @@ public class POUserFunc extends ExpressionOperator {
         }
     }
 
+    private ExecException udfException(IOException ioe) {
+        int errCode = 2078;
+        String msg = "Caught error from UDF: " + funcSpec.getClassName();
+        String footer = " [" + ioe.getMessage() + "]";
+
+        if(ioe instanceof PigException) {
+            int udfErrorCode = ((PigException)ioe).getErrorCode();
+            if(udfErrorCode != 0) {
+                errCode = udfErrorCode;
+                msg = ((PigException)ioe).getMessage();
+            } else {
+                msg += " [" + ((PigException)ioe).getMessage() + " ]";
+            }
+        } else {
+            msg += footer;
+        }
+
+        return new ExecException(msg, errCode, PigException.BUG, ioe);
+    }
+
+    /**
+     * @return true if the UDF is an {@link AsyncEvalFunc}, whose rows can be
+     *         evaluated a batch at a time
+     */
+    public boolean isAsync() {
+        return func instanceof AsyncEvalFunc;
+    }
+
+    /**
+     * Compute the arguments of the UDF for the input attached to the plan and
+     * add them to the batch being filled.
+     */
+    public void addAsyncInput() throws ExecException {
+        if (asyncInput == null) {
+            asyncInput = new AsyncBatch();
+        }
+        Result args = processInput();
+        if (args.returnStatus == POStatus.STATUS_OK) {
+            asyncInput.inputs.add((Tuple) args.result);
+        }
+        asyncInput.rows.add(args);
+    }
+
+    /**
+     * Submit the batch being filled to the UDF without waiting for its results.
+     */
+    @SuppressWarnings("unchecked")
+    public void submitAsyncBatch() throws ExecException {
+        if (asyncBatches == null) {
+            asyncBatches = new LinkedList<AsyncBatch>();
+        }
+        AsyncBatch batch = asyncInput == null ? new AsyncBatch() : asyncInput;
+        asyncInput = null;
+        if (!batch.inputs.isEmpty()) {
+            try {
+                batch.future = ((AsyncEvalFunc<Object>) func).execAsync(batch.inputs);
+            } catch (IOException ioe) {
+                throw udfException(ioe);
+            }
+        }
+        asyncBatches.add(batch);
+    }
+
+    /**
+     * Wait for the results of the oldest submitted batch. Once a row is set
+     * by {@link #setAsyncRow(int)}, its result is returned instead of
+     * evaluating the UDF.
+     */
+    public void awaitAsyncBatch() throws ExecException {
+        AsyncBatch batch = asyncBatches.poll();
+        if (batch.future != null) {
+            // Keep the task alive while the UDF is waiting on I/O
+            while (!batch.future.isDone()) {
+                try {
+                    batch.future.get(1, TimeUnit.SECONDS);
+                } catch (TimeoutException e) {
+                    if (getReporter() != null) {
+                        getReporter().progress();
+                    }
+                } catch (ExecutionException e) {
+                    break;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ExecException(e);
+                }
+            }
+            List<Object> results;
+            try {
+                results = AsyncEvalFunc.await(batch.future, batch.inputs.size());
+            } catch (IOException ioe) {
+                throw udfException(ioe);
+            }
+            int i = 0;
+            for (Result row : batch.rows) {
+                if (row.returnStatus == POStatus.STATUS_OK) {
+                    row.result = results.get(i++);
+                }
+            }
+        }
+        asyncOutput = batch;
+    }
+
+    /**
+     * @param row the row of the awaited batch whose result is returned, or -1
+     *        to be done with the batch and evaluate the UDF on its input
+     */
+    public void setAsyncRow(int row) {
+        asyncRow = row;
+        if (row < 0) {
+            asyncOutput = null;
+        }
+    }
+
     @Override
     public Result getNextTuple() throws ExecException {
         return getNext();
@@ -30,6 +30,10 @@ public class CompiledAutomaton implements RegexImpl {
         Automaton auto = regexpr.toAutomaton();
         this.runauto = new RunAutomaton(auto, true);
     }
+
+    public CompiledAutomaton( RunAutomaton runauto ) {
+        this.runauto = runauto;
+    }
     
     @Override
     public boolean match(String lhs, String rhs) {
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import dk.brics.automaton.RegExp;
+import dk.brics.automaton.RunAutomaton;
+
+/**
+ * Finds which of several patterns a string matches in a single scan. The
+ * automata of the patterns are combined into one automaton whose states
+ * record the first pattern accepted, so that a chain of MATCHES conditions
+ * on the same value costs one pass over the value instead of one per
+ * condition.
+ * <p>
+ * The result of the last lookup is kept, so that the operators of the
+ * conditions of a chain sharing a matcher only scan the value of a row once.
+ */
+public class MultiPatternMatcher implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Largest number of states of the combined automaton
+    public static final int MAX_STATES = 10000;
+
+    private final String[] patterns;
+
+    // Start of the character intervals the transitions are defined on
+    private transient char[] points;
+
+    // Transitions, indexed by state * points.length + interval, -1 if no
+    // pattern can match any more. Set last when the automaton is built.
+    private transient volatile int[] transitions;
+
+    // Index of the first pattern accepted by each state, -1 for none
+    private transient int[] accept;
+
+    private transient volatile LastMatch last;
+
+    private static class LastMatch {
+        final String value;
+        final int index;
+
+        LastMatch(String value, int index) {
+            this.value = value;
+            this.index = index;
+        }
+    }
+
+    private MultiPatternMatcher(List<String> patterns) {
+        this.patterns = patterns.toArray(new String[patterns.size()]);
+    }
+
+    /**
+     * Compile the patterns into one automaton.
+     * @param patterns patterns to match, in order
+     * @return the matcher, or null if a pattern is not supported by
+     * dk.brics.automaton or the combined automaton has more than
+     * {@link #MAX_STATES} states
+     */
+    public static MultiPatternMatcher compile(List<String> patterns) {
+        for (String pattern : patterns) {
+            if (!RegexInit.isAutomatonPattern(pattern)) {
+                return null;
+            }
+        }
+        MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+        return matcher.build() ? matcher : null;
+    }
+
+    public List<String> getPatterns() {
+        return Arrays.asList(patterns);
+    }
+
+    /**
+     * Get the index of the first pattern matching the whole value.
+     * @return the index of the pattern, or -1 if none matches
+     */
+    public int match(String value) {
+        LastMatch previous = last;
+        if (previous != null && (previous.value == value || previous.value.equals(value))) {
+            return previous.index;
+        }
+        if (transitions == null) {
+            build();
+        }
+        int index = run(value);
+        last = new LastMatch(value, index);
+        return index;
+    }
+
+    private int run(String value) {
+        int[] table = transitions;
+        char[] starts = points;
+        int state = 0;
+        for (int i = 0; i < value.length(); i++) {
+            int interval = Arrays.binarySearch(starts, value.charAt(i));
+            if (interval < 0) {
+                interval = -interval - 2;
+            }
+            state = table[state * starts.length + interval];
+            if (state == -1) {
+                return -1;
+            }
+        }
+        return accept[state];
+    }
+
+    /**
+     * Build the product of the automata of the patterns, from the states
+     * reachable from the initial one.
+     * @return false if it has more than MAX_STATES states
+     */
+    private synchronized boolean build() {
+        if (transitions != null) {
+            return true;
+        }
+        RunAutomaton[] automata = new RunAutomaton[patterns.length];
+        TreeSet<Character> starts = new TreeSet<Character>();
+        for (int i = 0; i < patterns.length; i++) {
+            automata[i] = new RunAutomaton(new RegExp(patterns[i], RegExp.NONE).toAutomaton(), false);
+            for (char c : automata[i].getCharIntervals()) {
+                starts.add(c);
+            }
+        }
+        starts.add(Character.MIN_VALUE);
+        char[] newPoints = new char[starts.size()];
+        int p = 0;
+        for (char c : starts) {
+            newPoints[p++] = c;
+        }
+
+        List<int[]> states = new ArrayList<int[]>();
+        Map<List<Integer>, Integer> ids = new HashMap<List<Integer>, Integer>();
+        int[] initial = new int[automata.length];
+        for (int i = 0; i < automata.length; i++) {
+            initial[i] = automata[i].getInitialState();
+        }
+        states.add(initial);
+        ids.put(toKey(initial), 0);
+
+        List<Integer> newTransitions = new ArrayList<Integer>();
+        for (int s = 0; s < states.size(); s++) {
+            int[] state = states.get(s);
+            for (char point : newPoints) {
+                int[] next = new int[automata.length];
+                boolean live = false;
+                for (int i = 0; i < automata.length; i++) {
+                    next[i] = state[i] == -1 ? -1 : automata[i].step(state[i], point);
+                    live |= next[i] != -1;
+                }
+                if (!live) {
+                    newTransitions.add(-1);
+                    continue;
+                }
+                List<Integer> key = toKey(next);
+                Integer id = ids.get(key);
+                if (id == null) {
+                    if (states.size() == MAX_STATES) {
+                        return false;
+                    }
+                    id = states.size();
+                    states.add(next);
+                    ids.put(key, id);
+                }
+                newTransitions.add(id);
+            }
+        }
+
+        int[] newAccept = new int[states.size()];
+        for (int s = 0; s < states.size(); s++) {
+            newAccept[s] = -1;
+            int[] state = states.get(s);
+            for (int i = 0; i < automata.length; i++) {
+                if (state[i] != -1 && automata[i].isAccept(state[i])) {
+                    newAccept[s] = i;
+                    break;
+                }
+            }
+        }
+        int[] table = new int[newTransitions.size()];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = newTransitions.get(i);
+        }
+        points = newPoints;
+        accept = newAccept;
+        transitions = table;
+        return true;
+    }
+
+    private static List<Integer> toKey(int[] state) {
+        List<Integer> key = new ArrayList<Integer>(state.length);
+        for (int s : state) {
+            key.add(s);
+        }
+        return key;
+    }
+}
@@ -17,16 +17,11 @@
  */
 package org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 public class NonConstantRegex implements RegexImpl {
 
-    private Pattern pattern = null;
-    
     private String oldString = null;
-    
-    private Matcher matcher = null;
+
+    private RegexImpl impl = null;
 
     @Override
     public boolean match(String lhs, String rhs) {
@@ -38,12 +33,10 @@ public class NonConstantRegex implements RegexImpl {
                 || rhs.length() != oldString.length() 
                 || rhs.compareTo(oldString) != 0 ) {
             oldString = rhs;
-            pattern = Pattern.compile(oldString);
-            matcher = pattern.matcher(lhs);
-        } else {
-            matcher.reset( lhs );
+            // Patterns seen before in the task are not compiled again
+            impl = RegexInit.compile(oldString);
         }
-        return matcher.matches();
+        return impl.match(lhs, rhs);
     }
 
 }
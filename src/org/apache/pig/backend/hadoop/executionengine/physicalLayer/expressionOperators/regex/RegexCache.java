@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.impl.util.UDFContext;
+import org.apache.pig.tools.pigstats.PigStatusReporter;
+
+import dk.brics.automaton.RegExp;
+import dk.brics.automaton.RunAutomaton;
+
+/**
+ * Bounded LRU cache of compiled regular expressions, shared by the matches
+ * operator and the regex builtins of a task so that patterns coming from a
+ * column are not compiled again every time they change. Lookups and compilations
+ * are counted in the {@link #COUNTER_GROUP} counter group.
+ */
+public final class RegexCache {
+
+    public static final String COUNTER_GROUP = "RegexCache";
+    public static final String HITS = "HITS";
+    public static final String MISSES = "MISSES";
+
+    private static final int DEFAULT_SIZE = 1000;
+
+    private static Map<String, Pattern> patterns;
+    // A null value means the pattern is not supported by dk.brics.automaton
+    private static Map<String, RunAutomaton> automata;
+
+    private RegexCache() {
+    }
+
+    /**
+     * Get the compiled java.util.regex form of a pattern.
+     * @throws java.util.regex.PatternSyntaxException if the pattern is invalid
+     */
+    public static synchronized Pattern getPattern(String regex) {
+        if (patterns == null) {
+            patterns = newLruMap();
+        }
+        Pattern pattern = patterns.get(regex);
+        count(pattern != null);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            patterns.put(regex, pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * Get the dk.brics.automaton form of a pattern, or null if the pattern
+     * cannot be compiled to an automaton.
+     */
+    static synchronized RunAutomaton getAutomaton(String regex) {
+        if (automata == null) {
+            automata = newLruMap();
+        }
+        boolean hit = automata.containsKey(regex);
+        count(hit);
+        if (hit) {
+            return automata.get(regex);
+        }
+        RunAutomaton automaton;
+        try {
+            automaton = new RunAutomaton(new RegExp(regex, RegExp.NONE).toAutomaton(), true);
+        } catch (IllegalArgumentException e) {
+            automaton = null;
+        }
+        automata.put(regex, automaton);
+        return automaton;
+    }
+
+    private static <V> Map<String, V> newLruMap() {
+        Configuration conf = UDFContext.getUDFContext().getJobConf();
+        final int maxSize = conf == null ? DEFAULT_SIZE
+                : conf.getInt(PigConfiguration.PIG_REGEX_CACHE_SIZE, DEFAULT_SIZE);
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private static void count(boolean hit) {
+        PigStatusReporter.getInstance().incrCounter(COUNTER_GROUP, hit ? HITS : MISSES, 1);
+    }
+}
@@ -18,12 +18,14 @@
 package org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex;
 
 import java.io.Serializable;
-import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PORegexp;
 
+import dk.brics.automaton.RegExp;
+import dk.brics.automaton.RunAutomaton;
+
 public class RegexInit implements RegexImpl, Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -52,7 +54,7 @@ public class RegexInit implements RegexImpl, Serializable {
      * @return int, 0 means this is java.util.regex,
      * 1 means this is dk.brics.automaton
      */
-    private int determineBestRegexMethod( String pattern ) {
+    static int determineBestRegexMethod( String pattern ) {
 
         for( int i = 0; i < javaRegexOnly.length; i++ ) {
             for( int j = pattern.length(); j > 0; ) {
@@ -158,7 +160,25 @@ public class RegexInit implements RegexImpl, Serializable {
         return 1;
     }    
 
-    private int precedingEscapes( String pattern, int startIndex ) {
+    /**
+     * Check if a pattern is matched with dk.brics.automaton rather than
+     * java.util.regex.
+     * @param pattern
+     * @return true if the pattern compiles to an automaton
+     */
+    public static boolean isAutomatonPattern( String pattern ) {
+        if( determineBestRegexMethod(pattern) != 1 ) {
+            return false;
+        }
+        try {
+            new RegExp(pattern, RegExp.NONE).toAutomaton();
+            return true;
+        } catch( IllegalArgumentException e ) {
+            return false;
+        }
+    }
+
+    private static int precedingEscapes( String pattern, int startIndex ) {
         if( startIndex > 0 ) {
             // This is the case when there are an odd number of escapes '//'
             int precedingEscapes = 0;
@@ -176,22 +196,26 @@ public class RegexInit implements RegexImpl, Serializable {
         return -1;
     }
 
-    private RegexImpl compile( String pattern ) {
+    /**
+     * Compile a pattern with the best regex method for it. The compiled
+     * forms are shared through {@link RegexCache}.
+     */
+    static RegexImpl compile( String pattern ) {
         RegexImpl impl = null;
         int regexMethod = determineBestRegexMethod(pattern);
         switch( regexMethod ) {
         case 0:
-            impl = new CompiledRegex(Pattern.compile(pattern));
+            impl = new CompiledRegex(RegexCache.getPattern(pattern));
             break;
         case 1:
-            try {
-                impl = new CompiledAutomaton(pattern);
-            } catch( IllegalArgumentException e ) {
-                Log log = LogFactory.getLog(getClass());
+            RunAutomaton runauto = RegexCache.getAutomaton(pattern);
+            if( runauto != null ) {
+                impl = new CompiledAutomaton(runauto);
+            } else {
+                Log log = LogFactory.getLog(RegexInit.class);
                 log.debug("Got an IllegalArgumentException for Pattern: " + pattern );
-                log.debug(e.getMessage());
                 log.debug("Switching to java.util.regex" );
-                impl = new CompiledRegex(Pattern.compile(pattern));
+                impl = new CompiledRegex(RegexCache.getPattern(pattern));
             }
             break;
         default:
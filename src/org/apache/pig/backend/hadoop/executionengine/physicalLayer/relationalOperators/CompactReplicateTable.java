@@ -0,0 +1,440 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.InterSedes;
+import org.apache.pig.data.InterSedesFactory;
+import org.apache.pig.data.SizeUtil;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+/**
+ * Build side of a replicated join kept in serialized form, used by
+ * {@link POFRJoin} when {@link org.apache.pig.PigConfiguration#PIG_JOIN_REPLICATED_COMPACT}
+ * is set.
+ * <p>
+ * Keys and value tuples are written with {@link InterSedes} into large byte
+ * pages. An open-addressing index of primitive arrays maps the hash of a
+ * serialized key to the address of the key and of the first and last value
+ * stored for it, and the values of a key are chained through the pages. No
+ * object is kept per key or per value, so the table costs little more than
+ * the serialized size of the relation, where a HashMap of tuple lists costs
+ * several times that.
+ * <p>
+ * {@link #get(Object)} deserializes the values of the key into a new list on
+ * each call. Keys are compared by their serialized bytes, which matches
+ * {@link Object#equals(Object)} for the values Pig uses as join keys. The
+ * table is not thread safe, even for reads.
+ */
+public class CompactReplicateTable extends AbstractMap<Object, List<Tuple>> {
+
+    private static final InterSedes SEDES = InterSedesFactory.getInterSedesInstance();
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int MIN_PAGE_SIZE = 64 * 1024;
+
+    private static final int MAX_PAGE_SIZE = 4 * 1024 * 1024;
+
+    private static final long NONE = -1L;
+
+    // Marks the serialized form of a key, tuple keys are written field by
+    // field so that keys from any Tuple implementation compare equal
+    private static final byte DATUM_KEY = 0;
+    private static final byte TUPLE_KEY = 1;
+
+    // Index, keyAddrs is NONE for empty slots
+    private int[] hashes;
+    private long[] keyAddrs;
+    private long[] firstValues;
+    private long[] lastValues;
+    private int[] counts;
+    private int mask;
+    private int keys;
+    private long values;
+
+    // Pages hold key records [length][bytes] and value records
+    // [address of next value][length][bytes]. An address is the page number
+    // in the high int and the offset in the page in the low int.
+    private byte[][] pages = new byte[4][];
+    private int pageCount;
+    private int pageSize = MIN_PAGE_SIZE;
+    private int pos;
+    private long pageBytes;
+
+    private final DataOutputBuffer out = new DataOutputBuffer();
+    private final DataInputBuffer in = new DataInputBuffer();
+
+    public CompactReplicateTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param expectedKeys number of distinct keys expected, the index grows as
+     * needed
+     */
+    public CompactReplicateTable(int expectedKeys) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity * 3 / 4 < expectedKeys) {
+            capacity <<= 1;
+        }
+        allocateIndex(capacity);
+    }
+
+    private void allocateIndex(int capacity) {
+        hashes = new int[capacity];
+        keyAddrs = new long[capacity];
+        firstValues = new long[capacity];
+        lastValues = new long[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keyAddrs, NONE);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Add a value for the key.
+     */
+    public void add(Object key, Tuple value) throws ExecException {
+        serializeKey(key);
+        int hash = hash(out.getData(), 0, out.getLength());
+        int slot = find(hash, out.getData(), out.getLength());
+        if (keyAddrs[slot] == NONE) {
+            hashes[slot] = hash;
+            keyAddrs[slot] = writeRecord(false);
+            firstValues[slot] = NONE;
+            keys++;
+        }
+
+        try {
+            out.reset();
+            SEDES.writeDatum(out, value);
+        } catch (IOException e) {
+            throw new ExecException("Unable to serialize replicated join value " + value, e);
+        }
+        long valueAddr = writeRecord(true);
+        if (firstValues[slot] == NONE) {
+            firstValues[slot] = valueAddr;
+        } else {
+            long last = lastValues[slot];
+            writeLong(pages[page(last)], offset(last), valueAddr);
+        }
+        lastValues[slot] = valueAddr;
+        counts[slot]++;
+        values++;
+
+        if (keys > (mask + 1) * 3 / 4) {
+            rehash();
+        }
+    }
+
+    /**
+     * @return the values of the key in a new list, or null if the key is
+     * not in the table
+     */
+    @Override
+    public List<Tuple> get(Object key) {
+        int slot = lookup(key);
+        if (slot < 0) {
+            return null;
+        }
+        List<Tuple> result = new ArrayList<Tuple>(counts[slot]);
+        try {
+            for (long addr = firstValues[slot]; addr != NONE;) {
+                byte[] page = pages[page(addr)];
+                int off = offset(addr);
+                int len = readInt(page, off + 8);
+                in.reset(page, off + 12, len);
+                result.add((Tuple) SEDES.readDatum(in));
+                addr = readLong(page, off);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read replicated join values", e);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return lookup(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return keys;
+    }
+
+    /**
+     * @return number of values in the table
+     */
+    public long getValueCount() {
+        return values;
+    }
+
+    /**
+     * @return bytes of heap taken by the pages and the index
+     */
+    public long getMemorySize() {
+        long sum = pageBytes;
+        int capacity = mask + 1;
+        sum += 2 * SizeUtil.roundToEight(16 + 4L * capacity);
+        sum += 3 * SizeUtil.roundToEight(16 + 8L * capacity);
+        sum += SizeUtil.roundToEight(16 + 8L * pages.length);
+        sum += SizeUtil.roundToEight(16 + out.getData().length);
+        return sum;
+    }
+
+    /**
+     * Iterates over the keys in the table, deserializing each key and its
+     * values.
+     */
+    @Override
+    public Set<Map.Entry<Object, List<Tuple>>> entrySet() {
+        return new AbstractSet<Map.Entry<Object, List<Tuple>>>() {
+            @Override
+            public Iterator<Map.Entry<Object, List<Tuple>>> iterator() {
+                return new Iterator<Map.Entry<Object, List<Tuple>>>() {
+                    private int slot = advance(0);
+
+                    private int advance(int from) {
+                        while (from <= mask && keyAddrs[from] == NONE) {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot <= mask;
+                    }
+
+                    @Override
+                    public Map.Entry<Object, List<Tuple>> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Object key = readKey(keyAddrs[slot]);
+                        slot = advance(slot + 1);
+                        return new SimpleImmutableEntry<Object, List<Tuple>>(key, get(key));
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys;
+            }
+        };
+    }
+
+    private int lookup(Object key) {
+        try {
+            serializeKey(key);
+        } catch (ExecException e) {
+            throw new RuntimeException(e);
+        }
+        int hash = hash(out.getData(), 0, out.getLength());
+        int slot = find(hash, out.getData(), out.getLength());
+        return keyAddrs[slot] == NONE ? -1 : slot;
+    }
+
+    /**
+     * @return the slot of the key, or the empty slot where it would go
+     */
+    private int find(int hash, byte[] key, int length) {
+        int slot = hash & mask;
+        while (true) {
+            long addr = keyAddrs[slot];
+            if (addr == NONE) {
+                return slot;
+            }
+            if (hashes[slot] == hash) {
+                byte[] page = pages[page(addr)];
+                int off = offset(addr);
+                if (readInt(page, off) == length
+                        && equalBytes(page, off + 4, key, length)) {
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void rehash() {
+        int[] oldHashes = hashes;
+        long[] oldKeyAddrs = keyAddrs;
+        long[] oldFirstValues = firstValues;
+        long[] oldLastValues = lastValues;
+        int[] oldCounts = counts;
+        allocateIndex(oldHashes.length << 1);
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldKeyAddrs[i] != NONE) {
+                int slot = oldHashes[i] & mask;
+                while (keyAddrs[slot] != NONE) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                keyAddrs[slot] = oldKeyAddrs[i];
+                firstValues[slot] = oldFirstValues[i];
+                lastValues[slot] = oldLastValues[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private void serializeKey(Object key) throws ExecException {
+        out.reset();
+        try {
+            if (key instanceof Tuple) {
+                Tuple t = (Tuple) key;
+                out.writeByte(TUPLE_KEY);
+                out.writeInt(t.size());
+                for (int i = 0; i < t.size(); i++) {
+                    SEDES.writeDatum(out, t.get(i));
+                }
+            } else {
+                out.writeByte(DATUM_KEY);
+                SEDES.writeDatum(out, key);
+            }
+        } catch (IOException e) {
+            throw new ExecException("Unable to serialize replicated join key " + key, e);
+        }
+    }
+
+    private Object readKey(long addr) {
+        byte[] page = pages[page(addr)];
+        int off = offset(addr);
+        in.reset(page, off + 4, readInt(page, off));
+        try {
+            if (in.readByte() == TUPLE_KEY) {
+                int size = in.readInt();
+                Tuple t = TupleFactory.getInstance().newTuple(size);
+                for (int i = 0; i < size; i++) {
+                    t.set(i, SEDES.readDatum(in));
+                }
+                return t;
+            }
+            return SEDES.readDatum(in);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read replicated join key", e);
+        }
+    }
+
+    /**
+     * Copy the contents of out to the pages, after the address of the next
+     * value for value records.
+     */
+    private long writeRecord(boolean value) {
+        int length = out.getLength();
+        int recordSize = length + (value ? 12 : 4);
+        byte[] page = reserve(recordSize);
+        long addr = ((long) (pageCount - 1) << 32) | pos;
+        int off = pos;
+        if (value) {
+            writeLong(page, off, NONE);
+            off += 8;
+        }
+        writeInt(page, off, length);
+        System.arraycopy(out.getData(), 0, page, off + 4, length);
+        pos += recordSize;
+        return addr;
+    }
+
+    private byte[] reserve(int recordSize) {
+        if (pageCount == 0 || pos + recordSize > pages[pageCount - 1].length) {
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pageCount * 2);
+            }
+            // Pages grow so small tables stay small
+            int size = Math.max(pageSize, recordSize);
+            pages[pageCount++] = new byte[size];
+            pageBytes += SizeUtil.roundToEight(16 + size);
+            pageSize = Math.min(pageSize * 2, MAX_PAGE_SIZE);
+            pos = 0;
+        }
+        return pages[pageCount - 1];
+    }
+
+    private static int page(long addr) {
+        return (int) (addr >>> 32);
+    }
+
+    private static int offset(long addr) {
+        return (int) addr;
+    }
+
+    private static boolean equalBytes(byte[] page, int off, byte[] key, int length) {
+        for (int i = 0; i < length; i++) {
+            if (page[off + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] b, int off, int length) {
+        int h = 1;
+        for (int i = off; i < off + length; i++) {
+            h = 31 * h + b[i];
+        }
+        // Spread the bits, the low ones pick the slot
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h;
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16)
+                | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+    }
+
+    private static void writeInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    private static long readLong(byte[] b, int off) {
+        return ((long) readInt(b, off) << 32) | (readInt(b, off + 4) & 0xffffffffL);
+    }
+
+    private static void writeLong(byte[] b, int off, long v) {
+        writeInt(b, off, (int) (v >>> 32));
+        writeInt(b, off + 4, (int) v);
+    }
+}
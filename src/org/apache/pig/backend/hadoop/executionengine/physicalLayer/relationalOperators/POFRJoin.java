@@ -29,9 +29,11 @@ import java.util.Properties;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
@@ -63,6 +65,10 @@ import org.apache.pig.impl.plan.VisitorException;
  * value. It configures a foreach operator with the databags obtained from each
  * Hashtable for the key and also with the value for the fragment input. It then
  * returns tuples returned by this foreach operator.
+ * <p>
+ * If {@link PigConfiguration#PIG_JOIN_REPLICATED_COMPACT} is set, the
+ * replicated inputs are kept in {@link CompactReplicateTable}s instead of
+ * HashMaps.
  */
 
 // We intentionally skip type checking in backend for performance reasons
@@ -299,14 +305,15 @@ public class POFRJoin extends PhysicalOperator {
                     continue;
                 }
                 Map<? extends Object, ? extends List<Tuple>> replicate = replicates.get(i);
-                if (replicate.get(key) == null) {
+                List<Tuple> matches = replicate.get(key);
+                if (matches == null) {
                     if (isLeftOuterJoin) {
                         ce.setValue(nullBag);
                     }
                     noMatch = true;
                     break;
                 }
-                ce.setValue(new NonSpillableDataBag(replicate.get(key)));
+                ce.setValue(new NonSpillableDataBag(matches));
             }
 
             // If this is not LeftOuter Join and there was no match we
@@ -354,6 +361,22 @@ public class POFRJoin extends PhysicalOperator {
         }
     }
 
+    /**
+     * @return true if the replicated inputs should be kept in
+     * {@link CompactReplicateTable}s
+     */
+    protected boolean useCompactTable() {
+        return PigMapReduce.sJobConfInternal.get() != null
+                && PigMapReduce.sJobConfInternal.get().getBoolean(
+                        PigConfiguration.PIG_JOIN_REPLICATED_COMPACT, false);
+    }
+
+    protected void logCompactTable(int input, CompactReplicateTable table) {
+        log.info("Replicated input " + input + " has " + table.size() + " keys and "
+                + table.getValueCount() + " values in " + table.getMemorySize()
+                + " bytes of compact hash table");
+    }
+
     /**
      * Builds the HashMaps by reading each replicated input from the DFS using a
      * Load operator
@@ -376,6 +399,7 @@ public class POFRJoin extends PhysicalOperator {
             }
         }
 
+        boolean compact = useCompactTable();
         int i = -1;
         long time1 = System.currentTimeMillis();
         for (FileSpec replFile : replFiles) {
@@ -404,8 +428,11 @@ public class POFRJoin extends PhysicalOperator {
             POLocalRearrange lr = LRs[i];
             lr.setInputs(Arrays.asList((PhysicalOperator) ld));
 
-            Map<Object, ArrayList<Tuple>> replicate;
-            if (keySchemaTupleFactory == null) {
+            Map<Object, ArrayList<Tuple>> replicate = null;
+            CompactReplicateTable compactReplicate = null;
+            if (compact) {
+                compactReplicate = new CompactReplicateTable();
+            } else if (keySchemaTupleFactory == null) {
                 replicate = new HashMap<Object, ArrayList<Tuple>>(1000);
             } else {
                 replicate = new TupleToMapKey(1000, keySchemaTupleFactory);
@@ -420,6 +447,10 @@ public class POFRJoin extends PhysicalOperator {
                 if (isKeyNull(key)) continue;
                 Tuple value = getValueTuple(lr, tuple);
 
+                if (compactReplicate != null) {
+                    compactReplicate.add(key, value);
+                    continue;
+                }
                 ArrayList<Tuple> values = replicate.get(key);
                 if (values == null) {
                     if (inputSchemaTupleFactory == null) {
@@ -431,7 +462,12 @@ public class POFRJoin extends PhysicalOperator {
                 }
                 values.add(value);
             }
-            replicates.set(i, replicate);
+            if (compactReplicate != null) {
+                logCompactTable(i, compactReplicate);
+                replicates.set(i, compactReplicate);
+            } else {
+                replicates.set(i, replicate);
+            }
         }
         long time2 = System.currentTimeMillis();
         log.debug("Hash Table built. Time taken: " + (time2 - time1));
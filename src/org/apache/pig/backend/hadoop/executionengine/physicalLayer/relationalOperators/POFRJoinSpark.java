@@ -51,6 +51,7 @@ public class POFRJoinSpark extends POFRJoin {
             addSchemaToFactories(keySchemas[i], keySchemaTupleFactories, i);
         }
 
+        boolean compact = useCompactTable();
         replicates.set(fragment, null);
         int i = -1;
         long start = System.currentTimeMillis();
@@ -65,7 +66,13 @@ public class POFRJoinSpark extends POFRJoin {
                 continue;
             }
 
-            TupleToMapKey replicate = new TupleToMapKey(1000, keySchemaTupleFactory);
+            TupleToMapKey replicate = null;
+            CompactReplicateTable compactReplicate = null;
+            if (compact) {
+                compactReplicate = new CompactReplicateTable();
+            } else {
+                replicate = new TupleToMapKey(1000, keySchemaTupleFactory);
+            }
 
             log.debug("Completed setup. Trying to build replication hash table");
             List<Tuple> tuples = broadcasts.get(parentPlan.getPredecessors(this).get(i).getOperatorKey().toString());
@@ -83,6 +90,10 @@ public class POFRJoinSpark extends POFRJoin {
                 Object key = tuple.get(1);
                 Tuple value = getValueTuple(localRearrange, tuple);
 
+                if (compactReplicate != null) {
+                    compactReplicate.add(key, value);
+                    continue;
+                }
                 if (replicate.get(key) == null) {
                     replicate.put(key, new POMergeJoin.TuplesToSchemaTupleList(1, inputSchemaTupleFactory));
                 }
@@ -90,7 +101,12 @@ public class POFRJoinSpark extends POFRJoin {
                 replicate.get(key).add(value);
 
             }
-            replicates.set(i, replicate);
+            if (compactReplicate != null) {
+                logCompactTable(i, compactReplicate);
+                replicates.set(i, compactReplicate);
+            } else {
+                replicates.set(i, replicate);
+            }
         }
         long end = System.currentTimeMillis();
         log.debug("Hash Table built. Time taken: " + (end - start));
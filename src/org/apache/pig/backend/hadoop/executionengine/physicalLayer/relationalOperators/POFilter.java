@@ -23,8 +23,14 @@ import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen.CompiledExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen.ExpressionCompiler;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.ColumnVector;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.TupleBatch;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorExpressionBuilder;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.plan.OperatorKey;
@@ -60,6 +66,24 @@ public class POFilter extends PhysicalOperator {
     // appropriate type
     // private byte compOperandType;
 
+    // Number of input tuples the plan is evaluated on at once in batch
+    // mode, 0 if not in batch mode
+    private int batchSize = 0;
+
+    private transient VectorExpression batchExpr;
+
+    private transient TupleBatch batch;
+
+    private transient ColumnVector batchResult;
+
+    // Next tuple of the evaluated batch to check
+    private transient int batchPos = -1;
+
+    // The plan compiled to java, null if it is interpreted
+    private transient CompiledExpression compiledExpr;
+
+    private transient boolean compiledExprInitialized;
+
     public POFilter(OperatorKey k) {
         this(k, -1, null);
     }
@@ -84,6 +108,15 @@ public class POFilter extends PhysicalOperator {
      */
     @Override
     public Result getNextTuple() throws ExecException {
+        if (batchSize > 0 && illustrator == null) {
+            return getNextTupleFromBatch();
+        }
+        if (!compiledExprInitialized) {
+            if (illustrator == null) {
+                compiledExpr = ExpressionCompiler.compileIfEnabled(plan);
+            }
+            compiledExprInitialized = true;
+        }
         Result res = null;
         Result inp = null;
         while (true) {
@@ -95,6 +128,14 @@ public class POFilter extends PhysicalOperator {
                 continue;
             }
 
+            if (compiledExpr != null) {
+                Boolean pass = (Boolean) compiledExpr.evaluate((Tuple) inp.result);
+                if (pass != null && pass) {
+                    return inp;
+                }
+                continue;
+            }
+
             plan.attachInput((Tuple) inp.result);
 
             /*
@@ -154,6 +195,67 @@ public class POFilter extends PhysicalOperator {
         return inp;
     }
 
+    /**
+     * In batch mode the input tuples are buffered until the batch is full, or
+     * the end of all input is reached, and the plan is evaluated on the whole
+     * batch. EOP is returned while the batch is being filled.
+     */
+    private Result getNextTupleFromBatch() throws ExecException {
+        if (batch == null) {
+            batch = new TupleBatch(batchSize);
+            batchResult = new ColumnVector(DataType.BOOLEAN, false, batchSize);
+            batchExpr = new VectorExpressionBuilder(plan).build();
+        }
+        while (true) {
+            if (batchPos >= 0) {
+                while (batchPos < batch.size()) {
+                    int i = batchPos++;
+                    if (!batchResult.isNull(i) && batchResult.getBoolean(i)) {
+                        return new Result(POStatus.STATUS_OK, batch.get(i));
+                    }
+                }
+                batch.clear();
+                batchPos = -1;
+            }
+            Result inp = processInput();
+            if (inp.returnStatus == POStatus.STATUS_ERR) {
+                return inp;
+            }
+            if (inp.returnStatus == POStatus.STATUS_NULL) {
+                continue;
+            }
+            if (inp.returnStatus == POStatus.STATUS_EOP) {
+                if (!batch.isEmpty() && parentPlan != null && parentPlan.endOfAllInput) {
+                    evaluateBatch();
+                    continue;
+                }
+                return inp;
+            }
+            batch.add((Tuple) inp.result);
+            if (batch.isFull()) {
+                evaluateBatch();
+            }
+        }
+    }
+
+    private void evaluateBatch() throws ExecException {
+        batchExpr.evaluate(batch, null, batchResult);
+        batchPos = 0;
+    }
+
+    /**
+     * Set the number of input tuples the plan is evaluated on at once. The
+     * plan must be supported by {@link VectorExpressionBuilder}.
+     * @param batchSize number of tuples, 0 to evaluate a tuple at a time
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
     @Override
     public String name() {
         return getAliasString() + "Filter" + "["
@@ -206,6 +308,10 @@ public class POFilter extends PhysicalOperator {
     public PhysicalOperator clone() throws CloneNotSupportedException {
         POFilter opClone = (POFilter) super.clone();
         opClone.setPlan(plan.clone());
+        opClone.batch = null;
+        opClone.batchPos = -1;
+        opClone.compiledExpr = null;
+        opClone.compiledExprInitialized = false;
         return opClone;
     }
 
@@ -21,20 +21,31 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.UDFEndOfAllInputNeededVisitor;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen.CompiledExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen.ExpressionCompiler;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ExpressionOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PORelationToExprProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhyPlanVisitor;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.ColumnVector;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.TupleBatch;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorExpressionBuilder;
 import org.apache.pig.data.AccumulativeBag;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataType;
@@ -112,6 +123,67 @@ public class POForEach extends PhysicalOperator {
 
     private Schema schema;
 
+    /**
+     * Property of the configuration of a job the batch, thread and async
+     * settings of its foreachs are passed in, as they are not serialized with
+     * the plans. It holds a semicolon separated list of
+     * key=batchSize,numThreads,threadBatchSize,asyncBatchSize,asyncMaxInFlight
+     * entries, for the foreachs which do not use the defaults.
+     */
+    public static final String EXEC_SETTINGS = "pig.foreach.exec.settings";
+
+    // Whether the settings below were set, or read from the configuration
+    private transient boolean execSettingsLoaded;
+
+    // Number of input tuples the plans are evaluated on at once in batch
+    // mode, 0 if not in batch mode
+    private transient int batchSize = 0;
+
+    private transient VectorExpression[] batchExprs;
+
+    private transient TupleBatch batch;
+
+    private transient ColumnVector[] batchResults;
+
+    private transient Object[] batchRow;
+
+    // Number of threads the plans are evaluated with, and number of input
+    // tuples handed to them at once, 0 if evaluated on the calling thread
+    private transient int numThreads = 0;
+
+    private transient int threadBatchSize = 0;
+
+    private transient ParallelForEachEvaluator parallelEvaluator;
+
+    // The plans compiled to java, null for the plans that are interpreted,
+    // and the first root of each compiled plan, which is attached to the
+    // input until the plan is evaluated
+    private transient CompiledExpression[] compiledPlans;
+
+    private transient PhysicalOperator[] compiledRoots;
+
+    private transient boolean compiledPlansInitialized;
+
+    // Number of input tuples handed at once to the AsyncEvalFuncs of the
+    // plans, and number of batches submitted before waiting for the oldest,
+    // 0 if they are evaluated a tuple at a time
+    private transient int asyncBatchSize = 0;
+
+    private transient int asyncMaxInFlight = 0;
+
+    private transient List<POUserFunc> asyncFuncs;
+
+    private transient List<Tuple> asyncInput;
+
+    private transient LinkedList<List<Tuple>> asyncSubmitted;
+
+    private transient List<Tuple> asyncOutput;
+
+    private transient int asyncPos;
+
+    // Next tuple of the evaluated batch to return
+    private transient int batchPos = -1;
+
     public POForEach(OperatorKey k) {
         this(k,-1,null,null);
     }
@@ -224,6 +296,18 @@ public class POForEach extends PhysicalOperator {
      */
     @Override
     public Result getNextTuple() throws ExecException {
+        if (!execSettingsLoaded) {
+            loadExecSettings();
+        }
+        if (batchSize > 0 && illustrator == null) {
+            return getNextTupleFromBatch();
+        }
+        if (numThreads > 1 && illustrator == null) {
+            return getNextTupleInParallel();
+        }
+        if (asyncBatchSize > 0 && illustrator == null) {
+            return getNextTupleAsync();
+        }
         try {
             Result res = null;
             Result inp = null;
@@ -346,7 +430,280 @@ public class POForEach extends PhysicalOperator {
         isEarlyTerminated = true;
     }
 
-    protected Result processPlan() throws ExecException{
+    /**
+     * In batch mode the input tuples are buffered until the batch is full, or
+     * the end of all input is reached, and the plans are evaluated on the
+     * whole batch. EOP is returned while the batch is being filled.
+     */
+    private Result getNextTupleFromBatch() throws ExecException {
+        try {
+            if (batch == null) {
+                initTupleMaker();
+                batch = new TupleBatch(batchSize);
+                batchExprs = new VectorExpression[noItems];
+                batchResults = new ColumnVector[noItems];
+                for (int i = 0; i < noItems; i++) {
+                    batchExprs[i] = new VectorExpressionBuilder(inputPlans.get(i)).build();
+                    batchResults[i] = new ColumnVector(resultTypes[i], true, batchSize);
+                }
+                batchRow = new Object[noItems];
+            }
+            while (true) {
+                if (batchPos >= 0) {
+                    if (batchPos < batch.size()) {
+                        int row = batchPos++;
+                        for (int i = 0; i < noItems; i++) {
+                            batchRow[i] = batchResults[i].get(row);
+                        }
+                        return new Result(POStatus.STATUS_OK, createTuple(batchRow));
+                    }
+                    batch.clear();
+                    for (ColumnVector v : batchResults) {
+                        v.clear(batchSize);
+                    }
+                    batchPos = -1;
+                }
+                Result inp = processInput();
+                if (inp.returnStatus == POStatus.STATUS_ERR) {
+                    return inp;
+                }
+                if (inp.returnStatus == POStatus.STATUS_NULL) {
+                    continue;
+                }
+                if (inp.returnStatus == POStatus.STATUS_EOP) {
+                    if (!batch.isEmpty() && parentPlan != null && parentPlan.endOfAllInput) {
+                        evaluateBatch();
+                        continue;
+                    }
+                    return inp;
+                }
+                batch.add((Tuple) inp.result);
+                if (batch.isFull()) {
+                    evaluateBatch();
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new ExecException("Error while executing ForEach at " + this.getOriginalLocations(), e);
+        }
+    }
+
+    private void evaluateBatch() throws ExecException {
+        for (int i = 0; i < noItems; i++) {
+            batchExprs[i].evaluate(batch, null, batchResults[i]);
+        }
+        if (getReporter() != null) {
+            getReporter().progress();
+        }
+        batchPos = 0;
+    }
+
+    /**
+     * Set the number of input tuples the plans are evaluated on at once.
+     * The foreach must not flatten or be accumulative and its plans must be
+     * supported by {@link VectorExpressionBuilder}.
+     * @param batchSize number of tuples, 0 to evaluate a tuple at a time
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        this.execSettingsLoaded = true;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * In parallel mode the input tuples are buffered until the batch is full,
+     * or the end of all input is reached, and the batch is evaluated by a pool
+     * of threads. The outputs keep the order of the input tuples. EOP is
+     * returned while the batch is being filled.
+     */
+    private Result getNextTupleInParallel() throws ExecException {
+        if (parallelEvaluator == null) {
+            parallelEvaluator = new ParallelForEachEvaluator(this, numThreads, threadBatchSize);
+        }
+        while (true) {
+            Tuple out = parallelEvaluator.next();
+            if (out != null) {
+                return new Result(POStatus.STATUS_OK, out);
+            }
+            Result inp = processInput();
+            if (inp.returnStatus == POStatus.STATUS_ERR) {
+                return inp;
+            }
+            if (inp.returnStatus == POStatus.STATUS_NULL) {
+                continue;
+            }
+            if (inp.returnStatus == POStatus.STATUS_EOP) {
+                if (parentPlan != null && parentPlan.endOfAllInput) {
+                    if (!parallelEvaluator.isEmpty()) {
+                        evaluateInParallel();
+                        continue;
+                    }
+                    parallelEvaluator.shutdown();
+                }
+                return inp;
+            }
+            if (parallelEvaluator.add((Tuple) inp.result)) {
+                evaluateInParallel();
+            }
+        }
+    }
+
+    private void evaluateInParallel() throws ExecException {
+        parallelEvaluator.evaluate();
+        if (getReporter() != null) {
+            getReporter().progress();
+        }
+    }
+
+    /**
+     * Evaluate the plans with a pool of threads. All the UDFs of the plans
+     * must be thread safe, see {@link org.apache.pig.builtin.ThreadSafe}.
+     * @param numThreads number of threads, 0 or 1 to evaluate on the calling
+     *        thread
+     * @param batchSize number of input tuples handed to the threads at once
+     */
+    public void setNumThreads(int numThreads, int batchSize) {
+        this.numThreads = numThreads;
+        this.threadBatchSize = batchSize;
+        this.execSettingsLoaded = true;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * In async mode the input tuples are buffered until the batch is full, or
+     * the end of all input is reached, and the batch is submitted to the
+     * AsyncEvalFuncs of the plans. Up to the maximum number of batches are in
+     * flight, after which the oldest one is waited for and the plans are
+     * evaluated on each of its tuples, with the UDFs returning the results
+     * of the batch. EOP is returned while the batch is being filled.
+     */
+    private Result getNextTupleAsync() throws ExecException {
+        if (asyncFuncs == null) {
+            asyncFuncs = new ArrayList<POUserFunc>();
+            for (PhysicalPlan plan : inputPlans) {
+                for (PhysicalOperator op : plan) {
+                    if (op instanceof POUserFunc && ((POUserFunc) op).isAsync()) {
+                        asyncFuncs.add((POUserFunc) op);
+                    }
+                }
+            }
+            asyncInput = new ArrayList<Tuple>(asyncBatchSize);
+            asyncSubmitted = new LinkedList<List<Tuple>>();
+        }
+        while (true) {
+            if (processingPlan) {
+                Result res = processPlan();
+                if (res.returnStatus == POStatus.STATUS_OK || res.returnStatus == POStatus.STATUS_ERR) {
+                    return res;
+                }
+                if (res.returnStatus == POStatus.STATUS_EOP) {
+                    processingPlan = false;
+                    for (PhysicalPlan plan : inputPlans) {
+                        plan.detachInput();
+                    }
+                }
+                continue;
+            }
+            if (asyncOutput != null) {
+                if (asyncPos < asyncOutput.size()) {
+                    for (POUserFunc func : asyncFuncs) {
+                        func.setAsyncRow(asyncPos);
+                    }
+                    inpTuple = asyncOutput.get(asyncPos++);
+                    attachInputToPlans(inpTuple);
+                    for (PhysicalOperator po : opsToBeReset) {
+                        po.reset();
+                    }
+                    processingPlan = true;
+                    continue;
+                }
+                asyncOutput = null;
+                for (POUserFunc func : asyncFuncs) {
+                    func.setAsyncRow(-1);
+                }
+            }
+            if (asyncSubmitted.size() >= asyncMaxInFlight) {
+                awaitAsyncBatch();
+                continue;
+            }
+            Result inp = processInput();
+            if (inp.returnStatus == POStatus.STATUS_ERR) {
+                return inp;
+            }
+            if (inp.returnStatus == POStatus.STATUS_NULL) {
+                continue;
+            }
+            if (inp.returnStatus == POStatus.STATUS_EOP) {
+                if (parentPlan != null && parentPlan.endOfAllInput) {
+                    if (!asyncInput.isEmpty()) {
+                        submitAsyncBatch();
+                        continue;
+                    }
+                    if (!asyncSubmitted.isEmpty()) {
+                        awaitAsyncBatch();
+                        continue;
+                    }
+                }
+                return inp;
+            }
+            Tuple t = (Tuple) inp.result;
+            attachInputToPlans(t);
+            for (PhysicalOperator po : opsToBeReset) {
+                po.reset();
+            }
+            for (POUserFunc func : asyncFuncs) {
+                func.addAsyncInput();
+            }
+            for (PhysicalPlan plan : inputPlans) {
+                plan.detachInput();
+            }
+            asyncInput.add(t);
+            if (asyncInput.size() >= asyncBatchSize) {
+                submitAsyncBatch();
+            }
+        }
+    }
+
+    private void submitAsyncBatch() throws ExecException {
+        for (POUserFunc func : asyncFuncs) {
+            func.submitAsyncBatch();
+        }
+        asyncSubmitted.add(asyncInput);
+        asyncInput = new ArrayList<Tuple>(asyncBatchSize);
+    }
+
+    private void awaitAsyncBatch() throws ExecException {
+        for (POUserFunc func : asyncFuncs) {
+            func.awaitAsyncBatch();
+        }
+        asyncOutput = asyncSubmitted.poll();
+        asyncPos = 0;
+    }
+
+    /**
+     * Hand the input tuples to the {@link org.apache.pig.AsyncEvalFunc}s of
+     * the plans a batch at a time. The plans must not contain relational
+     * operators and the arguments of an AsyncEvalFunc must not depend on
+     * another one.
+     * @param batchSize number of tuples in a batch, 0 to evaluate a tuple at a time
+     * @param maxInFlight number of batches submitted before waiting for the oldest
+     */
+    public void setAsync(int batchSize, int maxInFlight) {
+        this.asyncBatchSize = batchSize;
+        this.asyncMaxInFlight = maxInFlight;
+        this.execSettingsLoaded = true;
+    }
+
+    public int getAsyncBatchSize() {
+        return asyncBatchSize;
+    }
+
+    private void initTupleMaker() {
         if (schema != null && tupleMaker == null) {
             // Note here that if SchemaTuple is currently turned on, then any UDF's in the chain
             // must follow good practices. Namely, they should not append to the Tuple that comes
@@ -359,6 +716,13 @@ public class POForEach extends PhysicalOperator {
         if (tupleMaker == null) {
             tupleMaker = TupleFactory.getInstance();
         }
+    }
+
+    protected Result processPlan() throws ExecException{
+        initTupleMaker();
+        if (!compiledPlansInitialized) {
+            initCompiledPlans();
+        }
 
         Result res = new Result();
 
@@ -405,7 +769,11 @@ public class POForEach extends PhysicalOperator {
                 case DataType.BIGDECIMAL :
                 case DataType.DATETIME :
                 case DataType.CHARARRAY :
-                    inputData = planLeafOps[i].getNext(resultTypes[i]);
+                    if (compiledPlans != null && compiledPlans[i] != null) {
+                        inputData = evaluateCompiled(i);
+                    } else {
+                        inputData = planLeafOps[i].getNext(resultTypes[i]);
+                    }
                     break;
                 default: {
                     int errCode = 2080;
@@ -593,6 +961,36 @@ public class POForEach extends PhysicalOperator {
     }
 
 
+    private void initCompiledPlans() {
+        compiledPlansInitialized = true;
+        // Subclasses and accumulative foreachs evaluate the plans more than
+        // once for an input
+        if (getClass() != POForEach.class || illustrator != null || isAccumulative()) {
+            return;
+        }
+        for (int i = 0; i < inputPlans.size(); i++) {
+            CompiledExpression expr = ExpressionCompiler.compileIfEnabled(inputPlans.get(i));
+            if (expr != null) {
+                if (compiledPlans == null) {
+                    compiledPlans = new CompiledExpression[inputPlans.size()];
+                    compiledRoots = new PhysicalOperator[inputPlans.size()];
+                }
+                compiledPlans[i] = expr;
+                compiledRoots[i] = inputPlans.get(i).getRoots().get(0);
+            }
+        }
+    }
+
+    // Like the leaf of the plan, the compiled plan returns EOP once it has
+    // been evaluated on the attached input
+    private Result evaluateCompiled(int i) throws ExecException {
+        if (!compiledRoots[i].isInputAttached()) {
+            return RESULT_EOP;
+        }
+        inputPlans.get(i).detachInput();
+        return new Result(POStatus.STATUS_OK, compiledPlans[i].evaluate(inpTuple));
+    }
+
     protected void attachInputToPlans(Tuple t) {
         //super.attachInput(t);
         for(PhysicalPlan p : inputPlans) {
@@ -727,9 +1125,66 @@ public class POForEach extends PhysicalOperator {
         clone.endOfAllInputProcessing = endOfAllInputProcessing;
         clone.mapSideOnly = mapSideOnly;
         clone.flattenNumFields = flattenNumFields;
+        clone.batchSize = batchSize;
+        clone.numThreads = numThreads;
+        clone.threadBatchSize = threadBatchSize;
+        clone.asyncBatchSize = asyncBatchSize;
+        clone.asyncMaxInFlight = asyncMaxInFlight;
+        clone.execSettingsLoaded = execSettingsLoaded;
         return clone;
     }
 
+    /**
+     * Store the batch, thread and async settings of the foreachs of the given
+     * plans in the configuration of their job, see {@link #EXEC_SETTINGS}.
+     * @param conf configuration of the job
+     * @param plans plans the job runs
+     * @throws VisitorException
+     */
+    public static void storeExecSettings(Configuration conf, PhysicalPlan... plans)
+            throws VisitorException {
+        StringBuilder settings = new StringBuilder();
+        for (PhysicalPlan plan : plans) {
+            for (POForEach foreach : PlanHelper.getPhysicalOperators(plan, POForEach.class)) {
+                if (foreach.batchSize > 0 || foreach.numThreads > 0 || foreach.asyncBatchSize > 0) {
+                    if (settings.length() > 0) {
+                        settings.append(';');
+                    }
+                    settings.append(foreach.getOperatorKey()).append('=')
+                            .append(foreach.batchSize).append(',')
+                            .append(foreach.numThreads).append(',')
+                            .append(foreach.threadBatchSize).append(',')
+                            .append(foreach.asyncBatchSize).append(',')
+                            .append(foreach.asyncMaxInFlight);
+                }
+            }
+        }
+        if (settings.length() > 0) {
+            conf.set(EXEC_SETTINGS, settings.toString());
+        }
+    }
+
+    private void loadExecSettings() {
+        execSettingsLoaded = true;
+        Configuration conf = PigMapReduce.sJobConfInternal.get();
+        String settings = conf == null ? null : conf.get(EXEC_SETTINGS);
+        if (settings == null) {
+            return;
+        }
+        String prefix = mKey.toString() + "=";
+        for (String setting : settings.split(";")) {
+            if (setting.startsWith(prefix)) {
+                String[] values = setting.substring(prefix.length()).split(",");
+                batchSize = Integer.parseInt(values[0]);
+                numThreads = Integer.parseInt(values[1]);
+                threadBatchSize = Integer.parseInt(values[2]);
+                asyncBatchSize = Integer.parseInt(values[3]);
+                asyncMaxInFlight = Integer.parseInt(values[4]);
+                return;
+            }
+        }
+    }
+
     public boolean inProcessing()
     {
         return processingPlan;
@@ -51,6 +51,9 @@ public class POGlobalRearrange extends PhysicalOperator {
 
     private boolean cross = false;
 
+    // Set for a group whose frequent keys are split across reducers
+    private boolean skewed = false;
+
     public String getCustomPartitioner() {
 		return customPartitioner;
 	}
@@ -78,6 +81,7 @@ public class POGlobalRearrange extends PhysicalOperator {
     public POGlobalRearrange(POGlobalRearrange copy) throws ExecException {
         super(copy);
         this.cross = copy.cross;
+        this.skewed = copy.skewed;
         this.customPartitioner = copy.customPartitioner;
     }
 
@@ -120,4 +124,12 @@ public class POGlobalRearrange extends PhysicalOperator {
     public boolean isCross() {
         return cross;
     }
+
+    public void setSkewed(boolean skewed) {
+        this.skewed = skewed;
+    }
+
+    public boolean isSkewed() {
+        return skewed;
+    }
 }
@@ -80,6 +80,7 @@ public class POPackage extends PhysicalOperator {
 
     private transient boolean initialized;
     private transient boolean useDefaultBag;
+    private transient boolean useOffHeapBag;
     private transient int accumulativeBatchSize;
 
     public POPackage(OperatorKey k) {
@@ -193,6 +194,8 @@ public class POPackage extends PhysicalOperator {
                         PigConfiguration.PIG_CACHEDBAG_TYPE);
                 if (bagType != null && bagType.equalsIgnoreCase("default")) {
                     useDefaultBag = true;
+                } else if (bagType != null && bagType.equalsIgnoreCase("offheap")) {
+                    useOffHeapBag = true;
                 }
             }
             accumulativeBatchSize = AccumulatorOptimizerUtil.getAccumulativeBatchSize();
@@ -235,14 +238,7 @@ public class POPackage extends PhysicalOperator {
 
                 // create bag to pull all tuples out of iterator
                 for (int i = 0; i < numInputs; i++) {
-                    dbs[i] = useDefaultBag ? mBagFactory.newDefaultBag()
-                            // In a very rare case if there is a POStream after this
-                            // POPackage in the pipeline and is also blocking the
-                            // pipeline;
-                            // constructor argument should be 2 * numInputs. But for one
-                            // obscure
-                            // case we don't want to pay the penalty all the time.
-                            : new InternalCachedBag(numInputs);
+                    dbs[i] = createBag(numInputs);
                 }
                 // For each indexed tup in the inp, sort them
                 // into their corresponding bags based
@@ -253,8 +249,7 @@ public class POPackage extends PhysicalOperator {
                     if (index == numInputs - 1) {
                         if (pkgr.getUseSecondaryKey()) {
                             if (dbs[index] == null) {
-                                dbs[index] = useDefaultBag ? mBagFactory
-                                        .newDefaultBag() : new InternalCachedBag(numInputs);
+                                dbs[index] = createBag(numInputs);
                             }
                         } else {
                             dbs[index] = new PeekedBag(pkgr, ntup, tupIter, keyWritable);
@@ -288,6 +283,21 @@ public class POPackage extends PhysicalOperator {
         return pkgr.getNext();
     }
 
+    private DataBag createBag(int numInputs) {
+        if (useDefaultBag) {
+            return mBagFactory.newDefaultBag();
+        } else if (useOffHeapBag) {
+            return mBagFactory.newOffHeapBag();
+        }
+        // In a very rare case if there is a POStream after this
+        // POPackage in the pipeline and is also blocking the
+        // pipeline;
+        // constructor argument should be 2 * numInputs. But for one
+        // obscure
+        // case we don't want to pay the penalty all the time.
+        return new InternalCachedBag(numInputs);
+    }
+
     public Packager getPkgr() {
         return pkgr;
     }
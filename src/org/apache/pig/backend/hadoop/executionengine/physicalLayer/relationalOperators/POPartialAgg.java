@@ -44,6 +44,7 @@ import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
 import org.apache.pig.impl.util.GroupingSpillable;
+import org.apache.pig.impl.util.MemoryBudgetManager;
 import org.apache.pig.impl.util.Spillable;
 import org.apache.pig.impl.util.SpillableMemoryManager;
 
@@ -55,6 +56,9 @@ import com.google.common.collect.Maps;
  * are fed these buffered up inputs, and results stored in a secondary
  * map. Once that map fills up or all input has been seen, results are
  * piped out into the next operator (caller of getNext()).
+ * If {@link PigConfiguration#PIG_EXEC_MAP_PARTAGG_PRIMITIVE} is set and the
+ * key and aggregate functions allow it, a {@link PrimitivePartialAggTable}
+ * that folds intermediate results in place is used instead of the two maps.
  */
 public class POPartialAgg extends PhysicalOperator implements Spillable, GroupingSpillable {
     private static final Log LOG = LogFactory.getLog(POPartialAgg.class);
@@ -89,6 +93,10 @@ public class POPartialAgg extends PhysicalOperator implements Spillable, Groupin
     private static final int FIRST_TIER_THRESHOLD = 20000;
     private static final int SECOND_TIER_THRESHOLD = FIRST_TIER_THRESHOLD / DEFAULT_MIN_REDUCTION;
 
+    // Number of records between updates of the memory reserved from the
+    // MemoryBudgetManager
+    private static final int RESERVE_FREQUENCY = 1024;
+
     private static final WeakHashMap<POPartialAgg, Byte> ALL_POPARTS = new WeakHashMap<POPartialAgg, Byte>();
 
     private PhysicalPlan keyPlan;
@@ -131,6 +139,16 @@ public class POPartialAgg extends PhysicalOperator implements Spillable, Groupin
     private transient int avgTupleSize;
     private transient Iterator<Entry<Object, List<Tuple>>> spillingIterator;
 
+    private transient PrimitivePartialAggTable primitiveTable;
+    // Number of input records processed, in both the map and the primitive table mode
+    private transient int numRecsSeen;
+    private transient long maxPrimitiveEntries;
+
+    // Memory reserved from the MemoryBudgetManager, if it is used, and the
+    // number of records seen since the reservation was last updated
+    private transient MemoryBudgetManager.Quota memoryQuota;
+    private transient int numRecsSinceReserve;
+
     public POPartialAgg(OperatorKey k) {
         this(k, false);
     }
@@ -152,6 +170,7 @@ public class POPartialAgg extends PhysicalOperator implements Spillable, Groupin
         avgTupleSize = 0;
         percentUsage = 0.2F;
         spillLock = new Object();
+        boolean usePrimitiveTable = false;
         if (PigMapReduce.sJobConfInternal.get() != null) {
             String usage = PigMapReduce.sJobConfInternal.get().get(
                     PigConfiguration.PIG_CACHEDBAG_MEMUSAGE);
@@ -165,6 +184,8 @@ public class POPartialAgg extends PhysicalOperator implements Spillable, Groupin
                         DEFAULT_MIN_REDUCTION);
                 minOutputReduction = DEFAULT_MIN_REDUCTION;
             }
+            usePrimitiveTable = PigMapReduce.sJobConfInternal.get().getBoolean(
+                    PigConfiguration.PIG_EXEC_MAP_PARTAGG_PRIMITIVE, false);
         }
         if (percentUsage <= 0) {
             LOG.info("No memory allocated to intermediate memory buffers. Turning off partial aggregation.");
@@ -174,7 +195,12 @@ public class POPartialAgg extends PhysicalOperator implements Spillable, Groupin
             estimatedMemThresholds = true;
         } else {
             ALL_POPARTS.put(this, null);
-            SpillableMemoryManager.getInstance().registerSpillable(this);
+            MemoryBudgetManager budgetManager = MemoryBudgetManager.getInstance();
+            if (budgetManager.isEnabled()) {
+                memoryQuota = budgetManager.register(this, MemoryBudgetManager.PARTIAL_AGG);
+            } else {
+                SpillableMemoryManager.getInstance().registerSpillable(this);
+            }
         }
         // Avoid hashmap resizing. TODO: Investigate loadfactor of 0.90 or 1.0
         // newHashMapWithExpectedSize does new HashMap(expectedSize + expectedSize/3)
@@ -182,6 +208,17 @@ public class POPartialAgg extends PhysicalOperator implements Spillable, Groupin
         // For Hashmap, internally its size is always in power of 2.
         // So for NUM_RECS_TO_SAMPLE=10000, hashmap size will be 16384
         // With secondTierThreshold of 2857 (minReduction 7), hashmap size will be 4096
+        if (!disableMapAgg && usePrimitiveTable) {
+            primitiveTable = PrimitivePartialAggTable.create(keyLeaf.getResultType(), valuePlans);
+            if (primitiveTable != null) {
+                LOG.info("Using primitive hash table for partial aggregation");
+                // Entries can not exceed records seen till the limit is estimated
+                maxPrimitiveEntries = numRecordsToSample;
+                estimatedMemThresholds = true;
+                initialized = true;
+                return;
+            }
+        }
         if (!disableMapAgg) {
             rawInputMap = Maps.newHashMapWithExpectedSize(NUM_RECS_TO_SAMPLE);
             processedInputMap = Maps.newHashMapWithExpectedSize(SECOND_TIER_THRESHOLD);
@@ -209,6 +246,10 @@ public class POPartialAgg extends PhysicalOperator implements Spillable, Groupin
             init();
         }
 
+        if (primitiveTable != null) {
+            return getNextFromPrimitiveTable();
+        }
+
         while (true) {
             if (!sizeReductionChecked && numRecsInRawMap >= numRecordsToSample) {
                 checkSizeReduction();
@@ -287,17 +328,121 @@ public class POPartialAgg extends PhysicalOperator implements Spillable, Groupin
                     Object key = keyRes.result;
                     keyPlan.detachInput();
                     numRecsInRawMap += 1;
+                    numRecsSeen++;
                     addKeyValToMap(rawInputMap, key, inpTuple);
 
                     aggregateBothLevels(true, true);
                     if (shouldSpill()) {
                         startSpill(false); // next time around, we'll start emitting.
+                    } else if (!reserveMemory()) {
+                        LOG.info("Memory budget exceeded. Memory usage: " + getMemorySize());
+                        startSpill(true);
                     }
                 }
             }
         }
     }
 
+    /**
+     * Variant of {@link #getNextTuple()} used when the intermediate results
+     * are folded in the primitive table. The table is emitted when it is full,
+     * when the SpillableMemoryManager asks for memory and at the end of input.
+     */
+    private Result getNextFromPrimitiveTable() throws ExecException {
+        while (true) {
+            if (doContingentSpill && !primitiveTable.isEmitting()) {
+                startedContingentSpill = true;
+                // Sample the records seen so far before the table is emptied
+                if (!sizeReductionChecked && numRecsSeen > 0) {
+                    checkPrimitiveTableReduction();
+                }
+                if (!primitiveTable.isEmitting()) {
+                    primitiveTable.startEmit();
+                }
+            }
+            if (primitiveTable.isEmitting()) {
+                Tuple output = primitiveTable.nextResult();
+                if (output != null) {
+                    return new Result(POStatus.STATUS_OK, output);
+                }
+                doContingentSpill = false;
+                if (inputsExhausted) {
+                    return EOP_RESULT;
+                }
+            }
+            if (mapAggDisabled()) {
+                return processInput();
+            }
+            Result inp = processInput();
+            if (inp.returnStatus == POStatus.STATUS_ERR) {
+                return inp;
+            } else if (inp.returnStatus == POStatus.STATUS_EOP) {
+                if (parentPlan.endOfAllInput) {
+                    inputsExhausted = true;
+                    LOG.info("Emitting last bits.");
+                    primitiveTable.startEmit();
+                    continue;
+                } else {
+                    return EOP_RESULT;
+                }
+            } else if (inp.returnStatus == POStatus.STATUS_NULL) {
+                continue;
+            }
+            Tuple inpTuple = (Tuple) inp.result;
+            keyPlan.attachInput(inpTuple);
+            Result keyRes = getResult(keyLeaf);
+            if (keyRes.returnStatus != POStatus.STATUS_OK) {
+                return keyRes;
+            }
+            keyPlan.detachInput();
+            primitiveTable.add(keyRes.result, inpTuple);
+            numRecsSeen++;
+
+            if (!sizeReductionChecked && numRecsSeen >= numRecordsToSample) {
+                checkPrimitiveTableReduction();
+            }
+            if (!mapAggDisabled() && primitiveTable.size() >= maxPrimitiveEntries) {
+                LOG.info("Primitive table is full with " + primitiveTable.size() + " keys. Emitting.");
+                primitiveTable.startEmit();
+            } else if (!mapAggDisabled() && !reserveMemory()) {
+                LOG.info("Memory budget exceeded with " + primitiveTable.size() + " keys. Emitting.");
+                primitiveTable.startEmit();
+            }
+        }
+    }
+
+    private void checkPrimitiveTableReduction() {
+        int numKeys = Math.max(primitiveTable.size(), 1);
+        sizeReduction = numRecsSeen / numKeys;
+        LOG.info("Observed reduction factor in primitive table: from " + numRecsSeen
+                + " to " + numKeys + " => " + sizeReduction + ".");
+        if (sizeReduction < minOutputReduction) {
+            LOG.info("Disabling in-memory aggregation, since observed reduction is less than " + minOutputReduction);
+            primitiveTable.startEmit();
+            disableMapAgg = true;
+            ALL_POPARTS.remove(this);
+        } else {
+            MemoryLimits memLimits = new MemoryLimits(ALL_POPARTS.size(), percentUsage);
+            memLimits.addNewObjSize(Math.max(primitiveTable.getMemorySize() / numKeys, 1));
+            maxPrimitiveEntries = memLimits.getCacheLimit();
+            LOG.info("Setting primitive table limit to " + maxPrimitiveEntries + " keys");
+        }
+        sizeReductionChecked = true;
+    }
+
+    /**
+     * Update the memory reserved from the {@link MemoryBudgetManager} every
+     * {@link #RESERVE_FREQUENCY} records.
+     * @return false if the budget is exceeded and the tables should be emitted
+     */
+    private boolean reserveMemory() {
+        if (memoryQuota == null || ++numRecsSinceReserve < RESERVE_FREQUENCY) {
+            return true;
+        }
+        numRecsSinceReserve = 0;
+        return memoryQuota.update(getMemorySize());
+    }
+
     private void freeMemory() throws ExecException {
         if (rawInputMap != null && !rawInputMap.isEmpty()) {
             throw new ExecException("Illegal state. Trying to free up partial aggregation maps when they are not empty");
@@ -305,6 +450,9 @@ public class POPartialAgg extends PhysicalOperator implements Spillable, Groupin
         // Free up the maps for garbage collection
         rawInputMap = null;
         processedInputMap = null;
+        if (memoryQuota != null) {
+            memoryQuota.releaseAll();
+        }
     }
 
     private void estimateMemThresholds() {
@@ -700,7 +848,8 @@ public class POPartialAgg extends PhysicalOperator implements Spillable, Groupin
                 startedContingentSpill = false;
                 doContingentSpill = true;
                 if (!sizeReductionChecked || !estimatedMemThresholds) {
-                    numRecordsToSample = numRecsInRawMap;
+                    // Sample only the records seen so far, never more than before
+                    numRecordsToSample = Math.min(numRecsSeen, numRecordsToSample);
                 }
                 try {
                     // Block till spilling is finished. If main thread execution has not come to POPartialAgg
@@ -733,6 +882,9 @@ public class POPartialAgg extends PhysicalOperator implements Spillable, Groupin
 
     @Override
     public long getMemorySize() {
+        if (primitiveTable != null) {
+            return primitiveTable.getMemorySize();
+        }
         return avgTupleSize * (numRecsInProcessedMap + numRecsInRawMap);
     }
 
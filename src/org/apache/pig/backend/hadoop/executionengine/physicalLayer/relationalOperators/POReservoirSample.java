@@ -221,8 +221,15 @@ public class POReservoirSample extends PhysicalOperator {
         }
 
         t.set(sz, PoissonSampleLoader.NUMROWS_TUPLE_MARKER);
-        t.set(sz + 1, rowProcessed);
+        t.set(sz + 1, getNumRows());
         return new Result(POStatus.STATUS_OK, t);
     }
 
+    /**
+     * @return - number of rows the samples stand for, tagged on the last sample
+     */
+    protected long getNumRows() {
+        return rowProcessed;
+    }
+
 }
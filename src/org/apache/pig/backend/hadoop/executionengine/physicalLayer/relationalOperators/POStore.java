@@ -169,6 +169,9 @@ public class POStore extends PhysicalOperator {
                 if (counterName != null) {
                     ((MapReducePOStoreImpl) impl).incrRecordCounter(counterName, 1);
                 }
+                if (impl != null) {
+                    impl.recordWritten();
+                }
                 break;
             case POStatus.STATUS_EOP:
                 break;
@@ -41,6 +41,13 @@ public abstract class POStoreImpl {
      */
     public void tearDown() throws IOException{
     }
+
+    /**
+     * Called after each tuple handed to the store function, for backends
+     * counting the stored records without Hadoop counters.
+     */
+    public void recordWritten() {
+    }
     
     /**
      * To perform cleanup when there is an error.
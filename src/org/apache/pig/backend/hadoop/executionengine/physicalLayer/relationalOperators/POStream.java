@@ -19,12 +19,16 @@ package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOp
 
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.fetch.FetchLauncher;
@@ -38,6 +42,8 @@ import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.impl.plan.VisitorException;
 import org.apache.pig.impl.streaming.ExecutableManager;
 import org.apache.pig.impl.streaming.StreamingCommand;
+import org.apache.pig.impl.streaming.StreamingCommand.Handle;
+import org.apache.pig.impl.streaming.StreamingCommand.HandleSpec;
 import org.apache.pig.pen.util.ExampleTuple;
 
 public class POStream extends PhysicalOperator {
@@ -51,7 +57,11 @@ public class POStream extends PhysicalOperator {
 
     protected BlockingQueue<Result> binaryInputQueue = new ArrayBlockingQueue<Result>(1);
 
-    private transient ExecutableManager executableManager;    // ExecutableManager to use
+    // ExecutableManagers to use, one per worker process of the command
+    private transient List<ExecutableManager> executableManagers;
+
+    // Worker processes which have not sent their end of stream yet
+    private transient int runningWorkers;
 
     private transient boolean initialized = false;
 
@@ -150,7 +160,7 @@ public class POStream extends PhysicalOperator {
             // streaming binary, then all we want to do is read output from
             // the streaming binary
             if(allInputFromPredecessorConsumed) {
-                Result r = binaryOutputQueue.take();
+                Result r = takeOutput();
                 if(r.returnStatus == POStatus.STATUS_EOS) {
                     // If we received EOS, it means all output
                     // from the streaming binary has been sent to us
@@ -177,13 +187,15 @@ public class POStream extends PhysicalOperator {
                     // then "initialized" will be true. If not, just
                     // send EOP down.
                     if(getInitialized()) {
-                        // signal End of ALL input to the Executable Manager's
-                        // Input handler thread
-                        binaryInputQueue.put(r);
+                        // signal End of ALL input to the Input handler
+                        // thread of every Executable Manager
+                        for (int i = 0; i < executableManagers.size(); i++) {
+                            binaryInputQueue.put(r);
+                        }
                         // note this state for future calls
                         allInputFromPredecessorConsumed  = true;
                         // look for output from binary
-                        r = binaryOutputQueue.take();
+                        r = takeOutput();
                         if(r.returnStatus == POStatus.STATUS_EOS) {
                             // If we received EOS, it means all output
                             // from the streaming binary has been sent to us
@@ -250,6 +262,10 @@ public class POStream extends PhysicalOperator {
                     // return it
                     if(!binaryOutputQueue.isEmpty()) {
                         Result res = binaryOutputQueue.take();
+                        if (res.returnStatus == POStatus.STATUS_EOS && --runningWorkers > 0) {
+                            // other workers are still producing output
+                            continue;
+                        }
                         return res;
                     }
 
@@ -272,18 +288,24 @@ public class POStream extends PhysicalOperator {
                             // tasks - so we initialize only if we have to.
                             // initialize the ExecutableManager once
                             if(!initialized) {
-                                // set up the executableManager
-                                executableManager =
-                                    (ExecutableManager)PigContext.instantiateFuncFromSpec(executableManagerStr);
-
-                                try {
-                                    executableManager.configure(this);
-                                    executableManager.run();
-                                } catch (IOException ioe) {
-                                    int errCode = 2084;
-                                    String msg = "Error while running streaming binary.";
-                                    throw new ExecException(msg, errCode, PigException.BUG, ioe);
+                                // set up an executableManager per worker, they
+                                // all take their input from binaryInputQueue
+                                int workers = getWorkerCount();
+                                executableManagers = new ArrayList<ExecutableManager>(workers);
+                                for (int i = 0; i < workers; i++) {
+                                    ExecutableManager executableManager =
+                                        (ExecutableManager)PigContext.instantiateFuncFromSpec(executableManagerStr);
+                                    try {
+                                        executableManager.configure(this);
+                                        executableManager.run();
+                                    } catch (IOException ioe) {
+                                        int errCode = 2084;
+                                        String msg = "Error while running streaming binary.";
+                                        throw new ExecException(msg, errCode, PigException.BUG, ioe);
+                                    }
+                                    executableManagers.add(executableManager);
                                 }
+                                runningWorkers = workers;
                                 initialized = true;
                             }
 
@@ -310,6 +332,75 @@ public class POStream extends PhysicalOperator {
         }
     }
 
+    /**
+     * Take the next output of the workers. The end of stream of a worker is
+     * skipped until every worker has sent its own.
+     */
+    private Result takeOutput() throws InterruptedException {
+        Result r = binaryOutputQueue.take();
+        while (r.returnStatus == POStatus.STATUS_EOS && --runningWorkers > 0) {
+            r = binaryOutputQueue.take();
+        }
+        return r;
+    }
+
+    /**
+     * Number of processes to run the command with, as set by
+     * {@link PigConfiguration#PIG_STREAMING_WORKERS}. Commands which read a
+     * file, write secondary outputs or persist their stderr run in one process
+     * since the workers would overwrite each other's files. So do commands
+     * reading grouped or sorted records, which have to get the records of a
+     * group together and in order.
+     */
+    private int getWorkerCount() {
+        int workers = Integer.parseInt(
+                properties.getProperty(PigConfiguration.PIG_STREAMING_WORKERS, "1"));
+        if (workers <= 1 || isInputGroupedOrSorted()) {
+            return 1;
+        }
+        List<HandleSpec> inputSpecs = command.getHandleSpecs(Handle.INPUT);
+        List<HandleSpec> outputSpecs = command.getHandleSpecs(Handle.OUTPUT);
+        if ((inputSpecs != null && inputSpecs.get(0) != null
+                    && !inputSpecs.get(0).getName().equals("stdin"))
+                || (outputSpecs != null && outputSpecs.get(0) != null
+                    && (outputSpecs.size() > 1 || !outputSpecs.get(0).getName().equals("stdout")))
+                || command.getPersistStderr()) {
+            return 1;
+        }
+        return workers;
+    }
+
+    /**
+     * Whether a package, which outputs the records of a group one after the
+     * other, or a sort is above the stream in its plan. The plan is not known
+     * outside of the plans set up for execution, in which case the stream is
+     * assumed to need its input in order.
+     */
+    private boolean isInputGroupedOrSorted() {
+        if (parentPlan == null) {
+            return true;
+        }
+        List<PhysicalOperator> todo = new ArrayList<PhysicalOperator>();
+        Set<PhysicalOperator> seen = new HashSet<PhysicalOperator>();
+        todo.add(this);
+        while (!todo.isEmpty()) {
+            PhysicalOperator op = todo.remove(todo.size() - 1);
+            if (op instanceof POPackage || op instanceof POSort || op instanceof POCollectedGroup
+                    || op instanceof POMergeCogroup) {
+                return true;
+            }
+            List<PhysicalOperator> preds = parentPlan.getPredecessors(op);
+            if (preds != null) {
+                for (PhysicalOperator pred : preds) {
+                    if (seen.add(pred)) {
+                        todo.add(pred);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
     @Override
     public String toString() {
         return getAliasString() + "POStream" + "[" + command.toString() + "]"
@@ -341,7 +432,12 @@ public class POStream extends PhysicalOperator {
      *
      */
     public void finish() throws IOException {
-        executableManager.close();
+        if (executableManagers == null) {
+            return;
+        }
+        for (ExecutableManager executableManager : executableManagers) {
+            executableManager.close();
+        }
     }
 
     /**
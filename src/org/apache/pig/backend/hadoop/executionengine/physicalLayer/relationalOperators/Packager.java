@@ -95,6 +95,7 @@ public class Packager implements Illustrable, Serializable, Cloneable {
 
     private transient boolean initialized;
     private transient boolean useDefaultBag;
+    private transient boolean useOffHeapBag;
 
     protected POPackage parent = null;
 
@@ -483,12 +484,17 @@ public class Packager implements Illustrable, Serializable, Cloneable {
                 String bagType = PigMapReduce.sJobConfInternal.get().get(PigConfiguration.PIG_CACHEDBAG_TYPE);
                 if (bagType != null && bagType.equalsIgnoreCase("default")) {
                     useDefaultBag = true;
+                } else if (bagType != null && bagType.equalsIgnoreCase("offheap")) {
+                    useOffHeapBag = true;
                 }
             }
         }
     }
 
     public DataBag getBag(){
+        if (useOffHeapBag) {
+            return mBagFactory.newOffHeapBag();
+        }
         return useDefaultBag ? mBagFactory.newDefaultBag()
                 // In a very rare case if there is a POStream after this
                 // POJoinPackage in the pipeline and is also blocking the pipeline;
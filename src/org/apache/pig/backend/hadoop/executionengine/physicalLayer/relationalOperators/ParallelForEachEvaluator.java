@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PigProgressable;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.plan.VisitorException;
+import org.apache.pig.impl.util.UDFContext;
+
+/**
+ * Evaluates a foreach on batches of input tuples with a pool of threads. Each
+ * thread has its own copy of the foreach, and so of the nested plans and UDF
+ * instances, and evaluates a contiguous part of the batch. The outputs are
+ * returned in the order of the input tuples.
+ */
+class ParallelForEachEvaluator {
+
+    private static final AtomicInteger POOL_ID = new AtomicInteger();
+
+    private final POForEach[] workers;
+    private final ExecutorService executor;
+    private final int batchSize;
+    private final List<Tuple> batch;
+    private Iterator<Tuple> output;
+
+    ParallelForEachEvaluator(POForEach foreach, int numThreads, int batchSize) throws ExecException {
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<Tuple>(batchSize);
+        workers = new POForEach[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            workers[i] = copy(foreach);
+        }
+        // The task state the UDFs may use is kept in thread locals
+        final UDFContext udfContext = UDFContext.getUDFContext();
+        final PigProgressable reporter = PhysicalOperator.getReporter();
+        final Configuration jobConf = PigMapReduce.sJobConfInternal.get();
+        final String name = "ForEach-" + POOL_ID.incrementAndGet() + "-";
+        executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        UDFContext.setUdfContext(udfContext);
+                        PhysicalOperator.setReporter(reporter);
+                        PigMapReduce.sJobConfInternal.set(jobConf);
+                        r.run();
+                    }
+                }, name + count++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private static POForEach copy(POForEach foreach) throws ExecException {
+        try {
+            POForEach copy = foreach.clone();
+            copy.setNumThreads(0, 0);
+            // Cloned UDFs are not given the signature of the original
+            for (PhysicalPlan plan : copy.getInputPlans()) {
+                for (POUserFunc func : PlanHelper.getPhysicalOperators(plan, POUserFunc.class)) {
+                    func.setSignature(func.getSignature());
+                    func.setFuncInputSchema();
+                }
+            }
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new ExecException("Unable to copy foreach " + foreach.getOperatorKey(), 2144, PigException.BUG, e);
+        } catch (VisitorException e) {
+            throw new ExecException(e);
+        }
+    }
+
+    /**
+     * @return true if the batch is full and must be evaluated
+     */
+    boolean add(Tuple t) {
+        batch.add(t);
+        return batch.size() >= batchSize;
+    }
+
+    boolean isEmpty() {
+        return batch.isEmpty();
+    }
+
+    /**
+     * Evaluate the buffered tuples. Their outputs are then returned by
+     * {@link #next()}.
+     */
+    void evaluate() throws ExecException {
+        int chunkSize = (batch.size() + workers.length - 1) / workers.length;
+        List<Future<List<Tuple>>> futures = new ArrayList<Future<List<Tuple>>>(workers.length);
+        for (int i = 0; i * chunkSize < batch.size(); i++) {
+            List<Tuple> chunk = batch.subList(i * chunkSize, Math.min(batch.size(), (i + 1) * chunkSize));
+            futures.add(executor.submit(new Evaluation(workers[i], chunk)));
+        }
+        List<Tuple> results = new ArrayList<Tuple>(batch.size());
+        try {
+            for (Future<List<Tuple>> future : futures) {
+                results.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecException(e);
+        } catch (ExecutionException e) {
+            for (Future<List<Tuple>> future : futures) {
+                future.cancel(true);
+            }
+            if (e.getCause() instanceof ExecException) {
+                throw (ExecException) e.getCause();
+            }
+            throw new ExecException(e.getCause());
+        } finally {
+            batch.clear();
+        }
+        output = results.iterator();
+    }
+
+    /**
+     * @return the next output of the evaluated tuples, or null if there is none
+     */
+    Tuple next() {
+        if (output != null && output.hasNext()) {
+            return output.next();
+        }
+        output = null;
+        return null;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class Evaluation implements Callable<List<Tuple>> {
+        private final POForEach foreach;
+        private final List<Tuple> input;
+
+        Evaluation(POForEach foreach, List<Tuple> input) {
+            this.foreach = foreach;
+            this.input = input;
+        }
+
+        @Override
+        public List<Tuple> call() throws ExecException {
+            List<Tuple> out = new ArrayList<Tuple>(input.size());
+            for (Tuple t : input) {
+                foreach.attachInput(t);
+                while (true) {
+                    Result res = foreach.getNextTuple();
+                    if (res.returnStatus == POStatus.STATUS_OK) {
+                        out.add((Tuple) res.result);
+                    } else if (res.returnStatus == POStatus.STATUS_EOP) {
+                        break;
+                    } else if (res.returnStatus == POStatus.STATUS_ERR) {
+                        throw new ExecException("Error while executing ForEach at "
+                                + foreach.getOriginalLocations() + ": " + res.result);
+                    }
+                }
+            }
+            return out;
+        }
+    }
+}
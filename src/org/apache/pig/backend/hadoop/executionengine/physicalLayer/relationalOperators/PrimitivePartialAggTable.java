@@ -0,0 +1,460 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.builtin.COUNT;
+import org.apache.pig.builtin.COUNT_STAR;
+import org.apache.pig.builtin.DoubleMax;
+import org.apache.pig.builtin.DoubleMin;
+import org.apache.pig.builtin.DoubleSum;
+import org.apache.pig.builtin.IntMax;
+import org.apache.pig.builtin.IntMin;
+import org.apache.pig.builtin.LongMax;
+import org.apache.pig.builtin.LongMin;
+import org.apache.pig.builtin.LongSum;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+/**
+ * In-map aggregation table used by {@link POPartialAgg} when the group key is
+ * an int, long or chararray and every value plan is the Intermediate stage of
+ * a builtin algebraic function whose intermediate state is a single number
+ * (COUNT, COUNT_STAR and the typed SUM, MIN and MAX functions).
+ * <p>
+ * Keys are stored in open-addressing primitive arrays and the intermediate
+ * states are folded in place as input arrives, so unlike the generic
+ * rawInputMap/processedInputMap path no key is boxed, no value list is kept
+ * and no tuple is retained per input record. Output tuples have exactly the
+ * shape and types produced by running the Intermediate functions, so the
+ * combiner and reducer plans are unchanged.
+ */
+public class PrimitivePartialAggTable {
+
+    private static final TupleFactory TUPLE_FACTORY = TupleFactory.getInstance();
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Estimated size of a String key and its char array, excluding the chars
+    private static final int STRING_OVERHEAD = 64;
+
+    /**
+     * The Intermediate functions that can be folded in place, with the java
+     * type of the value they put in their output tuple.
+     */
+    enum Fold {
+        COUNT(DataType.LONG),
+        LONG_SUM(DataType.LONG),
+        LONG_MIN(DataType.LONG),
+        LONG_MAX(DataType.LONG),
+        INT_MIN(DataType.INTEGER),
+        INT_MAX(DataType.INTEGER),
+        DOUBLE_SUM(DataType.DOUBLE),
+        DOUBLE_MIN(DataType.DOUBLE),
+        DOUBLE_MAX(DataType.DOUBLE);
+
+        private final byte resultType;
+
+        private Fold(byte resultType) {
+            this.resultType = resultType;
+        }
+
+        boolean isFloatingPoint() {
+            return resultType == DataType.DOUBLE;
+        }
+
+        static Fold forIntermediate(String className) {
+            if (className.equals(COUNT.Intermediate.class.getName())
+                    || className.equals(COUNT_STAR.Intermediate.class.getName())) {
+                return COUNT;
+            } else if (className.equals(LongSum.Intermediate.class.getName())) {
+                // IntSum inherits LongSum.Intermediate
+                return LONG_SUM;
+            } else if (className.equals(LongMin.Intermediate.class.getName())) {
+                return LONG_MIN;
+            } else if (className.equals(LongMax.Intermediate.class.getName())) {
+                return LONG_MAX;
+            } else if (className.equals(IntMin.Intermediate.class.getName())) {
+                return INT_MIN;
+            } else if (className.equals(IntMax.Intermediate.class.getName())) {
+                return INT_MAX;
+            } else if (className.equals(DoubleSum.Intermediate.class.getName())) {
+                // FloatSum inherits DoubleSum.Intermediate
+                return DOUBLE_SUM;
+            } else if (className.equals(DoubleMin.Intermediate.class.getName())) {
+                return DOUBLE_MIN;
+            } else if (className.equals(DoubleMax.Intermediate.class.getName())) {
+                return DOUBLE_MAX;
+            }
+            return null;
+        }
+    }
+
+    private final byte keyType;
+    private final boolean stringKeys;
+    private final int[] valueColumns;
+    private final Fold[] folds;
+
+    // Slot i of the key arrays is used if used[i] is set. The extra slot at
+    // index capacity holds the null key.
+    private int capacity;
+    private int mask;
+    private long[] longKeys;
+    private String[] strKeys;
+    private boolean[] used;
+    private long[][] longStates;
+    private double[][] doubleStates;
+    private boolean[][] seen;
+
+    private int size;
+    private long stringBytes;
+
+    // Position of the next slot to emit in nextResult()
+    private int emitPos = -1;
+
+    /**
+     * Create a table for the given key type and value plans, or return null
+     * if they are not supported and the generic path must be used.
+     * @param keyType data type of the group key
+     * @param valuePlans value plans of the POPartialAgg
+     * @return the table or null
+     * @throws ExecException
+     */
+    public static PrimitivePartialAggTable create(byte keyType,
+            List<PhysicalPlan> valuePlans) throws ExecException {
+        if (keyType != DataType.INTEGER && keyType != DataType.LONG
+                && keyType != DataType.CHARARRAY) {
+            return null;
+        }
+        if (valuePlans == null || valuePlans.isEmpty()) {
+            return null;
+        }
+        int[] columns = new int[valuePlans.size()];
+        Fold[] folds = new Fold[valuePlans.size()];
+        for (int i = 0; i < valuePlans.size(); i++) {
+            PhysicalPlan plan = valuePlans.get(i);
+            if (plan.size() != 2 || plan.getRoots().size() != 1 || plan.getLeaves().size() != 1) {
+                return null;
+            }
+            PhysicalOperator root = plan.getRoots().get(0);
+            PhysicalOperator leaf = plan.getLeaves().get(0);
+            if (!(root instanceof POProject) || !(leaf instanceof POUserFunc)) {
+                return null;
+            }
+            POProject proj = (POProject) root;
+            if (proj.isStar() || proj.isProjectToEnd() || proj.getColumns().size() != 1) {
+                return null;
+            }
+            Fold fold = Fold.forIntermediate(((POUserFunc) leaf).getFuncSpec().getClassName());
+            if (fold == null) {
+                return null;
+            }
+            columns[i] = proj.getColumn();
+            folds[i] = fold;
+        }
+        return new PrimitivePartialAggTable(keyType, columns, folds);
+    }
+
+    PrimitivePartialAggTable(byte keyType, int[] valueColumns, Fold[] folds) {
+        this.keyType = keyType;
+        this.stringKeys = (keyType == DataType.CHARARRAY);
+        this.valueColumns = valueColumns;
+        this.folds = folds;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        if (stringKeys) {
+            strKeys = new String[newCapacity + 1];
+        } else {
+            longKeys = new long[newCapacity + 1];
+        }
+        used = new boolean[newCapacity + 1];
+        longStates = new long[folds.length][];
+        doubleStates = new double[folds.length][];
+        seen = new boolean[folds.length][];
+        for (int i = 0; i < folds.length; i++) {
+            if (folds[i].isFloatingPoint()) {
+                doubleStates[i] = new double[newCapacity + 1];
+            } else {
+                longStates[i] = new long[newCapacity + 1];
+            }
+            seen[i] = new boolean[newCapacity + 1];
+        }
+    }
+
+    /**
+     * @return number of distinct keys currently held
+     */
+    public int size() {
+        return used[capacity] ? size + 1 : size;
+    }
+
+    /**
+     * @return estimated number of bytes held by the table
+     */
+    public long getMemorySize() {
+        // used flag, key reference or long, and a state and seen flag per value
+        long perSlot = 9 + 9 * folds.length;
+        return perSlot * (capacity + 1) + stringBytes;
+    }
+
+    /**
+     * Fold the intermediate inputs of one record into the state of its key.
+     * @param key group key, of the type the table was created with
+     * @param input tuple of the form (key, initialOutput1, initialOutput2, ...)
+     * @throws ExecException
+     */
+    public void add(Object key, Tuple input) throws ExecException {
+        if (emitPos >= 0) {
+            throw new ExecException("Illegal state. Adding to partial aggregation table while emitting results");
+        }
+        int slot = findSlot(key);
+        if (!used[slot]) {
+            used[slot] = true;
+            if (key != null) {
+                if (stringKeys) {
+                    strKeys[slot] = (String) key;
+                    stringBytes += STRING_OVERHEAD + 2 * ((String) key).length();
+                } else {
+                    longKeys[slot] = ((Number) key).longValue();
+                }
+                size++;
+            }
+            for (int i = 0; i < folds.length; i++) {
+                seed(i, slot);
+            }
+        }
+        for (int i = 0; i < folds.length; i++) {
+            Object val = ((Tuple) input.get(valueColumns[i])).get(0);
+            fold(i, slot, val);
+        }
+        if (size > (capacity >> 1) + (capacity >> 2)) {
+            rehash(capacity << 1);
+        }
+    }
+
+    private int findSlot(Object key) {
+        if (key == null) {
+            return capacity;
+        }
+        int slot;
+        if (stringKeys) {
+            String k = (String) key;
+            slot = mix(k.hashCode()) & mask;
+            while (used[slot] && !k.equals(strKeys[slot])) {
+                slot = (slot + 1) & mask;
+            }
+        } else {
+            long k = ((Number) key).longValue();
+            slot = mix(k) & mask;
+            while (used[slot] && longKeys[slot] != k) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        return slot;
+    }
+
+    private static int mix(long h) {
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void rehash(int newCapacity) {
+        int oldCapacity = capacity;
+        long[] oldLongKeys = longKeys;
+        String[] oldStrKeys = strKeys;
+        boolean[] oldUsed = used;
+        long[][] oldLongStates = longStates;
+        double[][] oldDoubleStates = doubleStates;
+        boolean[][] oldSeen = seen;
+        allocate(newCapacity);
+        for (int from = 0; from <= oldCapacity; from++) {
+            if (!oldUsed[from]) {
+                continue;
+            }
+            int to;
+            if (from == oldCapacity) {
+                to = capacity;
+            } else if (stringKeys) {
+                to = findSlot(oldStrKeys[from]);
+                strKeys[to] = oldStrKeys[from];
+            } else {
+                to = findSlot(oldLongKeys[from]);
+                longKeys[to] = oldLongKeys[from];
+            }
+            used[to] = true;
+            for (int i = 0; i < folds.length; i++) {
+                if (folds[i].isFloatingPoint()) {
+                    doubleStates[i][to] = oldDoubleStates[i][from];
+                } else {
+                    longStates[i][to] = oldLongStates[i][from];
+                }
+                seen[i][to] = oldSeen[i][from];
+            }
+        }
+    }
+
+    private void seed(int i, int slot) {
+        seen[i][slot] = false;
+        switch (folds[i]) {
+        case COUNT:
+        case LONG_SUM:
+            longStates[i][slot] = 0L;
+            break;
+        case LONG_MIN:
+        case INT_MIN:
+            longStates[i][slot] = Long.MAX_VALUE;
+            break;
+        case LONG_MAX:
+        case INT_MAX:
+            longStates[i][slot] = Long.MIN_VALUE;
+            break;
+        case DOUBLE_SUM:
+            doubleStates[i][slot] = 0.0;
+            break;
+        case DOUBLE_MIN:
+            doubleStates[i][slot] = Double.POSITIVE_INFINITY;
+            break;
+        case DOUBLE_MAX:
+            doubleStates[i][slot] = Double.NEGATIVE_INFINITY;
+            break;
+        }
+    }
+
+    private void fold(int i, int slot, Object val) {
+        if (val == null) {
+            return;
+        }
+        seen[i][slot] = true;
+        switch (folds[i]) {
+        case COUNT:
+        case LONG_SUM:
+            longStates[i][slot] += ((Number) val).longValue();
+            break;
+        case LONG_MIN:
+        case INT_MIN:
+            longStates[i][slot] = Math.min(longStates[i][slot], ((Number) val).longValue());
+            break;
+        case LONG_MAX:
+        case INT_MAX:
+            longStates[i][slot] = Math.max(longStates[i][slot], ((Number) val).longValue());
+            break;
+        case DOUBLE_SUM:
+            doubleStates[i][slot] += ((Number) val).doubleValue();
+            break;
+        case DOUBLE_MIN:
+            doubleStates[i][slot] = Math.min(doubleStates[i][slot], ((Number) val).doubleValue());
+            break;
+        case DOUBLE_MAX:
+            doubleStates[i][slot] = Math.max(doubleStates[i][slot], ((Number) val).doubleValue());
+            break;
+        }
+    }
+
+    private Object state(int i, int slot) {
+        if (folds[i] == Fold.COUNT) {
+            // COUNT and COUNT_STAR return 0 for an all null bag
+            return longStates[i][slot];
+        }
+        if (!seen[i][slot]) {
+            return null;
+        }
+        switch (folds[i].resultType) {
+        case DataType.INTEGER:
+            return (int) longStates[i][slot];
+        case DataType.LONG:
+            return longStates[i][slot];
+        default:
+            return doubleStates[i][slot];
+        }
+    }
+
+    private Object key(int slot) {
+        if (slot == capacity) {
+            return null;
+        } else if (stringKeys) {
+            return strKeys[slot];
+        } else if (keyType == DataType.INTEGER) {
+            return (int) longKeys[slot];
+        } else {
+            return longKeys[slot];
+        }
+    }
+
+    /**
+     * @return true if results are being emitted by {@link #nextResult()}
+     */
+    public boolean isEmitting() {
+        return emitPos >= 0;
+    }
+
+    /**
+     * Start emitting the aggregated results. Records can not be added till
+     * {@link #nextResult()} has returned null.
+     */
+    public void startEmit() {
+        if (emitPos < 0) {
+            emitPos = 0;
+        }
+    }
+
+    /**
+     * Return the next aggregated result in the form
+     * (key, intermediateOutput1, intermediateOutput2, ...), or null once all
+     * results have been returned, after which the table is empty.
+     * @return next result tuple or null
+     * @throws ExecException
+     */
+    public Tuple nextResult() throws ExecException {
+        while (emitPos <= capacity && !used[emitPos]) {
+            emitPos++;
+        }
+        if (emitPos > capacity) {
+            clear();
+            return null;
+        }
+        int slot = emitPos++;
+        Tuple output = TUPLE_FACTORY.newTuple(folds.length + 1);
+        output.set(0, key(slot));
+        for (int i = 0; i < folds.length; i++) {
+            output.set(i + 1, TUPLE_FACTORY.newTuple(state(i, slot)));
+        }
+        return output;
+    }
+
+    private void clear() {
+        Arrays.fill(used, false);
+        if (stringKeys) {
+            Arrays.fill(strKeys, null);
+        }
+        size = 0;
+        stringBytes = 0;
+        emitPos = -1;
+    }
+}
@@ -41,6 +41,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POCast;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POMapLookUp;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POMatchIndex;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONegative;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONot;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POOr;
@@ -387,6 +388,12 @@ public class PlanHelper {
             visit(negative);
         }
 
+        @Override
+        public void visitMatchIndex(POMatchIndex matchIndex) {
+            super.visitMatchIndex(matchIndex);
+            visit(matchIndex);
+        }
+
         @Override
         public void visitUserFunc(POUserFunc userFunc) throws VisitorException {
             super.visitUserFunc(userFunc);
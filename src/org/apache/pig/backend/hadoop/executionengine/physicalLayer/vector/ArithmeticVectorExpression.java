@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import org.apache.pig.PigWarning;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.data.DataType;
+
+/**
+ * Batch version of Add, Subtract, Multiply, Divide and Mod on int, long,
+ * float and double operands.
+ */
+public class ArithmeticVectorExpression extends VectorExpression {
+
+    public enum Op {
+        ADD, SUBTRACT, MULTIPLY, DIVIDE, MOD
+    }
+
+    private final Op op;
+
+    // Operator the divide by zero warnings are reported for
+    private final PhysicalOperator source;
+
+    private final VectorExpression lhs;
+
+    private final VectorExpression rhs;
+
+    private ColumnVector left;
+
+    private ColumnVector right;
+
+    private boolean[] rightSelected;
+
+    public ArithmeticVectorExpression(Op op, PhysicalOperator source, VectorExpression lhs,
+            VectorExpression rhs) {
+        super(source.getResultType());
+        this.op = op;
+        this.source = source;
+        this.lhs = lhs;
+        this.rhs = rhs;
+    }
+
+    public static boolean isSupported(Op op, byte type) {
+        switch (type) {
+        case DataType.INTEGER:
+        case DataType.LONG:
+            return true;
+        case DataType.FLOAT:
+        case DataType.DOUBLE:
+            return op != Op.MOD;
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public void evaluate(TupleBatch batch, boolean[] selected, ColumnVector out)
+            throws ExecException {
+        int size = batch.size();
+        left = ColumnVector.ensure(left, resultType, false, batch.capacity());
+        right = ColumnVector.ensure(right, resultType, false, batch.capacity());
+        lhs.evaluate(batch, selected, left);
+        // The right operand is not evaluated if the left one is null
+        rightSelected = selectNotNull(selected, left, size, rightSelected);
+        rhs.evaluate(batch, rightSelected, right);
+
+        for (int i = 0; i < size; i++) {
+            if (!rightSelected[i]) {
+                if (isSelected(selected, i)) {
+                    out.setNull(i);
+                }
+                continue;
+            }
+            if (right.isNull[i]) {
+                out.setNull(i);
+                continue;
+            }
+            switch (resultType) {
+            case DataType.INTEGER:
+                computeInt(i, (int) left.longs[i], (int) right.longs[i], out);
+                break;
+            case DataType.LONG:
+                computeLong(i, left.longs[i], right.longs[i], out);
+                break;
+            case DataType.FLOAT:
+                computeFloat(i, (float) left.doubles[i], (float) right.doubles[i], out);
+                break;
+            default:
+                computeDouble(i, left.doubles[i], right.doubles[i], out);
+            }
+        }
+    }
+
+    private void computeInt(int i, int a, int b, ColumnVector out) {
+        switch (op) {
+        case ADD:
+            out.setLong(i, a + b);
+            break;
+        case SUBTRACT:
+            out.setLong(i, a - b);
+            break;
+        case MULTIPLY:
+            out.setLong(i, a * b);
+            break;
+        case DIVIDE:
+            if (b == 0) {
+                divideByZero(i, out);
+            } else {
+                out.setLong(i, a / b);
+            }
+            break;
+        default:
+            out.setLong(i, a % b);
+        }
+    }
+
+    private void computeLong(int i, long a, long b, ColumnVector out) {
+        switch (op) {
+        case ADD:
+            out.setLong(i, a + b);
+            break;
+        case SUBTRACT:
+            out.setLong(i, a - b);
+            break;
+        case MULTIPLY:
+            out.setLong(i, a * b);
+            break;
+        case DIVIDE:
+            if (b == 0) {
+                divideByZero(i, out);
+            } else {
+                out.setLong(i, a / b);
+            }
+            break;
+        default:
+            out.setLong(i, a % b);
+        }
+    }
+
+    private void computeFloat(int i, float a, float b, ColumnVector out) {
+        switch (op) {
+        case ADD:
+            out.setDouble(i, a + b);
+            break;
+        case SUBTRACT:
+            out.setDouble(i, a - b);
+            break;
+        case MULTIPLY:
+            out.setDouble(i, a * b);
+            break;
+        default:
+            // Like Float.equals, only positive zero is zero
+            if (Float.floatToIntBits(b) == 0) {
+                divideByZero(i, out);
+            } else {
+                out.setDouble(i, a / b);
+            }
+        }
+    }
+
+    private void computeDouble(int i, double a, double b, ColumnVector out) {
+        switch (op) {
+        case ADD:
+            out.setDouble(i, a + b);
+            break;
+        case SUBTRACT:
+            out.setDouble(i, a - b);
+            break;
+        case MULTIPLY:
+            out.setDouble(i, a * b);
+            break;
+        default:
+            // Like Double.equals, only positive zero is zero
+            if (Double.doubleToLongBits(b) == 0L) {
+                divideByZero(i, out);
+            } else {
+                out.setDouble(i, a / b);
+            }
+        }
+    }
+
+    private void divideByZero(int i, ColumnVector out) {
+        if (PhysicalOperator.getPigLogger() != null) {
+            PhysicalOperator.getPigLogger().warn(source, "Divide by zero. Converting it to NULL.",
+                    PigWarning.DIVIDE_BY_ZERO);
+        }
+        out.setNull(i);
+    }
+}
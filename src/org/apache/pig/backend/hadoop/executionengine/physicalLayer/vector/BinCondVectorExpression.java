@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataType;
+
+/**
+ * Batch version of POBinCond. Each branch is only evaluated for the rows
+ * where the condition selects it.
+ */
+public class BinCondVectorExpression extends VectorExpression {
+
+    private final VectorExpression cond;
+
+    private final VectorExpression lhs;
+
+    private final VectorExpression rhs;
+
+    private ColumnVector condition;
+
+    private ColumnVector left;
+
+    private ColumnVector right;
+
+    private boolean[] leftSelected;
+
+    private boolean[] rightSelected;
+
+    public BinCondVectorExpression(byte resultType, VectorExpression cond, VectorExpression lhs,
+            VectorExpression rhs) {
+        super(resultType);
+        this.cond = cond;
+        this.lhs = lhs;
+        this.rhs = rhs;
+    }
+
+    @Override
+    public void evaluate(TupleBatch batch, boolean[] selected, ColumnVector out)
+            throws ExecException {
+        int size = batch.size();
+        int capacity = batch.capacity();
+        condition = ColumnVector.ensure(condition, DataType.BOOLEAN, false, capacity);
+        // The branches are stored like the output, so boxed values pass through
+        left = ColumnVector.ensure(left, resultType, out.isBoxed(), capacity);
+        right = ColumnVector.ensure(right, resultType, out.isBoxed(), capacity);
+        cond.evaluate(batch, selected, condition);
+
+        if (leftSelected == null || leftSelected.length < size) {
+            leftSelected = new boolean[capacity];
+            rightSelected = new boolean[capacity];
+        }
+        for (int i = 0; i < size; i++) {
+            boolean valid = isSelected(selected, i) && !condition.isNull[i];
+            leftSelected[i] = valid && condition.getBoolean(i);
+            rightSelected[i] = valid && !condition.getBoolean(i);
+        }
+        lhs.evaluate(batch, leftSelected, left);
+        rhs.evaluate(batch, rightSelected, right);
+
+        for (int i = 0; i < size; i++) {
+            if (leftSelected[i]) {
+                out.copy(i, left);
+            } else if (rightSelected[i]) {
+                out.copy(i, right);
+            } else if (isSelected(selected, i)) {
+                out.setNull(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.LoadCaster;
+import org.apache.pig.PigException;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POCast;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.impl.util.CastUtils;
+
+/**
+ * Batch version of POCast to int, long, float and double from those types,
+ * from chararray and from bytearray, and to chararray from bytearray.
+ * Bytearrays are converted with the load caster of the cast.
+ */
+public class CastVectorExpression extends VectorExpression {
+
+    private static final Log log = LogFactory.getLog(CastVectorExpression.class);
+
+    private final POCast cast;
+
+    private final byte inputType;
+
+    private final VectorExpression expr;
+
+    private final LoadCaster caster;
+
+    private ColumnVector in;
+
+    public CastVectorExpression(POCast cast, VectorExpression expr) throws ExecException {
+        super(cast.getResultType());
+        this.cast = cast;
+        this.inputType = expr.getResultType();
+        this.expr = expr;
+        try {
+            this.caster = cast.getLoadCaster();
+        } catch (IOException e) {
+            throw new ExecException(e);
+        }
+    }
+
+    public static boolean isSupported(byte inputType, byte resultType) {
+        switch (resultType) {
+        case DataType.INTEGER:
+        case DataType.LONG:
+        case DataType.FLOAT:
+        case DataType.DOUBLE:
+            break;
+        case DataType.CHARARRAY:
+            return inputType == DataType.BYTEARRAY;
+        default:
+            return false;
+        }
+        switch (inputType) {
+        case DataType.INTEGER:
+        case DataType.LONG:
+        case DataType.FLOAT:
+        case DataType.DOUBLE:
+        case DataType.CHARARRAY:
+        case DataType.BYTEARRAY:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    public void evaluate(TupleBatch batch, boolean[] selected, ColumnVector out)
+            throws ExecException {
+        int size = batch.size();
+        in = ColumnVector.ensure(in, inputType, false, batch.capacity());
+        expr.evaluate(batch, selected, in);
+
+        for (int i = 0; i < size; i++) {
+            if (!isSelected(selected, i)) {
+                continue;
+            }
+            if (in.isNull[i]) {
+                out.setNull(i);
+                continue;
+            }
+            switch (inputType) {
+            case DataType.INTEGER:
+            case DataType.LONG:
+                fromLong(i, in.longs[i], out);
+                break;
+            case DataType.FLOAT:
+            case DataType.DOUBLE:
+                fromDouble(i, in.doubles[i], out);
+                break;
+            case DataType.CHARARRAY:
+                out.set(i, fromString((String) in.objects[i]));
+                break;
+            default:
+                out.set(i, fromBytes(in.objects[i]));
+            }
+        }
+    }
+
+    private void fromLong(int i, long v, ColumnVector out) {
+        switch (resultType) {
+        case DataType.INTEGER:
+            out.setLong(i, (int) v);
+            break;
+        case DataType.LONG:
+            out.setLong(i, v);
+            break;
+        case DataType.FLOAT:
+            out.setDouble(i, (float) v);
+            break;
+        default:
+            out.setDouble(i, v);
+        }
+    }
+
+    private void fromDouble(int i, double v, ColumnVector out) {
+        // A float widened to double converts to the same int, long and float
+        switch (resultType) {
+        case DataType.INTEGER:
+            out.setLong(i, (int) v);
+            break;
+        case DataType.LONG:
+            out.setLong(i, (long) v);
+            break;
+        case DataType.FLOAT:
+            out.setDouble(i, (float) v);
+            break;
+        default:
+            out.setDouble(i, v);
+        }
+    }
+
+    private Object fromBytes(Object o) throws ExecException {
+        if (!(o instanceof DataByteArray)) {
+            // Not really a bytearray, like the output of a UDF without a
+            // declared schema
+            switch (resultType) {
+            case DataType.INTEGER:
+                return DataType.toInteger(o);
+            case DataType.LONG:
+                return DataType.toLong(o);
+            case DataType.FLOAT:
+                return DataType.toFloat(o);
+            case DataType.DOUBLE:
+                return DataType.toDouble(o);
+            default:
+                return DataType.toString(o);
+            }
+        }
+        if (caster == null) {
+            int errCode = 1075;
+            String msg = "Received a bytearray from the UDF or Union from two different Loaders. "
+                    + "Cannot determine how to convert the bytearray to "
+                    + DataType.findTypeName(resultType) + " for " + cast.getOriginalLocations();
+            throw new ExecException(msg, errCode, PigException.INPUT);
+        }
+        byte[] bytes = ((DataByteArray) o).get();
+        try {
+            switch (resultType) {
+            case DataType.INTEGER:
+                return caster.bytesToInteger(bytes);
+            case DataType.LONG:
+                return caster.bytesToLong(bytes);
+            case DataType.FLOAT:
+                return caster.bytesToFloat(bytes);
+            case DataType.DOUBLE:
+                return caster.bytesToDouble(bytes);
+            default:
+                return caster.bytesToCharArray(bytes);
+            }
+        } catch (IOException e) {
+            log.error("Error while casting from ByteArray to " + DataType.findTypeName(resultType));
+            return null;
+        }
+    }
+
+    private Object fromString(String s) {
+        switch (resultType) {
+        case DataType.INTEGER:
+            return CastUtils.stringToInteger(s);
+        case DataType.LONG:
+            return CastUtils.stringToLong(s);
+        case DataType.FLOAT:
+            return CastUtils.stringToFloat(s);
+        default:
+            return CastUtils.stringToDouble(s);
+        }
+    }
+}
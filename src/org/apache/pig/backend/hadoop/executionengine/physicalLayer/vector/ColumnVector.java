@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import java.util.Arrays;
+
+import org.apache.pig.data.DataType;
+
+/**
+ * The values of one expression for all the tuples of a {@link TupleBatch}.
+ * <p>
+ * Integer, long and boolean values are stored in a long array and float and
+ * double values in a double array, so expressions on them do not box. All
+ * other types, and vectors created as boxed, store the values as objects.
+ * Boxed vectors are used where the value is passed on as is, so a value
+ * that does not match the declared type is not rejected, as it would not be
+ * when executing a tuple at a time.
+ */
+public class ColumnVector {
+
+    static final byte LONGS = 0;
+    static final byte DOUBLES = 1;
+    static final byte OBJECTS = 2;
+
+    private final byte type;
+
+    private final byte storage;
+
+    long[] longs;
+
+    double[] doubles;
+
+    Object[] objects;
+
+    final boolean[] isNull;
+
+    public ColumnVector(byte type, boolean boxed, int capacity) {
+        this.type = type;
+        this.storage = boxed ? OBJECTS : storageFor(type);
+        switch (storage) {
+        case LONGS:
+            longs = new long[capacity];
+            break;
+        case DOUBLES:
+            doubles = new double[capacity];
+            break;
+        default:
+            objects = new Object[capacity];
+        }
+        isNull = new boolean[capacity];
+    }
+
+    static byte storageFor(byte type) {
+        switch (type) {
+        case DataType.INTEGER:
+        case DataType.LONG:
+        case DataType.BOOLEAN:
+            return LONGS;
+        case DataType.FLOAT:
+        case DataType.DOUBLE:
+            return DOUBLES;
+        default:
+            return OBJECTS;
+        }
+    }
+
+    /**
+     * Return the given vector if it matches the type, storage and capacity
+     * requested, or a new vector otherwise.
+     */
+    static ColumnVector ensure(ColumnVector v, byte type, boolean boxed, int capacity) {
+        byte storage = boxed ? OBJECTS : storageFor(type);
+        if (v != null && v.type == type && v.storage == storage && v.capacity() >= capacity) {
+            return v;
+        }
+        return new ColumnVector(type, boxed, capacity);
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public boolean isBoxed() {
+        return storage == OBJECTS && storageFor(type) != OBJECTS;
+    }
+
+    byte getStorage() {
+        return storage;
+    }
+
+    public int capacity() {
+        return isNull.length;
+    }
+
+    public boolean isNull(int i) {
+        return isNull[i];
+    }
+
+    public void setNull(int i) {
+        isNull[i] = true;
+        if (storage == OBJECTS) {
+            objects[i] = null;
+        }
+    }
+
+    public void setLong(int i, long v) {
+        isNull[i] = false;
+        if (storage == LONGS) {
+            longs[i] = v;
+        } else {
+            switch (type) {
+            case DataType.INTEGER:
+                objects[i] = Integer.valueOf((int) v);
+                break;
+            case DataType.BOOLEAN:
+                objects[i] = Boolean.valueOf(v != 0);
+                break;
+            default:
+                objects[i] = Long.valueOf(v);
+            }
+        }
+    }
+
+    public void setBoolean(int i, boolean v) {
+        setLong(i, v ? 1 : 0);
+    }
+
+    public void setDouble(int i, double v) {
+        isNull[i] = false;
+        if (storage == DOUBLES) {
+            doubles[i] = v;
+        } else if (type == DataType.FLOAT) {
+            objects[i] = Float.valueOf((float) v);
+        } else {
+            objects[i] = Double.valueOf(v);
+        }
+    }
+
+    /**
+     * Set a value from its object form. For unboxed numeric and boolean
+     * vectors the value must be of the java class of the vector type.
+     */
+    public void set(int i, Object o) {
+        if (o == null) {
+            setNull(i);
+            return;
+        }
+        isNull[i] = false;
+        switch (storage) {
+        case LONGS:
+            switch (type) {
+            case DataType.INTEGER:
+                longs[i] = (Integer) o;
+                break;
+            case DataType.BOOLEAN:
+                longs[i] = ((Boolean) o) ? 1 : 0;
+                break;
+            default:
+                longs[i] = (Long) o;
+            }
+            break;
+        case DOUBLES:
+            if (type == DataType.FLOAT) {
+                doubles[i] = (Float) o;
+            } else {
+                doubles[i] = (Double) o;
+            }
+            break;
+        default:
+            objects[i] = o;
+        }
+    }
+
+    /**
+     * Copy row i of another vector of the same type into row i of this one.
+     */
+    public void copy(int i, ColumnVector src) {
+        if (src.isNull[i]) {
+            setNull(i);
+            return;
+        }
+        switch (src.storage) {
+        case LONGS:
+            setLong(i, src.longs[i]);
+            break;
+        case DOUBLES:
+            setDouble(i, src.doubles[i]);
+            break;
+        default:
+            set(i, src.objects[i]);
+        }
+    }
+
+    public long getLong(int i) {
+        return longs[i];
+    }
+
+    public boolean getBoolean(int i) {
+        return longs[i] != 0;
+    }
+
+    public double getDouble(int i) {
+        return doubles[i];
+    }
+
+    /**
+     * @return the value of row i in the object form it would have when
+     * executing a tuple at a time
+     */
+    public Object get(int i) {
+        if (isNull[i]) {
+            return null;
+        }
+        switch (storage) {
+        case LONGS:
+            switch (type) {
+            case DataType.INTEGER:
+                return Integer.valueOf((int) longs[i]);
+            case DataType.BOOLEAN:
+                return Boolean.valueOf(longs[i] != 0);
+            default:
+                return Long.valueOf(longs[i]);
+            }
+        case DOUBLES:
+            if (type == DataType.FLOAT) {
+                return Float.valueOf((float) doubles[i]);
+            }
+            return Double.valueOf(doubles[i]);
+        default:
+            return objects[i];
+        }
+    }
+
+    /**
+     * Release the references to objects held by the vector.
+     */
+    public void clear(int size) {
+        if (objects != null) {
+            Arrays.fill(objects, 0, size, null);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataType;
+
+/**
+ * Batch version of the binary comparison operators. Values are compared
+ * like their java objects are by {@link Comparable#compareTo}, and the
+ * result is null if either operand is null.
+ */
+public class ComparisonVectorExpression extends VectorExpression {
+
+    public enum Op {
+        EQ, NE, LT, LTE, GT, GTE
+    }
+
+    private final Op op;
+
+    private final byte operandType;
+
+    private final VectorExpression lhs;
+
+    private final VectorExpression rhs;
+
+    private ColumnVector left;
+
+    private ColumnVector right;
+
+    public ComparisonVectorExpression(Op op, byte operandType, VectorExpression lhs,
+            VectorExpression rhs) {
+        super(DataType.BOOLEAN);
+        this.op = op;
+        this.operandType = operandType;
+        this.lhs = lhs;
+        this.rhs = rhs;
+    }
+
+    public static boolean isSupported(byte operandType) {
+        switch (operandType) {
+        case DataType.INTEGER:
+        case DataType.LONG:
+        case DataType.FLOAT:
+        case DataType.DOUBLE:
+        case DataType.BOOLEAN:
+        case DataType.CHARARRAY:
+        case DataType.BYTEARRAY:
+        case DataType.DATETIME:
+        case DataType.BIGINTEGER:
+        case DataType.BIGDECIMAL:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void evaluate(TupleBatch batch, boolean[] selected, ColumnVector out)
+            throws ExecException {
+        int size = batch.size();
+        left = ColumnVector.ensure(left, operandType, false, batch.capacity());
+        right = ColumnVector.ensure(right, operandType, false, batch.capacity());
+        lhs.evaluate(batch, selected, left);
+        rhs.evaluate(batch, selected, right);
+
+        byte storage = left.getStorage();
+        for (int i = 0; i < size; i++) {
+            if (!isSelected(selected, i)) {
+                continue;
+            }
+            if (left.isNull[i] || right.isNull[i]) {
+                out.setNull(i);
+                continue;
+            }
+            int c;
+            switch (storage) {
+            case ColumnVector.LONGS:
+                c = Long.compare(left.longs[i], right.longs[i]);
+                break;
+            case ColumnVector.DOUBLES:
+                c = Double.compare(left.doubles[i], right.doubles[i]);
+                break;
+            default:
+                c = ((Comparable<Object>) left.objects[i]).compareTo(right.objects[i]);
+            }
+            out.setBoolean(i, test(c));
+        }
+    }
+
+    private boolean test(int c) {
+        switch (op) {
+        case EQ:
+            return c == 0;
+        case NE:
+            return c != 0;
+        case LT:
+            return c < 0;
+        case LTE:
+            return c <= 0;
+        case GT:
+            return c > 0;
+        default:
+            return c >= 0;
+        }
+    }
+}
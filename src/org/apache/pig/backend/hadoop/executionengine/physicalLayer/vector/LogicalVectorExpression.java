@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataType;
+
+/**
+ * Batch version of POAnd and POOr, with the same three valued logic and
+ * short circuit: the right operand is only evaluated for the rows where
+ * the left operand does not decide the result.
+ */
+public class LogicalVectorExpression extends VectorExpression {
+
+    private final boolean isAnd;
+
+    private final VectorExpression lhs;
+
+    private final VectorExpression rhs;
+
+    private ColumnVector left;
+
+    private ColumnVector right;
+
+    private boolean[] rightSelected;
+
+    public LogicalVectorExpression(boolean isAnd, VectorExpression lhs, VectorExpression rhs) {
+        super(DataType.BOOLEAN);
+        this.isAnd = isAnd;
+        this.lhs = lhs;
+        this.rhs = rhs;
+    }
+
+    @Override
+    public void evaluate(TupleBatch batch, boolean[] selected, ColumnVector out)
+            throws ExecException {
+        int size = batch.size();
+        left = ColumnVector.ensure(left, DataType.BOOLEAN, false, batch.capacity());
+        right = ColumnVector.ensure(right, DataType.BOOLEAN, false, batch.capacity());
+        lhs.evaluate(batch, selected, left);
+
+        // AND is decided by a false left operand, OR by a true one
+        if (rightSelected == null || rightSelected.length < size) {
+            rightSelected = new boolean[batch.capacity()];
+        }
+        for (int i = 0; i < size; i++) {
+            rightSelected[i] = isSelected(selected, i)
+                    && (left.isNull[i] || left.getBoolean(i) == isAnd);
+        }
+        rhs.evaluate(batch, rightSelected, right);
+
+        for (int i = 0; i < size; i++) {
+            if (!isSelected(selected, i)) {
+                continue;
+            }
+            if (!rightSelected[i]) {
+                out.setBoolean(i, !isAnd);
+            } else if (right.isNull[i]) {
+                out.setNull(i);
+            } else if (left.isNull[i] && right.getBoolean(i) == isAnd) {
+                // null AND true, null OR false
+                out.setNull(i);
+            } else {
+                out.setBoolean(i, right.getBoolean(i));
+            }
+        }
+    }
+}
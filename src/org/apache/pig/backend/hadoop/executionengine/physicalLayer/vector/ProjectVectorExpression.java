@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import org.apache.pig.PigWarning;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.data.Tuple;
+
+/**
+ * Batch version of {@link POProject} for the projection of a single column of
+ * the input tuple.
+ */
+public class ProjectVectorExpression extends VectorExpression {
+
+    private final POProject project;
+
+    private final int column;
+
+    public ProjectVectorExpression(POProject project) throws ExecException {
+        super(project.getResultType());
+        this.project = project;
+        this.column = project.getColumn();
+    }
+
+    @Override
+    public void evaluate(TupleBatch batch, boolean[] selected, ColumnVector out)
+            throws ExecException {
+        int size = batch.size();
+        for (int i = 0; i < size; i++) {
+            if (!isSelected(selected, i)) {
+                continue;
+            }
+            Tuple t = batch.get(i);
+            if (t == null) {
+                out.setNull(i);
+            } else if (t.size() > column) {
+                out.set(i, t.get(column));
+            } else {
+                if (PhysicalOperator.getPigLogger() != null) {
+                    PhysicalOperator.getPigLogger().warn(project, "Attempt to access field " +
+                            "which was not found in the input", PigWarning.ACCESSING_NON_EXISTENT_FIELD);
+                }
+                out.setNull(i);
+            }
+        }
+    }
+}
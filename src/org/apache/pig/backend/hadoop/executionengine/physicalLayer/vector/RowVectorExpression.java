@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import org.apache.pig.PigException;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+
+/**
+ * Evaluates an expression operator that has no batch version, like a UDF,
+ * a tuple at a time. The input of each selected row is attached to the
+ * plan the operator belongs to and the operator is called as it would be by
+ * its parent.
+ */
+public class RowVectorExpression extends VectorExpression {
+
+    private final PhysicalPlan plan;
+
+    private final ExpressionOperator op;
+
+    public RowVectorExpression(PhysicalPlan plan, ExpressionOperator op) {
+        super(op.getResultType());
+        this.plan = plan;
+        this.op = op;
+    }
+
+    @Override
+    public void evaluate(TupleBatch batch, boolean[] selected, ColumnVector out)
+            throws ExecException {
+        int size = batch.size();
+        try {
+            for (int i = 0; i < size; i++) {
+                if (!isSelected(selected, i)) {
+                    continue;
+                }
+                plan.attachInput(batch.get(i));
+                Result res = op.getNext(resultType);
+                if (res.returnStatus == POStatus.STATUS_OK) {
+                    out.set(i, res.result);
+                } else if (res.returnStatus == POStatus.STATUS_ERR) {
+                    int errCode = 2273;
+                    String msg = "Error while evaluating " + op.name() + " in batch mode";
+                    throw new ExecException(msg, errCode, PigException.BUG);
+                } else {
+                    out.setNull(i);
+                }
+            }
+        } finally {
+            plan.detachInput();
+        }
+    }
+}
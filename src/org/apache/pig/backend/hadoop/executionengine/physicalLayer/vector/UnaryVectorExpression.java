@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataType;
+
+/**
+ * Batch version of PONot, POIsNull and PONegative.
+ */
+public class UnaryVectorExpression extends VectorExpression {
+
+    public enum Op {
+        NOT, IS_NULL, NEGATIVE
+    }
+
+    private final Op op;
+
+    private final VectorExpression expr;
+
+    private ColumnVector in;
+
+    public UnaryVectorExpression(Op op, byte resultType, VectorExpression expr) {
+        super(resultType);
+        this.op = op;
+        this.expr = expr;
+    }
+
+    public static boolean isSupported(Op op, byte type) {
+        switch (op) {
+        case NEGATIVE:
+            return ColumnVector.storageFor(type) != ColumnVector.OBJECTS
+                    && type != DataType.BOOLEAN;
+        default:
+            return true;
+        }
+    }
+
+    @Override
+    public void evaluate(TupleBatch batch, boolean[] selected, ColumnVector out)
+            throws ExecException {
+        int size = batch.size();
+        // Only the nullness of the operand of is null matters, so its value
+        // is kept as is
+        in = ColumnVector.ensure(in, expr.getResultType(), op == Op.IS_NULL, batch.capacity());
+        expr.evaluate(batch, selected, in);
+
+        for (int i = 0; i < size; i++) {
+            if (!isSelected(selected, i)) {
+                continue;
+            }
+            if (op == Op.IS_NULL) {
+                out.setBoolean(i, in.isNull[i]);
+            } else if (in.isNull[i]) {
+                out.setNull(i);
+            } else if (op == Op.NOT) {
+                out.setBoolean(i, !in.getBoolean(i));
+            } else {
+                switch (resultType) {
+                case DataType.INTEGER:
+                    out.setLong(i, -1 * (int) in.longs[i]);
+                    break;
+                case DataType.LONG:
+                    out.setLong(i, -1 * in.longs[i]);
+                    break;
+                case DataType.FLOAT:
+                    out.setDouble(i, -1 * (float) in.doubles[i]);
+                    break;
+                default:
+                    out.setDouble(i, -1 * in.doubles[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import org.apache.pig.backend.executionengine.ExecException;
+
+/**
+ * Batch counterpart of an expression operator. It computes the value of the
+ * expression for all the tuples of a {@link TupleBatch} into a
+ * {@link ColumnVector}.
+ * <p>
+ * The selection passed to {@link #evaluate} marks the rows that need to be
+ * computed; the other rows of the output are left undefined. Operators that
+ * do not evaluate all their operands for every tuple, like AND, OR, bincond
+ * and arithmetic on null, narrow the selection for their operands, so an
+ * operand is evaluated on exactly the tuples it would have been evaluated on
+ * when executing a tuple at a time.
+ */
+public abstract class VectorExpression {
+
+    protected final byte resultType;
+
+    protected VectorExpression(byte resultType) {
+        this.resultType = resultType;
+    }
+
+    public byte getResultType() {
+        return resultType;
+    }
+
+    /**
+     * Compute the expression for the selected rows of the batch.
+     * @param batch input tuples
+     * @param selected rows to compute, or null for all the rows of the batch
+     * @param out vector to store the results in, of the result type of the
+     * expression
+     * @throws ExecException
+     */
+    public abstract void evaluate(TupleBatch batch, boolean[] selected, ColumnVector out)
+            throws ExecException;
+
+    protected static boolean isSelected(boolean[] selected, int i) {
+        return selected == null || selected[i];
+    }
+
+    /**
+     * Build the selection of rows that are selected and not null in the given
+     * vector.
+     */
+    protected static boolean[] selectNotNull(boolean[] selected, ColumnVector v, int size,
+            boolean[] sel) {
+        if (sel == null || sel.length < size) {
+            sel = new boolean[v.capacity()];
+        }
+        for (int i = 0; i < size; i++) {
+            sel[i] = isSelected(selected, i) && !v.isNull[i];
+        }
+        return sel;
+    }
+}
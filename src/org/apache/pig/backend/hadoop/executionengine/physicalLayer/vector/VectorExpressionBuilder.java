@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector;
+
+import java.util.List;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Add;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.BinaryComparisonOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.BinaryExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Divide;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.EqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GTOrEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.GreaterThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.LTOrEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.LessThanExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Mod;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Multiply;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.NotEqualToExpr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POAnd;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POBinCond;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POCast;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONegative;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONot;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POOr;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Subtract;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.UnaryComparisonOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.UnaryExpressionOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.data.DataType;
+
+/**
+ * Translates an expression plan into a tree of {@link VectorExpression}s.
+ * Operators with a batch version are translated to it, any other expression
+ * operator is wrapped in a {@link RowVectorExpression}.
+ */
+public class VectorExpressionBuilder {
+
+    private final PhysicalPlan plan;
+
+    // Number of operators translated to their batch version
+    private int numVectorized = 0;
+
+    public VectorExpressionBuilder(PhysicalPlan plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * Check whether a plan can be evaluated in batch mode. The plan must have
+     * a single leaf and contain expression operators only.
+     * @param plan expression plan
+     * @return true if the plan can be evaluated in batch mode
+     */
+    public static boolean isSupported(PhysicalPlan plan) throws ExecException {
+        List<PhysicalOperator> leaves = plan.getLeaves();
+        if (leaves == null || leaves.size() != 1) {
+            return false;
+        }
+        for (PhysicalOperator op : plan) {
+            if (!(op instanceof ExpressionOperator)) {
+                return false;
+            }
+            if (op instanceof POProject && op.getClass() != POProject.class) {
+                // Projections of relations in nested plans keep state
+                // between calls
+                return false;
+            }
+            if (op instanceof POUserFunc && ((POUserFunc) op).needEndOfAllInputProcessing()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the batch expression for the leaf of the plan
+     */
+    public VectorExpression build() throws ExecException {
+        return build(plan.getLeaves().get(0));
+    }
+
+    /**
+     * @return number of operators translated to their batch version by
+     * {@link #build()}
+     */
+    public int getNumVectorized() {
+        return numVectorized;
+    }
+
+    private VectorExpression build(PhysicalOperator po) throws ExecException {
+        ExpressionOperator op = (ExpressionOperator) po;
+        VectorExpression expr = translate(op);
+        if (expr == null) {
+            return new RowVectorExpression(plan, op);
+        }
+        numVectorized++;
+        return expr;
+    }
+
+    private VectorExpression translate(ExpressionOperator op) throws ExecException {
+        Class<?> c = op.getClass();
+        byte type = op.getResultType();
+
+        if (c == POProject.class) {
+            POProject project = (POProject) op;
+            if (project.isProjectToEnd() || project.getColumns().size() != 1
+                    || project.isOverloaded() || plan.getPredecessors(project) != null
+                    || type == DataType.BAG || type == DataType.TUPLE) {
+                return null;
+            }
+            return new ProjectVectorExpression(project);
+        }
+        if (c == ConstantExpression.class) {
+            return new ConstantVectorExpression((ConstantExpression) op);
+        }
+        if (c == POAnd.class || c == POOr.class) {
+            BinaryExpressionOperator bin = (BinaryExpressionOperator) op;
+            if (!hasType(bin.getLhs(), DataType.BOOLEAN) || !hasType(bin.getRhs(), DataType.BOOLEAN)) {
+                return null;
+            }
+            return new LogicalVectorExpression(c == POAnd.class, build(bin.getLhs()),
+                    build(bin.getRhs()));
+        }
+        ComparisonVectorExpression.Op cmp = comparisonOp(c);
+        if (cmp != null) {
+            BinaryComparisonOperator bin = (BinaryComparisonOperator) op;
+            byte operandType = bin.getOperandType();
+            if (!ComparisonVectorExpression.isSupported(operandType)
+                    || !hasType(bin.getLhs(), operandType) || !hasType(bin.getRhs(), operandType)) {
+                return null;
+            }
+            return new ComparisonVectorExpression(cmp, operandType, build(bin.getLhs()),
+                    build(bin.getRhs()));
+        }
+        ArithmeticVectorExpression.Op arith = arithmeticOp(c);
+        if (arith != null) {
+            BinaryExpressionOperator bin = (BinaryExpressionOperator) op;
+            if (!ArithmeticVectorExpression.isSupported(arith, type)
+                    || !hasType(bin.getLhs(), type) || !hasType(bin.getRhs(), type)) {
+                return null;
+            }
+            return new ArithmeticVectorExpression(arith, op, build(bin.getLhs()),
+                    build(bin.getRhs()));
+        }
+        if (c == PONot.class) {
+            ExpressionOperator in = ((UnaryComparisonOperator) op).getExpr();
+            if (!hasType(in, DataType.BOOLEAN)) {
+                return null;
+            }
+            return new UnaryVectorExpression(UnaryVectorExpression.Op.NOT, DataType.BOOLEAN, build(in));
+        }
+        if (c == POIsNull.class) {
+            ExpressionOperator in = ((UnaryComparisonOperator) op).getExpr();
+            return new UnaryVectorExpression(UnaryVectorExpression.Op.IS_NULL, DataType.BOOLEAN, build(in));
+        }
+        if (c == PONegative.class) {
+            ExpressionOperator in = ((UnaryExpressionOperator) op).getExpr();
+            if (!UnaryVectorExpression.isSupported(UnaryVectorExpression.Op.NEGATIVE, type)
+                    || !hasType(in, type)) {
+                return null;
+            }
+            return new UnaryVectorExpression(UnaryVectorExpression.Op.NEGATIVE, type, build(in));
+        }
+        if (c == POCast.class) {
+            PhysicalOperator in = op.getInputs().get(0);
+            if (!CastVectorExpression.isSupported(in.getResultType(), type)) {
+                return null;
+            }
+            return new CastVectorExpression((POCast) op, build(in));
+        }
+        if (c == POBinCond.class) {
+            POBinCond binCond = (POBinCond) op;
+            if (!hasType(binCond.getCond(), DataType.BOOLEAN)
+                    || !hasType(binCond.getLhs(), type) || !hasType(binCond.getRhs(), type)) {
+                return null;
+            }
+            return new BinCondVectorExpression(type, build(binCond.getCond()),
+                    build(binCond.getLhs()), build(binCond.getRhs()));
+        }
+        return null;
+    }
+
+    private static boolean hasType(PhysicalOperator op, byte type) {
+        return op != null && op.getResultType() == type;
+    }
+
+    private static ComparisonVectorExpression.Op comparisonOp(Class<?> c) {
+        if (c == EqualToExpr.class) {
+            return ComparisonVectorExpression.Op.EQ;
+        } else if (c == NotEqualToExpr.class) {
+            return ComparisonVectorExpression.Op.NE;
+        } else if (c == LessThanExpr.class) {
+            return ComparisonVectorExpression.Op.LT;
+        } else if (c == LTOrEqualToExpr.class) {
+            return ComparisonVectorExpression.Op.LTE;
+        } else if (c == GreaterThanExpr.class) {
+            return ComparisonVectorExpression.Op.GT;
+        } else if (c == GTOrEqualToExpr.class) {
+            return ComparisonVectorExpression.Op.GTE;
+        }
+        return null;
+    }
+
+    private static ArithmeticVectorExpression.Op arithmeticOp(Class<?> c) {
+        if (c == Add.class) {
+            return ArithmeticVectorExpression.Op.ADD;
+        } else if (c == Subtract.class) {
+            return ArithmeticVectorExpression.Op.SUBTRACT;
+        } else if (c == Multiply.class) {
+            return ArithmeticVectorExpression.Op.MULTIPLY;
+        } else if (c == Divide.class) {
+            return ArithmeticVectorExpression.Op.DIVIDE;
+        } else if (c == Mod.class) {
+            return ArithmeticVectorExpression.Op.MOD;
+        }
+        return null;
+    }
+}
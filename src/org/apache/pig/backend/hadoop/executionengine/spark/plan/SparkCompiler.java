@@ -651,6 +651,10 @@ public class SparkCompiler extends PhyPlanVisitor {
     public void visitGlobalRearrange(POGlobalRearrange op)
             throws VisitorException {
         try {
+            if (op.isSkewed()) {
+                LOG.warn("Skewed group " + op.getAlias() + " is run as a regular group because "
+                        + "skewed groups are not supported in Spark mode");
+            }
             POGlobalRearrangeSpark glbOp = new POGlobalRearrangeSpark(op);
             addToPlan(glbOp);
             if (op.isCross()) {
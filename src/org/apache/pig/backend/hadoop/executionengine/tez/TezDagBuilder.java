@@ -82,15 +82,18 @@ import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigTextRawCo
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigTupleSortComparator;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigWritableComparators;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.partitioners.SecondaryKeyPartitioner;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.AsyncForEachSetter;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.EndOfAllInputSetter;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POSplit;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.Packager.PackageType;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.TezEdgeDescriptor;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.TezOpPlanVisitor;
@@ -98,10 +101,13 @@ import org.apache.pig.backend.hadoop.executionengine.tez.plan.TezOperPlan;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.TezOperator;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.TezPOPackageAnnotator.LoRearrangeDiscoverer;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POLocalRearrangeTez;
+import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POSampleShuffleTezLoad;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POShuffleTezLoad;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POStoreTez;
 import org.apache.pig.backend.hadoop.executionengine.tez.runtime.PartitionerDefinedVertexManager;
+import org.apache.pig.backend.hadoop.executionengine.tez.runtime.PigBroadcastJoinVertexManager;
 import org.apache.pig.backend.hadoop.executionengine.tez.runtime.PigGraceShuffleVertexManager;
+import org.apache.pig.backend.hadoop.executionengine.tez.runtime.PigSampleAggregationVertexManager;
 import org.apache.pig.backend.hadoop.executionengine.tez.runtime.PigInputFormatTez;
 import org.apache.pig.backend.hadoop.executionengine.tez.runtime.PigOutputFormatTez;
 import org.apache.pig.backend.hadoop.executionengine.tez.runtime.PigProcessor;
@@ -589,6 +595,32 @@ public class TezDagBuilder extends TezOpPlanVisitor {
                 edge.schedulingType, out, in);
     }
 
+    /**
+     * @return the fraction of the sampling tasks of an order by whose samples
+     * are used by the sample aggregation vertex tezOp, 1 if tezOp is not one
+     * or the samples of all the tasks are used
+     */
+    private float getSampledTaskFraction(TezOperator tezOp) {
+        if (tezOp.isSampleAggregation() && tezOp.getSortOperator() != null) {
+            float sampledTaskFraction = pigContextConf.getFloat(
+                    PigConfiguration.PIG_TEZ_ORDERBY_SAMPLED_TASK_FRACTION, 1);
+            if (sampledTaskFraction > 0 && sampledTaskFraction < 1) {
+                return sampledTaskFraction;
+            }
+        }
+        return 1;
+    }
+
+    private static boolean hasOneToOneOutEdge(TezOperator tezOp) {
+        // The parallelism of one-to-one successors follows the compiled one
+        for (TezEdgeDescriptor edge : tezOp.outEdges.values()) {
+            if (edge.dataMovementType == DataMovementType.ONE_TO_ONE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void addCombiner(PhysicalPlan combinePlan, TezOperator pkgTezOp,
             Configuration conf, boolean isMergedInput) throws IOException {
         POPackage combPack = (POPackage) combinePlan.getRoots().get(0);
@@ -687,6 +719,16 @@ public class TezDagBuilder extends TezOpPlanVisitor {
         // Set parent plan for all operators in the Tez plan.
         new PhyPlanSetter(tezOp.plan).visit();
 
+        // Hand the input of foreachs calling async UDFs to them a batch at a time
+        int asyncBatchSize = payloadConf.getInt(PigConfiguration.PIG_UDF_ASYNC_BATCH_SIZE,
+                PigConfiguration.PIG_UDF_ASYNC_BATCH_SIZE_DEFAULT);
+        if (asyncBatchSize > 0 && !pc.inIllustrator) {
+            int maxInFlight = payloadConf.getInt(PigConfiguration.PIG_UDF_ASYNC_MAX_INFLIGHT,
+                    PigConfiguration.PIG_UDF_ASYNC_MAX_INFLIGHT_DEFAULT);
+            new AsyncForEachSetter.AsyncForEachMarker(tezOp.plan, asyncBatchSize,
+                    Math.max(1, maxInFlight), payloadConf).visit();
+        }
+
         // Set the endOfAllInput flag on the physical plan if certain operators that
         // use this property (such as STREAM) are present in the plan.
         EndOfAllInputSetter.EndOfAllInputChecker checker =
@@ -696,6 +738,9 @@ public class TezDagBuilder extends TezOpPlanVisitor {
             payloadConf.set(JobControlCompiler.END_OF_INP_IN_MAP, "true");
         }
 
+        // Inputs of a hash join that can be broadcast if they turn out small
+        List<String> broadcastJoinInputs = null;
+
         // Configure the classes for incoming shuffles to this TezOp
         // TODO: Refactor out resetting input keys, PIG-3957
         List<PhysicalOperator> roots = tezOp.plan.getRoots();
@@ -710,7 +755,10 @@ public class TezDagBuilder extends TezOpPlanVisitor {
             tezOp.plan.remove(pack);
             payloadConf.set("pig.reduce.package", ObjectSerializer.serialize(pack));
 
-            POShuffleTezLoad newPack = new POShuffleTezLoad(pack);
+            float sampledTaskFraction = getSampledTaskFraction(tezOp);
+            POShuffleTezLoad newPack = sampledTaskFraction < 1
+                    ? new POSampleShuffleTezLoad(pack, sampledTaskFraction)
+                    : new POShuffleTezLoad(pack);
             if (tezOp.isSkewedJoin()) {
                 newPack.setSkewedJoins(true);
             }
@@ -750,6 +798,27 @@ public class TezDagBuilder extends TezOpPlanVisitor {
                 newPack.addInputKey(entry.getValue());
             }
 
+            if (tezOp.isRegularJoin() && pack.getPkgr().getPackageType() == PackageType.JOIN
+                    && localRearrangeMap.size() == 2 && mPlan.getPredecessors(tezOp).size() == 2
+                    && !isMergedInput) {
+                // An input can only be broadcast if the other inputs are
+                // inner. The unmatched tuples of an input preserved by an
+                // outer join would otherwise be output by every task.
+                boolean[] inner = pack.getPkgr().getInner();
+                broadcastJoinInputs = new ArrayList<String>();
+                for (Map.Entry<Integer, String> entry : localRearrangeMap.entrySet()) {
+                    boolean othersInner = true;
+                    for (int i = 0; i < inner.length; i++) {
+                        if (i != entry.getKey() && !inner[i]) {
+                            othersInner = false;
+                        }
+                    }
+                    if (othersInner) {
+                        broadcastJoinInputs.add(entry.getValue());
+                    }
+                }
+            }
+
             if (succsList != null) {
                 for (PhysicalOperator succs : succsList) {
                     tezOp.plan.connect(newPack, succs);
@@ -774,7 +843,9 @@ public class TezDagBuilder extends TezOpPlanVisitor {
         // used only when POStream, POSplit are present in the plan
         new PhyPlanSetter(tezOp.plan).visit();
 
-        // Serialize the execution plan
+        // Serialize the execution plan, and the batch, thread and async
+        // settings of its foreachs which are not serialized with it
+        POForEach.storeExecSettings(payloadConf, tezOp.plan);
         payloadConf.set(PigProcessor.PLAN,
                 ObjectSerializer.serialize(tezOp.plan));
 
@@ -871,28 +942,50 @@ public class TezDagBuilder extends TezOpPlanVisitor {
                         }
                     }
 
-                    // Use auto-parallelism feature of ShuffleVertexManager to dynamically
-                    // reduce the parallelism of the vertex. Use PigGraceShuffleVertexManager
-                    // instead of ShuffleVertexManager if pig.tez.grace.parallelism is turned on
-                    if (payloadConf.getBoolean(PigConfiguration.PIG_TEZ_GRACE_PARALLELISM, true)
-                            && !TezOperPlan.getGrandParentsForGraceParallelism(getPlan(), tezOp).isEmpty()
-                            && tezOp.getCrossKeys() == null) {
-                        vmPluginName = PigGraceShuffleVertexManager.class.getName();
-                        tezOp.setUseGraceParallelism(true);
-                        vmPluginConf.set("pig.tez.plan", getSerializedTezPlan());
-                        vmPluginConf.set(PigImplConstants.PIG_CONTEXT, serializedPigContext);
-                        vmPluginConf.setLong(InputSizeReducerEstimator.BYTES_PER_REDUCER_PARAM, bytesPerReducer);
+                    if (payloadConf.getBoolean(PigConfiguration.PIG_TEZ_DYNAMIC_BROADCAST_JOIN, false)
+                            && broadcastJoinInputs != null && !broadcastJoinInputs.isEmpty()
+                            && tezOp.getVertexParallelism() > 0 && tezOp.getCrossKeys() == null && !hasOneToOneOutEdge(tezOp)) {
+                        // Use PigBroadcastJoinVertexManager to switch to a broadcast join
+                        // if one of the inputs is small, it sets the parallelism itself
+                        vmPluginName = PigBroadcastJoinVertexManager.class.getName();
+                        vmPluginConf.setStrings(PigBroadcastJoinVertexManager.BROADCAST_INPUTS,
+                                broadcastJoinInputs.toArray(new String[broadcastJoinInputs.size()]));
+                        vmPluginConf.setLong(PigConfiguration.PIG_TEZ_DYNAMIC_BROADCAST_JOIN_THRESHOLD,
+                                payloadConf.getLong(PigConfiguration.PIG_TEZ_DYNAMIC_BROADCAST_JOIN_THRESHOLD,
+                                        PigConfiguration.PIG_TEZ_DYNAMIC_BROADCAST_JOIN_THRESHOLD_DEFAULT));
+                        autoParallelism = true;
+                        log.info("Set VertexManagerPlugin to PigBroadcastJoinVertexManager for vertex " + tezOp.getOperatorKey().toString());
+                    } else {
+                        // Use auto-parallelism feature of ShuffleVertexManager to dynamically
+                        // reduce the parallelism of the vertex. Use PigGraceShuffleVertexManager
+                        // instead of ShuffleVertexManager if pig.tez.grace.parallelism is turned on
+                        if (payloadConf.getBoolean(PigConfiguration.PIG_TEZ_GRACE_PARALLELISM, true)
+                                && !TezOperPlan.getGrandParentsForGraceParallelism(getPlan(), tezOp).isEmpty()
+                                && tezOp.getCrossKeys() == null) {
+                            vmPluginName = PigGraceShuffleVertexManager.class.getName();
+                            tezOp.setUseGraceParallelism(true);
+                            vmPluginConf.set("pig.tez.plan", getSerializedTezPlan());
+                            vmPluginConf.set(PigImplConstants.PIG_CONTEXT, serializedPigContext);
+                            vmPluginConf.setLong(InputSizeReducerEstimator.BYTES_PER_REDUCER_PARAM, bytesPerReducer);
+                        }
+                        vmPluginConf.setBoolean(ShuffleVertexManager.TEZ_SHUFFLE_VERTEX_MANAGER_ENABLE_AUTO_PARALLEL, true);
+                        vmPluginConf.setLong(ShuffleVertexManager.TEZ_SHUFFLE_VERTEX_MANAGER_DESIRED_TASK_INPUT_SIZE, bytesPerReducer);
+                        autoParallelism = true;
+                        log.info("Set auto parallelism for vertex " + tezOp.getOperatorKey().toString());
                     }
-                    vmPluginConf.setBoolean(ShuffleVertexManager.TEZ_SHUFFLE_VERTEX_MANAGER_ENABLE_AUTO_PARALLEL, true);
-                    vmPluginConf.setLong(ShuffleVertexManager.TEZ_SHUFFLE_VERTEX_MANAGER_DESIRED_TASK_INPUT_SIZE, bytesPerReducer);
-                    autoParallelism = true;
-                    log.info("Set auto parallelism for vertex " + tezOp.getOperatorKey().toString());
                 }
             }
             if (globalConf.getBoolean(PigConfiguration.PIG_TEZ_AUTO_PARALLELISM_DISABLE_DAG_RECOVERY, false) && autoParallelism) {
                 disableDAGRecovery = true;
             }
         }
+        if (containScatterGather && getSampledTaskFraction(tezOp) < 1) {
+            // Start fetching the samples right away, the quantiles are
+            // computed from the samples of the first tasks to finish
+            vmPluginName = PigSampleAggregationVertexManager.class.getName();
+            vmPluginConf = null;
+            log.info("Set VertexManagerPlugin to PigSampleAggregationVertexManager for vertex " + tezOp.getOperatorKey().toString());
+        }
         if (tezOp.isLimit() && (vmPluginName == null || vmPluginName.equals(PigGraceShuffleVertexManager.class.getName())||
                 vmPluginName.equals(ShuffleVertexManager.class.getName()))) {
             if (tezOp.inEdges.values().iterator().next().inputClassName.equals(UnorderedKVInput.class.getName())) {
@@ -102,6 +102,7 @@ import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POLocalRe
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POLocalRearrangeTezFactory.LocalRearrangeType;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POPartitionRearrangeTez;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.PORankTez;
+import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POReservoirSampleTez;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POShuffledValueInputTez;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POStoreTez;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POValueInputTez;
@@ -141,6 +142,7 @@ import org.apache.tez.runtime.library.api.TezRuntimeConfiguration;
 import org.apache.tez.runtime.library.input.OrderedGroupedKVInput;
 import org.apache.tez.runtime.library.input.UnorderedKVInput;
 import org.apache.tez.runtime.library.output.UnorderedKVOutput;
+import org.apache.tez.runtime.library.output.UnorderedPartitionedKVOutput;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -915,6 +917,10 @@ public class TezCompiler extends PhyPlanVisitor {
     @Override
     public void visitGlobalRearrange(POGlobalRearrange op) throws VisitorException {
         try {
+            if (op.isSkewed()) {
+                LOG.warn("Skewed group " + op.getAlias() + " is run as a regular group because "
+                        + "skewed groups are not supported in Tez mode");
+            }
             blocking();
             inputsMap.put(curTezOp, new ArrayList<>(Arrays.asList(compiledInputs)));
             TezCompilerUtil.setCustomPartitioner(op.getCustomPartitioner(), curTezOp);
@@ -2009,8 +2015,8 @@ public class TezCompiler extends PhyPlanVisitor {
             }
 
             String numSamples = pigContext.getProperties().getProperty(PigConfiguration.PIG_RANDOM_SAMPLER_SAMPLE_SIZE, "100");
-            POReservoirSample poSample = new POReservoirSample(new OperatorKey(scope,nig.getNextNodeId(scope)),
-                    -1, null, Integer.parseInt(numSamples));
+            POReservoirSample poSample = new POReservoirSampleTez(new OperatorKey(scope,nig.getNextNodeId(scope)),
+                    -1, null, Integer.parseInt(numSamples), getSampledTaskFraction());
             oper.plan.addAsLeaf(poSample);
 
             List<PhysicalPlan> sortPlans = sort.getSortPlans();
@@ -2065,6 +2071,11 @@ public class TezCompiler extends PhyPlanVisitor {
         return lrSample;
     }
 
+    private float getSampledTaskFraction() {
+        return Float.parseFloat(pigContext.getProperties().getProperty(
+                PigConfiguration.PIG_TEZ_ORDERBY_SAMPLED_TASK_FRACTION, "1"));
+    }
+
     private Pair<TezOperator,Integer> getOrderbySamplingAggregationJob(
             POSort inpSort,
             int rp) throws PlanException, VisitorException, ExecException {
@@ -2465,7 +2476,14 @@ public class TezCompiler extends PhyPlanVisitor {
             // Add sampling to sort input. Create a sample aggregation operator and connect both
             POLocalRearrangeTez lrSample = addSamplingToSortInput(op, samplerOper, keyType, fields);
             Pair<TezOperator, Integer> quantJobParallelismPair = getOrderbySamplingAggregationJob(op, rp);
-            TezCompilerUtil.connect(tezPlan, samplerOper, quantJobParallelismPair.first);
+            TezEdgeDescriptor sampleEdge = TezCompilerUtil.connect(tezPlan, samplerOper, quantJobParallelismPair.first);
+            float sampledTaskFraction = getSampledTaskFraction();
+            if (sampledTaskFraction > 0 && sampledTaskFraction < 1) {
+                // Hand the samples of each task to the sample aggregation
+                // vertex as soon as the task finishes
+                sampleEdge.outputClassName = UnorderedPartitionedKVOutput.class.getName();
+                sampleEdge.inputClassName = UnorderedKVInput.class.getName();
+            }
 
             // Create the partitioner and the global sort vertices
             TezOperator[] sortOpers = getSortJobs(samplerOper, partitionerPlan, lr, op, keyType, fields);
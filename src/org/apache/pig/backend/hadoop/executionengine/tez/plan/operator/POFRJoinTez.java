@@ -28,12 +28,17 @@ import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.CompactReplicateTable;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFRJoin;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLocalRearrange;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POMergeJoin.TuplesToSchemaTupleList;
 import org.apache.pig.backend.hadoop.executionengine.tez.runtime.ObjectCache;
+import org.apache.pig.backend.hadoop.executionengine.tez.runtime.SharedReplicateTables;
 import org.apache.pig.backend.hadoop.executionengine.tez.runtime.TezInput;
+import org.apache.pig.backend.hadoop.executionengine.tez.runtime.TezTaskConfigurable;
 import org.apache.pig.data.SchemaTupleBackend;
 import org.apache.pig.data.SchemaTupleClassGenerator.GenContext;
 import org.apache.pig.data.SchemaTupleFactory;
@@ -42,6 +47,7 @@ import org.apache.pig.impl.io.NullableTuple;
 import org.apache.pig.impl.io.PigNullableWritable;
 import org.apache.pig.impl.logicalLayer.schema.Schema;
 import org.apache.tez.runtime.api.LogicalInput;
+import org.apache.tez.runtime.api.ProcessorContext;
 import org.apache.tez.runtime.library.api.KeyValueReader;
 
 import com.google.common.collect.Lists;
@@ -49,8 +55,12 @@ import com.google.common.collect.Lists;
 /**
  * POFRJoinTez is used on the backend to load replicated table from Tez
  * ShuffleUnorderedKVInput and load fragmented table from data pipeline.
+ * <p>
+ * The replicated tables are built once per container and shared with the
+ * following tasks of the vertex through the {@link ObjectCache}, see
+ * {@link SharedReplicateTables}.
  */
-public class POFRJoinTez extends POFRJoin implements TezInput {
+public class POFRJoinTez extends POFRJoin implements TezInput, TezTaskConfigurable {
 
     private static final Log log = LogFactory.getLog(POFRJoinTez.class);
     private static final long serialVersionUID = 1L;
@@ -62,12 +72,20 @@ public class POFRJoinTez extends POFRJoin implements TezInput {
     private transient List<KeyValueReader> replReaders;
     private transient boolean isInputCached;
     private transient String cacheKey;
+    private transient String vertexName;
+    private transient SharedReplicateTables sharedTables;
+    private transient List<Map<? extends Object, ? extends List<Tuple>>> sharedReplicates;
 
     public POFRJoinTez(POFRJoin copy, List<String> inputKeys) throws ExecException {
        super(copy);
        this.inputKeys = inputKeys;
     }
 
+    @Override
+    public void initialize(ProcessorContext processorContext) throws ExecException {
+        vertexName = processorContext.getTaskVertexName();
+    }
+
     @Override
     public String[] getTezInputs() {
         return inputKeys.toArray(new String[inputKeys.size()]);
@@ -82,14 +100,50 @@ public class POFRJoinTez extends POFRJoin implements TezInput {
 
     @Override
     public void addInputsToSkip(Set<String> inputsToSkip) {
-        cacheKey = "replicatemap-" + inputKeys.toString();
-        Object cacheValue = ObjectCache.getInstance().retrieve(cacheKey);
-        if (cacheValue != null) {
+        cacheKey = "replicatemap-" + vertexName + "-" + inputKeys.toString();
+        // Hold on to the tables now, so that they are not dropped before
+        // setUpHashMap() runs as the inputs will not be fetched
+        if (acquireCachedTables()) {
             isInputCached = true;
             inputsToSkip.addAll(inputKeys);
         }
     }
 
+    private boolean acquireCachedTables() {
+        if (sharedTables != null) {
+            return true;
+        }
+        Object cacheValue = ObjectCache.getInstance().retrieve(cacheKey);
+        if (cacheValue == null) {
+            return false;
+        }
+        SharedReplicateTables cached = (SharedReplicateTables) cacheValue;
+        List<Map<? extends Object, ? extends List<Tuple>>> tables = cached.acquire();
+        if (tables == null) {
+            log.info("Replication hash tables were dropped from Tez cache under memory pressure."
+                    + " Rebuilding them. cachekey=" + cacheKey);
+            return false;
+        }
+        cached.register();
+        sharedTables = cached;
+        sharedReplicates = tables;
+        return true;
+    }
+
+    /**
+     * Let go of the replicated tables once all the input of the task has been
+     * joined, so that they can be dropped from the cache under memory pressure
+     * until the next task of the vertex picks them up.
+     */
+    public void releaseReplicateTables() {
+        if (sharedTables != null) {
+            sharedTables.release();
+            sharedTables = null;
+            sharedReplicates = null;
+            replicates = null;
+        }
+    }
+
     @Override
     public void attachInputs(Map<String, LogicalInput> inputs, Configuration conf)
             throws ExecException {
@@ -120,18 +174,19 @@ public class POFRJoinTez extends POFRJoin implements TezInput {
      *
      * @throws ExecException
      */
-    @SuppressWarnings("unchecked")
     @Override
     protected void setUpHashMap() throws ExecException {
 
         // Re-check again in case of Split + union + replicate join
         // where same POFRJoinTez occurs in different Split sub-plans
-        Object cacheValue = ObjectCache.getInstance().retrieve(cacheKey);
-        if (cacheValue != null) {
-            replicates =  (List<Map<? extends Object, ? extends List<Tuple>>>) cacheValue;
+        if (acquireCachedTables()) {
+            replicates = sharedReplicates;
             log.info("Found " + (replicates.size() - 1) + " replication hash tables in Tez cache. cachekey=" + cacheKey);
             return;
         }
+        if (isInputCached) {
+            throw new ExecException("Replication hash tables missing from Tez cache. cachekey=" + cacheKey);
+        }
 
         log.info("Building replication hash table");
 
@@ -153,6 +208,7 @@ public class POFRJoinTez extends POFRJoin implements TezInput {
             }
         }
 
+        boolean compact = useCompactTable();
         long time1 = System.currentTimeMillis();
 
         replicates.set(fragment, null);
@@ -165,8 +221,11 @@ public class POFRJoinTez extends POFRJoin implements TezInput {
             SchemaTupleFactory inputSchemaTupleFactory = inputSchemaTupleFactories[schemaIdx];
             SchemaTupleFactory keySchemaTupleFactory = keySchemaTupleFactories[schemaIdx];
 
-            Map<Object, ArrayList<Tuple>> replicate;
-            if (keySchemaTupleFactory == null) {
+            Map<Object, ArrayList<Tuple>> replicate = null;
+            CompactReplicateTable compactReplicate = null;
+            if (compact) {
+                compactReplicate = new CompactReplicateTable(4000);
+            } else if (keySchemaTupleFactory == null) {
                 replicate = new HashMap<Object, ArrayList<Tuple>>(4000);
             } else {
                 replicate = new TupleToMapKey(4000, keySchemaTupleFactory);
@@ -193,6 +252,10 @@ public class POFRJoinTez extends POFRJoin implements TezInput {
                     retTuple.set(2, val.getValueAsPigType());
                     Tuple valTuple = getValueTuple(lr, retTuple);
 
+                    if (compactReplicate != null) {
+                        compactReplicate.add(keyValue, valTuple);
+                        continue;
+                    }
                     ArrayList<Tuple> values = replicate.get(keyValue);
                     if (values == null) {
                         if (inputSchemaTupleFactory == null) {
@@ -207,7 +270,12 @@ public class POFRJoinTez extends POFRJoin implements TezInput {
             } catch (IOException e) {
                 throw new ExecException(e);
             }
-            replicates.set(schemaIdx, replicate);
+            if (compactReplicate != null) {
+                logCompactTable(schemaIdx, compactReplicate);
+                replicates.set(schemaIdx, compactReplicate);
+            } else {
+                replicates.set(schemaIdx, replicate);
+            }
             inputIdx++;
             schemaIdx++;
         }
@@ -215,7 +283,13 @@ public class POFRJoinTez extends POFRJoin implements TezInput {
         long time2 = System.currentTimeMillis();
         log.info((replicates.size() - 1) + " replication hash tables built. Time taken: " + (time2 - time1));
 
-        ObjectCache.getInstance().cache(cacheKey, replicates);
+        boolean evictable = PigMapReduce.sJobConfInternal.get() != null
+                && PigMapReduce.sJobConfInternal.get().getBoolean(
+                        PigConfiguration.PIG_TEZ_REPLICATED_JOIN_CACHE_EVICTABLE, false);
+        sharedTables = new SharedReplicateTables(cacheKey, replicates, evictable);
+        sharedReplicates = sharedTables.acquire();
+        sharedTables.register();
+        ObjectCache.getInstance().cache(cacheKey, sharedTables);
         log.info("Cached replicate hash tables in Tez ObjectRegistry with vertex scope. cachekey=" + cacheKey);
     }
 
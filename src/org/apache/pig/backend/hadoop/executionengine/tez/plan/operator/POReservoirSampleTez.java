@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.tez.plan.operator;
+
+import java.util.List;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POReservoirSample;
+import org.apache.pig.backend.hadoop.executionengine.tez.runtime.TezTaskConfigurable;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.apache.tez.runtime.api.ProcessorContext;
+
+/**
+ * Reservoir sample of the input of an order by. When only the samples of the
+ * first tasks of the vertex to finish are used (see
+ * {@link org.apache.pig.PigConfiguration#PIG_TEZ_ORDERBY_SAMPLED_TASK_FRACTION}),
+ * the number of rows of a task is scaled to stand for the tasks which are not
+ * sampled, so that the number of rows of the whole input can still be
+ * estimated from the samples.
+ */
+public class POReservoirSampleTez extends POReservoirSample implements TezTaskConfigurable {
+
+    private static final long serialVersionUID = 1L;
+
+    private float sampledTaskFraction;
+
+    private transient int numTasks = 1;
+
+    public POReservoirSampleTez(OperatorKey k, int rp, List<PhysicalOperator> inp,
+            long numSamples, float sampledTaskFraction) {
+        super(k, rp, inp, numSamples);
+        this.sampledTaskFraction = sampledTaskFraction;
+    }
+
+    @Override
+    public void initialize(ProcessorContext processorContext) throws ExecException {
+        numTasks = processorContext.getVertexParallelism();
+    }
+
+    public float getSampledTaskFraction() {
+        return sampledTaskFraction;
+    }
+
+    @Override
+    protected long getNumRows() {
+        int numSampledTasks = getNumSampledTasks(numTasks, sampledTaskFraction);
+        return Math.round((double) super.getNumRows() * numTasks / numSampledTasks);
+    }
+
+    /**
+     * @param numTasks number of tasks of the sampling vertex
+     * @param sampledTaskFraction fraction of the tasks which are sampled
+     * @return number of tasks whose samples are used
+     */
+    public static int getNumSampledTasks(int numTasks, float sampledTaskFraction) {
+        if (sampledTaskFraction <= 0 || sampledTaskFraction >= 1) {
+            return numTasks;
+        }
+        return Math.max(1, Math.min(numTasks, (int) Math.ceil(numTasks * sampledTaskFraction)));
+    }
+}
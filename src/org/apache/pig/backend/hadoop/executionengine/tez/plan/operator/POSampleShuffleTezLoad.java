@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.tez.plan.operator;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.POStatus;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.Result;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POPackage;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.InternalCachedBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.io.NullableTuple;
+import org.apache.pig.impl.io.PigNullableWritable;
+import org.apache.tez.runtime.api.AbstractLogicalInput;
+import org.apache.tez.runtime.api.LogicalInput;
+import org.apache.tez.runtime.library.api.KeyValueReader;
+
+/**
+ * Package of the sample aggregation vertex of an order by when only a
+ * fraction of the sampling tasks is sampled (see
+ * {@link org.apache.pig.PigConfiguration#PIG_TEZ_ORDERBY_SAMPLED_TASK_FRACTION}).
+ * The samples are read from an unordered input, which hands over the output
+ * of each sampling task as a whole, in the order the tasks finish. Reading
+ * stops once the samples of the first tasks to finish have been read, so the
+ * quantiles do not wait for the other tasks. The last sample of a task is the
+ * one holding its number of rows, which is how the tasks are counted.
+ */
+public class POSampleShuffleTezLoad extends POShuffleTezLoad {
+
+    private static final long serialVersionUID = 1L;
+    private static final Log LOG = LogFactory.getLog(POSampleShuffleTezLoad.class);
+
+    private float sampledTaskFraction;
+
+    private transient KeyValueReader reader;
+    private transient int numSampledTasks;
+    private transient boolean finished;
+
+    public POSampleShuffleTezLoad(POPackage pack, float sampledTaskFraction) {
+        super(pack);
+        this.sampledTaskFraction = sampledTaskFraction;
+    }
+
+    public float getSampledTaskFraction() {
+        return sampledTaskFraction;
+    }
+
+    @Override
+    public void attachInputs(Map<String, LogicalInput> inputs, Configuration conf)
+            throws ExecException {
+        String inputKey = inputKeys.get(0);
+        LogicalInput input = inputs.get(inputKey);
+        if (input == null) {
+            throw new ExecException("Input from vertex " + inputKey + " is missing");
+        }
+        try {
+            reader = (KeyValueReader) input.getReader();
+        } catch (Exception e) {
+            throw new ExecException(e);
+        }
+        numInputs = pkgr.getKeyInfo().size();
+        numSampledTasks = Integer.MAX_VALUE;
+        if (input instanceof AbstractLogicalInput) {
+            int numTasks = ((AbstractLogicalInput) input).getNumPhysicalInputs();
+            numSampledTasks = POReservoirSampleTez.getNumSampledTasks(numTasks, sampledTaskFraction);
+            LOG.info("Computing the quantiles from the samples of the first " + numSampledTasks
+                    + " of the " + numTasks + " tasks of vertex " + inputKey);
+        }
+        LOG.info("Attached input from vertex " + inputKey + " : input=" + input
+                + ", reader=" + reader);
+    }
+
+    @Override
+    public Result getNextTuple() throws ExecException {
+        Result res = pkgr.getNext();
+        if (res.returnStatus != POStatus.STATUS_EOP || finished) {
+            return res;
+        }
+        finished = true;
+
+        DataBag[] bags = new DataBag[numInputs];
+        for (int i = 0; i < numInputs; i++) {
+            bags[i] = new InternalCachedBag(numInputs);
+        }
+        int numTasks = 0;
+        try {
+            while (numTasks < numSampledTasks && reader.next()) {
+                if (keyWritable == null) {
+                    keyWritable = ((PigNullableWritable) reader.getCurrentKey()).clone();
+                    key = pkgr.getKey(keyWritable);
+                }
+                NullableTuple nTup = (NullableTuple) reader.getCurrentValue();
+                int index = nTup.getIndex();
+                Tuple tup = pkgr.getValueTuple(keyWritable, nTup, index);
+                bags[index].add(tup);
+                if (getNumRows(tup) > 0) {
+                    numTasks++;
+                }
+            }
+        } catch (IOException e) {
+            throw new ExecException(e);
+        } catch (CloneNotSupportedException e) {
+            throw new ExecException(e);
+        }
+        if (keyWritable == null) {
+            return res;
+        }
+        LOG.info("Read the samples of " + numTasks + " tasks");
+
+        pkgr.attachInput(key, bags, new boolean[numInputs]);
+        return pkgr.getNext();
+    }
+
+    /**
+     * The samples end with the memory size and the number of rows output by
+     * {@link org.apache.pig.impl.builtin.GetMemNumRows} after the sort keys.
+     * The number of rows is only set on the last sample of a task, which
+     * GetMemNumRows recognizes by its
+     * {@link org.apache.pig.impl.builtin.PoissonSampleLoader#NUMROWS_TUPLE_MARKER}.
+     */
+    private static long getNumRows(Tuple sample) throws ExecException {
+        int size = sample.size();
+        if (size < 2 || !(sample.get(size - 2) instanceof Long)) {
+            return 0;
+        }
+        Object numRows = sample.get(size - 1);
+        return numRows instanceof Long ? (Long) numRows : 0;
+    }
+}
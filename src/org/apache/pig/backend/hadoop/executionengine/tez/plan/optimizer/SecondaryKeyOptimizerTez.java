@@ -34,6 +34,7 @@ import org.apache.pig.backend.hadoop.executionengine.util.SecondaryKeyOptimizerU
 import org.apache.pig.classification.InterfaceAudience;
 import org.apache.pig.impl.plan.DependencyOrderWalker;
 import org.apache.pig.impl.plan.VisitorException;
+import org.apache.tez.runtime.library.input.OrderedGroupedKVInput;
 
 @InterfaceAudience.Private
 public class SecondaryKeyOptimizerTez extends TezOpPlanVisitor implements SecondaryKeyOptimizer {
@@ -97,6 +98,11 @@ public class SecondaryKeyOptimizerTez extends TezOpPlanVisitor implements Second
             return;
         }
 
+        // Only the ordered input of a shuffle sorts the values by the secondary key
+        if (!OrderedGroupedKVInput.class.getName().equals(inEdge.inputClassName)) {
+            return;
+        }
+
         if (from.plan.getOperator(connectingLR.getOperatorKey()) == null) {
             // The POLocalRearrange is sub-plan of a POSplit
             rearrangePlan = PlanHelper.getLocalRearrangePlanFromSplit(from.plan, connectingLR.getOperatorKey());
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.tez.runtime;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tez.dag.api.EdgeManagerPlugin;
+import org.apache.tez.dag.api.EdgeManagerPluginContext;
+import org.apache.tez.dag.api.EdgeManagerPluginDescriptor;
+import org.apache.tez.dag.api.UserPayload;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.api.events.InputReadErrorEvent;
+
+/**
+ * Edge used by {@link PigBroadcastJoinVertexManager} once a hash join has
+ * been switched to a broadcast join. The source tasks have already been
+ * started with one output partition per task of the join vertex as it was
+ * compiled, so every source task still has numPartitions physical outputs.
+ * On the broadcast edge every partition of every source task goes to every
+ * join task. On the other edge all the partitions of source task i go to
+ * join task i, the join vertex having as many tasks as that source.
+ */
+public class PigBroadcastJoinEdgeManager extends EdgeManagerPlugin {
+
+    private int numPartitions;
+    private boolean broadcast;
+
+    public PigBroadcastJoinEdgeManager(EdgeManagerPluginContext context) {
+        super(context);
+    }
+
+    /**
+     * @param numPartitions number of partitions of each source task output
+     * @param broadcast true if the source is sent to all the join tasks
+     */
+    public static EdgeManagerPluginDescriptor getDescriptor(int numPartitions, boolean broadcast) {
+        ByteBuffer payload = ByteBuffer.allocate(5);
+        payload.putInt(numPartitions);
+        payload.put((byte) (broadcast ? 1 : 0));
+        payload.flip();
+        return EdgeManagerPluginDescriptor.create(PigBroadcastJoinEdgeManager.class.getName())
+                .setUserPayload(UserPayload.create(payload));
+    }
+
+    @Override
+    public void initialize() {
+        ByteBuffer payload = getContext().getUserPayload().getPayload();
+        numPartitions = payload.getInt(0);
+        broadcast = payload.get(4) == 1;
+    }
+
+    @Override
+    public int getNumDestinationTaskPhysicalInputs(int destinationTaskIndex) {
+        if (broadcast) {
+            return getContext().getSourceVertexNumTasks() * numPartitions;
+        }
+        return numPartitions;
+    }
+
+    @Override
+    public int getNumSourceTaskPhysicalOutputs(int sourceTaskIndex) {
+        return numPartitions;
+    }
+
+    @Override
+    public void routeDataMovementEventToDestination(DataMovementEvent event,
+            int sourceTaskIndex, int sourceOutputIndex,
+            Map<Integer, List<Integer>> destinationTaskAndInputIndices) {
+        if (broadcast) {
+            List<Integer> inputIndex = Collections.singletonList(sourceTaskIndex * numPartitions + sourceOutputIndex);
+            for (int i = 0; i < getContext().getDestinationVertexNumTasks(); i++) {
+                destinationTaskAndInputIndices.put(i, inputIndex);
+            }
+        } else {
+            destinationTaskAndInputIndices.put(sourceTaskIndex, Collections.singletonList(sourceOutputIndex));
+        }
+    }
+
+    @Override
+    public void routeInputSourceTaskFailedEventToDestination(int sourceTaskIndex,
+            Map<Integer, List<Integer>> destinationTaskAndInputIndices) {
+        int base = broadcast ? sourceTaskIndex * numPartitions : 0;
+        List<Integer> inputIndices = new ArrayList<Integer>(numPartitions);
+        for (int i = 0; i < numPartitions; i++) {
+            inputIndices.add(base + i);
+        }
+        if (broadcast) {
+            for (int i = 0; i < getContext().getDestinationVertexNumTasks(); i++) {
+                destinationTaskAndInputIndices.put(i, inputIndices);
+            }
+        } else {
+            destinationTaskAndInputIndices.put(sourceTaskIndex, inputIndices);
+        }
+    }
+
+    @Override
+    public int getNumDestinationConsumerTasks(int sourceTaskIndex) {
+        return broadcast ? getContext().getDestinationVertexNumTasks() : 1;
+    }
+
+    @Override
+    public int routeInputErrorEventToSource(InputReadErrorEvent event,
+            int destinationTaskIndex, int destinationFailedInputIndex) {
+        return broadcast ? destinationFailedInputIndex / numPartitions : destinationTaskIndex;
+    }
+}
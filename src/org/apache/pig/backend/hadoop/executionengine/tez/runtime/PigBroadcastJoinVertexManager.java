@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.tez.runtime;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.dag.api.EdgeProperty;
+import org.apache.tez.dag.api.InputDescriptor;
+import org.apache.tez.dag.api.TaskLocationHint;
+import org.apache.tez.dag.api.TezUncheckedException;
+import org.apache.tez.dag.api.VertexManagerPlugin;
+import org.apache.tez.dag.api.VertexManagerPluginContext;
+import org.apache.tez.dag.api.VertexManagerPluginContext.TaskWithLocationHint;
+import org.apache.tez.dag.api.event.VertexState;
+import org.apache.tez.dag.api.event.VertexStateUpdate;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.OutputStatistics;
+import org.apache.tez.runtime.api.VertexStatistics;
+import org.apache.tez.runtime.api.events.VertexManagerEvent;
+
+import com.google.common.collect.Lists;
+
+/**
+ * VertexManagerPlugin of a two-way hash join vertex, which switches the join
+ * to a broadcast join at runtime when one of its inputs turns out to be small.
+ * The vertex is not configured until an input that can be replicated (one that
+ * is not outer) has finished with an output under the threshold, or all such
+ * inputs have finished with bigger outputs. In the first case the small input
+ * is sent to every task of the join vertex and the parallelism of the join
+ * vertex is set to the number of tasks of the other input, join task i reading
+ * the output of task i of that input and being scheduled next to it as soon as
+ * it finishes. The big input is then not shuffled across the cluster. The same
+ * join package is used, each task joining the keys of one task of the big
+ * input against all the keys of the small one. Otherwise the vertex runs as a
+ * regular shuffle join.
+ */
+public class PigBroadcastJoinVertexManager extends VertexManagerPlugin {
+    private static final Log LOG = LogFactory.getLog(PigBroadcastJoinVertexManager.class);
+
+    /**
+     * Comma separated names of the input vertices that can be broadcast
+     */
+    public static final String BROADCAST_INPUTS = "pig.tez.dynamic.broadcast.join.inputs";
+
+    private long threshold;
+    private Set<String> candidates = new HashSet<String>();
+    private Set<String> configuredSources = new HashSet<String>();
+    private Set<String> finishedCandidates = new HashSet<String>();
+    private int numSources;
+    private String broadcastInput;
+    private String streamInput;
+    private boolean configured;
+    private boolean started;
+    private boolean scheduled;
+    private Map<String, Set<Integer>> completedTasks = new HashMap<String, Set<Integer>>();
+    private Set<Integer> scheduledTasks = new HashSet<Integer>();
+
+    public PigBroadcastJoinVertexManager(VertexManagerPluginContext context) {
+        super(context);
+    }
+
+    @Override
+    public synchronized void initialize() {
+        Configuration conf;
+        try {
+            conf = TezUtils.createConfFromUserPayload(getContext().getUserPayload());
+        } catch (IOException e) {
+            throw new TezUncheckedException(e);
+        }
+        threshold = conf.getLong(PigConfiguration.PIG_TEZ_DYNAMIC_BROADCAST_JOIN_THRESHOLD,
+                PigConfiguration.PIG_TEZ_DYNAMIC_BROADCAST_JOIN_THRESHOLD_DEFAULT);
+        for (String input : conf.getStrings(BROADCAST_INPUTS, new String[0])) {
+            candidates.add(input);
+        }
+        // this will prevent vertex from starting until we notify we are done
+        getContext().vertexReconfigurationPlanned();
+        Set<String> sources = getContext().getInputVertexEdgeProperties().keySet();
+        numSources = sources.size();
+        for (String source : sources) {
+            if (candidates.contains(source)) {
+                getContext().registerForVertexStateUpdates(source,
+                        EnumSet.of(VertexState.CONFIGURED, VertexState.SUCCEEDED));
+            } else {
+                getContext().registerForVertexStateUpdates(source, EnumSet.of(VertexState.CONFIGURED));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onVertexStateUpdated(VertexStateUpdate stateUpdate) {
+        String vertexName = stateUpdate.getVertexName();
+        if (stateUpdate.getVertexState() == VertexState.CONFIGURED) {
+            configuredSources.add(vertexName);
+        } else if (stateUpdate.getVertexState() == VertexState.SUCCEEDED) {
+            finishedCandidates.add(vertexName);
+            if (broadcastInput == null) {
+                long outputSize = getOutputSize(vertexName);
+                LOG.info("For vertex: " + getContext().getVertexName() + " input " + vertexName
+                        + " finished with output " + outputSize + " (threshold " + threshold + ")");
+                if (outputSize >= 0 && outputSize <= threshold) {
+                    broadcastInput = vertexName;
+                }
+            }
+        }
+        configure();
+    }
+
+    private long getOutputSize(String vertexName) {
+        VertexStatistics stats = getContext().getVertexStatistics(vertexName);
+        if (stats == null) {
+            return -1;
+        }
+        OutputStatistics outputStats = stats.getOutputStatistics(getContext().getVertexName());
+        return outputStats == null ? -1 : outputStats.getDataSize();
+    }
+
+    private void configure() {
+        if (configured || configuredSources.size() < numSources) {
+            return;
+        }
+        if (broadcastInput != null) {
+            for (String source : getContext().getInputVertexEdgeProperties().keySet()) {
+                if (!source.equals(broadcastInput)) {
+                    streamInput = source;
+                }
+            }
+            int parallelism = getContext().getVertexNumTasks(streamInput);
+            if (parallelism > 0) {
+                int numPartitions = getContext().getVertexNumTasks(getContext().getVertexName());
+                Map<String, EdgeProperty> edgeManagers = new HashMap<String, EdgeProperty>();
+                for (Map.Entry<String, EdgeProperty> entry : getContext().getInputVertexEdgeProperties().entrySet()) {
+                    EdgeProperty edge = entry.getValue();
+                    edge = EdgeProperty.create(PigBroadcastJoinEdgeManager.getDescriptor(numPartitions,
+                            entry.getKey().equals(broadcastInput)), edge.getDataSourceType(),
+                            edge.getSchedulingType(), edge.getEdgeSource(), edge.getEdgeDestination());
+                    edgeManagers.put(entry.getKey(), edge);
+                }
+                LOG.info("Switching vertex " + getContext().getVertexName() + " to a broadcast join of "
+                        + broadcastInput + ", parallelism set to " + parallelism + " from " + numPartitions
+                        + " to follow the tasks of " + streamInput);
+                getContext().reconfigureVertex(parallelism, null, edgeManagers);
+            } else {
+                broadcastInput = null;
+                streamInput = null;
+            }
+        } else if (finishedCandidates.size() < candidates.size()) {
+            // wait for the other inputs that can still be broadcast
+            return;
+        } else {
+            LOG.info("Vertex " + getContext().getVertexName() + " runs as a shuffle join");
+        }
+        getContext().doneReconfiguringVertex();
+        configured = true;
+        trySchedulingTasks();
+    }
+
+    private void trySchedulingTasks() {
+        if (!configured || !started || scheduled) {
+            return;
+        }
+        List<TaskWithLocationHint> tasksToStart = Lists.newArrayList();
+        if (streamInput == null) {
+            int parallelism = getContext().getVertexNumTasks(getContext().getVertexName());
+            for (int i = 0; i < parallelism; ++i) {
+                tasksToStart.add(new TaskWithLocationHint(i, null));
+            }
+            scheduled = true;
+        } else {
+            // run next to the task of the big input
+            Set<Integer> completed = completedTasks.get(streamInput);
+            if (completed == null) {
+                return;
+            }
+            for (Integer task : completed) {
+                if (scheduledTasks.add(task)) {
+                    tasksToStart.add(new TaskWithLocationHint(task,
+                            TaskLocationHint.createTaskLocationHint(streamInput, task)));
+                }
+            }
+            scheduled = scheduledTasks.size() == getContext().getVertexNumTasks(getContext().getVertexName());
+        }
+        if (!tasksToStart.isEmpty()) {
+            LOG.info("Scheduling " + tasksToStart.size() + " tasks for vertex " + getContext().getVertexName());
+            getContext().scheduleVertexTasks(tasksToStart);
+        }
+    }
+
+    @Override
+    public synchronized void onVertexStarted(Map<String, List<Integer>> completions) {
+        // onVertexStateUpdated and onVertexStarted can happen in any order.
+        // Tasks are scheduled only after start is called and configuration is done
+        started = true;
+        if (completions != null) {
+            for (Map.Entry<String, List<Integer>> entry : completions.entrySet()) {
+                for (Integer task : entry.getValue()) {
+                    onSourceTaskCompleted(entry.getKey(), task);
+                }
+            }
+        }
+        trySchedulingTasks();
+    }
+
+    @Override
+    public synchronized void onSourceTaskCompleted(String srcVertexName, Integer srcTaskId) {
+        Set<Integer> tasks = completedTasks.get(srcVertexName);
+        if (tasks == null) {
+            tasks = new HashSet<Integer>();
+            completedTasks.put(srcVertexName, tasks);
+        }
+        tasks.add(srcTaskId);
+        trySchedulingTasks();
+    }
+
+    @Override
+    public void onVertexManagerEventReceived(VertexManagerEvent vmEvent) {
+        // Nothing to do
+    }
+
+    @Override
+    public void onRootVertexInitialized(String inputName, InputDescriptor inputDescriptor,
+            List<Event> events) {
+        // Nothing to do
+    }
+}
@@ -55,6 +55,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
 import org.apache.pig.backend.hadoop.executionengine.shims.HadoopShims;
+import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POFRJoinTez;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.udf.ReadScalarsTez;
 import org.apache.pig.data.SchemaTupleBackend;
 import org.apache.pig.data.Tuple;
@@ -224,6 +225,7 @@ public class PigProcessor extends AbstractLogicalIOProcessor {
                 | IllegalArgumentException | InvocationTargetException e) {
             // ignore
         }
+        releaseReplicateTables();
         execPlan = null;
         fileOutputs = null;
         leaf = null;
@@ -293,6 +295,8 @@ public class PigProcessor extends AbstractLogicalIOProcessor {
                 runPipeline(leaf);
             }
 
+            releaseReplicateTables();
+
             // Calling EvalFunc.finish()
             UDFFinishVisitor finisher = new UDFFinishVisitor(execPlan,
                     new DependencyOrderWalker<PhysicalOperator, PhysicalPlan>(
@@ -352,6 +356,19 @@ public class PigProcessor extends AbstractLogicalIOProcessor {
         }
     }
 
+    /**
+     * Let the replicated join tables cached for the vertex be dropped under
+     * memory pressure now that all the input has been processed
+     */
+    private void releaseReplicateTables() throws VisitorException {
+        if (execPlan == null) {
+            return;
+        }
+        for (POFRJoinTez frJoin : PlanHelper.getPhysicalOperators(execPlan, POFRJoinTez.class)) {
+            frJoin.releaseReplicateTables();
+        }
+    }
+
     private void initializeInputs(Map<String, LogicalInput> inputs)
             throws Exception {
 
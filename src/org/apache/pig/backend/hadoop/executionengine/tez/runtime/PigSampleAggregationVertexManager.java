@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.tez.runtime;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.PigConfiguration;
+import org.apache.tez.dag.api.InputDescriptor;
+import org.apache.tez.dag.api.VertexManagerPlugin;
+import org.apache.tez.dag.api.VertexManagerPluginContext;
+import org.apache.tez.dag.api.VertexManagerPluginContext.TaskWithLocationHint;
+import org.apache.tez.dag.api.event.VertexStateUpdate;
+import org.apache.tez.runtime.api.Event;
+import org.apache.tez.runtime.api.events.VertexManagerEvent;
+
+import com.google.common.collect.Lists;
+
+/**
+ * VertexManagerPlugin of the sample aggregation vertex of an order by, used
+ * when {@link PigConfiguration#PIG_TEZ_ORDERBY_SAMPLED_TASK_FRACTION} is set.
+ * The tasks of the vertex are scheduled as soon as it starts, so they fetch
+ * the samples while the sampling tasks finish and compute the quantiles from
+ * the samples of the first tasks to finish (see
+ * {@link org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POSampleShuffleTezLoad}).
+ * The tasks of the partitioner vertex then start as the sampling tasks they
+ * follow finish, without waiting for the rest of the input to be sampled.
+ */
+public class PigSampleAggregationVertexManager extends VertexManagerPlugin {
+    private static final Log LOG = LogFactory.getLog(PigSampleAggregationVertexManager.class);
+
+    public PigSampleAggregationVertexManager(VertexManagerPluginContext context) {
+        super(context);
+    }
+
+    @Override
+    public void initialize() {
+        // Nothing to do
+    }
+
+    @Override
+    public void onVertexStarted(Map<String, List<Integer>> completions) {
+        int parallelism = getContext().getVertexNumTasks(getContext().getVertexName());
+        List<TaskWithLocationHint> tasksToStart = Lists.newArrayListWithCapacity(parallelism);
+        for (int i = 0; i < parallelism; ++i) {
+            tasksToStart.add(new TaskWithLocationHint(i, null));
+        }
+        LOG.info("Scheduling " + parallelism + " tasks for vertex " + getContext().getVertexName());
+        getContext().scheduleVertexTasks(tasksToStart);
+    }
+
+    @Override
+    public void onVertexStateUpdated(VertexStateUpdate stateUpdate) {
+        // Nothing to do
+    }
+
+    @Override
+    public void onSourceTaskCompleted(String srcVertexName, Integer srcTaskId) {
+        // Nothing to do
+    }
+
+    @Override
+    public void onVertexManagerEventReceived(VertexManagerEvent vmEvent) {
+        // Nothing to do
+    }
+
+    @Override
+    public void onRootVertexInitialized(String inputName, InputDescriptor inputDescriptor,
+            List<Event> events) {
+        // Nothing to do
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.backend.hadoop.executionengine.tez.runtime;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.CompactReplicateTable;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.data.SizeUtil;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.util.MemoryBudgetManager;
+import org.apache.pig.impl.util.Spillable;
+import org.apache.pig.impl.util.SpillableMemoryManager;
+
+/**
+ * Replicated join tables built by a Tez task and kept in the
+ * {@link ObjectCache} for the following tasks of the vertex in the same
+ * container.
+ * <p>
+ * Each join that uses the tables acquires them and releases them when it has
+ * seen all its input. If the entry is evictable, it registers with the
+ * {@link SpillableMemoryManager} and drops the
+ * tables on {@link #spill()} while no join holds them. A task that finds the
+ * tables dropped builds them again from its broadcast input.
+ */
+@InterfaceAudience.Private
+public class SharedReplicateTables implements Spillable {
+
+    private static final Log LOG = LogFactory.getLog(SharedReplicateTables.class);
+
+    // Estimated size of a HashMap entry and the ArrayList holding its values
+    private static final int MAP_ENTRY_OVERHEAD = 32 + 40;
+
+    private final String name;
+
+    private final boolean evictable;
+
+    private final long memorySize;
+
+    private List<Map<? extends Object, ? extends List<Tuple>>> replicates;
+
+    private int refCount;
+
+    // Generation of the SpillableMemoryManager the tables were registered in
+    private int registeredGeneration = -1;
+
+    /**
+     * @param name name to log the entry with
+     * @param replicates the tables, one per input of the join with null for
+     * the fragment input
+     * @param evictable whether the tables can be dropped under memory pressure
+     */
+    public SharedReplicateTables(String name,
+            List<Map<? extends Object, ? extends List<Tuple>>> replicates, boolean evictable) {
+        this.name = name;
+        this.replicates = replicates;
+        this.evictable = evictable;
+        this.memorySize = evictable || MemoryBudgetManager.getInstance().isEnabled()
+                ? estimateMemorySize(replicates) : 0;
+    }
+
+    private static long estimateMemorySize(
+            List<Map<? extends Object, ? extends List<Tuple>>> replicates) {
+        long size = 0;
+        for (Map<? extends Object, ? extends List<Tuple>> replicate : replicates) {
+            if (replicate instanceof CompactReplicateTable) {
+                size += ((CompactReplicateTable) replicate).getMemorySize();
+            } else if (replicate != null) {
+                for (Map.Entry<? extends Object, ? extends List<Tuple>> e : replicate.entrySet()) {
+                    size += MAP_ENTRY_OVERHEAD + SizeUtil.getPigObjMemSize(e.getKey());
+                    for (Tuple t : e.getValue()) {
+                        size += 8 + t.getMemorySize();
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the estimated size of the tables when they were built, if they
+     * are evictable or the {@link MemoryBudgetManager} is used, otherwise 0
+     */
+    public long getEstimatedSize() {
+        return memorySize;
+    }
+
+    /**
+     * Get the tables and keep them from being dropped until {@link #release()}
+     * is called.
+     *
+     * @return the tables, or null if they were dropped
+     */
+    public synchronized List<Map<? extends Object, ? extends List<Tuple>>> acquire() {
+        if (replicates == null) {
+            return null;
+        }
+        refCount++;
+        return replicates;
+    }
+
+    public synchronized void release() {
+        if (refCount > 0) {
+            refCount--;
+        }
+    }
+
+    public synchronized boolean isEvicted() {
+        return replicates == null;
+    }
+
+    /**
+     * Register the tables with the {@link MemoryBudgetManager}, where they take
+     * their share of the budget even if they can not be dropped, or with the
+     * {@link SpillableMemoryManager} if they are evictable. The registered
+     * spillables are cleared at the start of each task, so the tables are
+     * registered once per task however many joins acquire them.
+     */
+    public synchronized void register() {
+        SpillableMemoryManager spillableManager = SpillableMemoryManager.getInstance();
+        int generation = spillableManager.getGeneration();
+        if (registeredGeneration == generation) {
+            return;
+        }
+        registeredGeneration = generation;
+        MemoryBudgetManager budgetManager = MemoryBudgetManager.getInstance();
+        if (budgetManager.isEnabled()) {
+            budgetManager.register(this, MemoryBudgetManager.REPLICATED).update(memorySize);
+        } else if (evictable) {
+            spillableManager.registerSpillable(this);
+        }
+    }
+
+    /**
+     * Drops the tables if they are evictable and not in use.
+     *
+     * @return the estimated number of bytes freed
+     */
+    @Override
+    public synchronized long spill() {
+        if (!evictable || refCount > 0 || replicates == null) {
+            return 0;
+        }
+        int dropped = 0;
+        for (Map<? extends Object, ? extends List<Tuple>> replicate : replicates) {
+            if (replicate != null) {
+                dropped++;
+            }
+        }
+        replicates = null;
+        LOG.info("Dropped " + dropped + " replication hash tables of about " + memorySize
+                + " bytes from Tez cache. cachekey=" + name);
+        return memorySize;
+    }
+
+    /**
+     * @return the estimated size of the tables if they can be dropped now,
+     * otherwise 0
+     */
+    @Override
+    public synchronized long getMemorySize() {
+        if (!evictable || refCount > 0 || replicates == null) {
+            return 0;
+        }
+        return memorySize;
+    }
+}
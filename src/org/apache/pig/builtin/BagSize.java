@@ -31,6 +31,7 @@ import org.apache.pig.impl.logicalLayer.schema.Schema;
 /**
  * This method should never be used directly, use {@link SIZE}.
  */
+@ThreadSafe
 public class BagSize extends EvalFunc<Long> {
 
     @Override
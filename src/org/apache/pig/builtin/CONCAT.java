@@ -36,6 +36,7 @@ import org.apache.pig.impl.logicalLayer.schema.Schema;
  * Generates the concatenation of two or more arguments.  It can be
  * used with two or more bytearrays or two or more chararrays (but not a mixture of the two).
  */
+@ThreadSafe
 public class CONCAT extends EvalFunc<DataByteArray> {
 
     @Override
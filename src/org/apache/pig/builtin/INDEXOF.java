@@ -35,6 +35,7 @@ import org.apache.pig.impl.logicalLayer.schema.Schema;
  *      A = load 'mydata' as (name);
  *      B = foreach A generate INDEXOF(name, ",");
  */
+@ThreadSafe
 public class INDEXOF extends EvalFunc<Integer> {
 
     private static final Log log = LogFactory.getLog(INDEXOF.class);
@@ -35,6 +35,7 @@ import org.apache.pig.FuncSpec;
  *      A = load 'mydata' as (name);
  *      B = foreach A generate LOWER(name);
  */
+@ThreadSafe
 public class LOWER extends EvalFunc<String> {
 
     /**
@@ -69,7 +69,10 @@ import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigTextInput
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigTextOutputFormat;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
 import org.apache.pig.bzip2r.Bzip2TextInputFormat;
+import org.apache.pig.data.BinSedesTupleFactory;
 import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.LazyTextTuple;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.logicalLayer.FrontendException;
@@ -163,6 +166,12 @@ LoadPushDown, LoadMetadata, StoreMetadata, OverwritableStoreFunc {
     // to simply depend on hadoop for handling bzip2 inputs
     private boolean bzipinput_usehadoops ;
 
+    // whether getNext returns LazyTextTuples, see PigConfiguration.PIG_STORAGE_LAZY_TUPLE
+    private boolean lazyTuple = false;
+    private boolean lazyTupleInitialized = false;
+    // number of fields of the last tuple read, to size the next one
+    private int lastTupleSize = 8;
+
     private Options populateValidOptions() {
         Options validOptions = new Options();
         validOptions.addOption("schema", false, "Loads / Stores the schema of the relation using a hidden JSON file.");
@@ -252,6 +261,10 @@ LoadPushDown, LoadMetadata, StoreMetadata, OverwritableStoreFunc {
             }
             mRequiredColumnsInitialized = true;
         }
+        if (!lazyTupleInitialized) {
+            lazyTuple = lazyTuple && canUseLazyTuple();
+            lazyTupleInitialized = true;
+        }
         // Prepend input source path if source tagging is enabled
         if (tagFile && (mRequiredColumns == null || mRequiredColumns[0])) {
             mProtoTuple.add(new DataByteArray(sourcePath.getName()));
@@ -267,6 +280,15 @@ LoadPushDown, LoadMetadata, StoreMetadata, OverwritableStoreFunc {
             Text value = (Text) in.getCurrentValue();
             byte[] buf = value.getBytes();
             int len = value.getLength();
+            LazyTextTuple lazy = null;
+            if (lazyTuple) {
+                // one copy of the line instead of one per field, the
+                // record reader reuses its buffer
+                lazy = new LazyTextTuple(Arrays.copyOf(buf, len), lastTupleSize);
+                for (Object o : mProtoTuple) {
+                    lazy.append(o);
+                }
+            }
             int start = 0;
             // If tagging is enabled, mRequiredColumns is created based on the
             // schema that includes tagfile/path as first index(0)
@@ -274,16 +296,22 @@ LoadPushDown, LoadMetadata, StoreMetadata, OverwritableStoreFunc {
             for (int i = 0; i < len; i++) {
                 if (buf[i] == fieldDel) {
                     if (mRequiredColumns==null || (mRequiredColumns.length>fieldID && mRequiredColumns[fieldID]))
-                        addTupleValue(mProtoTuple, buf, start, i);
+                        addTupleValue(lazy, buf, start, i);
                     start = i + 1;
                     fieldID++;
                 }
             }
             // pick up the last field
             if (start <= len && (mRequiredColumns==null || (mRequiredColumns.length>fieldID && mRequiredColumns[fieldID]))) {
-                addTupleValue(mProtoTuple, buf, start, len);
+                addTupleValue(lazy, buf, start, len);
+            }
+            Tuple t;
+            if (lazy != null) {
+                t = lazy;
+                lastTupleSize = lazy.size();
+            } else {
+                t = mTupleFactory.newTupleNoCopy(mProtoTuple);
             }
-            Tuple t =  mTupleFactory.newTupleNoCopy(mProtoTuple);
 
             return dontLoadSchema ? t : applySchema(t);
         } catch (InterruptedException e) {
@@ -326,10 +354,10 @@ LoadPushDown, LoadMetadata, StoreMetadata, OverwritableStoreFunc {
                         tup.append(null);
                     }
 
-                    Object val = null;
-                    if(tup.get(tupleIdx) != null){
+                    if (!castInPlace(tup, tupleIdx, fieldSchemas[i].getType())
+                            && tup.get(tupleIdx) != null) {
                         byte[] bytes = ((DataByteArray) tup.get(tupleIdx)).get();
-                        val = CastUtils.convertToType(caster, bytes,
+                        Object val = CastUtils.convertToType(caster, bytes,
                                 fieldSchemas[i], fieldSchemas[i].getType());
                         tup.set(tupleIdx, val);
                     }
@@ -365,6 +393,67 @@ LoadPushDown, LoadMetadata, StoreMetadata, OverwritableStoreFunc {
         tuple.add(readField(buf, start, end));
     }
 
+    private void addTupleValue(LazyTextTuple lazy, byte[] buf, int start, int end) {
+        if (lazy != null) {
+            lazy.appendField(start, end);
+        } else {
+            addTupleValue(mProtoTuple, buf, start, end);
+        }
+    }
+
+    /**
+     * Lazy tuples materialize fields the way the default readField does, so
+     * they are not used by subclasses which override it. They are also not
+     * used with a custom TupleFactory, so the tuples are of the class it
+     * makes.
+     */
+    private boolean canUseLazyTuple() {
+        if (mTupleFactory.getClass() != BinSedesTupleFactory.class) {
+            return false;
+        }
+        for (Class<?> c = getClass(); c != PigStorage.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("readField", byte[].class, int.class, int.class);
+                return false;
+            } catch (NoSuchMethodException e) {
+                // not overridden here
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cast a numeric field of a lazy tuple that has not been read yet
+     * directly from the line, without copying it out first.
+     * @return false if the field was not cast
+     */
+    private boolean castInPlace(Tuple tup, int idx, byte type) throws IOException {
+        if (!(tup instanceof LazyTextTuple) || caster.getClass() != Utf8StorageConverter.class) {
+            return false;
+        }
+        LazyTextTuple lazy = (LazyTextTuple) tup;
+        if (!lazy.isRaw(idx)) {
+            return false;
+        }
+        Utf8StorageConverter converter = (Utf8StorageConverter) caster;
+        byte[] buf = lazy.getBuffer();
+        int start = lazy.getFieldStart(idx);
+        int end = lazy.getFieldEnd(idx);
+        switch (type) {
+        case DataType.INTEGER:
+            lazy.set(idx, converter.bytesToInteger(buf, start, end));
+            return true;
+        case DataType.LONG:
+            lazy.set(idx, converter.bytesToLong(buf, start, end));
+            return true;
+        case DataType.DOUBLE:
+            lazy.set(idx, converter.bytesToDouble(buf, start, end));
+            return true;
+        default:
+            return false;
+        }
+    }
+
     /**
      * Read the bytes between start and end into a DataByteArray for inclusion in the return tuple.
      * @param bytes byte array to copy data from
@@ -450,6 +539,8 @@ LoadPushDown, LoadMetadata, StoreMetadata, OverwritableStoreFunc {
         bzipinput_usehadoops = job.getConfiguration().getBoolean(
                                   PigConfiguration.PIG_BZIP_USE_HADOOP_INPUTFORMAT,
                                   true );
+        lazyTuple = job.getConfiguration().getBoolean(
+                PigConfiguration.PIG_STORAGE_LAZY_TUPLE, false);
     }
 
     @Override
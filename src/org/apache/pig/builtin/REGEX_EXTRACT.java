@@ -26,6 +26,7 @@ import java.util.regex.Pattern;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.FuncSpec;
 import org.apache.pig.PigWarning;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.RegexCache;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.logicalLayer.FrontendException;
@@ -48,6 +49,7 @@ import org.apache.pig.impl.logicalLayer.schema.Schema;
 * </dl>
 */
 
+@ThreadSafe
 public class REGEX_EXTRACT extends EvalFunc<String> {
     String mExpression = null;
     Pattern mPattern = null;
@@ -82,7 +84,7 @@ public class REGEX_EXTRACT extends EvalFunc<String> {
                 try
                 {
                     mExpression = (String)input.get(1);
-                    mPattern = Pattern.compile(mExpression);
+                    mPattern = RegexCache.getPattern(mExpression);
                 } catch (Exception e)
                 {
                     String msg = "RegexExtract : Mal-Formed Regular expression : "+input.get(1);
@@ -25,6 +25,7 @@ import java.util.regex.Pattern;
 
 import org.apache.pig.EvalFunc;
 import org.apache.pig.FuncSpec;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.RegexCache;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
@@ -47,6 +48,7 @@ import org.apache.pig.impl.logicalLayer.schema.Schema;
  * </dl>
  */
 
+@ThreadSafe
 public class REGEX_EXTRACT_ALL extends EvalFunc<Tuple> {
     private static TupleFactory tupleFactory = TupleFactory.getInstance();
     boolean mUseMatches = true;
@@ -70,7 +72,7 @@ public class REGEX_EXTRACT_ALL extends EvalFunc<Tuple> {
             if (!input.get(1).equals(mExpression)) {
                 try {
                     mExpression = (String)input.get(1);
-                    mPattern = Pattern.compile(mExpression);
+                    mPattern = RegexCache.getPattern(mExpression);
                 } catch (Exception e) {
                     String msg = "RegexExtractAll : Mal-Formed Regular expression : "+input.get(1);
                     throw new IOException(msg);
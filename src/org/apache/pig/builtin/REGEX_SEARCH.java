@@ -22,6 +22,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.pig.EvalFunc;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.RegexCache;
 import org.apache.pig.data.*;
 import org.apache.pig.impl.logicalLayer.schema.Schema;
 import org.apache.pig.impl.util.*;
@@ -39,6 +40,7 @@ import org.apache.pig.impl.util.*;
  * the second field is the regular expression;
  */
 
+@ThreadSafe
 public class REGEX_SEARCH extends EvalFunc<DataBag> {
 	private static BagFactory bagFactory = BagFactory.getInstance();
 	private static TupleFactory tupleFactory = TupleFactory.getInstance();
@@ -58,7 +60,7 @@ public class REGEX_SEARCH extends EvalFunc<DataBag> {
 			if (!input.get(1).equals(mExpression)) {
                 try {
                     mExpression = (String)input.get(1);
-                    mPattern = Pattern.compile(mExpression);
+                    mPattern = RegexCache.getPattern(mExpression);
                 } catch (Exception e) {
                     String msg = "StringSearchAll : Mal-Formed Regular expression : "+input.get(1);
                     throw new IOException(msg);
@@ -26,6 +26,7 @@ import java.util.regex.Pattern;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.FuncSpec;
 import org.apache.pig.PigWarning;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.RegexCache;
 import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.impl.logicalLayer.FrontendException;
@@ -41,6 +42,7 @@ import org.apache.pig.impl.logicalLayer.schema.Schema;
  * This is a wrapper around Java's String.replaceAll(String, String);
  *
  */
+@ThreadSafe
 public class REPLACE extends EvalFunc<String>
 {
     private Pattern mPattern = null;
@@ -69,7 +71,7 @@ public class REPLACE extends EvalFunc<String>
         
         if (mPattern == null || ! target.equals(mPattern.pattern())) {
             try {
-                mPattern = Pattern.compile(target);
+                mPattern = RegexCache.getPattern(target);
             } catch (Exception e) {
                 warn("Replace : Mal-Formed Regular expression : " + target, PigWarning.UDF_WARNING_1);
                 return null;
@@ -39,6 +39,7 @@ import org.apache.pig.impl.logicalLayer.schema.Schema;
  * the number of keyvalue pairs.  For all other types the value of 1 is
  * always returned.
  */
+@ThreadSafe
 public class SIZE extends EvalFunc<Long> {
 
     @Override
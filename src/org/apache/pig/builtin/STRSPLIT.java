@@ -42,6 +42,7 @@ import org.apache.pig.impl.logicalLayer.FrontendException;
  * If limit is not provided, 0 is assumed, as per Java's split().
  */
 
+@ThreadSafe
 public class STRSPLIT extends EvalFunc<Tuple> {
 
     private final static TupleFactory tupleFactory = TupleFactory.getInstance();
@@ -41,6 +41,7 @@ import org.apache.pig.impl.logicalLayer.FrontendException;
  * Third argument is the index of the last character of substring.<br>
  * if the last argument is past the end of the string, substring of (beginIndex, length(str)) is returned.
  */
+@ThreadSafe
 public class SUBSTRING extends EvalFunc<String> {
 
     /**
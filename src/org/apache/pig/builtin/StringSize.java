@@ -30,6 +30,7 @@ import org.apache.pig.impl.logicalLayer.schema.Schema;
 /**
  * This method should never be used directly, use {@link SIZE}.
  */
+@ThreadSafe
 public class StringSize extends EvalFunc<Long> {
 
     @Override
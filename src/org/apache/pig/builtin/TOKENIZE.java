@@ -40,6 +40,7 @@ import org.apache.pig.FuncSpec;
  * The string is split on space, double quote, comma, open parend, close parend,
  * and asterisk (star).
  */
+@ThreadSafe
 public class TOKENIZE extends EvalFunc<DataBag> {
     TupleFactory mTupleFactory = TupleFactory.getInstance();
     BagFactory mBagFactory = BagFactory.getInstance();
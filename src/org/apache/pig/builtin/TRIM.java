@@ -34,6 +34,7 @@ import org.apache.pig.impl.logicalLayer.FrontendException;
  * Returns a string, with leading and trailing whitespace omitted.
  * Implements a binding to the Java function {@link java.lang.String#trim() String.trim()}.
  */
+@ThreadSafe
 public class TRIM extends EvalFunc<String> {
     @Override
     public String exec(Tuple input) throws IOException {
@@ -29,6 +29,7 @@ import org.apache.pig.impl.logicalLayer.schema.Schema;
 /**
  * This method should never be used directly, use {@link SIZE}.
  */
+@ThreadSafe
 public class TupleSize extends EvalFunc<Long> {
 
     @Override
@@ -37,6 +37,7 @@ import org.apache.pig.FuncSpec;
  *      A = load 'mydata' as (name);
  *      B = foreach A generate UPPER(name);
  */
+@ThreadSafe
 public class UPPER extends EvalFunc<String> {
 
     /** 
@@ -431,12 +431,52 @@ public class Utf8StorageConverter implements LoadStoreCaster {
         return true;
     }
 
+    // returned by parsePlainLong for bytes which are not a plain number
+    private static final long NOT_PLAIN = Long.MIN_VALUE;
+
+    // longest plain number parsed without overflow checks
+    private static final int MAX_PLAIN_DIGITS = 18;
+
+    /**
+     * Parse the bytes from start to end as a plain decimal number, an optional
+     * '-' followed by at most 18 digits, without creating a String. Anything
+     * else, like spaces, type suffixes, decimals or longer numbers, is left to
+     * the String based conversion.
+     * @return the number, or NOT_PLAIN
+     */
+    private static long parsePlainLong(byte[] b, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && b[i] == '-') {
+            negative = true;
+            i++;
+        }
+        int digits = end - i;
+        if (digits == 0 || digits > MAX_PLAIN_DIGITS) {
+            return NOT_PLAIN;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_PLAIN;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
     @Override
     public Integer bytesToInteger(byte[] b) throws IOException {
         if(b == null || b.length == 0) {
             return null;
         }
-        
+
+        long plain = parsePlainLong(b, 0, b.length);
+        if (plain != NOT_PLAIN && plain >= Integer.MIN_VALUE && plain <= Integer.MAX_VALUE) {
+            return Integer.valueOf((int) plain);
+        }
+
         String s = new String(b);
         s = s.trim();
         Integer ret = null;
@@ -480,7 +520,12 @@ public class Utf8StorageConverter implements LoadStoreCaster {
         if (b == null || b.length == 0) {
             return null;
         }
-        
+
+        long plain = parsePlainLong(b, 0, b.length);
+        if (plain != NOT_PLAIN) {
+            return Long.valueOf(plain);
+        }
+
         String s = new String(b).trim();
         if(s.endsWith("l") || s.endsWith("L")) {
             s = s.substring(0, s.length()-1);
@@ -522,6 +567,52 @@ public class Utf8StorageConverter implements LoadStoreCaster {
         return ret;
     }
 
+    /**
+     * Same as {@link #bytesToInteger(byte[])} for the bytes of b from start,
+     * inclusive, to end, exclusive. Plain numbers are parsed in place.
+     */
+    public Integer bytesToInteger(byte[] b, int start, int end) throws IOException {
+        if (b == null || start == end) {
+            return null;
+        }
+        long plain = parsePlainLong(b, start, end);
+        if (plain != NOT_PLAIN && plain >= Integer.MIN_VALUE && plain <= Integer.MAX_VALUE) {
+            return Integer.valueOf((int) plain);
+        }
+        return bytesToInteger(Arrays.copyOfRange(b, start, end));
+    }
+
+    /**
+     * Same as {@link #bytesToLong(byte[])} for the bytes of b from start,
+     * inclusive, to end, exclusive. Plain numbers are parsed in place.
+     */
+    public Long bytesToLong(byte[] b, int start, int end) throws IOException {
+        if (b == null || start == end) {
+            return null;
+        }
+        long plain = parsePlainLong(b, start, end);
+        if (plain != NOT_PLAIN) {
+            return Long.valueOf(plain);
+        }
+        return bytesToLong(Arrays.copyOfRange(b, start, end));
+    }
+
+    /**
+     * Same as {@link #bytesToDouble(byte[])} for the bytes of b from start,
+     * inclusive, to end, exclusive.
+     */
+    public Double bytesToDouble(byte[] b, int start, int end) {
+        if (b == null || start == end) {
+            return null;
+        }
+        try {
+            return Double.valueOf(new String(b, start, end - start));
+        } catch (NumberFormatException nfe) {
+            // let the byte[] version report it
+            return bytesToDouble(Arrays.copyOfRange(b, start, end));
+        }
+    }
+
     @Override
     public DateTime bytesToDateTime(byte[] b) throws IOException {
         if (b == null) {
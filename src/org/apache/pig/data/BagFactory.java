@@ -142,6 +142,16 @@ public abstract class BagFactory {
         return bag;
     }
 
+    /**
+     * Get an unordered, not distinct bag that keeps its tuples serialized
+     * in off-heap memory and spills them to disk when the off-heap budget
+     * is exhausted.
+     * @return off-heap data bag
+     */
+    public DataBag newOffHeapBag() {
+        return new OffHeapDataBag();
+    }
+
     /**
      * Construct a new BagFactory
      */
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Writes a spill file as a sequence of compressed pages. Each page is
+ * written as its uncompressed length, its stored length and the codec it was
+ * compressed with, followed by the stored bytes. Pages that do not compress
+ * are stored as is. The file is read back with {@link MappedSpillInputStream}.
+ */
+class CompressedSpillOutputStream extends OutputStream {
+
+    private static final Log log = LogFactory.getLog(CompressedSpillOutputStream.class);
+
+    static final byte STORED = 0;
+    static final byte SNAPPY = 1;
+    static final byte DEFLATE = 2;
+
+    /** Size of the page header: two ints and the codec */
+    static final int HEADER_SIZE = 9;
+
+    static final int PAGE_SIZE = 64 * 1024;
+
+    private static Boolean snappyAvailable;
+
+    private final DataOutputStream out;
+
+    private final byte codec;
+
+    private final byte[] page = new byte[PAGE_SIZE];
+
+    private int count = 0;
+
+    private byte[] compressed;
+
+    private Deflater deflater;
+
+    /**
+     * @param out stream to write the pages to
+     * @param codec "snappy" or "deflate". Snappy falls back to deflate if
+     * its native library can not be loaded.
+     */
+    CompressedSpillOutputStream(OutputStream out, String codec) {
+        this.out = new DataOutputStream(out);
+        this.codec = "deflate".equalsIgnoreCase(codec) || !isSnappyAvailable() ? DEFLATE : SNAPPY;
+    }
+
+    private static synchronized boolean isSnappyAvailable() {
+        if (snappyAvailable == null) {
+            try {
+                Snappy.compress(new byte[1]);
+                snappyAvailable = true;
+            } catch (Throwable t) {
+                log.warn("Snappy is not available, compressing spill files with deflate", t);
+                snappyAvailable = false;
+            }
+        }
+        return snappyAvailable;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == PAGE_SIZE) {
+            writePage();
+        }
+        page[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == PAGE_SIZE) {
+                writePage();
+            }
+            int n = Math.min(len, PAGE_SIZE - count);
+            System.arraycopy(b, off, page, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void writePage() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        int length;
+        if (codec == SNAPPY) {
+            if (compressed == null) {
+                compressed = new byte[Snappy.maxCompressedLength(PAGE_SIZE)];
+            }
+            length = Snappy.compress(page, 0, count, compressed, 0);
+        } else {
+            if (deflater == null) {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+                compressed = new byte[PAGE_SIZE];
+            }
+            deflater.reset();
+            deflater.setInput(page, 0, count);
+            deflater.finish();
+            length = deflater.deflate(compressed);
+            if (!deflater.finished()) {
+                // Did not fit in a page, so does not compress
+                length = count;
+            }
+        }
+        out.writeInt(count);
+        if (length < count) {
+            out.writeInt(length);
+            out.writeByte(codec);
+            out.write(compressed, 0, length);
+        } else {
+            out.writeInt(count);
+            out.writeByte(STORED);
+            out.write(page, 0, count);
+        }
+        count = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writePage();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+            out.close();
+        }
+    }
+}
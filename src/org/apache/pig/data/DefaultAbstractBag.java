@@ -17,11 +17,15 @@
  */
 package org.apache.pig.data;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Collection;
@@ -29,13 +33,17 @@ import java.util.Iterator;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigException;
 import org.apache.pig.PigWarning;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigHadoopLogger;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PhysicalOperator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.PigLogger;
 import org.apache.pig.impl.util.BagFormat;
+import org.apache.pig.impl.util.MemoryBudgetManager;
 import org.apache.pig.impl.util.SpillableMemoryManager;
 import org.apache.pig.tools.pigstats.PigStatusReporter;
 
@@ -51,6 +59,18 @@ public abstract class DefaultAbstractBag implements DataBag {
     // If we grow past 100K, may be worthwhile to register.
     private static final int SPILL_REGISTER_THRESHOLD = 100 * 1024;
 
+    // Number of tuples added between updates of the memory reserved by the
+    // bag when the MemoryBudgetManager is used
+    private static final int RESERVE_FREQUENCY = 64;
+
+    // Suffix of the spill files written by CompressedSpillOutputStream
+    private static final String COMPRESSED_SPILL_SUFFIX = ".pgz";
+
+    // Last settings of the spill compression seen in a job configuration, for
+    // spills from threads that have no configuration
+    private static volatile boolean compressSpill = false;
+    private static volatile String spillCodec = null;
+
     private static PigLogger pigLogger;
 
     private static InterSedes sedes = InterSedesFactory.getInterSedesInstance();
@@ -75,6 +95,8 @@ public abstract class DefaultAbstractBag implements DataBag {
 
     private boolean spillableRegistered = false;
 
+    private transient MemoryBudgetManager.Quota memoryQuota;
+
     /**
      * Get the number of elements in the bag, both in memory and on disk.
      */
@@ -126,12 +148,28 @@ public abstract class DefaultAbstractBag implements DataBag {
         if (!spillableRegistered) {
             long estimate = getMemorySize();
             if ( estimate >= SPILL_REGISTER_THRESHOLD) {
-                SpillableMemoryManager.getInstance().registerSpillable(this);
+                MemoryBudgetManager budgetManager = MemoryBudgetManager.getInstance();
+                if (budgetManager.isEnabled()) {
+                    memoryQuota = budgetManager.register(this, getMemoryConsumer());
+                    memoryQuota.update(estimate);
+                } else {
+                    SpillableMemoryManager.getInstance().registerSpillable(this);
+                }
                 spillableRegistered = true;
             }
+        } else if (memoryQuota != null && mSize % RESERVE_FREQUENCY == 0) {
+            memoryQuota.update(getMemorySize());
         }
     }
 
+    /**
+     * @return name under which the memory reserved by the bag is counted by
+     * the {@link MemoryBudgetManager}
+     */
+    protected String getMemoryConsumer() {
+        return MemoryBudgetManager.BAG;
+    }
+
     @Override
     public void addAll(DataBag b) {
         addAll((Iterable<Tuple>) b);
@@ -249,6 +287,9 @@ public abstract class DefaultAbstractBag implements DataBag {
             sampled = 0;
             // not changing spillableRegistered -- clear doesn't change that.
         }
+        if (memoryQuota != null) {
+            memoryQuota.releaseAll();
+        }
     }
 
     /**
@@ -408,6 +449,19 @@ public abstract class DefaultAbstractBag implements DataBag {
           }
         }
 
+        Configuration conf = PigMapReduce.sJobConfInternal.get();
+        if (conf != null) {
+            compressSpill = conf.getBoolean(PigConfiguration.PIG_SPILL_COMPRESS, false);
+            spillCodec = conf.get(PigConfiguration.PIG_SPILL_COMPRESS_CODEC);
+        }
+        if (compressSpill) {
+            File f = File.createTempFile("pigbag", COMPRESSED_SPILL_SUFFIX);
+            f.deleteOnExit();
+            mSpillFiles.add(f);
+            return new DataOutputStream(new CompressedSpillOutputStream(
+                new FileOutputStream(f), spillCodec));
+        }
+
         File f = File.createTempFile("pigbag", null);
         f.deleteOnExit();
         mSpillFiles.add(f);
@@ -415,6 +469,19 @@ public abstract class DefaultAbstractBag implements DataBag {
             new FileOutputStream(f)));
     }
 
+    /**
+     * Open a spill file created by {@link #getSpillFile()} for reading.
+     * @param f the spill file
+     * @return stream to read the tuples from
+     * @throws FileNotFoundException if the file does not exist
+     */
+    protected static DataInputStream openSpillFile(File f) throws FileNotFoundException {
+        if (f.getName().endsWith(COMPRESSED_SPILL_SUFFIX)) {
+            return new DataInputStream(new MappedSpillInputStream(f));
+        }
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+    }
+
     /**
      * Report progress to HDFS.
      */
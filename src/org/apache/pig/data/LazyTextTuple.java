@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.classification.InterfaceAudience;
+
+/**
+ * A tuple over a line of delimited text that keeps the line and the offsets
+ * of its fields, and only copies a field out into a {@link DataByteArray}
+ * when it is accessed. Loaders of wide text records where the script uses
+ * only a few columns avoid creating objects for the others.
+ * <p>
+ * Fields that have not been read yet can be accessed as a byte range of the
+ * line with {@link #getBuffer()}, {@link #getFieldStart(int)} and
+ * {@link #getFieldEnd(int)}, so a LoadCaster can convert them without the
+ * intermediate byte array. An empty field is null, as in PigStorage.
+ * <p>
+ * The tuple serializes with {@link InterSedes} like {@link BinSedesTuple}.
+ */
+@InterfaceAudience.Private
+public class LazyTextTuple extends AbstractTuple {
+
+    private static final long serialVersionUID = 1L;
+    private static final InterSedes sedes = InterSedesFactory.getInterSedesInstance();
+
+    private byte[] buf;
+
+    // start and end offsets of the fields in buf, start is -1 for fields
+    // which are in values, either because they were read or set
+    private int[] starts;
+    private int[] ends;
+    private Object[] values;
+    private int size;
+
+    /**
+     * Default constructor, for deserialization.
+     */
+    public LazyTextTuple() {
+        this(null, 8);
+    }
+
+    /**
+     * @param buf line the fields are in, kept as part of the tuple
+     * @param expectedSize number of fields expected, the tuple grows as needed
+     */
+    public LazyTextTuple(byte[] buf, int expectedSize) {
+        this.buf = buf;
+        int capacity = Math.max(expectedSize, 1);
+        starts = new int[capacity];
+        ends = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            int newCapacity = Math.max(capacity, values.length * 2);
+            starts = Arrays.copyOf(starts, newCapacity);
+            ends = Arrays.copyOf(ends, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+
+    /**
+     * Append a field that is the bytes of the line from start, inclusive, to
+     * end, exclusive.
+     */
+    public void appendField(int start, int end) {
+        ensureCapacity(size + 1);
+        starts[size] = start;
+        ends[size] = end;
+        values[size] = null;
+        size++;
+    }
+
+    /**
+     * @return true if the field has not been read or set yet, and is still
+     * only a range of {@link #getBuffer()}
+     */
+    public boolean isRaw(int fieldNum) {
+        return starts[fieldNum] >= 0;
+    }
+
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    public int getFieldStart(int fieldNum) {
+        return starts[fieldNum];
+    }
+
+    public int getFieldEnd(int fieldNum) {
+        return ends[fieldNum];
+    }
+
+    private void checkBounds(int fieldNum) throws ExecException {
+        if (fieldNum < 0 || fieldNum >= size) {
+            throw new ExecException("Index: " + fieldNum + ", Size: " + size);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object get(int fieldNum) throws ExecException {
+        checkBounds(fieldNum);
+        int start = starts[fieldNum];
+        if (start >= 0) {
+            int end = ends[fieldNum];
+            values[fieldNum] = start == end ? null : new DataByteArray(buf, start, end);
+            starts[fieldNum] = -1;
+        }
+        return values[fieldNum];
+    }
+
+    /**
+     * Get all of the fields in the tuple as a list. All fields are read, and
+     * the list returned is a copy, changes to it are not reflected in the
+     * tuple.
+     */
+    @Override
+    public List<Object> getAll() {
+        List<Object> all = new ArrayList<Object>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                all.add(get(i));
+            }
+        } catch (ExecException e) {
+            throw new RuntimeException(e);
+        }
+        return all;
+    }
+
+    @Override
+    public void set(int fieldNum, Object val) throws ExecException {
+        checkBounds(fieldNum);
+        starts[fieldNum] = -1;
+        values[fieldNum] = val;
+    }
+
+    @Override
+    public void append(Object val) {
+        ensureCapacity(size + 1);
+        starts[size] = -1;
+        values[size] = val;
+        size++;
+    }
+
+    @Override
+    public long getMemorySize() {
+        // 8 - object header, 4 * 4 - references to the arrays, 4 - size
+        long sum = 8 + 16 + 4;
+        if (buf != null) {
+            sum += SizeUtil.roundToEight(12 + buf.length);
+        }
+        sum += 2 * SizeUtil.roundToEight(12 + 4 * starts.length);
+        sum += SizeUtil.roundToEight(12 + 4 * values.length);
+        for (int i = 0; i < size; i++) {
+            if (starts[i] < 0) {
+                sum += SizeUtil.getPigObjMemSize(values[i]);
+            }
+        }
+        return SizeUtil.roundToEight(sum);
+    }
+
+    @Override
+    public int compareTo(Object other) {
+        if (other instanceof Tuple) {
+            Tuple t = (Tuple) other;
+            int tSz = t.size();
+            if (tSz < size) {
+                return 1;
+            } else if (tSz > size) {
+                return -1;
+            } else {
+                for (int i = 0; i < size; i++) {
+                    try {
+                        int c = DataType.compare(get(i), t.get(i));
+                        if (c != 0) {
+                            return c;
+                        }
+                    } catch (ExecException e) {
+                        throw new RuntimeException("Unable to compare tuples", e);
+                    }
+                }
+                return 0;
+            }
+        } else {
+            return DataType.compare(this, other);
+        }
+    }
+
+    /**
+     * Same hash code as {@link DefaultTuple} with the same fields.
+     */
+    @Override
+    public int hashCode() {
+        int hash = 17;
+        try {
+            for (int i = 0; i < size; i++) {
+                Object o = get(i);
+                if (o != null) {
+                    hash = 31 * hash + o.hashCode();
+                }
+            }
+        } catch (ExecException e) {
+            throw new RuntimeException(e);
+        }
+        return hash;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        sedes.writeDatum(out, this, DataType.TUPLE);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        // Clear our fields, in case we're being reused.
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        buf = null;
+        sedes.addColsToTuple(in, this);
+    }
+
+    /**
+     * Java serialization writes the fields as a regular tuple instead of
+     * the line and the offsets.
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return TupleFactory.getInstance().newTupleNoCopy(getAll());
+    }
+}
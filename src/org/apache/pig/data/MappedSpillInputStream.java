@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Reads a spill file written by {@link CompressedSpillOutputStream}. The file
+ * is memory mapped in large windows, and is only open while a window is being
+ * mapped, so merging many spill files does not hold a file handle per file.
+ * Pages are decompressed straight from the mapped window.
+ * <p>
+ * A window is unmapped as soon as the stream moves past it, reaches the end
+ * of the file or is closed, rather than when it is garbage collected, so that
+ * merging many spill files only keeps one window per open file mapped. The
+ * bytes mapped by all the streams are also capped: a stream which can not
+ * map a whole window maps what is left, and reads the file into a buffer of
+ * a few pages once nothing is left.
+ */
+class MappedSpillInputStream extends InputStream {
+
+    private static final Log log = LogFactory.getLog(MappedSpillInputStream.class);
+
+    // Size of the windows the file is mapped in
+    static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    // Most bytes mapped by all the streams at once
+    static final long MAX_MAPPED_BYTES = 4L * WINDOW_SIZE;
+
+    // Size of the buffer the file is read in once MAX_MAPPED_BYTES are mapped
+    static final int BUFFER_SIZE = 4 * (CompressedSpillOutputStream.PAGE_SIZE
+            + CompressedSpillOutputStream.HEADER_SIZE);
+
+    // Bytes mapped by all the streams and not unmapped yet
+    private static final AtomicLong mappedBytes = new AtomicLong();
+
+    // sun.misc.Unsafe.invokeCleaner(ByteBuffer) from Java 9, or
+    // sun.nio.ch.DirectBuffer.cleaner() and sun.misc.Cleaner.clean() before,
+    // null if buffers can not be unmapped explicitly
+    private static final Object unsafe;
+    private static final Method invokeCleaner;
+    private static final Method cleaner;
+    private static final Method clean;
+
+    static {
+        Object u = null;
+        Method ic = null;
+        Method cl = null;
+        Method c = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                ic = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field f = unsafeClass.getDeclaredField("theUnsafe");
+                f.setAccessible(true);
+                u = f.get(null);
+            } catch (NoSuchMethodException e) {
+                ic = null;
+                cl = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                c = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            }
+        } catch (Exception e) {
+            log.warn("Unable to unmap spill files explicitly, they are unmapped when garbage collected", e);
+            u = null;
+            ic = null;
+            cl = null;
+            c = null;
+        }
+        unsafe = u;
+        invokeCleaner = ic;
+        cleaner = cl;
+        clean = c;
+    }
+
+    private final File file;
+
+    private final int windowSize;
+
+    private final long maxMappedBytes;
+
+    private final long length;
+
+    // Part of the file mapped or read in the buffer, its position and length
+    // in the file
+    private ByteBuffer window;
+    private long windowStart;
+    private int windowLength;
+    private boolean mapped;
+
+    private ByteBuffer buffer;
+
+    // Position of the next page in the file
+    private long pageStart = 0;
+
+    private final byte[] page = new byte[CompressedSpillOutputStream.PAGE_SIZE];
+    private int pageLength = 0;
+    private int pos = 0;
+
+    private ByteBuffer directPage;
+    private byte[] compressed;
+    private Inflater inflater;
+
+    MappedSpillInputStream(File file) throws FileNotFoundException {
+        this(file, WINDOW_SIZE, MAX_MAPPED_BYTES);
+    }
+
+    MappedSpillInputStream(File file, int windowSize, long maxMappedBytes) throws FileNotFoundException {
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        this.file = file;
+        this.length = file.length();
+        this.windowSize = windowSize;
+        this.maxMappedBytes = maxMappedBytes;
+    }
+
+    /**
+     * @return number of bytes of spill files mapped and not unmapped yet
+     */
+    static long getMappedBytes() {
+        return mappedBytes.get();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == pageLength && !nextPage()) {
+            return -1;
+        }
+        return page[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (pos == pageLength && !nextPage()) {
+            return -1;
+        }
+        int n = Math.min(len, pageLength - pos);
+        System.arraycopy(page, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return pageLength - pos;
+    }
+
+    private boolean nextPage() throws IOException {
+        if (pageStart >= length) {
+            unmap();
+            return false;
+        }
+        ByteBuffer buf = map(pageStart, CompressedSpillOutputStream.HEADER_SIZE);
+        int rawLength = buf.getInt();
+        int storedLength = buf.getInt();
+        byte codec = buf.get();
+        buf = map(pageStart + CompressedSpillOutputStream.HEADER_SIZE, storedLength);
+        buf.limit(buf.position() + storedLength);
+        switch (codec) {
+        case CompressedSpillOutputStream.STORED:
+            buf.get(page, 0, rawLength);
+            break;
+        case CompressedSpillOutputStream.SNAPPY:
+            // Mapped buffers are direct, so snappy reads the window in place
+            if (directPage == null) {
+                directPage = ByteBuffer.allocateDirect(CompressedSpillOutputStream.PAGE_SIZE);
+            }
+            directPage.clear();
+            Snappy.uncompress(buf, directPage);
+            directPage.get(page, 0, rawLength);
+            break;
+        case CompressedSpillOutputStream.DEFLATE:
+            if (inflater == null) {
+                inflater = new Inflater();
+                compressed = new byte[CompressedSpillOutputStream.PAGE_SIZE];
+            }
+            buf.get(compressed, 0, storedLength);
+            inflater.reset();
+            inflater.setInput(compressed, 0, storedLength);
+            try {
+                inflater.inflate(page, 0, rawLength);
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt spill file " + file, e);
+            }
+            break;
+        default:
+            throw new IOException("Unknown codec " + codec + " in spill file " + file);
+        }
+        pageStart += CompressedSpillOutputStream.HEADER_SIZE + storedLength;
+        pageLength = rawLength;
+        pos = 0;
+        return true;
+    }
+
+    // Returns the window positioned at offset, mapping a new window, or
+    // reading the buffer, if the current one does not contain the requested
+    // range
+    private ByteBuffer map(long offset, int size) throws IOException {
+        if (window == null || offset < windowStart
+                || offset + size > windowStart + windowLength) {
+            unmap();
+            long mapSize = reserve(Math.min(Math.max(windowSize, size), length - offset), size);
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                if (mapSize > 0) {
+                    try {
+                        window = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, mapSize);
+                    } catch (IOException e) {
+                        mappedBytes.addAndGet(-mapSize);
+                        throw e;
+                    }
+                    windowLength = (int) mapSize;
+                    mapped = true;
+                } else {
+                    windowLength = (int) Math.min(Math.max(BUFFER_SIZE, size), length - offset);
+                    window = read(raf.getChannel(), offset, windowLength);
+                }
+            } finally {
+                // The mapping stays valid once the file is closed
+                raf.close();
+            }
+            windowStart = offset;
+        }
+        window.clear();
+        window.position((int) (offset - windowStart));
+        return window;
+    }
+
+    // Reserves up to wanted bytes to map, and at least min, within the bytes
+    // left under maxMappedBytes. Returns 0 if less than min are left.
+    private long reserve(long wanted, long min) {
+        while (true) {
+            long mapped = mappedBytes.get();
+            long size = Math.min(wanted, maxMappedBytes - mapped);
+            if (size < min) {
+                return 0;
+            }
+            if (mappedBytes.compareAndSet(mapped, mapped + size)) {
+                return size;
+            }
+        }
+    }
+
+    // Reads size bytes at offset into the buffer, which is direct for snappy
+    private ByteBuffer read(FileChannel channel, long offset, int size) throws IOException {
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, size));
+        }
+        buffer.clear();
+        buffer.limit(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of spill file " + file);
+            }
+        }
+        return buffer;
+    }
+
+    // Unmaps the current window. The pages are copied out of the window, so
+    // nothing refers to it afterwards
+    private void unmap() {
+        ByteBuffer buf = window;
+        window = null;
+        if (!mapped) {
+            return;
+        }
+        mapped = false;
+        try {
+            if (invokeCleaner != null) {
+                invokeCleaner.invoke(unsafe, buf);
+            } else if (cleaner != null) {
+                Object c = cleaner.invoke(buf);
+                if (c != null) {
+                    clean.invoke(c);
+                }
+            } else {
+                return;
+            }
+            mappedBytes.addAndGet(-buf.capacity());
+        } catch (Exception e) {
+            log.warn("Unable to unmap window of spill file " + file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        unmap();
+        directPage = null;
+        buffer = null;
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+}
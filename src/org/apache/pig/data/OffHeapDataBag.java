@@ -0,0 +1,414 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigCounters;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+
+/**
+ * An unordered bag that keeps its tuples serialized with {@link BinInterSedes}
+ * in direct ByteBuffer pages instead of as java objects on the heap.
+ * <p>
+ * Pages are taken from a pool shared by all off-heap bags in the JVM whose
+ * total size is limited by {@link PigConfiguration#PIG_OFFHEAPBAG_MEMORY}.
+ * When a new page can not be allocated within that budget, the bag writes
+ * its full pages to a local spill file and reuses them, so the bag does not
+ * depend on the SpillableMemoryManager and GC notifications to stay within
+ * its memory limits. The exact serialized size of the contents is tracked
+ * and available from {@link #getByteSize()}.
+ * <p>
+ * Tuples are deserialized lazily while iterating, so only the current tuple
+ * is on the heap. Like {@link InternalCachedBag}, tuples can not be added
+ * once an iterator has been requested, until the bag is cleared.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class OffHeapDataBag extends DefaultAbstractBag {
+    private static final long serialVersionUID = 1L;
+
+    private static final Log log = LogFactory.getLog(OffHeapDataBag.class);
+
+    private static final InterSedes SEDES = InterSedesFactory.getInterSedesInstance();
+
+    private static final int DEFAULT_PAGE_SIZE = 64 * 1024;
+
+    private static final int pageSize;
+    private static final long memoryBudget;
+
+    // Pages not in use by any bag. They are counted in allocatedBytes.
+    private static final LinkedList<ByteBuffer> freePages = new LinkedList<ByteBuffer>();
+    private static long allocatedBytes = 0;
+
+    static {
+        long budget = (long) (Runtime.getRuntime().maxMemory() * 0.2F);
+        int size = DEFAULT_PAGE_SIZE;
+        Configuration conf = PigMapReduce.sJobConfInternal.get();
+        if (conf != null) {
+            budget = conf.getLong(PigConfiguration.PIG_OFFHEAPBAG_MEMORY, budget);
+            size = conf.getInt(PigConfiguration.PIG_OFFHEAPBAG_PAGESIZE, DEFAULT_PAGE_SIZE);
+        }
+        memoryBudget = budget;
+        pageSize = size;
+    }
+
+    private transient PageList pages;
+    private transient ByteBuffer currentPage;
+    private transient WritableByteArray scratch;
+    private transient DataOutputStream scratchOut;
+    private transient DataOutputStream spillOut;
+    private transient boolean addDone;
+
+    // Serialized size of the contents, in pages and in the spill file
+    private long byteSize = 0;
+    private long spilledBytes = 0;
+
+    public OffHeapDataBag() {
+        mContents = new ArrayList<Tuple>(0);
+        pages = new PageList();
+        scratch = new WritableByteArray();
+        scratchOut = new DataOutputStream(scratch);
+    }
+
+    @Override
+    public void add(Tuple t) {
+        if (addDone) {
+            throw new IllegalStateException("OffHeapDataBag is closed for adding new tuples");
+        }
+        try {
+            scratch.reset();
+            SEDES.writeDatum(scratchOut, t, DataType.TUPLE);
+            int len = scratch.getLength();
+            if (currentPage == null || currentPage.remaining() < len) {
+                currentPage = nextPage(len);
+            }
+            if (currentPage == null) {
+                // No off-heap memory left even after spilling our own pages
+                getSpillOut().write(scratch.getData(), 0, len);
+                spilledBytes += len;
+            } else {
+                currentPage.put(scratch.getData(), 0, len);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        byteSize += scratch.getLength();
+        mSize++;
+    }
+
+    private ByteBuffer nextPage(int len) throws IOException {
+        ByteBuffer page = acquirePage(len);
+        if (page == null && !pages.isEmpty()) {
+            spillPages();
+            page = acquirePage(len);
+        }
+        if (page != null) {
+            pages.add(page);
+        }
+        return page;
+    }
+
+    private DataOutputStream getSpillOut() throws IOException {
+        if (spillOut == null) {
+            spillOut = getSpillFile();
+            incSpillCount(PigCounters.PROACTIVE_SPILL_COUNT_BAGS);
+        }
+        return spillOut;
+    }
+
+    /**
+     * Write all pages to the spill file and return them to the pool.
+     * @return number of bytes spilled
+     */
+    private long spillPages() throws IOException {
+        long spilled = 0;
+        DataOutputStream out = getSpillOut();
+        for (ByteBuffer page : pages) {
+            ByteBuffer data = page.duplicate();
+            data.flip();
+            byte[] buf = new byte[Math.min(data.remaining(), 8192)];
+            while (data.hasRemaining()) {
+                int n = Math.min(buf.length, data.remaining());
+                data.get(buf, 0, n);
+                out.write(buf, 0, n);
+            }
+            spilled += page.position();
+        }
+        pages.release();
+        currentPage = null;
+        spilledBytes += spilled;
+        if (log.isDebugEnabled()) {
+            log.debug("Spilled " + spilled + " bytes of off-heap pages");
+        }
+        return spilled;
+    }
+
+    private static synchronized ByteBuffer acquirePage(int len) {
+        if (len <= pageSize && !freePages.isEmpty()) {
+            ByteBuffer page = freePages.removeFirst();
+            page.clear();
+            return page;
+        }
+        int size = Math.max(len, pageSize);
+        if (allocatedBytes + size > memoryBudget) {
+            return null;
+        }
+        allocatedBytes += size;
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    private static synchronized void releasePage(ByteBuffer page) {
+        if (page.capacity() == pageSize) {
+            freePages.add(page);
+        } else {
+            // Oversized pages for large tuples are not reused
+            allocatedBytes -= page.capacity();
+        }
+    }
+
+    /**
+     * @return number of bytes allocated for off-heap bag pages in this JVM,
+     * including free pages kept for reuse
+     */
+    public static synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return exact serialized size of the contents of the bag, in memory
+     * and on disk
+     */
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * @return number of serialized bytes held in off-heap pages
+     */
+    public long getOffHeapSize() {
+        return byteSize - spilledBytes;
+    }
+
+    /**
+     * The tuples are off-heap, so only the fixed overhead of the bag and its
+     * page references is on the heap.
+     */
+    @Override
+    public long getMemorySize() {
+        return 128 + 64L * pages.size();
+    }
+
+    /**
+     * Spill the off-heap pages to disk. As no heap memory is held, this
+     * always returns 0.
+     */
+    @Override
+    public long spill() {
+        if (addDone || pages.isEmpty()) {
+            return 0;
+        }
+        try {
+            spillPages();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean isSorted() {
+        return false;
+    }
+
+    @Override
+    public boolean isDistinct() {
+        return false;
+    }
+
+    private void addDone() {
+        if (spillOut != null) {
+            try {
+                spillOut.flush();
+                spillOut.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        addDone = true;
+    }
+
+    @Override
+    public void clear() {
+        if (!addDone) {
+            addDone();
+        }
+        super.clear();
+        pages.release();
+        currentPage = null;
+        spillOut = null;
+        byteSize = 0;
+        spilledBytes = 0;
+        addDone = false;
+    }
+
+    @Override
+    public Iterator<Tuple> iterator() {
+        if (!addDone) {
+            addDone();
+        }
+        return new OffHeapBagIterator();
+    }
+
+    private class OffHeapBagIterator implements Iterator<Tuple> {
+        private DataInputStream in;
+        private int pageIndex = 0;
+        private Tuple next;
+        private long numTuplesRead = 0;
+
+        OffHeapBagIterator() {
+            if (mSpillFiles != null && mSpillFiles.size() > 0) {
+                try {
+                    in = openSpillFile(mSpillFiles.get(0));
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to find our spill file.", e);
+                }
+            } else {
+                nextPageStream();
+            }
+        }
+
+        private void nextPageStream() {
+            if (pageIndex < pages.size()) {
+                ByteBuffer data = pages.get(pageIndex++).duplicate();
+                data.flip();
+                in = new DataInputStream(new ByteBufferInputStream(data));
+            } else {
+                in = null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            while (in != null) {
+                try {
+                    next = (Tuple) SEDES.readDatum(in);
+                    return true;
+                } catch (EOFException eof) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                    nextPageStream();
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to read off-heap bag contents.", e);
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Tuple next() {
+            if (next == null) {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("No more elements from iterator");
+                }
+            }
+            Tuple t = next;
+            next = null;
+
+            numTuplesRead++;
+            // This will report progress every 16383 records.
+            if ((numTuplesRead & 0x3fff) == 0) reportProgress();
+
+            return t;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove is not supported for OffHeapBagIterator");
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? (buf.get() & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+
+    /**
+     * List of pages that returns them to the pool when released or, like
+     * {@link FileList}, when finalized if the bag was not cleared.
+     */
+    private static class PageList extends ArrayList<ByteBuffer> {
+        private static final long serialVersionUID = 1L;
+
+        void release() {
+            for (ByteBuffer page : this) {
+                releasePage(page);
+            }
+            clear();
+        }
+
+        @Override
+        protected void finalize() {
+            release();
+        }
+    }
+}
@@ -26,6 +26,7 @@ import org.apache.pig.PigCounters;
 import org.apache.pig.PigWarning;
 import org.apache.pig.classification.InterfaceAudience;
 import org.apache.pig.classification.InterfaceStability;
+import org.apache.pig.impl.util.MemoryBudgetManager;
 
 /**
  * Common functionality for proactively spilling bags that need to keep the data
@@ -41,6 +42,11 @@ public abstract class SortedSpillBag extends SelfSpillBag {
         super(bagCount, percent);
     }
 
+    @Override
+    protected String getMemoryConsumer() {
+        return MemoryBudgetManager.SORT;
+    }
+
     /**
      * Sort contents of mContents and write them to disk
      * @param comp Comparator to sort contents of mContents
@@ -20,26 +20,34 @@ package org.apache.pig.impl.builtin;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.pig.EvalFunc;
+import org.apache.pig.AsyncEvalFunc;
 import org.apache.pig.ExecType;
 import org.apache.pig.ExecTypeProvider;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MRConfiguration;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
+import org.apache.pig.data.WritableByteArray;
 import org.apache.pig.impl.io.BufferedPositionedInputStream;
 import org.apache.pig.impl.logicalLayer.FrontendException;
 import org.apache.pig.impl.logicalLayer.schema.Schema;
@@ -57,9 +65,30 @@ import org.apache.pig.impl.util.Utils;
 import org.apache.pig.parser.ParserException;
 import org.apache.pig.scripting.ScriptingOutputCapturer;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
-
-public class StreamingUDF extends EvalFunc<Object> {
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Runs a UDF written in a language like CPython in an external process.
+ * <p>
+ * By default tuples are sent to the process one at a time as delimited text
+ * records. With {@link PigConfiguration#PIG_STREAMING_UDF_PROTOCOL} set to
+ * binary, the batches a foreach hands to {@link #execAsync(List)} are sent as
+ * frames: two ints, the number of bytes after them and the number of records,
+ * then every record as an int length and the record in the text encoding
+ * without the record delimiter. The process answers every frame with a frame
+ * of results, so several batches can be in the pipe at once.
+ * <p>
+ * With {@link PigConfiguration#PIG_STREAMING_WORKERS} greater than one, the
+ * UDF runs that many processes using the binary protocol and splits every
+ * batch between them. A process which has died is replaced before it is
+ * given more input.
+ */
+public class StreamingUDF extends AsyncEvalFunc<Object> {
     private static final Log log = LogFactory.getLog(StreamingUDF.class);
 
     private static final String PYTHON_CONTROLLER_JAR_PATH = "/python/streaming/controller.py"; //Relative to root of pig jar.
@@ -76,6 +105,10 @@ public class StreamingUDF extends EvalFunc<Object> {
     private static final int STD_ERR_OUTPUT_PATH = 7; //File for output from when user writes to standard error.
     private static final int CONTROLLER_LOG_FILE_PATH = 8; //Controller log file logs progress through the controller script not user code.
     private static final int IS_ILLUSTRATE = 9; //Controller captures output differently in illustrate vs running.
+    private static final int PROTOCOL = 10; //Protocol used to exchange records with the controller.
+
+    private static final String TEXT_PROTOCOL = "text";
+    private static final String BINARY_PROTOCOL = "binary";
 
     private String language;
     private String filePath;
@@ -84,13 +117,21 @@ public class StreamingUDF extends EvalFunc<Object> {
     private ExecType execType;
     private String isIllustrate;
 
+    private String[] command; //Command run instead of the controller, in tests.
+
     private boolean initialized = false;
+    private boolean binaryProtocol = false;
+    private boolean worker = false; //Whether this runs one of the processes of a pool.
+    private int workerIndex; //Index of the process in its pool, if worker.
+    private StreamingUDF[] workers; //Pool of processes, if there is more than one.
+    private int nextWorker = 0;
     private ScriptingOutputCapturer soc;
 
     private Process process; // Handle to the external process
     private ProcessErrorThread stderrThread; // thread to get process stderr
     private ProcessInputThread stdinThread; // thread to send input to process
     private ProcessOutputThread stdoutThread; //thread to read output from process
+    private ProcessFrameReaderThread frameReaderThread; //thread to read result frames in binary protocol
 
     private InputHandler inputHandler;
     private OutputHandler outputHandler;
@@ -98,6 +139,13 @@ public class StreamingUDF extends EvalFunc<Object> {
     private BlockingQueue<Tuple> inputQueue;
     private BlockingQueue<Object> outputQueue;
 
+    private PigStreamingUDF serializer;
+    private PigStreamingUDF deserializer;
+    private ByteArrayOutputStream frameBuffer; //Records of the frame being sent in binary protocol.
+    private DataOutputStream frameOut;
+    //Futures of the batches sent in binary protocol, in the order they were sent.
+    private BlockingQueue<SettableFuture<List<Object>>> pendingBatches;
+
     private DataOutputStream stdin; // stdin of the process
     private InputStream stdout; // stdout of the process
     private InputStream stderr; // stderr of the process
@@ -139,18 +187,146 @@ public class StreamingUDF extends EvalFunc<Object> {
         this.isIllustrate = isIllustrate;
     }
 
+    /**
+     * Create the worker with the given index of the pool of processes of the
+     * given UDF.
+     */
+    private StreamingUDF(StreamingUDF pool, int workerIndex) {
+        this.language = pool.language;
+        this.filePath = pool.filePath;
+        this.funcName = pool.funcName;
+        this.schema = pool.schema;
+        this.execType = pool.execType;
+        this.isIllustrate = pool.isIllustrate;
+        this.command = pool.command;
+        this.worker = true;
+        this.workerIndex = workerIndex;
+        setInputSchema(pool.getInputSchema());
+    }
+
     @Override
     public Object exec(Tuple input) throws IOException {
         if (!initialized) {
             initialize();
             initialized = true;
         }
+        if (binaryProtocol || workers != null) {
+            return super.exec(input);
+        }
         return getOutput(input);
     }
 
+    /**
+     * Only the binary protocol, which is also used by a pool of processes,
+     * sends batches. With the text protocol the UDF is called a tuple at a
+     * time, so it only sees the rows which need it, as in a branch of a
+     * conditional expression.
+     */
+    @Override
+    public boolean canBatch(Configuration conf) {
+        String protocol = conf.get(PigConfiguration.PIG_STREAMING_UDF_PROTOCOL, TEXT_PROTOCOL);
+        return BINARY_PROTOCOL.equalsIgnoreCase(protocol)
+                || conf.getInt(PigConfiguration.PIG_STREAMING_WORKERS, 1) > 1;
+    }
+
+    @Override
+    public Future<List<Object>> execAsync(List<Tuple> inputs) throws IOException {
+        return submit(inputs);
+    }
+
+    private ListenableFuture<List<Object>> submit(List<Tuple> inputs) throws IOException {
+        if (!initialized) {
+            initialize();
+            initialized = true;
+        }
+        if (workers != null) {
+            return submitToWorkers(inputs);
+        }
+        if (binaryProtocol) {
+            return sendBatch(inputs);
+        }
+        List<Object> results = new ArrayList<Object>(inputs.size());
+        for (Tuple input : inputs) {
+            results.add(getOutput(input));
+        }
+        return Futures.immediateFuture(results);
+    }
+
+    /**
+     * Split a batch between the workers of the pool and concatenate their
+     * results.
+     */
+    private ListenableFuture<List<Object>> submitToWorkers(List<Tuple> inputs) throws IOException {
+        int parts = Math.min(workers.length, inputs.size());
+        if (parts <= 1) {
+            return nextWorker().submit(inputs);
+        }
+        int partSize = (inputs.size() + parts - 1) / parts;
+        List<ListenableFuture<List<Object>>> futures = new ArrayList<ListenableFuture<List<Object>>>(parts);
+        for (int start = 0; start < inputs.size(); start += partSize) {
+            futures.add(nextWorker().submit(
+                    inputs.subList(start, Math.min(start + partSize, inputs.size()))));
+        }
+        return Futures.transform(Futures.allAsList(futures), CONCAT_RESULTS);
+    }
+
+    private static final Function<List<List<Object>>, List<Object>> CONCAT_RESULTS =
+            new Function<List<List<Object>>, List<Object>>() {
+        @Override
+        public List<Object> apply(List<List<Object>> parts) {
+            List<Object> results = new ArrayList<Object>();
+            for (List<Object> part : parts) {
+                results.addAll(part);
+            }
+            return results;
+        }
+    };
+
+    /**
+     * Get the worker to send the next batch to, replacing it first if its
+     * process has died.
+     */
+    private StreamingUDF nextWorker() {
+        StreamingUDF next = workers[nextWorker];
+        if (!next.isHealthy()) {
+            log.warn("Process " + nextWorker + " of streaming udf " + funcName
+                    + " has died. Starting a new one.");
+            next = new StreamingUDF(this, nextWorker);
+            workers[nextWorker] = next;
+        }
+        nextWorker = (nextWorker + 1) % workers.length;
+        return next;
+    }
+
+    private synchronized boolean isHealthy() {
+        return !initialized || (process.isAlive() && pendingBatches != null);
+    }
+
     private void initialize() throws ExecException, IOException {
-        inputQueue = new ArrayBlockingQueue<Tuple>(1);
-        outputQueue = new ArrayBlockingQueue<Object>(2);
+        Configuration conf = UDFContext.getUDFContext().getJobConf();
+        int poolSize = conf.getInt(PigConfiguration.PIG_STREAMING_WORKERS, 1);
+        if (!worker && poolSize > 1) {
+            workers = new StreamingUDF[poolSize];
+            for (int i = 0; i < poolSize; i++) {
+                workers[i] = new StreamingUDF(this, i);
+            }
+            return;
+        }
+
+        String protocol = worker ? BINARY_PROTOCOL : conf.get(
+                PigConfiguration.PIG_STREAMING_UDF_PROTOCOL, TEXT_PROTOCOL);
+        if (BINARY_PROTOCOL.equalsIgnoreCase(protocol)) {
+            binaryProtocol = true;
+            frameBuffer = new ByteArrayOutputStream();
+            frameOut = new DataOutputStream(frameBuffer);
+            pendingBatches = new LinkedBlockingQueue<SettableFuture<List<Object>>>();
+        } else if (TEXT_PROTOCOL.equalsIgnoreCase(protocol)) {
+            inputQueue = new ArrayBlockingQueue<Tuple>(1);
+            outputQueue = new ArrayBlockingQueue<Object>(2);
+        } else {
+            throw new ExecException("Invalid value for " + PigConfiguration.PIG_STREAMING_UDF_PROTOCOL
+                    + ": " + protocol + ". Should be text or binary");
+        }
         soc = new ScriptingOutputCapturer(execType);
         startUdfController();
         createInputHandlers();
@@ -158,8 +334,17 @@ public class StreamingUDF extends EvalFunc<Object> {
         startThreads();
     }
 
+    /**
+     * Run the given command instead of the controller of the language, so
+     * that tests can exchange records with a process of their own.
+     */
+    @VisibleForTesting
+    void setCommand(String... command) {
+        this.command = command;
+    }
+
     private StreamingCommand startUdfController() throws IOException {
-        StreamingCommand sc = new StreamingCommand(null, constructCommand());
+        StreamingCommand sc = new StreamingCommand(null, command != null ? command : constructCommand());
         ProcessBuilder processBuilder = StreamingUtil.createProcess(sc);
         process = processBuilder.start();
 
@@ -168,7 +353,7 @@ public class StreamingUDF extends EvalFunc<Object> {
     }
 
     private String[] constructCommand() throws IOException {
-        String[] command = new String[10];
+        String[] command = new String[11];
         Configuration conf = UDFContext.getUDFContext().getJobConf();
 
         String jarPath = conf.get("mapreduce.job.jar");
@@ -194,6 +379,13 @@ public class StreamingUDF extends EvalFunc<Object> {
             outFileName = standardOutputRootWriteLocation + funcName + ".out";
             errOutFileName = standardOutputRootWriteLocation + funcName + ".err";
         }
+        if (worker) {
+            // The controller truncates its stderr file, so every process of a
+            // pool writes its own. The output file is opened for append and
+            // stays shared as it is the one registered with the capturer.
+            errOutFileName = errOutFileName.substring(0, errOutFileName.length() - ".err".length())
+                    + "_" + workerIndex + ".err";
+        }
 
         soc.registerOutputLocation(funcName, outFileName);
 
@@ -211,6 +403,7 @@ public class StreamingUDF extends EvalFunc<Object> {
         command[STD_ERR_OUTPUT_PATH] = errOutFileName;
         command[CONTROLLER_LOG_FILE_PATH] = controllerLogFileName;
         command[IS_ILLUSTRATE] = isIllustrate;
+        command[PROTOCOL] = binaryProtocol ? BINARY_PROTOCOL : TEXT_PROTOCOL;
 
         ensureUserFileAvailable(command, fileCachePath);
 
@@ -270,32 +463,38 @@ public class StreamingUDF extends EvalFunc<Object> {
     }
 
     private void createInputHandlers() throws ExecException, FrontendException {
-        PigStreamingUDF serializer = new PigStreamingUDF();
+        serializer = new PigStreamingUDF();
         this.inputHandler = new StreamingUDFInputHandler(serializer);
-        PigStreamingUDF deserializer = new PigStreamingUDF(schema.getField(0));
+        deserializer = new PigStreamingUDF(schema.getField(0));
         this.outputHandler = new StreamingUDFOutputHandler(deserializer);
     }
 
     private void setStreams() throws IOException {
         stdout = new DataInputStream(new BufferedInputStream(process
                 .getInputStream()));
-        outputHandler.bindTo("", new BufferedPositionedInputStream(stdout),
-                0, Long.MAX_VALUE);
-
         stdin = new DataOutputStream(new BufferedOutputStream(process
                 .getOutputStream()));
-        inputHandler.bindTo(stdin);
+        if (!binaryProtocol) {
+            outputHandler.bindTo("", new BufferedPositionedInputStream(stdout),
+                    0, Long.MAX_VALUE);
+            inputHandler.bindTo(stdin);
+        }
 
         stderr = new DataInputStream(new BufferedInputStream(process
                 .getErrorStream()));
     }
 
     private void startThreads() {
-        stdinThread = new ProcessInputThread();
-        stdinThread.start();
+        if (binaryProtocol) {
+            frameReaderThread = new ProcessFrameReaderThread();
+            frameReaderThread.start();
+        } else {
+            stdinThread = new ProcessInputThread();
+            stdinThread.start();
 
-        stdoutThread = new ProcessOutputThread();
-        stdoutThread.start();
+            stdoutThread = new ProcessOutputThread();
+            stdoutThread.start();
+        }
 
         stderrThread = new ProcessErrorThread();
         stderrThread.start();
@@ -396,6 +595,86 @@ public class StreamingUDF extends EvalFunc<Object> {
         return o;
     }
 
+    /**
+     * Send a batch of inputs to the process as one frame of the binary
+     * protocol. The future completes when the frame of results is read back.
+     */
+    private synchronized ListenableFuture<List<Object>> sendBatch(List<Tuple> inputs) throws ExecException {
+        if (pendingBatches == null) {
+            if (outerrThreadsError != null) {
+                throw outerrThreadsError;
+            }
+            throw new ExecException("Process has already been shut down.  No way to retrieve output for inputs: " + inputs);
+        }
+
+        SettableFuture<List<Object>> future = SettableFuture.create();
+        try {
+            if (ScriptingOutputCapturer.isClassCapturingOutput() &&
+                    !soc.isInstanceCapturingOutput()) {
+                stdin.writeInt(0);
+                stdin.writeInt(-1);
+                soc.setInstanceCapturingOutput(true);
+            }
+
+            //When nothing is passed into the UDF the tuple
+            //being sent is the full tuple for the relation.
+            //We want it to be nothing (since that's what the user wrote).
+            boolean noArguments = this.getInputSchema() == null || this.getInputSchema().size() == 0;
+            int recordDelimLength = serializer.getRecordDelim().length;
+            frameBuffer.reset();
+            for (Tuple input : inputs) {
+                WritableByteArray record = serializer.serializeToBytes(
+                        noArguments ? TupleFactory.getInstance().newTuple(0) : input);
+                int length = record.getLength() - recordDelimLength;
+                frameOut.writeInt(length);
+                frameOut.write(record.getData(), 0, length);
+            }
+            pendingBatches.add(future);
+            stdin.writeInt(frameBuffer.size());
+            stdin.writeInt(inputs.size());
+            frameBuffer.writeTo(stdin);
+            stdin.flush();
+        } catch (IOException e) {
+            //The process has died, the error thread fails the pending batches
+            //with its error message.
+            log.debug("Failed sending batch to streaming udf", e);
+        }
+        return future;
+    }
+
+    private synchronized void failPendingBatches() {
+        if (pendingBatches == null) {
+            return;
+        }
+        if (outerrThreadsError == null) {
+            outerrThreadsError = new StreamingUDFException(this.language, "Problem with streaming udf.  Can't recreate exception.");
+        }
+        SettableFuture<List<Object>> future;
+        while ((future = pendingBatches.poll()) != null) {
+            future.setException(outerrThreadsError);
+        }
+        pendingBatches = null;
+    }
+
+    /**
+     * Give error thread a chance to check the standard error output for an
+     * exception message before reporting a failure to read the output.
+     */
+    private void waitForProcessError(Exception e) throws InterruptedException {
+        int attempt = 0;
+        while (stderrThread.isAlive() && attempt < MAX_WAIT_FOR_ERROR_ATTEMPTS) {
+            Thread.sleep(WAIT_FOR_ERROR_LENGTH);
+            attempt++;
+        }
+        //Only write this if no other error.  Don't want to overwrite
+        //an error from the error thread.
+        if (outerrThreadsError == null) {
+            outerrThreadsError = new StreamingUDFException(
+                    language, "Error deserializing output.  Please check that the declared outputSchema for function " +
+                    funcName + " matches the data type being returned.", e);
+        }
+    }
+
     @Override
     public Schema outputSchema(Schema input) {
         return this.schema;
@@ -454,20 +733,7 @@ public class StreamingUDF extends EvalFunc<Object> {
             } catch(Exception e) {
                 if (outputQueue != null) {
                     try {
-                        //Give error thread a chance to check the standard error output
-                        //for an exception message.
-                        int attempt = 0;
-                        while (stderrThread.isAlive() && attempt < MAX_WAIT_FOR_ERROR_ATTEMPTS) {
-                            Thread.sleep(WAIT_FOR_ERROR_LENGTH);
-                            attempt++;
-                        }
-                        //Only write this if no other error.  Don't want to overwrite
-                        //an error from the error thread.
-                        if (outerrThreadsError == null) {
-                            outerrThreadsError = new StreamingUDFException(
-                                    language, "Error deserializing output.  Please check that the declared outputSchema for function " +
-                                    funcName + " matches the data type being returned.", e);
-                        }
+                        waitForProcessError(e);
                         outputQueue.put(ERROR_OUTPUT); //Need to wake main thread.
                     } catch(InterruptedException ie) {
                         log.error(ie);
@@ -477,6 +743,50 @@ public class StreamingUDF extends EvalFunc<Object> {
         }
     }
 
+    /**
+     * The thread which reads the frames of results of the binary protocol
+     * and completes the pending batches in order
+     */
+    class ProcessFrameReaderThread extends Thread {
+        ProcessFrameReaderThread() {
+            setDaemon(true);
+        }
+
+        public void run() {
+            BlockingQueue<SettableFuture<List<Object>>> batches = pendingBatches;
+            DataInputStream in = (DataInputStream) stdout;
+            try {
+                log.debug("Starting PFRT");
+                while (true) {
+                    int frameLength = in.readInt();
+                    int count = in.readInt();
+                    byte[] frame = new byte[frameLength];
+                    in.readFully(frame);
+
+                    ByteBuffer records = ByteBuffer.wrap(frame);
+                    List<Object> results = new ArrayList<Object>(count);
+                    for (int i = 0; i < count; i++) {
+                        int length = records.getInt();
+                        results.add(deserializer.deserializeField(frame, records.position(), length));
+                        records.position(records.position() + length);
+                    }
+                    SettableFuture<List<Object>> future = batches.poll();
+                    if (future == null) {
+                        throw new IOException("Got results from streaming udf for a batch that was not sent");
+                    }
+                    future.set(results);
+                }
+            } catch (Exception e) {
+                try {
+                    waitForProcessError(e);
+                } catch (InterruptedException ie) {
+                    log.error(ie);
+                }
+                failPendingBatches();
+            }
+        }
+    }
+
     class ProcessErrorThread extends Thread {
         public ProcessErrorThread() {
             setDaemon(true);
@@ -507,6 +817,9 @@ public class StreamingUDF extends EvalFunc<Object> {
                 if (outputQueue != null) {
                     outputQueue.put(ERROR_OUTPUT); //Need to wake main thread.
                 }
+                //With the binary protocol the frame reader fails the pending
+                //batches once it has read the results the process wrote
+                //before exiting.
                 if (stderr != null) {
                     stderr.close();
                     stderr = null;
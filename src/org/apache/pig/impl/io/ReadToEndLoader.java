@@ -247,6 +247,17 @@ public class ReadToEndLoader extends LoadFunc implements LoadMetadata {
     }
 
 
+    /**
+     * Closes the reader of the current split, for callers which stop reading
+     * before the end of the input. Splits read to the end are already closed.
+     */
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
     /**
      * Updates curSplitIndex , just increment if splitIndexes is null,
      * else get next split in splitIndexes
@@ -22,6 +22,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -102,6 +103,19 @@ public class PigStreamingUDF extends PigStreamingBase {
         return DELIMS.getRecordEnd();
     }
 
+    /**
+     * Deserialize a field that was serialized without the record delimiter,
+     * as streaming UDFs do in the binary protocol.
+     */
+    public Object deserializeField(byte[] bytes, int offset, int length) throws IOException {
+        if (offset + DELIMS.getNull().length > bytes.length) {
+            //Null check reads past short fields at the end of the buffer.
+            bytes = Arrays.copyOfRange(bytes, offset, offset + Math.max(length, DELIMS.getNull().length));
+            offset = 0;
+        }
+        return deserialize(topLevelFs, bytes, offset, offset + length - 1);
+    }
+
     private Object deserialize(FieldSchema fs, byte[] bytes, int startIndex, int endIndex) throws IOException {
         //If null, return null;
         if (WritableComparator.compareBytes(
@@ -0,0 +1,382 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.util;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.tools.pigstats.PigStatusReporter;
+
+/**
+ * Memory manager that spills {@link Spillable}s based on explicit
+ * reservations instead of heap usage notifications. It is used in place of
+ * the notifications of {@link SpillableMemoryManager} when
+ * {@link PigConfiguration#PIG_SPILL_MEMORY_MANAGER} is set to "budget".
+ * <p>
+ * Consumers register once and then keep their {@link Quota} up to date with
+ * their estimated size as they grow. When a reservation takes the total over
+ * the budget, the largest consumers are spilled right away by the reserving
+ * thread until the total is back under the budget, so memory is given back
+ * before the heap fills up rather than after the GC has been struggling.
+ * {@link GroupingSpillable}s are never spilled by another consumer, since
+ * they can only spill from their own thread; instead their reservation fails
+ * and they spill themselves.
+ * <p>
+ * Usage is tracked per consumer name and spills are reported in the
+ * {@link #COUNTER_GROUP} counter group.
+ */
+public class MemoryBudgetManager {
+
+    private static final Log log = LogFactory.getLog(MemoryBudgetManager.class);
+
+    public static final String COUNTER_GROUP = "MemoryBudgetManager";
+
+    public static final String BUDGET = "budget";
+
+    /** Consumer name of bags */
+    public static final String BAG = "bag";
+
+    /** Consumer name of sorted and distinct bags used by sorts */
+    public static final String SORT = "sort";
+
+    /** Consumer name of the hash tables of partial aggregation */
+    public static final String PARTIAL_AGG = "partialagg";
+
+    /** Consumer name of the hash tables of replicated joins */
+    public static final String REPLICATED = "replicated";
+
+    private static final float BUDGET_FRACTION_DEFAULT = 0.6f;
+
+    // Once over the budget, spill until this fraction of it is used so
+    // that the next reservations do not spill again right away
+    private static final float SPILL_TARGET_FRACTION = 0.8f;
+
+    private static final MemoryBudgetManager manager = new MemoryBudgetManager();
+
+    private boolean enabled = false;
+
+    private long budget = (long) (Runtime.getRuntime().maxMemory() * BUDGET_FRACTION_DEFAULT);
+
+    // Consumers smaller than this are not worth a spill file
+    private long spillFileSizeThreshold = 5000000L;
+
+    private final LinkedList<Quota> quotas = new LinkedList<Quota>();
+
+    private final Map<String, ConsumerUsage> usages = new HashMap<String, ConsumerUsage>();
+
+    private long used = 0L;
+
+    private boolean spilling = false;
+
+    // Incremented when the quotas are cleared at the start of a task, so
+    // that quotas left over from the previous task are ignored
+    private int generation = 0;
+
+    //@StaticDataCleanup
+    public static void staticDataCleanup() {
+        synchronized (manager) {
+            manager.generation++;
+            manager.quotas.clear();
+            manager.usages.clear();
+            manager.used = 0L;
+        }
+    }
+
+    private MemoryBudgetManager() {
+    }
+
+    public static MemoryBudgetManager getInstance() {
+        return manager;
+    }
+
+    public synchronized void configure(Configuration conf) {
+        enabled = BUDGET.equals(conf.get(PigConfiguration.PIG_SPILL_MEMORY_MANAGER));
+        spillFileSizeThreshold = conf.getLong("pig.spill.size.threshold", spillFileSizeThreshold);
+        float fraction = conf.getFloat(PigConfiguration.PIG_SPILL_MEMORY_BUDGET_FRACTION,
+                BUDGET_FRACTION_DEFAULT);
+        budget = conf.getLong(PigConfiguration.PIG_SPILL_MEMORY_BUDGET_SIZE,
+                (long) (Runtime.getRuntime().maxMemory() * fraction));
+        if (enabled) {
+            log.info("Using a memory budget of " + budget + " bytes for spillables");
+        }
+    }
+
+    /**
+     * @return true if spillables are managed by reservations rather than by
+     * heap usage notifications
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return total bytes reserved by all the consumers
+     */
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    /**
+     * @return bytes currently reserved by the consumers with the given name
+     */
+    public synchronized long getUsage(String consumer) {
+        ConsumerUsage usage = usages.get(consumer);
+        return usage == null ? 0 : usage.reserved;
+    }
+
+    /**
+     * @return highest number of bytes reserved at once by the consumers with
+     * the given name
+     */
+    public synchronized long getPeakUsage(String consumer) {
+        ConsumerUsage usage = usages.get(consumer);
+        return usage == null ? 0 : usage.peak;
+    }
+
+    /**
+     * @return number of times consumers with the given name were spilled
+     */
+    public synchronized long getSpillCount(String consumer) {
+        ConsumerUsage usage = usages.get(consumer);
+        return usage == null ? 0 : usage.spillCount;
+    }
+
+    /**
+     * @return estimated bytes freed by spilling consumers with the given name
+     */
+    public synchronized long getSpilledBytes(String consumer) {
+        ConsumerUsage usage = usages.get(consumer);
+        return usage == null ? 0 : usage.spilledBytes;
+    }
+
+    /**
+     * Register a spillable. Like with {@link SpillableMemoryManager}, there is
+     * no need to unregister: the reservation is given back once the spillable
+     * is GCed.
+     * @param s the spillable
+     * @param consumer name under which the usage of the spillable is counted
+     * @return the quota the spillable reserves memory with
+     */
+    public synchronized Quota register(Spillable s, String consumer) {
+        ConsumerUsage usage = usages.get(consumer);
+        if (usage == null) {
+            usage = new ConsumerUsage(consumer);
+            usages.put(consumer, usage);
+        }
+        Quota quota = new Quota(s, usage, generation);
+        // Cleaning the entire list is too expensive. Just trim off the front
+        Quota first = quotas.peek();
+        while (first != null && first.spillable.get() == null) {
+            quotas.remove();
+            remove(first);
+            first = quotas.peek();
+        }
+        quotas.add(quota);
+        return quota;
+    }
+
+    private void remove(Quota quota) {
+        used -= quota.reserved;
+        quota.usage.reserved -= quota.reserved;
+        quota.reserved = 0;
+    }
+
+    private boolean update(Quota quota, long bytes) {
+        List<Quota> victims;
+        synchronized (this) {
+            if (quota.generation != generation) {
+                return true;
+            }
+            long delta = bytes - quota.reserved;
+            quota.reserved = bytes;
+            quota.usage.reserved += delta;
+            quota.usage.peak = Math.max(quota.usage.peak, quota.usage.reserved);
+            used += delta;
+            if (delta <= 0 || used <= budget) {
+                return true;
+            }
+            if (spilling) {
+                // Another thread is already freeing memory
+                return true;
+            }
+            victims = selectVictims();
+            spilling = true;
+        }
+        try {
+            spill(victims);
+        } finally {
+            synchronized (this) {
+                spilling = false;
+            }
+        }
+        synchronized (this) {
+            return used <= budget;
+        }
+    }
+
+    // Largest consumers first, enough of them to get back to the spill target
+    private List<Quota> selectVictims() {
+        List<Quota> candidates = new ArrayList<Quota>();
+        for (Iterator<Quota> i = quotas.iterator(); i.hasNext();) {
+            Quota q = i.next();
+            Spillable s = q.spillable.get();
+            if (s == null) {
+                i.remove();
+                remove(q);
+            } else if (!(s instanceof GroupingSpillable) && q.reserved >= spillFileSizeThreshold) {
+                candidates.add(q);
+            }
+        }
+        Collections.sort(candidates, new Comparator<Quota>() {
+            @Override
+            public int compare(Quota q1, Quota q2) {
+                return Long.compare(q2.reserved, q1.reserved);
+            }
+        });
+        long toFree = used - (long) (budget * SPILL_TARGET_FRACTION);
+        List<Quota> victims = new ArrayList<Quota>();
+        for (Quota q : candidates) {
+            if (toFree <= 0) {
+                break;
+            }
+            victims.add(q);
+            toFree -= q.reserved;
+        }
+        return victims;
+    }
+
+    private void spill(List<Quota> victims) {
+        long freed = 0;
+        int numSpilled = 0;
+        for (Quota q : victims) {
+            Spillable s = q.spillable.get();
+            if (s == null) {
+                continue;
+            }
+            if (s.spill() > 0) {
+                long size = s.getMemorySize();
+                long delta;
+                synchronized (this) {
+                    delta = Math.max(q.reserved - size, 0);
+                    q.reserved -= delta;
+                    q.usage.reserved -= delta;
+                    q.usage.spillCount++;
+                    q.usage.spilledBytes += delta;
+                    used -= delta;
+                }
+                freed += delta;
+                numSpilled++;
+                PigStatusReporter reporter = PigStatusReporter.getInstance();
+                reporter.incrCounter(COUNTER_GROUP, q.usage.name + "_SPILL_COUNT", 1);
+                reporter.incrCounter(COUNTER_GROUP, q.usage.name + "_SPILLED_BYTES", delta);
+            }
+        }
+        if (numSpilled > 0) {
+            log.info("Spilled an estimate of " + freed + " bytes from " + numSpilled
+                    + " objects to stay within a memory budget of " + budget + " bytes");
+        }
+    }
+
+    private static class ConsumerUsage {
+        private final String name;
+        private long reserved;
+        private long peak;
+        private long spillCount;
+        private long spilledBytes;
+
+        ConsumerUsage(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Memory reserved by a spillable from the budget.
+     */
+    public static class Quota {
+
+        private final WeakReference<Spillable> spillable;
+
+        private final ConsumerUsage usage;
+
+        private final int generation;
+
+        private long reserved;
+
+        private Quota(Spillable s, ConsumerUsage usage, int generation) {
+            this.spillable = new WeakReference<Spillable>(s);
+            this.usage = usage;
+            this.generation = generation;
+        }
+
+        /**
+         * Set the reservation to the current estimated size of the spillable,
+         * spilling other consumers if it takes the total over the budget.
+         * @param bytes estimated size of the spillable
+         * @return false if the total is still over the budget, in which case
+         * the caller should spill itself
+         */
+        public boolean update(long bytes) {
+            return manager.update(this, bytes);
+        }
+
+        /**
+         * Reserve more memory, like {@link #update(long)}.
+         * @param bytes bytes to add to the reservation
+         * @return false if the total is still over the budget
+         */
+        public boolean reserve(long bytes) {
+            return manager.update(this, getReserved() + bytes);
+        }
+
+        /**
+         * Give back part of the reservation.
+         * @param bytes bytes to remove from the reservation
+         */
+        public void release(long bytes) {
+            manager.update(this, Math.max(getReserved() - bytes, 0));
+        }
+
+        /**
+         * Give back the whole reservation.
+         */
+        public void releaseAll() {
+            manager.update(this, 0);
+        }
+
+        public long getReserved() {
+            synchronized (manager) {
+                return reserved;
+            }
+        }
+    }
+}
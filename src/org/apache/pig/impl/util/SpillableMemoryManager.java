@@ -94,10 +94,15 @@ public class SpillableMemoryManager implements NotificationListener {
 
     private static final SpillableMemoryManager manager = new SpillableMemoryManager();
 
+    // Incremented when the spillables are cleared at the start of a task
+    private volatile int generation = 0;
+
     //@StaticDataCleanup
     public static void staticDataCleanup() {
+        manager.generation++;
         manager.spillables.clear();
         manager.accumulatedFreeSize = 0L;
+        MemoryBudgetManager.staticDataCleanup();
     }
 
     private SpillableMemoryManager() {
@@ -187,10 +192,15 @@ public class SpillableMemoryManager implements NotificationListener {
         float collectionThresholdFraction = conf.getFloat(PigConfiguration.PIG_SPILL_COLLECTION_THRESHOLD_FRACTION, COLLECTION_THRESHOLD_FRACTION_DEFAULT);
         long unusedMemoryThreshold = conf.getLong(PigConfiguration.PIG_SPILL_UNUSED_MEMORY_THRESHOLD_SIZE, UNUSED_MEMORY_THRESHOLD_DEFAULT);
         configureMemoryThresholds(memoryThresholdFraction, collectionThresholdFraction, unusedMemoryThreshold);
+        MemoryBudgetManager.getInstance().configure(conf);
     }
 
     @Override
     public void handleNotification(Notification n, Object o) {
+        if (MemoryBudgetManager.getInstance().isEnabled()) {
+            // Spillables are spilled when they reserve memory
+            return;
+        }
         CompositeData cd = (CompositeData) n.getUserData();
         MemoryNotificationInfo info = MemoryNotificationInfo.from(cd);
         // free the amount exceeded over the threshold and then a further half
@@ -356,6 +366,15 @@ public class SpillableMemoryManager implements NotificationListener {
 
     }
 
+    /**
+     * @return a number that changes whenever the registered spillables are
+     * cleared, so that spillables living across tasks know when to register
+     * again
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
     public void clearSpillables() {
         synchronized (spillables) {
             // Walk the list first and remove nulls, otherwise the sort
@@ -371,10 +390,16 @@ public class SpillableMemoryManager implements NotificationListener {
     }
     /**
      * Register a spillable to be tracked. No need to unregister, the tracking will stop
-     * when the spillable is GCed.
+     * when the spillable is GCed. If {@link MemoryBudgetManager} is enabled, the
+     * spillable is registered with it instead and reserves its current size.
      * @param s the spillable to track.
      */
     public void registerSpillable(Spillable s) {
+        MemoryBudgetManager budgetManager = MemoryBudgetManager.getInstance();
+        if (budgetManager.isEnabled()) {
+            budgetManager.register(s, s.getClass().getSimpleName()).update(s.getMemorySize());
+            return;
+        }
         synchronized (spillables) {
             // Cleaing the entire list is too expensive.  Just trim off the front while
             // we can.
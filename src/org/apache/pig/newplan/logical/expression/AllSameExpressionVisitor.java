@@ -102,6 +102,11 @@ public abstract class AllSameExpressionVisitor extends LogicalExpressionVisitor
     public void visit(NegativeExpression op) throws FrontendException {
         execute(op);
     }
+
+    @Override
+    public void visit(MatchIndexExpression op) throws FrontendException {
+        execute(op);
+    }
     
     @Override
     public void visit(AddExpression op) throws FrontendException {
@@ -20,6 +20,7 @@ package org.apache.pig.newplan.logical.expression;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +51,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POCast;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POMapLookUp;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POMatchIndex;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONegative;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONot;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POOr;
@@ -59,6 +61,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserComparisonFunc;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POUserFunc;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Subtract;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.MultiPatternMatcher;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
 import org.apache.pig.data.DataType;
 import org.apache.pig.impl.PigContext;
@@ -103,6 +106,10 @@ public class ExpToPhyTranslationVisitor extends LogicalExpressionVisitor {
 
     protected PigContext pc;
 
+    // The match index operators of the conditions of a chain of bincond share
+    // their matcher, which remembers the index found for the last value
+    private Map<List<String>, MultiPatternMatcher> matchers = new HashMap<List<String>, MultiPatternMatcher>();
+
     public void setPigContext(PigContext pc) {
         this.pc = pc;
     }
@@ -419,6 +426,35 @@ public class ExpToPhyTranslationVisitor extends LogicalExpressionVisitor {
         }
     }
 
+    @Override
+    public void visit( MatchIndexExpression op ) throws FrontendException {
+        MultiPatternMatcher matcher = matchers.get(op.getPatterns());
+        if (matcher == null) {
+            matcher = MultiPatternMatcher.compile(op.getPatterns());
+            if (matcher == null) {
+                int errCode = 2015;
+                String msg = "Patterns cannot be matched by an automaton: " + op.getPatterns();
+                throw new LogicalToPhysicalTranslatorException(msg, errCode, PigException.BUG);
+            }
+            matchers.put(op.getPatterns(), matcher);
+        }
+        POMatchIndex pMatchIndex = new POMatchIndex(new OperatorKey(DEFAULT_SCOPE, nodeGen
+                .getNextNodeId(DEFAULT_SCOPE)), matcher);
+        currentPlan.add(pMatchIndex);
+
+        logToPhyMap.put(op, pMatchIndex);
+        ExpressionOperator from = (ExpressionOperator) logToPhyMap.get(op
+                .getExpression());
+        pMatchIndex.setExpr(from);
+        try {
+            currentPlan.connect(from, pMatchIndex);
+        } catch (PlanException e) {
+            int errCode = 2015;
+            String msg = "Invalid physical operators in the physical plan" ;
+            throw new LogicalToPhysicalTranslatorException(msg, errCode, PigException.BUG, e);
+        }
+    }
+
     @Override
     public void visit( AddExpression op ) throws FrontendException {
         BinaryExpressionOperator exprOp = new Add(new OperatorKey(DEFAULT_SCOPE, nodeGen.getNextNodeId(DEFAULT_SCOPE)));
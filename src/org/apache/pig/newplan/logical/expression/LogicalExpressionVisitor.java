@@ -80,6 +80,9 @@ public abstract class LogicalExpressionVisitor extends PlanVisitor {
     
     public void visit(NegativeExpression op) throws FrontendException {
     }
+
+    public void visit(MatchIndexExpression op) throws FrontendException {
+    }
     
     public void visit(AddExpression op) throws FrontendException {
     }
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.newplan.logical.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pig.data.DataType;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.OperatorPlan;
+import org.apache.pig.newplan.PlanVisitor;
+import org.apache.pig.newplan.logical.relational.LogicalSchema;
+import org.apache.pig.parser.SourceLocation;
+
+/**
+ * Index of the first of a list of constant patterns which a chararray
+ * matches, or -1 if it matches none of them. It is not part of the language:
+ * the optimizer uses it in place of the MATCHES of a chain of bincond.
+ */
+public class MatchIndexExpression extends UnaryExpression {
+
+    private List<String> patterns;
+
+    public MatchIndexExpression(OperatorPlan plan, LogicalExpression exp, List<String> patterns) {
+        super("MatchIndex", plan, exp);
+        this.patterns = new ArrayList<String>(patterns);
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    @Override
+    public void accept(PlanVisitor v) throws FrontendException {
+        if (!(v instanceof LogicalExpressionVisitor)) {
+            throw new FrontendException("Expected LogicalExpressionVisitor", 2222);
+        }
+        ((LogicalExpressionVisitor)v).visit(this);
+    }
+
+    @Override
+    public boolean isEqual(Operator other) throws FrontendException {
+        if (other != null && other instanceof MatchIndexExpression) {
+            MatchIndexExpression of = (MatchIndexExpression)other;
+            return patterns.equals(of.patterns) && getExpression().isEqual(of.getExpression());
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public LogicalSchema.LogicalFieldSchema getFieldSchema() throws FrontendException {
+        if (fieldSchema!=null)
+            return fieldSchema;
+        fieldSchema = new LogicalSchema.LogicalFieldSchema(null, null, DataType.INTEGER);
+        uidOnlyFieldSchema = fieldSchema.mergeUid(uidOnlyFieldSchema);
+        return fieldSchema;
+    }
+
+    @Override
+    public LogicalExpression deepCopy(LogicalExpressionPlan lgExpPlan) throws FrontendException {
+        LogicalExpression copy = new MatchIndexExpression(
+                lgExpPlan,
+                this.getExpression().deepCopy(lgExpPlan),
+                patterns);
+        copy.setLocation( new SourceLocation( location ) );
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder msg = new StringBuilder();
+        msg.append("(Name: " + name + patterns + " Type: ");
+        if (fieldSchema!=null)
+            msg.append(DataType.findTypeName(fieldSchema.type));
+        else
+            msg.append("null");
+        msg.append(" Uid: ");
+        if (fieldSchema!=null)
+            msg.append(fieldSchema.uid);
+        else
+            msg.append("null");
+        msg.append(")");
+        return msg.toString();
+    }
+}
@@ -24,10 +24,14 @@ import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigReducerEstimator;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.newplan.OperatorPlan;
 import org.apache.pig.newplan.logical.rules.AddForEach;
 import org.apache.pig.newplan.logical.rules.ColumnMapKeyPrune;
+import org.apache.pig.newplan.logical.rules.CostBasedJoinOptimizer;
+import org.apache.pig.newplan.logical.rules.CostBasedParallelismSetter;
 import org.apache.pig.newplan.logical.rules.FilterAboveForeach;
 import org.apache.pig.newplan.logical.rules.FilterConstantCalculator;
 import org.apache.pig.newplan.logical.rules.ForEachConstantCalculator;
@@ -36,16 +40,19 @@ import org.apache.pig.newplan.logical.rules.LimitOptimizer;
 import org.apache.pig.newplan.logical.rules.LoadTypeCastInserter;
 import org.apache.pig.newplan.logical.rules.MergeFilter;
 import org.apache.pig.newplan.logical.rules.MergeForEach;
+import org.apache.pig.newplan.logical.rules.MergeMatches;
 import org.apache.pig.newplan.logical.rules.NestedLimitOptimizer;
 import org.apache.pig.newplan.logical.rules.PartitionFilterOptimizer;
 import org.apache.pig.newplan.logical.rules.PredicatePushdownOptimizer;
 import org.apache.pig.newplan.logical.rules.PushDownForEachFlatten;
 import org.apache.pig.newplan.logical.rules.PushUpFilter;
+import org.apache.pig.newplan.logical.rules.RelationSizeEstimator;
 import org.apache.pig.newplan.logical.rules.SplitConstantCalculator;
 import org.apache.pig.newplan.logical.rules.SplitFilter;
 import org.apache.pig.newplan.logical.rules.StreamTypeCastInserter;
 import org.apache.pig.newplan.optimizer.PlanOptimizer;
 import org.apache.pig.newplan.optimizer.Rule;
+import org.apache.pig.tools.pigstats.RuntimeStatsStore;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.SetMultimap;
@@ -100,6 +107,14 @@ public class LogicalPlanOptimizer extends PlanOptimizer {
         checkAndAddRule(s, r);
         ls.add(s);
 
+        // MergeMatches set
+        // This set merges MATCHES of the same expression in a disjunction
+        s = new HashSet<Rule>();
+        r = new MergeMatches("MergeMatches");
+        checkAndAddRule(s, r);
+        if (!s.isEmpty())
+            ls.add(s);
+
         // TypeCastInserter set
         // This set of rules Insert Foreach dedicated for casting after load
         s = new HashSet<Rule>();
@@ -167,6 +182,47 @@ public class LogicalPlanOptimizer extends PlanOptimizer {
         if (!s.isEmpty())
             ls.add(s);
 
+        // Cost based set
+        // This set of rules uses estimates of the data, from the runtime
+        // statistics of previous runs of the script or from the inputs, to
+        // choose join algorithms and parallelism
+        RuntimeStatsStore statsStore = RuntimeStatsStore.get(pc);
+        boolean hasStats = statsStore != null && !statsStore.isEmpty();
+        boolean joinAuto = pc != null && Boolean.parseBoolean(
+                pc.getProperties().getProperty(PigConfiguration.PIG_OPT_JOIN_AUTO, "false"));
+        Set<Rule> costBasedSet = new HashSet<Rule>();
+        if (hasStats || joinAuto) {
+            s = costBasedSet;
+            RelationSizeEstimator estimator = new RelationSizeEstimator(statsStore);
+            long maxReplicatedBytes = Long.parseLong(pc.getProperties().getProperty(
+                    PigConfiguration.PIG_OPT_REPLICATED_MAX_BYTES, "100000000"));
+            int sampleSize = joinAuto ? Integer.parseInt(pc.getProperties().getProperty(
+                    PigConfiguration.PIG_OPT_JOIN_SAMPLE_SIZE, "1000")) : 0;
+            double skewThreshold = Double.parseDouble(pc.getProperties().getProperty(
+                    PigConfiguration.PIG_OPT_JOIN_SKEW_THRESHOLD, "0.1"));
+            r = new CostBasedJoinOptimizer("CostBasedJoinOptimizer", estimator, maxReplicatedBytes,
+                    sampleSize, skewThreshold);
+            checkAndAddRule(s, r);
+            if (hasStats && pc.defaultParallel <= 0) {
+                long bytesPerReducer = Long.parseLong(pc.getProperties().getProperty(
+                        PigReducerEstimator.BYTES_PER_REDUCER_PARAM,
+                        Long.toString(PigReducerEstimator.DEFAULT_BYTES_PER_REDUCER)));
+                int maxReducers = Integer.parseInt(pc.getProperties().getProperty(
+                        PigReducerEstimator.MAX_REDUCER_COUNT_PARAM,
+                        Integer.toString(PigReducerEstimator.DEFAULT_MAX_REDUCER_COUNT_PARAM)));
+                r = new CostBasedParallelismSetter("CostBasedParallelismSetter", estimator,
+                        bytesPerReducer, maxReducers);
+                checkAndAddRule(s, r);
+            }
+        }
+        // Automatic join strategies sample and check the sort order of the
+        // columns of the loads, so they run before the prune set narrows
+        // the loads to the required fields. Otherwise the set keeps its place
+        // after the AddForEach set.
+        if (joinAuto && !costBasedSet.isEmpty()) {
+            ls.add(costBasedSet);
+        }
+
         // Prune Set
         // This set is used for pruning columns and maps
         s = new HashSet<Rule>();
@@ -184,6 +240,10 @@ public class LogicalPlanOptimizer extends PlanOptimizer {
         if (!s.isEmpty())
             ls.add(s);
 
+        if (!joinAuto && !costBasedSet.isEmpty()) {
+            ls.add(costBasedSet);
+        }
+
         // Add MergeForEach set
         s = new HashSet<Rule>();
         // Add the AddForEach
@@ -50,7 +50,8 @@ public class LOCogroup extends LogicalRelationalOperator {
     public static enum GROUPTYPE {
         REGULAR,    // Regular (co)group
         COLLECTED,  // Collected group
-        MERGE       // Map-side CoGroup on sorted data
+        MERGE,      // Map-side CoGroup on sorted data
+        SKEWED      // Group with keys that are too frequent for one reducer
     };
 
     private GROUPTYPE mGroupType;
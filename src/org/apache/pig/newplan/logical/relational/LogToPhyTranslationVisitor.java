@@ -1010,8 +1010,15 @@ public class LogToPhyTranslationVisitor extends LogicalRelationalNodesVisitor {
             translateCollectedCogroup(cg);
             break;
         case REGULAR:
+        case SKEWED:
             POPackage poPackage = compileToLR_GR_PackTrio(cg, cg.getCustomPartitioner(), cg.getInner(), cg.getExpressionPlans());
             poPackage.getPkgr().setPackageType(PackageType.GROUP);
+            if (cg.getGroupType() == LOCogroup.GROUPTYPE.SKEWED) {
+                // Only the MapReduce compiler splits skewed keys, other
+                // backends run the group as a regular one
+                POGlobalRearrange poGlobal = (POGlobalRearrange) currentPlan.getPredecessors(poPackage).get(0);
+                poGlobal.setSkewed(true);
+            }
             logToPhyMap.put(cg, poPackage);
             break;
         case MERGE:
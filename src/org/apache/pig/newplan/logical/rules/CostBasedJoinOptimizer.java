@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.newplan.logical.rules;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.LogicalToPhysicalTranslatorException;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.util.MultiMap;
+import org.apache.pig.impl.util.Pair;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.OperatorPlan;
+import org.apache.pig.newplan.OperatorSubPlan;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionPlan;
+import org.apache.pig.newplan.logical.expression.ProjectExpression;
+import org.apache.pig.newplan.logical.relational.LOForEach;
+import org.apache.pig.newplan.logical.relational.LOGenerate;
+import org.apache.pig.newplan.logical.relational.LOInnerLoad;
+import org.apache.pig.newplan.logical.relational.LOJoin;
+import org.apache.pig.newplan.logical.relational.LOJoin.JOINTYPE;
+import org.apache.pig.newplan.logical.relational.MapSideMergeValidator;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.apache.pig.newplan.logical.relational.LogicalRelationalOperator;
+import org.apache.pig.newplan.optimizer.Rule;
+import org.apache.pig.newplan.optimizer.Transformer;
+
+/**
+ * Rule: chooses the algorithm and the input order of a join without a join
+ * type hint from estimates of its inputs.
+ * <ul>
+ * <li>If all the inputs but the biggest one fit in the replicated size limit,
+ * the join is turned into a fragment-replicated join with the biggest input
+ * as the fragmented one.</li>
+ * <li>Otherwise a two-way inner join whose inputs are both reported sorted
+ * on the join keys by their loaders is turned into a merge join.</li>
+ * <li>Otherwise a two-way join where the most frequent join key accounts for
+ * more than the skew threshold of the sampled records of an input is turned
+ * into a skewed join, with the skewed input first.</li>
+ * <li>Otherwise the biggest input of an inner hash join is moved last, it is
+ * the input that is streamed instead of being held in memory in the reduce.</li>
+ * </ul>
+ * When inputs are reordered, a foreach is added after the join to restore the
+ * order of the fields. The chosen strategy and the estimates behind it are
+ * added to the join as the {@link #ANNOTATION} annotation, which is shown by
+ * explain.
+ */
+public class CostBasedJoinOptimizer extends Rule {
+
+    private static final Log LOG = LogFactory.getLog(CostBasedJoinOptimizer.class);
+
+    public static final String ANNOTATION = "JoinStrategy";
+
+    private final RelationSizeEstimator estimator;
+    private final long maxReplicatedBytes;
+    private final int sampleSize;
+    private final double skewThreshold;
+    // joins already considered, they are not looked at again
+    private final Set<LOJoin> examined = new HashSet<LOJoin>();
+
+    /**
+     * @param n name of the rule
+     * @param estimator estimator of the inputs
+     * @param maxReplicatedBytes maximum total size of the replicated inputs
+     * @param sampleSize number of records sampled to look for skewed keys,
+     * 0 to not look for them
+     * @param skewThreshold share of the most frequent key above which an
+     * input is skewed
+     */
+    public CostBasedJoinOptimizer(String n, RelationSizeEstimator estimator, long maxReplicatedBytes,
+            int sampleSize, double skewThreshold) {
+        super(n, false);
+        this.estimator = estimator;
+        this.maxReplicatedBytes = maxReplicatedBytes;
+        this.sampleSize = sampleSize;
+        this.skewThreshold = skewThreshold;
+    }
+
+    @Override
+    protected OperatorPlan buildPattern() {
+        LogicalPlan plan = new LogicalPlan();
+        LogicalRelationalOperator op = new LOJoin(plan);
+        plan.add(op);
+        return plan;
+    }
+
+    @Override
+    public Transformer getNewTransformer() {
+        return new CostBasedJoinTransformer();
+    }
+
+    public class CostBasedJoinTransformer extends Transformer {
+
+        private LOJoin join;
+        // new position -> old position of the inputs, null if unchanged
+        private int[] order;
+        private JOINTYPE joinType;
+        private OperatorSubPlan subPlan;
+
+        @Override
+        public boolean check(OperatorPlan matched) throws FrontendException {
+            join = (LOJoin) matched.getSources().get(0);
+            order = null;
+            joinType = null;
+            if (join.getJoinType() != JOINTYPE.HASH || join.isPinnedOption(LOJoin.OPTION_JOIN)
+                    || join.getCustomPartitioner() != null || !examined.add(join)) {
+                return false;
+            }
+            List<Operator> inputs = currentPlan.getPredecessors(join);
+            int n = inputs.size();
+            long[] sizes = new long[n];
+            long total = 0;
+            boolean allKnown = true;
+            StringBuilder estimates = new StringBuilder("estimated input bytes:");
+            for (int i = 0; i < n; i++) {
+                LogicalRelationalOperator input = (LogicalRelationalOperator) inputs.get(i);
+                sizes[i] = estimator.getBytes(input);
+                estimates.append(' ').append(input.getAlias()).append('=').append(sizes[i]);
+                allKnown &= sizes[i] >= 0;
+                total += sizes[i];
+            }
+
+            boolean allInner = true;
+            for (boolean inner : join.getInnerFlags()) {
+                allInner &= inner;
+            }
+            boolean canReorder = allInner && canReorder(inputs);
+
+            int biggest = -1;
+            if (allKnown) {
+                biggest = 0;
+                for (int i = 1; i < n && canReorder; i++) {
+                    if (sizes[i] > sizes[biggest]) {
+                        biggest = i;
+                    }
+                }
+                // replicated join only supports inner and left outer joins
+                if (total - sizes[biggest] <= maxReplicatedBytes
+                        && (allInner || (n == 2 && join.isInner(0)))) {
+                    joinType = JOINTYPE.REPLICATED;
+                    if (biggest != 0) {
+                        order = moveTo(n, biggest, 0);
+                    }
+                    return annotate(estimates);
+                }
+            }
+
+            if (n == 2 && allInner
+                    && estimator.isSortedOn((LogicalRelationalOperator) inputs.get(0), join.getJoinPlan(0))
+                    && estimator.isSortedOn((LogicalRelationalOperator) inputs.get(1), join.getJoinPlan(1))
+                    && isMapSideMergeValid(inputs)) {
+                joinType = JOINTYPE.MERGE;
+                estimates.append(", inputs sorted on the join keys");
+                return annotate(estimates);
+            }
+
+            if (n == 2 && sampleSize > 0) {
+                double[] shares = new double[n];
+                for (int i = 0; i < n; i++) {
+                    shares[i] = estimator.getTopKeyShare((LogicalRelationalOperator) inputs.get(i),
+                            join.getJoinPlan(i), sampleSize);
+                }
+                estimates.append(", top key share: ").append(shares[0]).append(' ').append(shares[1]);
+                // skewed join samples the first input for skewed keys
+                if (shares[0] > skewThreshold) {
+                    joinType = JOINTYPE.SKEWED;
+                    return annotate(estimates);
+                }
+                if (shares[1] > skewThreshold && canReorder) {
+                    joinType = JOINTYPE.SKEWED;
+                    order = moveTo(n, 1, 0);
+                    return annotate(estimates);
+                }
+            }
+
+            if (allKnown && canReorder && sizes[biggest] > sizes[n - 1]) {
+                order = moveTo(n, biggest, n - 1);
+                return annotate(estimates);
+            }
+            annotate(estimates);
+            return false;
+        }
+
+        /**
+         * Annotate the join with the chosen strategy and its estimates.
+         * @return true
+         */
+        private boolean annotate(StringBuilder estimates) {
+            JOINTYPE type = joinType == null ? join.getJoinType() : joinType;
+            join.annotate(ANNOTATION, type + " (" + estimates + ")");
+            return true;
+        }
+
+        private boolean isMapSideMergeValid(List<Operator> inputs) {
+            try {
+                return new MapSideMergeValidator().validateMapSideMerge(inputs, currentPlan);
+            } catch (LogicalToPhysicalTranslatorException e) {
+                return false;
+            }
+        }
+
+        private boolean canReorder(List<Operator> inputs) throws FrontendException {
+            for (Operator input : inputs) {
+                if (((LogicalRelationalOperator) input).getSchema() == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void transform(OperatorPlan matched) throws FrontendException {
+            subPlan = new OperatorSubPlan(currentPlan);
+            if (order != null) {
+                reorderInputs();
+            }
+            if (joinType != null) {
+                LOG.info("Using " + join.getAnnotation(ANNOTATION) + " for join " + join.getAlias());
+                join.setJoinType(joinType);
+            }
+            subPlan.add(join);
+        }
+
+        private void reorderInputs() throws FrontendException {
+            LOG.info("Reordering the inputs of join " + join.getAlias());
+            int n = order.length;
+            List<Operator> inputs = new ArrayList<Operator>(currentPlan.getPredecessors(join));
+            int[] widths = new int[n];
+            int[] fromPos = new int[n];
+            for (int i = 0; i < n; i++) {
+                widths[i] = ((LogicalRelationalOperator) inputs.get(i)).getSchema().size();
+                Pair<Integer, Integer> pos = currentPlan.disconnect(inputs.get(i), join);
+                fromPos[i] = pos.first;
+            }
+            MultiMap<Integer, LogicalExpressionPlan> joinPlans = new MultiMap<Integer, LogicalExpressionPlan>();
+            boolean[] innerFlags = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                int old = order[i];
+                currentPlan.connect(inputs.get(old), fromPos[old], join, i);
+                for (LogicalExpressionPlan lp : join.getJoinPlan(old)) {
+                    Iterator<Operator> it = lp.getOperators();
+                    while (it.hasNext()) {
+                        Operator exp = it.next();
+                        if (exp instanceof ProjectExpression) {
+                            ((ProjectExpression) exp).setInputNum(i);
+                        }
+                    }
+                    joinPlans.put(i, lp);
+                }
+                innerFlags[i] = join.isInner(old);
+            }
+            join.setJoinPlans(joinPlans);
+            join.setInnerFlags(innerFlags);
+            join.resetSchema();
+
+            // position of the first field of each old input in the new output
+            int[] newOffset = new int[n];
+            for (int i = 0, offset = 0; i < n; i++) {
+                newOffset[order[i]] = offset;
+                offset += widths[order[i]];
+            }
+            List<Integer> columns = new ArrayList<Integer>();
+            for (int old = 0; old < n; old++) {
+                for (int j = 0; j < widths[old]; j++) {
+                    columns.add(newOffset[old] + j);
+                }
+            }
+            subPlan.add(addProjectionAfter(join, columns));
+        }
+
+        /**
+         * Add a foreach after op that generates the given columns of op in
+         * that order.
+         */
+        private LOForEach addProjectionAfter(LogicalRelationalOperator op, List<Integer> columns)
+                throws FrontendException {
+            LogicalPlan plan = (LogicalPlan) currentPlan;
+            LOForEach foreach = new LOForEach(plan);
+            foreach.setAlias(op.getAlias());
+            plan.add(foreach);
+            List<Operator> succs = plan.getSuccessors(op) == null ? new ArrayList<Operator>()
+                    : new ArrayList<Operator>(plan.getSuccessors(op));
+            for (int i = 0; i < succs.size(); i++) {
+                Pair<Integer, Integer> pos = plan.disconnect(op, succs.get(i));
+                plan.connect(foreach, i, succs.get(i), pos.second);
+            }
+            plan.connect(op, foreach);
+
+            LogicalPlan innerPlan = new LogicalPlan();
+            foreach.setInnerPlan(innerPlan);
+            List<LogicalExpressionPlan> exps = new ArrayList<LogicalExpressionPlan>();
+            LOGenerate gen = new LOGenerate(innerPlan, exps, new boolean[columns.size()]);
+            innerPlan.add(gen);
+            for (int i = 0; i < columns.size(); i++) {
+                LOInnerLoad innerLoad = new LOInnerLoad(innerPlan, foreach, columns.get(i));
+                innerPlan.add(innerLoad);
+                innerPlan.connect(innerLoad, gen);
+
+                LogicalExpressionPlan exp = new LogicalExpressionPlan();
+                exp.add(new ProjectExpression(exp, i, -1, gen));
+                exps.add(exp);
+            }
+            return foreach;
+        }
+
+        @Override
+        public OperatorPlan reportChanges() {
+            return subPlan;
+        }
+    }
+
+    /**
+     * @return an input order that moves the input at from to position to and
+     * keeps the order of the others
+     */
+    private static int[] moveTo(int n, int from, int to) {
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            if (i != from) {
+                order.add(i);
+            }
+        }
+        order.add(to, from);
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = order.get(i);
+        }
+        return result;
+    }
+}
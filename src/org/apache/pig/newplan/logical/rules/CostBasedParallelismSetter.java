@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.newplan.logical.rules;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.OperatorPlan;
+import org.apache.pig.newplan.OperatorSubPlan;
+import org.apache.pig.newplan.logical.relational.LOCogroup;
+import org.apache.pig.newplan.logical.relational.LODistinct;
+import org.apache.pig.newplan.logical.relational.LOJoin;
+import org.apache.pig.newplan.logical.relational.LOJoin.JOINTYPE;
+import org.apache.pig.newplan.logical.relational.LOSort;
+import org.apache.pig.newplan.logical.relational.LogicalRelationalOperator;
+import org.apache.pig.newplan.optimizer.Transformer;
+
+/**
+ * Rule: sets the parallelism of the group, cogroup, join, distinct and order
+ * operators that do not have one from the estimated size of their inputs,
+ * with one reducer per bytesPerReducer bytes and at most maxReducers. The
+ * reducer estimator of the execution engine is only given the sizes of the
+ * inputs of a job, the estimate from the runtime statistics of previous runs
+ * also covers intermediate results.
+ */
+public class CostBasedParallelismSetter extends WholePlanRule {
+
+    private static final Log LOG = LogFactory.getLog(CostBasedParallelismSetter.class);
+
+    private final RelationSizeEstimator estimator;
+    private final long bytesPerReducer;
+    private final int maxReducers;
+
+    public CostBasedParallelismSetter(String n, RelationSizeEstimator estimator,
+            long bytesPerReducer, int maxReducers) {
+        super(n, false);
+        this.estimator = estimator;
+        this.bytesPerReducer = bytesPerReducer;
+        this.maxReducers = maxReducers;
+    }
+
+    @Override
+    public Transformer getNewTransformer() {
+        return new CostBasedParallelismTransformer();
+    }
+
+    public class CostBasedParallelismTransformer extends Transformer {
+
+        private Map<LogicalRelationalOperator, Integer> parallelism;
+
+        @Override
+        public boolean check(OperatorPlan matched) throws FrontendException {
+            parallelism = new HashMap<LogicalRelationalOperator, Integer>();
+            Iterator<Operator> it = matched.getOperators();
+            while (it.hasNext()) {
+                Operator op = it.next();
+                if (!isReduceSide(op)) {
+                    continue;
+                }
+                LogicalRelationalOperator rop = (LogicalRelationalOperator) op;
+                if (rop.getRequestedParallelism() > 0) {
+                    continue;
+                }
+                long bytes = getInputBytes(matched, rop);
+                if (bytes < 0) {
+                    continue;
+                }
+                long reducers = (bytes + bytesPerReducer - 1) / bytesPerReducer;
+                parallelism.put(rop, (int) Math.max(1, Math.min(maxReducers, reducers)));
+            }
+            return !parallelism.isEmpty();
+        }
+
+        private boolean isReduceSide(Operator op) {
+            if (op instanceof LOJoin) {
+                JOINTYPE type = ((LOJoin) op).getJoinType();
+                return type == JOINTYPE.HASH || type == JOINTYPE.SKEWED || type == JOINTYPE.BLOOM;
+            }
+            if (op instanceof LOCogroup) {
+                return ((LOCogroup) op).getGroupType() != LOCogroup.GROUPTYPE.COLLECTED
+                        && ((LOCogroup) op).getGroupType() != LOCogroup.GROUPTYPE.MERGE;
+            }
+            return op instanceof LODistinct || op instanceof LOSort;
+        }
+
+        private long getInputBytes(OperatorPlan plan, LogicalRelationalOperator op) {
+            List<Operator> inputs = plan.getPredecessors(op);
+            if (inputs == null) {
+                return -1;
+            }
+            long total = 0;
+            for (Operator input : inputs) {
+                long bytes = estimator.getBytes((LogicalRelationalOperator) input);
+                if (bytes < 0) {
+                    return -1;
+                }
+                total += bytes;
+            }
+            return total;
+        }
+
+        @Override
+        public void transform(OperatorPlan matched) throws FrontendException {
+            for (Map.Entry<LogicalRelationalOperator, Integer> e : parallelism.entrySet()) {
+                LOG.info("Setting parallelism of " + e.getKey().getAlias() + " to " + e.getValue()
+                        + " based on the runtime statistics of previous runs");
+                e.getKey().setRequestedParallelism(e.getValue());
+            }
+        }
+
+        @Override
+        public OperatorPlan reportChanges() {
+            return new OperatorSubPlan(currentPlan);
+        }
+    }
+}
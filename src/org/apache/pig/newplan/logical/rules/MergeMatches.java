@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.newplan.logical.rules;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.MultiPatternMatcher;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.RegexInit;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.newplan.DependencyOrderWalker;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.OperatorPlan;
+import org.apache.pig.newplan.logical.expression.BinCondExpression;
+import org.apache.pig.newplan.logical.expression.ConstantExpression;
+import org.apache.pig.newplan.logical.expression.EqualExpression;
+import org.apache.pig.newplan.logical.expression.LogicalExpression;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionPlan;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionVisitor;
+import org.apache.pig.newplan.logical.expression.MatchIndexExpression;
+import org.apache.pig.newplan.logical.expression.OrExpression;
+import org.apache.pig.newplan.logical.expression.ProjectExpression;
+import org.apache.pig.newplan.logical.expression.RegexExpression;
+import org.apache.pig.newplan.logical.expression.UserFuncExpression;
+import org.apache.pig.newplan.logical.optimizer.AllExpressionVisitor;
+import org.apache.pig.newplan.optimizer.Transformer;
+
+import dk.brics.automaton.Automaton;
+import dk.brics.automaton.RegExp;
+
+/**
+ * Merge the MATCHES conditions of a disjunction which test the same
+ * expression against constant patterns into one MATCHES of the union of the
+ * patterns, so that the value is scanned once by a single automaton instead
+ * of once per pattern. For example
+ * <code>f matches 'a.*' or g > 0 or f matches '.*b'</code> becomes
+ * <code>f matches '(a.*)|(.*b)' or g > 0</code>.
+ * <p>
+ * A chain of bincond whose conditions match the same expression, as written
+ * for a CASE, gets the index of the first pattern matched in one scan:
+ * <code>f matches 'a.*' ? 1 : (f matches '.*b' ? 2 : 0)</code> becomes
+ * <code>MatchIndex(f, 'a.*', '.*b') == 0 ? 1 : (MatchIndex(f, 'a.*', '.*b') == 1 ? 2 : 0)</code>,
+ * where the match index operators of the chain share the result for a row.
+ * <p>
+ * Only patterns which are matched with dk.brics.automaton are merged, since
+ * java.util.regex would still try every alternative in turn.
+ */
+public class MergeMatches extends WholePlanRule {
+
+    // Don't merge patterns whose union compiles to a larger automaton
+    static final int MAX_STATES = 10000;
+
+    public MergeMatches(String n) {
+        super(n, false);
+    }
+
+    @Override
+    public Transformer getNewTransformer() {
+        return new MergeMatchesTransformer();
+    }
+
+    public class MergeMatchesTransformer extends Transformer {
+        private List<LogicalExpressionPlan> expPlans = new ArrayList<LogicalExpressionPlan>();
+
+        @Override
+        public boolean check(OperatorPlan matched) throws FrontendException {
+            expPlans.clear();
+            final List<LogicalExpressionPlan> allPlans = new ArrayList<LogicalExpressionPlan>();
+            new AllExpressionVisitor(matched, new DependencyOrderWalker(matched)) {
+                @Override
+                protected LogicalExpressionVisitor getVisitor(LogicalExpressionPlan expr)
+                        throws FrontendException {
+                    allPlans.add(expr);
+                    return new LogicalExpressionVisitor(expr, new DependencyOrderWalker(expr)) {
+                    };
+                }
+            }.visit();
+
+            for (LogicalExpressionPlan expPlan : allPlans) {
+                if (!getMergeableGroups(expPlan).isEmpty() || !getMergeableChains(expPlan).isEmpty()) {
+                    expPlans.add(expPlan);
+                }
+            }
+            return !expPlans.isEmpty();
+        }
+
+        @Override
+        public void transform(OperatorPlan matched) throws FrontendException {
+            for (LogicalExpressionPlan expPlan : expPlans) {
+                for (List<RegexExpression> group : getMergeableGroups(expPlan)) {
+                    merge(expPlan, group);
+                }
+                for (List<RegexExpression> chain : getMergeableChains(expPlan)) {
+                    mergeChain(expPlan, chain);
+                }
+            }
+        }
+
+        @Override
+        public OperatorPlan reportChanges() {
+            return currentPlan;
+        }
+
+        /**
+         * Find the MATCHES of every disjunction of the plan which can be merged,
+         * grouped by the expression they test.
+         */
+        private List<List<RegexExpression>> getMergeableGroups(LogicalExpressionPlan expPlan)
+                throws FrontendException {
+            List<List<RegexExpression>> mergeable = new ArrayList<List<RegexExpression>>();
+            Iterator<Operator> it = expPlan.getOperators();
+            while (it.hasNext()) {
+                Operator op = it.next();
+                List<Operator> preds = expPlan.getPredecessors(op);
+                if (!(op instanceof OrExpression)
+                        || (preds != null && preds.get(0) instanceof OrExpression)) {
+                    continue;
+                }
+                List<LogicalExpression> disjuncts = new ArrayList<LogicalExpression>();
+                addDisjuncts((OrExpression) op, disjuncts);
+
+                List<List<RegexExpression>> groups = new ArrayList<List<RegexExpression>>();
+                for (LogicalExpression disjunct : disjuncts) {
+                    if (!isConstantAutomatonMatch(disjunct)) {
+                        continue;
+                    }
+                    RegexExpression regex = (RegexExpression) disjunct;
+                    boolean grouped = false;
+                    for (List<RegexExpression> group : groups) {
+                        if (isSameExpression(group.get(0).getLhs(), regex.getLhs())) {
+                            group.add(regex);
+                            grouped = true;
+                            break;
+                        }
+                    }
+                    if (!grouped) {
+                        List<RegexExpression> group = new ArrayList<RegexExpression>();
+                        group.add(regex);
+                        groups.add(group);
+                    }
+                }
+                for (List<RegexExpression> group : groups) {
+                    if (group.size() > 1 && getUnionPattern(group) != null) {
+                        mergeable.add(group);
+                    }
+                }
+            }
+            return mergeable;
+        }
+
+        /**
+         * Find the chains of bincond, each in the else branch of the previous
+         * one, whose conditions are MATCHES of the same expression.
+         */
+        private List<List<RegexExpression>> getMergeableChains(LogicalExpressionPlan expPlan)
+                throws FrontendException {
+            List<List<RegexExpression>> mergeable = new ArrayList<List<RegexExpression>>();
+            Iterator<Operator> it = expPlan.getOperators();
+            while (it.hasNext()) {
+                Operator op = it.next();
+                if (!(op instanceof BinCondExpression) || isInChain((BinCondExpression) op)) {
+                    continue;
+                }
+                List<RegexExpression> chain = new ArrayList<RegexExpression>();
+                LogicalExpression exp = (LogicalExpression) op;
+                while (exp instanceof BinCondExpression
+                        && isConstantAutomatonMatch(((BinCondExpression) exp).getCondition())) {
+                    RegexExpression regex = (RegexExpression) ((BinCondExpression) exp).getCondition();
+                    if (!chain.isEmpty() && !isSameExpression(chain.get(0).getLhs(), regex.getLhs())) {
+                        break;
+                    }
+                    chain.add(regex);
+                    exp = ((BinCondExpression) exp).getRhs();
+                }
+                if (chain.size() > 1 && MultiPatternMatcher.compile(getPatterns(chain)) != null) {
+                    mergeable.add(chain);
+                }
+            }
+            return mergeable;
+        }
+
+        // Whether the bincond is the else branch of a bincond of a chain
+        private boolean isInChain(BinCondExpression binCond) throws FrontendException {
+            List<Operator> preds = binCond.getPlan().getPredecessors(binCond);
+            if (preds == null || !(preds.get(0) instanceof BinCondExpression)) {
+                return false;
+            }
+            BinCondExpression parent = (BinCondExpression) preds.get(0);
+            return parent.getRhs() == binCond
+                    && isConstantAutomatonMatch(parent.getCondition())
+                    && isConstantAutomatonMatch(binCond.getCondition())
+                    && isSameExpression(((RegexExpression) parent.getCondition()).getLhs(),
+                            ((RegexExpression) binCond.getCondition()).getLhs());
+        }
+
+        private List<String> getPatterns(List<RegexExpression> chain) throws FrontendException {
+            List<String> patterns = new ArrayList<String>();
+            for (RegexExpression regex : chain) {
+                patterns.add((String) ((ConstantExpression) regex.getRhs()).getValue());
+            }
+            return patterns;
+        }
+
+        /**
+         * Replace the MATCHES of the i-th bincond of the chain by a test that
+         * the first pattern matched is the i-th.
+         */
+        private void mergeChain(LogicalExpressionPlan expPlan, List<RegexExpression> chain)
+                throws FrontendException {
+            List<String> patterns = getPatterns(chain);
+            for (int i = 0; i < chain.size(); i++) {
+                RegexExpression regex = chain.get(i);
+                LogicalExpression tested = regex.getLhs();
+                LogicalExpression pattern = regex.getRhs();
+                expPlan.disconnect(regex, tested);
+                expPlan.disconnect(regex, pattern);
+                expPlan.remove(pattern);
+                MatchIndexExpression index = new MatchIndexExpression(expPlan, tested, patterns);
+                EqualExpression equal = new EqualExpression(expPlan, index, new ConstantExpression(expPlan, i));
+                equal.setLocation(regex.getLocation());
+                expPlan.replace(regex, equal);
+            }
+        }
+
+        // Every reference to a field in a foreach has its own inner load, so
+        // the projections of the same field only share the uid
+        private boolean isSameExpression(LogicalExpression lhs, LogicalExpression rhs)
+                throws FrontendException {
+            if (lhs instanceof ProjectExpression && rhs instanceof ProjectExpression
+                    && lhs.getFieldSchema() != null && rhs.getFieldSchema() != null) {
+                return lhs.getFieldSchema().uid == rhs.getFieldSchema().uid;
+            }
+            return lhs.isEqual(rhs);
+        }
+
+        private void addDisjuncts(LogicalExpression exp, List<LogicalExpression> disjuncts)
+                throws FrontendException {
+            if (exp instanceof OrExpression) {
+                addDisjuncts(((OrExpression) exp).getLhs(), disjuncts);
+                addDisjuncts(((OrExpression) exp).getRhs(), disjuncts);
+            } else {
+                disjuncts.add(exp);
+            }
+        }
+
+        private boolean isConstantAutomatonMatch(LogicalExpression exp) throws FrontendException {
+            if (!(exp instanceof RegexExpression)) {
+                return false;
+            }
+            RegexExpression regex = (RegexExpression) exp;
+            if (!(regex.getRhs() instanceof ConstantExpression)
+                    || hasUserFunc(regex.getLhs())) {
+                return false;
+            }
+            Object pattern = ((ConstantExpression) regex.getRhs()).getValue();
+            return pattern instanceof String && RegexInit.isAutomatonPattern((String) pattern);
+        }
+
+        // The tested expression is evaluated once instead of once per pattern,
+        // which is only the same for deterministic expressions
+        private boolean hasUserFunc(Operator exp) {
+            if (exp instanceof UserFuncExpression) {
+                return true;
+            }
+            List<Operator> succs = exp.getPlan().getSuccessors(exp);
+            if (succs != null) {
+                for (Operator succ : succs) {
+                    if (hasUserFunc(succ)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private String getUnionPattern(List<RegexExpression> group) throws FrontendException {
+            StringBuilder union = new StringBuilder();
+            for (RegexExpression regex : group) {
+                if (union.length() > 0) {
+                    union.append('|');
+                }
+                union.append('(').append(((ConstantExpression) regex.getRhs()).getValue()).append(')');
+            }
+            String pattern = union.toString();
+            if (!RegexInit.isAutomatonPattern(pattern)) {
+                return null;
+            }
+            Automaton automaton = new RegExp(pattern, RegExp.NONE).toAutomaton();
+            return automaton.getNumberOfStates() <= MAX_STATES ? pattern : null;
+        }
+
+        /**
+         * Test the union of the patterns in the first MATCHES of the group and
+         * remove the others from their disjunction.
+         */
+        private void merge(LogicalExpressionPlan expPlan, List<RegexExpression> group)
+                throws FrontendException {
+            RegexExpression first = group.get(0);
+            ConstantExpression oldPattern = (ConstantExpression) first.getRhs();
+            ConstantExpression newPattern = new ConstantExpression(expPlan, getUnionPattern(group));
+            newPattern.inheritSchema(oldPattern);
+            expPlan.replace(oldPattern, newPattern);
+
+            for (RegexExpression regex : group.subList(1, group.size())) {
+                Operator or = expPlan.getPredecessors(regex).get(0);
+                expPlan.disconnect(or, regex);
+                expPlan.trimBelow(regex);
+                expPlan.remove(regex);
+                expPlan.removeAndReconnect(or);
+            }
+        }
+    }
+}
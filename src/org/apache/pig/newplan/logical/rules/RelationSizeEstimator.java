@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.newplan.logical.rules;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadMetadata;
+import org.apache.pig.OrderedLoadFunc;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.ResourceStatistics;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.io.ReadToEndLoader;
+import org.apache.pig.impl.util.UriUtil;
+import org.apache.pig.newplan.Operator;
+import org.apache.pig.newplan.logical.expression.CastExpression;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionPlan;
+import org.apache.pig.newplan.logical.expression.ProjectExpression;
+import org.apache.pig.newplan.logical.relational.LODistinct;
+import org.apache.pig.newplan.logical.relational.LOFilter;
+import org.apache.pig.newplan.logical.relational.LOForEach;
+import org.apache.pig.newplan.logical.relational.LOGenerate;
+import org.apache.pig.newplan.logical.relational.LOInnerLoad;
+import org.apache.pig.newplan.logical.relational.LOLimit;
+import org.apache.pig.newplan.logical.relational.LOLoad;
+import org.apache.pig.newplan.logical.relational.LOSort;
+import org.apache.pig.newplan.logical.relational.LOSplit;
+import org.apache.pig.newplan.logical.relational.LOSplitOutput;
+import org.apache.pig.newplan.logical.relational.LogicalRelationalOperator;
+import org.apache.pig.tools.pigstats.RuntimeStatsStore;
+
+/**
+ * Estimates the size in bytes of the output of a relational operator. The
+ * runtime statistics of previous runs of the script are used if there are
+ * any for the alias or the input. Otherwise the operator is followed up
+ * through operators that do not make a relation bigger (filter, limit,
+ * distinct, sort, split and foreach without flatten) to a load, which gives
+ * an upper bound: the size reported by the loader in its
+ * {@link ResourceStatistics}, or else the size of the input files.
+ * <p>
+ * It also looks at the data of the join keys of relations that come from a
+ * load, with the key columns passed through unchanged: whether the loader
+ * reports the data as sorted on them, and the share of the most frequent key
+ * in a sample of the first records.
+ */
+public class RelationSizeEstimator {
+
+    private static final Log LOG = LogFactory.getLog(RelationSizeEstimator.class);
+
+    private final RuntimeStatsStore store;
+    private final Map<LOLoad, Long> loadSizes = new HashMap<LOLoad, Long>();
+
+    /**
+     * @param store runtime statistics of the script, or null
+     */
+    public RelationSizeEstimator(RuntimeStatsStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @param op relational operator
+     * @return estimated size in bytes of the output of op, -1 if unknown
+     */
+    public long getBytes(LogicalRelationalOperator op) {
+        if (store != null) {
+            RuntimeStatsStore.Entry entry = store.getAliasStats(op.getAlias());
+            if (entry != null && entry.getBytes() >= 0) {
+                return entry.getBytes();
+            }
+        }
+        if (op instanceof LOLoad) {
+            return getLoadBytes((LOLoad) op);
+        }
+        if (!isNotGrowing(op)) {
+            return -1;
+        }
+        List<Operator> preds = op.getPlan().getPredecessors(op);
+        if (preds == null || preds.size() != 1) {
+            return -1;
+        }
+        return getBytes((LogicalRelationalOperator) preds.get(0));
+    }
+
+    private long getLoadBytes(LOLoad load) {
+        if (load.getFileSpec() == null) {
+            return -1;
+        }
+        Long size = loadSizes.get(load);
+        if (size == null) {
+            String location = load.getFileSpec().getFileName();
+            RuntimeStatsStore.Entry entry = store == null ? null : store.getInputStats(location);
+            if (entry != null && entry.getBytes() >= 0) {
+                size = entry.getBytes();
+            } else {
+                size = getInputSizeFromLoader(load);
+                if (size < 0) {
+                    size = getInputFileSize(location, load.getConfiguration());
+                }
+            }
+            loadSizes.put(load, size);
+        }
+        return size;
+    }
+
+    private static long getInputSizeFromLoader(LOLoad load) {
+        try {
+            LoadFunc loadFunc = load.getLoadFunc();
+            if (!(loadFunc instanceof LoadMetadata)) {
+                return -1;
+            }
+            ResourceStatistics stats = ((LoadMetadata) loadFunc).getStatistics(
+                    load.getFileSpec().getFileName(), new Job(load.getConfiguration()));
+            if (stats == null || stats.getSizeInBytes() == null) {
+                return -1;
+            }
+            return stats.getSizeInBytes();
+        } catch (Exception e) {
+            LOG.warn("Couldn't get statistics from the loader of " + load.getAlias(), e);
+            return -1;
+        }
+    }
+
+    private static long getInputFileSize(String locations, Configuration conf) {
+        if (conf == null) {
+            return -1;
+        }
+        long size = 0;
+        try {
+            for (String location : LoadFunc.getPathStrings(locations)) {
+                if (!UriUtil.isHDFSFileOrLocalOrS3N(location, conf)) {
+                    return -1;
+                }
+                Path path = new Path(location);
+                FileSystem fs = path.getFileSystem(conf);
+                FileStatus[] status = fs.globStatus(path);
+                if (status == null) {
+                    return -1;
+                }
+                for (FileStatus s : status) {
+                    size += fs.getContentSummary(s.getPath()).getLength();
+                }
+            }
+        } catch (Exception e) {
+            LOG.warn("Couldn't get the size of " + locations, e);
+            return -1;
+        }
+        return size;
+    }
+
+    private static boolean isNotGrowing(LogicalRelationalOperator op) {
+        if (op instanceof LOFilter || op instanceof LOLimit || op instanceof LODistinct
+                || op instanceof LOSort || op instanceof LOSplit || op instanceof LOSplitOutput) {
+            return true;
+        }
+        if (op instanceof LOForEach) {
+            Operator gen = ((LOForEach) op).getInnerPlan().getSinks().get(0);
+            for (boolean flatten : ((LOGenerate) gen).getFlattenFlags()) {
+                if (flatten) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param input input of a join
+     * @param keyPlans join key plans of the input
+     * @return whether the loader of the input can read it in order and
+     * reports its data as sorted in ascending order on the join keys
+     */
+    public boolean isSortedOn(LogicalRelationalOperator input, Collection<LogicalExpressionPlan> keyPlans) {
+        int[] cols = getKeyColumns(keyPlans);
+        LOLoad load = cols == null ? null : traceColumns(input, cols);
+        if (load == null) {
+            return false;
+        }
+        try {
+            LoadFunc loadFunc = load.getLoadFunc();
+            if (!(loadFunc instanceof LoadMetadata) || !(loadFunc instanceof OrderedLoadFunc)) {
+                return false;
+            }
+            ResourceSchema schema = ((LoadMetadata) loadFunc).getSchema(
+                    load.getFileSpec().getFileName(), new Job(load.getConfiguration()));
+            if (schema == null || schema.getSortKeys() == null
+                    || schema.getSortKeys().length < cols.length) {
+                return false;
+            }
+            for (int i = 0; i < cols.length; i++) {
+                if (schema.getSortKeys()[i] != cols[i]
+                        || schema.getSortKeyOrders()[i] != ResourceSchema.Order.ASCENDING) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            LOG.warn("Couldn't get the schema from the loader of " + load.getAlias(), e);
+            return false;
+        }
+    }
+
+    /**
+     * @param input input of a join
+     * @param keyPlans join key plans of the input
+     * @param sampleSize maximum number of records to read
+     * @return the fraction of the sampled records of the input that have the
+     * most frequent join key, -1 if the keys can not be sampled
+     */
+    public double getTopKeyShare(LogicalRelationalOperator input, Collection<LogicalExpressionPlan> keyPlans,
+            int sampleSize) {
+        int[] cols = getKeyColumns(keyPlans);
+        LOLoad load = cols == null ? null : traceColumns(input, cols);
+        if (load == null || load.getFileSpec() == null) {
+            return -1;
+        }
+        Map<Object, Integer> counts = new HashMap<Object, Integer>();
+        int total = 0;
+        int top = 0;
+        ReadToEndLoader loader = null;
+        try {
+            LoadFunc loadFunc = (LoadFunc) PigContext.instantiateFuncFromSpec(
+                    load.getFileSpec().getFuncSpec());
+            loader = new ReadToEndLoader(loadFunc, load.getConfiguration(),
+                    load.getFileSpec().getFileName(), 0, load.getSignature());
+            Tuple t;
+            while (total < sampleSize && (t = loader.getNext()) != null) {
+                Object key;
+                if (cols.length == 1) {
+                    key = t.size() > cols[0] ? t.get(cols[0]) : null;
+                } else {
+                    StringBuilder sb = new StringBuilder();
+                    for (int col : cols) {
+                        sb.append(t.size() > col ? t.get(col) : null).append('\u0001');
+                    }
+                    key = sb.toString();
+                }
+                Integer count = counts.get(key);
+                count = count == null ? 1 : count + 1;
+                counts.put(key, count);
+                top = Math.max(top, count);
+                total++;
+            }
+        } catch (Exception e) {
+            LOG.warn("Couldn't sample the join keys of " + input.getAlias(), e);
+            return -1;
+        } finally {
+            if (loader != null) {
+                try {
+                    loader.close();
+                } catch (IOException e) {
+                    LOG.warn("Couldn't close the sample of " + input.getAlias(), e);
+                }
+            }
+        }
+        return total == 0 ? -1 : (double) top / total;
+    }
+
+    /**
+     * @return the columns projected by key plans that are all simple
+     * projections, null otherwise
+     */
+    private static int[] getKeyColumns(Collection<LogicalExpressionPlan> keyPlans) {
+        int[] cols = new int[keyPlans.size()];
+        int i = 0;
+        for (LogicalExpressionPlan plan : keyPlans) {
+            if (plan.size() != 1 || !(plan.getSources().get(0) instanceof ProjectExpression)) {
+                return null;
+            }
+            ProjectExpression prj = (ProjectExpression) plan.getSources().get(0);
+            if (prj.isRangeOrStarProject() || prj.getColNum() < 0) {
+                return null;
+            }
+            cols[i++] = prj.getColNum();
+        }
+        return cols;
+    }
+
+    /**
+     * Follow the given output columns of op up to a load, through filters
+     * and foreach projections or casts.
+     * @param op relational operator
+     * @param cols columns of the output of op, replaced by the matching
+     * columns of the load
+     * @return the load, null if the columns can not be followed to one
+     */
+    private static LOLoad traceColumns(LogicalRelationalOperator op, int[] cols) {
+        while (true) {
+            if (op instanceof LOLoad) {
+                return (LOLoad) op;
+            }
+            if (op instanceof LOForEach) {
+                for (int i = 0; i < cols.length; i++) {
+                    cols[i] = getInputColumn((LOForEach) op, cols[i]);
+                    if (cols[i] < 0) {
+                        return null;
+                    }
+                }
+            } else if (!(op instanceof LOFilter)) {
+                return null;
+            }
+            List<Operator> preds = op.getPlan().getPredecessors(op);
+            if (preds == null || preds.size() != 1) {
+                return null;
+            }
+            op = (LogicalRelationalOperator) preds.get(0);
+        }
+    }
+
+    /**
+     * @return the input column of foreach that its output column col
+     * projects, directly or through a cast, -1 if there is none
+     */
+    private static int getInputColumn(LOForEach foreach, int col) {
+        LOGenerate gen = (LOGenerate) foreach.getInnerPlan().getSinks().get(0);
+        for (boolean flatten : gen.getFlattenFlags()) {
+            if (flatten) {
+                return -1;
+            }
+        }
+        if (col >= gen.getOutputPlans().size()) {
+            return -1;
+        }
+        LogicalExpressionPlan exp = gen.getOutputPlans().get(col);
+        Operator root = exp.getSources().get(0);
+        if (root instanceof CastExpression) {
+            root = exp.getSuccessors(root).get(0);
+        }
+        if (!(root instanceof ProjectExpression) || exp.getSuccessors(root) != null) {
+            return -1;
+        }
+        // the inner load has a single column
+        ProjectExpression prj = (ProjectExpression) root;
+        if (prj.isRangeProject() || prj.getColNum() > 0) {
+            return -1;
+        }
+        Operator in = foreach.getInnerPlan().getPredecessors(gen).get(prj.getInputNum());
+        if (!(in instanceof LOInnerLoad) || ((LOInnerLoad) in).getProjection().isRangeOrStarProject()) {
+            return -1;
+        }
+        return ((LOInnerLoad) in).getColNum();
+    }
+}
@@ -861,6 +861,9 @@ public class LogicalPlanBuilder {
                     }
                 }
             }
+        } else if( gt == GROUPTYPE.SKEWED && inputAliases.size() > 1 ) {
+            throw new ParserValidationException( intStream, loc,
+                    "Skewed group is only supported for single input" );
         }
 
         boolean[] flags = new boolean[innerFlags.size()];
@@ -1783,9 +1786,11 @@ public class LogicalPlanBuilder {
             return GROUPTYPE.REGULAR;
         } else if( modifier.equalsIgnoreCase( "merge" ) ){
             return GROUPTYPE.MERGE;
+        } else if( modifier.equalsIgnoreCase( "skewed" ) ){
+            return GROUPTYPE.SKEWED;
         } else {
             throw new ParserValidationException( intStream, loc,
-                "Only COLLECTED, REGULAR or MERGE are valid GROUP modifiers." );
+                "Only COLLECTED, REGULAR, MERGE or SKEWED are valid GROUP modifiers." );
         }
     }
 
@@ -37,6 +37,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POCast;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POIsNull;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POMapLookUp;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POMatchIndex;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONegative;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.PONot;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POOr;
@@ -351,6 +352,11 @@ public class IllustratorAttacher extends PhyPlanVisitor {
       setIllustrator(negative, 1);
     }
 
+    @Override
+    public void visitMatchIndex(POMatchIndex matchIndex) {
+      setIllustrator(matchIndex, 1);
+    }
+
     @Override
     public void visitUserFunc(POUserFunc userFunc) throws VisitorException {
     }
@@ -65,6 +65,8 @@ public abstract class JobStats extends Operator {
 
     protected ArrayList<InputStats> inputs;
 
+    protected ArrayList<OutputStats> intermediateOutputs;
+
     protected Configuration conf;
 
     protected long hdfsBytesRead = 0;
@@ -78,6 +80,7 @@ public abstract class JobStats extends Operator {
         super(name, plan);
         outputs = new ArrayList<OutputStats>();
         inputs = new ArrayList<InputStats>();
+        intermediateOutputs = new ArrayList<OutputStats>();
     }
 
     public abstract String getJobId();
@@ -109,6 +112,15 @@ public abstract class JobStats extends Operator {
         return Collections.unmodifiableList(inputs);
     }
 
+    /**
+     * Returns the statistics of the temporary outputs of this job, the
+     * intermediate results that are read by the following jobs. They are
+     * not included in {@link #getOutputs()}.
+     */
+    public List<OutputStats> getIntermediateOutputs() {
+        return Collections.unmodifiableList(intermediateOutputs);
+    }
+
     public String getAlias() {
         return (String)getAnnotation(ALIAS);
     }
@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.tools.pigstats;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.classification.InterfaceAudience;
+import org.apache.pig.classification.InterfaceStability;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.newplan.logical.optimizer.LogicalPlanPrinter;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.apache.pig.tools.pigstats.InputStats.INPUT_TYPE;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * A local store of the runtime statistics of a script, used by the cost based
+ * optimizer rules on the following runs of the same script. The statistics are
+ * kept in one file per script signature under
+ * {@link PigConfiguration#PIG_OPT_RUNTIME_STATS_DIR}. For every alias whose
+ * result was written by a job, and for every input location, the file holds
+ * the number of records and the size in bytes seen in the last run. Unknown
+ * values are kept as -1.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class RuntimeStatsStore {
+
+    private static final Log LOG = LogFactory.getLog(RuntimeStatsStore.class);
+
+    private static final String SIGNATURE = "pig.opt.runtime.stats.signature";
+
+    private static final Pattern UID_PATTERN = Pattern.compile("#-?\\d+|Uid: -?\\d+");
+
+    private static final String ALIAS_PREFIX = "alias.";
+    private static final String INPUT_PREFIX = "input.";
+
+    /**
+     * The record count and size of a relation. Either can be -1 if unknown.
+     */
+    public static class Entry {
+        private final long records;
+        private final long bytes;
+
+        public Entry(long records, long bytes) {
+            this.records = records;
+            this.bytes = bytes;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return records + "," + bytes;
+        }
+    }
+
+    private final File file;
+    private final Properties entries = new Properties();
+
+    RuntimeStatsStore(File file) {
+        this.file = file;
+        if (file.exists()) {
+            InputStream in = null;
+            try {
+                in = new FileInputStream(file);
+                entries.load(in);
+            } catch (IOException e) {
+                LOG.warn("Unable to read runtime statistics from " + file, e);
+                entries.clear();
+            } finally {
+                closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Get the statistics store of the script being run.
+     * @param pc PigContext of the script
+     * @return the store, or null if runtime statistics are disabled or the
+     * script does not have a signature
+     */
+    public static RuntimeStatsStore get(PigContext pc) {
+        if (!isEnabled(pc)) {
+            return null;
+        }
+        Properties props = pc.getProperties();
+        String signature = props.getProperty(SIGNATURE);
+        if (signature == null) {
+            return null;
+        }
+        String dir = props.getProperty(PigConfiguration.PIG_OPT_RUNTIME_STATS_DIR);
+        if (dir == null) {
+            dir = System.getProperty("user.home") + File.separator + ".pig" + File.separator + "stats";
+        }
+        return new RuntimeStatsStore(new File(dir, signature + ".stats"));
+    }
+
+    /**
+     * Set the signature of the script the statistics of which are used and
+     * saved, if runtime statistics are enabled. Unlike
+     * {@link LogicalPlan#getSignature()} it does not depend on the uids of
+     * the fields, so it is the same for every run of the script.
+     * @param pc PigContext of the script
+     * @param lp logical plan of the script, before optimization
+     */
+    public static void setSignature(PigContext pc, LogicalPlan lp) throws FrontendException {
+        if (!isEnabled(pc)) {
+            return;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bos);
+        new LogicalPlanPrinter(lp, ps).visit();
+        ps.flush();
+        String plan = UID_PATTERN.matcher(bos.toString()).replaceAll("");
+        int hash = Hashing.murmur3_32(0).hashString(plan, Charsets.UTF_8).asInt();
+        pc.getProperties().setProperty(SIGNATURE, Integer.toString(hash));
+    }
+
+    private static boolean isEnabled(PigContext pc) {
+        return pc != null && Boolean.parseBoolean(
+                pc.getProperties().getProperty(PigConfiguration.PIG_OPT_RUNTIME_STATS, "false"));
+    }
+
+    /**
+     * @return the statistics of the relation with the given alias, or null
+     */
+    public Entry getAliasStats(String alias) {
+        return alias == null ? null : getEntry(ALIAS_PREFIX + alias);
+    }
+
+    /**
+     * @return the statistics of the input at the given location, or null
+     */
+    public Entry getInputStats(String location) {
+        return location == null ? null : getEntry(INPUT_PREFIX + location);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    private Entry getEntry(String key) {
+        String value = entries.getProperty(key);
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split(",");
+        try {
+            return new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+        } catch (RuntimeException e) {
+            LOG.warn("Ignoring malformed runtime statistics " + key + "=" + value);
+            return null;
+        }
+    }
+
+    private void putEntry(String key, long records, long bytes) {
+        if (bytes == 0 && records > 0) {
+            // not a file, the size is unknown
+            bytes = -1;
+        }
+        Entry old = getEntry(key);
+        if (old != null) {
+            // keep what the previous run knew and this one did not
+            if (records < 0) records = old.getRecords();
+            if (bytes < 0) bytes = old.getBytes();
+        }
+        if (records < 0 && bytes < 0) {
+            return;
+        }
+        entries.setProperty(key, new Entry(records, bytes).toString());
+    }
+
+    /**
+     * Add the statistics of the successful jobs of a run.
+     * @param stats statistics of the run
+     */
+    public void addStats(PigStats stats) {
+        if (stats == null || stats.getJobGraph() == null) {
+            return;
+        }
+        for (JobStats js : stats.getJobGraph()) {
+            if (!js.isSuccessful()) {
+                continue;
+            }
+            for (InputStats is : js.getInputs()) {
+                if (is.getInputType() == INPUT_TYPE.regular) {
+                    long bytes = is.getBytes();
+                    if (bytes <= 0) {
+                        bytes = getFileSize(is.getLocation(), is.getConf());
+                    }
+                    putEntry(INPUT_PREFIX + is.getLocation(), is.getNumberRecords(), bytes);
+                }
+            }
+            for (OutputStats os : js.getOutputs()) {
+                addOutputStats(os);
+            }
+            for (OutputStats os : js.getIntermediateOutputs()) {
+                addOutputStats(os);
+            }
+        }
+    }
+
+    /**
+     * The size of an input is not counted when a job reads several, get the
+     * size of the files instead.
+     */
+    private static long getFileSize(String location, Configuration conf) {
+        if (conf == null) {
+            return -1;
+        }
+        try {
+            Path path = new Path(location);
+            return path.getFileSystem(conf).getContentSummary(path).getLength();
+        } catch (Exception e) {
+            // not a file system location
+            return -1;
+        }
+    }
+
+    private void addOutputStats(OutputStats os) {
+        if (os.getAlias() != null && os.isSuccessful()) {
+            putEntry(ALIAS_PREFIX + os.getAlias(), os.getNumberRecords(), os.getBytes());
+        }
+    }
+
+    /**
+     * Write the statistics to the local file of the script.
+     */
+    public void save() throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create directory " + dir);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            entries.store(out, "Pig runtime statistics");
+        } finally {
+            closeQuietly(out);
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Unable to write runtime statistics to " + file);
+            }
+        }
+    }
+
+    /**
+     * Save the statistics of a run of the script, if runtime statistics are
+     * enabled. Failures are logged and otherwise ignored.
+     * @param pc PigContext of the script
+     * @param stats statistics of the run
+     */
+    public static void saveStats(PigContext pc, PigStats stats) {
+        RuntimeStatsStore store = get(pc);
+        if (store == null) {
+            return;
+        }
+        store.addStats(stats);
+        try {
+            store.save();
+        } catch (IOException e) {
+            LOG.warn("Unable to save runtime statistics", e);
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -482,7 +482,8 @@ public abstract class ScriptState {
                 feature.set(PIG_FEATURE.COLLECTED_GROUP.ordinal());
             } else if (op.getGroupType() == GROUPTYPE.MERGE) {
                 feature.set(PIG_FEATURE.MERGE_COGROUP.ordinal());
-            } else if (op.getGroupType() == GROUPTYPE.REGULAR) {
+            } else if (op.getGroupType() == GROUPTYPE.REGULAR
+                    || op.getGroupType() == GROUPTYPE.SKEWED) {
                 if (op.getExpressionPlans().size() > 1) {
                     feature.set(PIG_FEATURE.COGROUP.ordinal());
                 } else {
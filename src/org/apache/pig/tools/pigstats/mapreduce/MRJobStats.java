@@ -424,6 +424,10 @@ public final class MRJobStats extends JobStats {
             return;
         }
 
+        // The statistics of temporary outputs are only kept for the
+        // optimizer of later runs
+        boolean intermediate = conf != null
+                && conf.getBoolean(PigConfiguration.PIG_OPT_RUNTIME_STATS, false);
         if (mapStores.size() + reduceStores.size() == 1) {
             POStore sto = (mapStores.size() > 0) ? mapStores.get(0)
                     : reduceStores.get(0);
@@ -439,19 +443,48 @@ public final class MRJobStats extends JobStats {
                 if (state == JobState.SUCCESS) {
                      MRScriptState.get().emitOutputCompletedNotification(ds);
                 }
+            } else if (intermediate) {
+                long records = (mapStores.size() > 0) ? mapOutputRecords
+                        : reduceOutputRecords;
+                long bytes = (hdfsBytesWritten > 0) ? hdfsBytesWritten
+                        : getOutputSize(sto, conf);
+                OutputStats ds = new OutputStats(sto.getSFile().getFileName(),
+                        bytes, records, (state == JobState.SUCCESS));
+                ds.setPOStore(sto);
+                intermediateOutputs.add(ds);
             }
         } else {
             for (POStore sto : mapStores) {
-                if (sto.isTmpStore()) continue;
+                if (sto.isTmpStore()) {
+                    if (intermediate) {
+                        addOneIntermediateOutputStats(sto);
+                    }
+                    continue;
+                }
                 addOneOutputStats(sto);
             }
             for (POStore sto : reduceStores) {
-                if (sto.isTmpStore()) continue;
+                if (sto.isTmpStore()) {
+                    if (intermediate) {
+                        addOneIntermediateOutputStats(sto);
+                    }
+                    continue;
+                }
                 addOneOutputStats(sto);
             }
         }
     }
 
+    private void addOneIntermediateOutputStats(POStore sto) {
+        long records = -1;
+        Long n = multiStoreCounters.get(MRPigStatsUtil.getMultiStoreCounterName(sto));
+        if (n != null) records = n;
+        OutputStats ds = new OutputStats(sto.getSFile().getFileName(),
+                getOutputSize(sto, conf), records, (state == JobState.SUCCESS));
+        ds.setPOStore(sto);
+        intermediateOutputs.add(ds);
+    }
+
     private void addOneOutputStats(POStore sto) {
         long records = -1;
         if (sto.isMultiStore()) {
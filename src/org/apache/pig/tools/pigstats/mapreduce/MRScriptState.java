@@ -217,7 +217,7 @@ public class MRScriptState extends ScriptState {
         if (retStr == null) {
             BitSet feature = new BitSet();
             feature.clear();
-            if (mro.isSkewedJoin()) {
+            if (mro.isSkewedJoin() && !mro.isSkewedGroup()) {
                 feature.set(PIG_FEATURE.SKEWED_JOIN.ordinal());
             }
             if (mro.isGlobalSort()) {
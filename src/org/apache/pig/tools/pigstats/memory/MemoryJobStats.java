@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.tools.pigstats.memory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.mapred.Counters;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POStore;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.newplan.PlanVisitor;
+import org.apache.pig.tools.pigstats.InputStats;
+import org.apache.pig.tools.pigstats.JobStats;
+import org.apache.pig.tools.pigstats.OutputStats;
+import org.apache.pig.tools.pigstats.PigStats;
+import org.apache.pig.tools.pigstats.PigStatsUtil;
+import org.apache.pig.tools.pigstats.mapreduce.MRScriptState;
+
+/**
+ * Statistics of a job run in-process by the memory exec type. The records
+ * are counted by the tasks, there are no Hadoop counters.
+ */
+public class MemoryJobStats extends JobStats {
+
+    public static final String SUCCESS_HEADER = "JobId\tMaps\tReduces\tMaxMapTime\t"
+            + "MinMapTime\tAvgMapTime\tMaxReduceTime\tMinReduceTime\tAvgReduceTime\t"
+            + "Alias\tFeature\tOutputs";
+
+    public static final String FAILURE_HEADER = "JobId\tAlias\tFeature\tMessage\tOutputs";
+
+    private final String jobId;
+    private int numberMaps = 0;
+    private int numberReduces = 0;
+    private long maxMapTime = 0;
+    private long minMapTime = 0;
+    private long avgMapTime = 0;
+    private long maxReduceTime = 0;
+    private long minReduceTime = 0;
+    private long avgReduceTime = 0;
+    private long mapInputRecords = 0;
+    private long mapOutputRecords = 0;
+    private long reduceInputRecords = 0;
+    private long reduceOutputRecords = 0;
+
+    public MemoryJobStats(String jobId, PigStats.JobGraph plan) {
+        super(jobId, plan);
+        this.jobId = jobId;
+    }
+
+    @Override
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setAlias(MapReduceOper mro) {
+        MRScriptState ss = MRScriptState.get();
+        annotate(ALIAS, ss.getAlias(mro));
+        annotate(ALIAS_LOCATION, ss.getAliasLocation(mro));
+        annotate(FEATURE, ss.getPigFeature(mro));
+    }
+
+    /**
+     * Sets the times, in milliseconds, the map and reduce tasks of the job
+     * took.
+     */
+    public void setTaskTimes(List<Long> mapTimes, List<Long> reduceTimes) {
+        numberMaps = mapTimes.size();
+        if (numberMaps > 0) {
+            maxMapTime = Collections.max(mapTimes);
+            minMapTime = Collections.min(mapTimes);
+            avgMapTime = sum(mapTimes) / numberMaps;
+        }
+        numberReduces = reduceTimes.size();
+        if (numberReduces > 0) {
+            maxReduceTime = Collections.max(reduceTimes);
+            minReduceTime = Collections.min(reduceTimes);
+            avgReduceTime = sum(reduceTimes) / numberReduces;
+        }
+    }
+
+    private static long sum(List<Long> values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    public void setRecords(long mapInputRecords, long mapOutputRecords, long reduceOutputRecords) {
+        this.mapInputRecords = mapInputRecords;
+        this.mapOutputRecords = mapOutputRecords;
+        this.reduceInputRecords = numberReduces > 0 ? mapOutputRecords : 0;
+        this.reduceOutputRecords = reduceOutputRecords;
+    }
+
+    public void addInputStats(POLoad load, long records, boolean success) {
+        String location = load.getLFile().getFileName();
+        if (PigStatsUtil.isTempFile(location)) {
+            return;
+        }
+        InputStats is = new InputStats(location, -1, records, success);
+        is.setConf(conf);
+        if (isSampler()) is.markSampleInput();
+        if (isIndexer()) is.markIndexerInput();
+        inputs.add(is);
+    }
+
+    public void addOutputStats(POStore store, long records, boolean success) {
+        OutputStats ds = new OutputStats(store.getSFile().getFileName(),
+                getOutputSize(store, conf), records, success);
+        ds.setPOStore(store);
+        ds.setConf(conf);
+        if (store.isTmpStore()) {
+            intermediateOutputs.add(ds);
+        } else {
+            outputs.add(ds);
+            if (success) {
+                MRScriptState.get().emitOutputCompletedNotification(ds);
+            }
+        }
+    }
+
+    @Override
+    public void accept(PlanVisitor v) throws FrontendException {
+        if (v instanceof PigStats.JobGraphPrinter) {
+            ((PigStats.JobGraphPrinter) v).visit(this);
+        }
+    }
+
+    @Override
+    public String getDisplayString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(jobId).append("\t");
+        if (isSuccessful()) {
+            sb.append(numberMaps).append("\t")
+                .append(numberReduces).append("\t")
+                .append(maxMapTime / 1000).append("\t")
+                .append(minMapTime / 1000).append("\t")
+                .append(avgMapTime / 1000).append("\t")
+                .append(maxReduceTime / 1000).append("\t")
+                .append(minReduceTime / 1000).append("\t")
+                .append(avgReduceTime / 1000).append("\t");
+        }
+        sb.append(getAlias()).append("\t").append(getFeature()).append("\t");
+        if (!isSuccessful()) {
+            sb.append(getErrorMessage() == null ? "" : getErrorMessage().replace('\n', ' ')).append("\t");
+        }
+        for (OutputStats os : outputs) {
+            sb.append(os.getLocation()).append(",");
+        }
+        sb.append("\n");
+        return sb.toString();
+    }
+
+    @Override
+    public int getNumberMaps() {
+        return numberMaps;
+    }
+
+    @Override
+    public int getNumberReduces() {
+        return numberReduces;
+    }
+
+    @Override
+    public long getMaxMapTime() {
+        return maxMapTime;
+    }
+
+    @Override
+    public long getMinMapTime() {
+        return minMapTime;
+    }
+
+    @Override
+    public long getAvgMapTime() {
+        return avgMapTime;
+    }
+
+    @Override
+    public long getMaxReduceTime() {
+        return maxReduceTime;
+    }
+
+    @Override
+    public long getMinReduceTime() {
+        return minReduceTime;
+    }
+
+    @Override
+    public long getAvgREduceTime() {
+        return avgReduceTime;
+    }
+
+    @Override
+    public long getMapInputRecords() {
+        return mapInputRecords;
+    }
+
+    @Override
+    public long getMapOutputRecords() {
+        return mapOutputRecords;
+    }
+
+    @Override
+    public long getReduceInputRecords() {
+        return reduceInputRecords;
+    }
+
+    @Override
+    public long getReduceOutputRecords() {
+        return reduceOutputRecords;
+    }
+
+    @Override
+    public long getSMMSpillCount() {
+        return 0;
+    }
+
+    @Override
+    public long getProactiveSpillCountObjects() {
+        return 0;
+    }
+
+    @Override
+    public long getProactiveSpillCountRecs() {
+        return 0;
+    }
+
+    @Override
+    public Counters getHadoopCounters() {
+        return null;
+    }
+
+    @Override
+    public Map<String, Long> getMultiStoreCounters() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<String, Long> getMultiInputCounters() {
+        return Collections.emptyMap();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.tools.pigstats.memory;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.pig.PigRunner.ReturnCode;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.tools.pigstats.InputStats;
+import org.apache.pig.tools.pigstats.JobStats;
+import org.apache.pig.tools.pigstats.OutputStats;
+import org.apache.pig.tools.pigstats.PigStats;
+
+/**
+ * Statistics of a script run by the memory exec type. The job graph mirrors
+ * the plan of MapReduce jobs run in-process.
+ */
+public class MemoryPigStats extends PigStats {
+
+    private static final Log LOG = LogFactory.getLog(MemoryPigStats.class);
+
+    private final Map<MapReduceOper, MemoryJobStats> jobStatsMap = new HashMap<MapReduceOper, MemoryJobStats>();
+
+    public MemoryPigStats() {
+        jobPlan = new JobGraph();
+    }
+
+    /**
+     * Starts collecting the statistics of the jobs of a plan.
+     * @param jobIds the ids of the jobs, by operator
+     */
+    public void initialize(PigContext pigContext, MROperPlan plan, Map<MapReduceOper, String> jobIds) {
+        super.start();
+        this.pigContext = pigContext;
+        for (MapReduceOper mro : plan) {
+            MemoryJobStats js = new MemoryJobStats(jobIds.get(mro), jobPlan);
+            js.setAlias(mro);
+            jobStatsMap.put(mro, js);
+            jobPlan.add(js);
+        }
+        for (MapReduceOper mro : plan) {
+            List<MapReduceOper> succs = plan.getSuccessors(mro);
+            if (succs != null) {
+                for (MapReduceOper succ : succs) {
+                    jobPlan.connect(jobStatsMap.get(mro), jobStatsMap.get(succ));
+                }
+            }
+        }
+    }
+
+    public MemoryJobStats getJobStats(MapReduceOper mro) {
+        return jobStatsMap.get(mro);
+    }
+
+    public void finish() {
+        super.stop();
+        LOG.info(getDisplayString());
+    }
+
+    @Override
+    public String getDisplayString() {
+        if (returnCode == ReturnCode.UNKNOWN) {
+            return "";
+        }
+        SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
+        StringBuilder sb = new StringBuilder();
+        sb.append("\nHadoopVersion\tPigVersion\tUserId\tStartedAt\tFinishedAt\tFeatures\n");
+        sb.append(getHadoopVersion()).append("\t").append(getPigVersion()).append("\t")
+            .append(userId).append("\t")
+            .append(sdf.format(new Date(startTime))).append("\t")
+            .append(sdf.format(new Date(endTime))).append("\t")
+            .append(getFeatures()).append("\n");
+        sb.append("\n");
+        if (returnCode == ReturnCode.SUCCESS) {
+            sb.append("Success!\n");
+        } else if (returnCode == ReturnCode.PARTIAL_FAILURE) {
+            sb.append("Some jobs have failed! Stop running all dependent jobs\n");
+        } else {
+            sb.append("Failed!\n");
+        }
+        sb.append("\n");
+        if (returnCode == ReturnCode.SUCCESS
+                || returnCode == ReturnCode.PARTIAL_FAILURE) {
+            sb.append("In-memory Job Stats (time in seconds):\n");
+            sb.append(MemoryJobStats.SUCCESS_HEADER).append("\n");
+            for (JobStats js : jobPlan.getSuccessfulJobs()) {
+                sb.append(js.getDisplayString());
+            }
+            sb.append("\n");
+        }
+        if (returnCode == ReturnCode.FAILURE
+                || returnCode == ReturnCode.PARTIAL_FAILURE) {
+            sb.append("Failed Jobs:\n");
+            sb.append(MemoryJobStats.FAILURE_HEADER).append("\n");
+            for (JobStats js : jobPlan.getFailedJobs()) {
+                sb.append(js.getDisplayString());
+            }
+            sb.append("\n");
+        }
+        sb.append("Input(s):\n");
+        for (InputStats is : getInputStats()) {
+            sb.append(is.getDisplayString());
+        }
+        sb.append("\n");
+        sb.append("Output(s):\n");
+        for (OutputStats ds : getOutputStats()) {
+            sb.append(ds.getDisplayString());
+        }
+        sb.append("\nCounters:\n");
+        sb.append("Total records written : " + getRecordWritten()).append("\n");
+        sb.append("Total bytes written : " + getBytesWritten()).append("\n");
+        sb.append("\nJob DAG:\n").append(jobPlan.toString());
+        return "Script Statistics: \n" + sb.toString();
+    }
+
+    @Override
+    public JobClient getJobClient() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isEmbedded() {
+        return false;
+    }
+
+    @Override
+    public Map<String, List<PigStats>> getAllStats() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<String> getAllErrorMessages() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getSMMSpillCount() {
+        return 0;
+    }
+
+    @Override
+    public long getProactiveSpillCountObjects() {
+        return 0;
+    }
+
+    @Override
+    public long getProactiveSpillCountRecords() {
+        return 0;
+    }
+
+    @Override
+    public int getNumberJobs() {
+        return jobPlan.size();
+    }
+}
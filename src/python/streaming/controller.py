@@ -2,6 +2,7 @@
 import sys
 import os
 import logging
+import struct
 
 from datetime import datetime
 try:
@@ -56,6 +57,16 @@ END_OF_STREAM = TYPE_CHARARRAY + "\x04" + END_RECORD_DELIM
 TURN_ON_OUTPUT_CAPTURING = TYPE_CHARARRAY + "TURN_ON_OUTPUT_CAPTURING" + END_RECORD_DELIM
 NUM_LINES_OFFSET_TRACE = int(os.environ.get('PYTHON_TRACE_OFFSET', 0))
 
+#The binary protocol exchanges batches of records as frames: a header of two
+#big endian ints, the number of bytes after the header and the number of
+#records, followed by every record as an int length and the record in the
+#text encoding without END_RECORD_DELIM. A negative record count is the
+#TURN_ON_OUTPUT_CAPTURING control frame.
+TEXT_PROTOCOL = "text"
+BINARY_PROTOCOL = "binary"
+FRAME_HEADER = struct.Struct('>ii')
+RECORD_LENGTH = struct.Struct('>i')
+
 class PythonStreamingController:
     def __init__(self, profiling_mode=False):
         self.profiling_mode = profiling_mode
@@ -65,7 +76,8 @@ class PythonStreamingController:
 
     def main(self,
              module_name, file_path, func_name, cache_path,
-             output_stream_path, error_stream_path, log_file_name, is_illustrate_str):
+             output_stream_path, error_stream_path, log_file_name, is_illustrate_str,
+             protocol=TEXT_PROTOCOL):
         sys.stdin = os.fdopen(sys.stdin.fileno(), 'rb', 0)
 
         #Need to ensure that user functions can't write to the streams we use to
@@ -85,7 +97,10 @@ class PythonStreamingController:
         logging.basicConfig(filename=log_file_name, format="%(asctime)s %(levelname)s %(message)s", level=udf_logging.udf_log_level)
         logging.info("To reduce the amount of information being logged only a small subset of rows are logged at the INFO level.  Call udf_logging.set_log_level_debug in pig_util to see all rows being processed.")
 
-        input_str = self.get_next_input()
+        if protocol == BINARY_PROTOCOL:
+            batch = self.get_next_batch()
+        else:
+            input_str = self.get_next_input()
 
         try:
             func = __import__(module_name, globals(), locals(), [func_name], -1).__dict__[func_name]
@@ -100,60 +115,78 @@ class PythonStreamingController:
         else:
             sys.stdout = self.output_stream
 
-        while input_str != END_OF_STREAM:
-            should_log = False
-            if self.input_count == self.next_input_count_to_log:
-                should_log = True
-                log_message = logging.info
-                self.update_next_input_count_to_log()
-            elif udf_logging.udf_log_level == logging.DEBUG:
-                should_log = True
-                log_message = logging.debug
+        if protocol == BINARY_PROTOCOL:
+            while batch is not None:
+                outputs = []
+                for input_str in batch:
+                    self.input_count += 1
+                    outputs.append(self.process_input(module_name, func, input_str))
+                self.write_batch(outputs)
+                self.flush_streams()
+                batch = self.get_next_batch()
+        else:
+            while input_str != END_OF_STREAM:
+                output = self.process_input(module_name, func, input_str)
+                self.stream_output.write( "%s%s" % (output, END_RECORD_DELIM) )
+                self.flush_streams()
+                input_str = self.get_next_input()
 
+    def process_input(self, module_name, func, input_str):
+        """
+        Calls the udf on one serialized input record and returns its serialized output,
+        without END_RECORD_DELIM.
+        """
+        should_log = False
+        if self.input_count == self.next_input_count_to_log:
+            should_log = True
+            log_message = logging.info
+            self.update_next_input_count_to_log()
+        elif udf_logging.udf_log_level == logging.DEBUG:
+            should_log = True
+            log_message = logging.debug
+
+        try:
             try:
-                try:
-                    if should_log:
-                        log_message("Row %s: Serialized Input: %s" % (self.input_count, input_str))
-                    inputs = deserialize_input(input_str)
-                    if should_log:
-                        log_message("Row %s: Deserialized Input: %s" % (self.input_count, unicode(inputs)))
-                except:
-                    #Capture errors where the user passes in bad data.
-                    write_user_exception(module_name, self.stream_error, NUM_LINES_OFFSET_TRACE)
-                    self.close_controller(-3)
-
-                try:
-                    func_output = func(*inputs)
-                    if should_log:
-                        try:
-                            log_message("Row %s: UDF Output: %s" % (self.input_count, unicode(func_output)))
-                        except:
-                            #This is probably an error with unicoding the output.  Calling unicode on bytearray will
-                            #throw an exception.  Since its just a log statement, just skip and carry on.
-                            logging.exception("Couldn't log output.  Try to continue.")
-                except:
-                    #These errors should always be caused by user code.
-                    write_user_exception(module_name, self.stream_error, NUM_LINES_OFFSET_TRACE)
-                    self.close_controller(-2)
-
-                output = serialize_output(func_output)
                 if should_log:
-                    log_message("Row %s: Serialized Output: %s" % (self.input_count, output))
-
-                self.stream_output.write( "%s%s" % (output, END_RECORD_DELIM) )
-            except Exception as e:
-                #This should only catch internal exceptions with the controller
-                #and pig- not with user code.
-                import traceback
-                traceback.print_exc(file=self.stream_error)
-                sys.exit(-3)
-
-            sys.stdout.flush()
-            sys.stderr.flush()
-            self.stream_output.flush()
-            self.stream_error.flush()
+                    log_message("Row %s: Serialized Input: %s" % (self.input_count, input_str))
+                inputs = deserialize_input(input_str)
+                if should_log:
+                    log_message("Row %s: Deserialized Input: %s" % (self.input_count, unicode(inputs)))
+            except:
+                #Capture errors where the user passes in bad data.
+                write_user_exception(module_name, self.stream_error, NUM_LINES_OFFSET_TRACE)
+                self.close_controller(-3)
 
-            input_str = self.get_next_input()
+            try:
+                func_output = func(*inputs)
+                if should_log:
+                    try:
+                        log_message("Row %s: UDF Output: %s" % (self.input_count, unicode(func_output)))
+                    except:
+                        #This is probably an error with unicoding the output.  Calling unicode on bytearray will
+                        #throw an exception.  Since its just a log statement, just skip and carry on.
+                        logging.exception("Couldn't log output.  Try to continue.")
+            except:
+                #These errors should always be caused by user code.
+                write_user_exception(module_name, self.stream_error, NUM_LINES_OFFSET_TRACE)
+                self.close_controller(-2)
+
+            output = serialize_output(func_output)
+            if should_log:
+                log_message("Row %s: Serialized Output: %s" % (self.input_count, output))
+            return output
+        except Exception as e:
+            #This should only catch internal exceptions with the controller
+            #and pig- not with user code.
+            import traceback
+            traceback.print_exc(file=self.stream_error)
+            sys.exit(-3)
+
+    def flush_streams(self):
+        sys.stdout.flush()
+        sys.stderr.flush()
+        self.stream_output.flush()
+        self.stream_error.flush()
 
     def get_next_input(self):
         input_stream = self.input_stream
@@ -183,6 +216,53 @@ class PythonStreamingController:
 
         return input_str[:-END_RECORD_DELIM_LENGTH]
 
+    def get_next_batch(self):
+        """
+        Reads the next frame of the binary protocol and returns its records, or None
+        at the end of the input.
+        """
+        header = self.read_fully(FRAME_HEADER.size)
+        if header is None:
+            return None
+
+        frame_length, count = FRAME_HEADER.unpack(header)
+        if count < 0:
+            logging.debug("Turned on Output Capturing")
+            sys.stdout = self.output_stream
+            return self.get_next_batch()
+
+        frame = self.read_fully(frame_length)
+        if frame is None:
+            return None
+
+        batch = []
+        offset = 0
+        for i in xrange(count):
+            (length,) = RECORD_LENGTH.unpack_from(frame, offset)
+            offset += RECORD_LENGTH.size
+            batch.append(frame[offset:offset + length])
+            offset += length
+        return batch
+
+    def read_fully(self, length):
+        chunks = []
+        remaining = length
+        while remaining > 0:
+            chunk = self.input_stream.read(remaining)
+            if chunk == '':
+                return None
+            chunks.append(chunk)
+            remaining -= len(chunk)
+        return ''.join(chunks)
+
+    def write_batch(self, outputs):
+        records = []
+        for output in outputs:
+            records.append(RECORD_LENGTH.pack(len(output)))
+            records.append(output)
+        frame = ''.join(records)
+        self.stream_output.write(FRAME_HEADER.pack(len(frame), len(outputs)) + frame)
+
     def update_next_input_count_to_log(self):
         """
         Want to log enough rows that you can see progress being made and see timings without wasting time logging thousands of rows.
@@ -352,5 +432,4 @@ def serialize_output(output, utfEncodeAllFields=False):
 
 if __name__ == '__main__':
     controller = PythonStreamingController()
-    controller.main(sys.argv[1], sys.argv[2], sys.argv[3], sys.argv[4],
-                    sys.argv[5], sys.argv[6], sys.argv[7], sys.argv[8])
+    controller.main(*sys.argv[1:10])
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestMappedSpillInputStream {
+
+    private static final int WINDOW_SIZE = 4 * CompressedSpillOutputStream.PAGE_SIZE;
+
+    private static final int NUM_LONGS = 200000;
+
+    private static File file;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        file = File.createTempFile("pig-spill", ".compressed");
+        // Half random, half compressible, so that pages are both stored and
+        // deflated
+        Random random = new Random(7);
+        OutputStream out = new CompressedSpillOutputStream(new FileOutputStream(file), "deflate");
+        byte[] b = new byte[8];
+        for (int i = 0; i < NUM_LONGS; i++) {
+            long v = i % 2 == 0 ? random.nextLong() : i;
+            for (int j = 0; j < 8; j++) {
+                b[j] = (byte) (v >>> (56 - 8 * j));
+            }
+            out.write(b);
+        }
+        out.close();
+        assertTrue(file.length() > 4 * WINDOW_SIZE);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testUnmapWhenMovingPastWindow() throws Exception {
+        long mapped = MappedSpillInputStream.getMappedBytes();
+        Random random = new Random(7);
+        DataInputStream in = new DataInputStream(
+                new MappedSpillInputStream(file, WINDOW_SIZE, Long.MAX_VALUE));
+        for (int i = 0; i < NUM_LONGS; i++) {
+            long v = i % 2 == 0 ? random.nextLong() : i;
+            assertEquals(v, in.readLong());
+            // Only the current window is mapped
+            assertTrue(MappedSpillInputStream.getMappedBytes() - mapped <= WINDOW_SIZE);
+        }
+        assertEquals(-1, in.read());
+        // Unmapped at the end of the file
+        assertEquals(mapped, MappedSpillInputStream.getMappedBytes());
+        in.close();
+        assertEquals(mapped, MappedSpillInputStream.getMappedBytes());
+    }
+
+    @Test
+    public void testUnmapOnClose() throws Exception {
+        long mapped = MappedSpillInputStream.getMappedBytes();
+        List<DataInputStream> streams = new ArrayList<DataInputStream>();
+        for (int i = 0; i < 20; i++) {
+            DataInputStream in = new DataInputStream(
+                new MappedSpillInputStream(file, WINDOW_SIZE, Long.MAX_VALUE));
+            // Move a few windows in
+            in.skipBytes(3 * WINDOW_SIZE + i);
+            in.readLong();
+            streams.add(in);
+        }
+        // One window per open stream
+        assertTrue(MappedSpillInputStream.getMappedBytes() - mapped <= 20 * WINDOW_SIZE);
+        for (DataInputStream in : streams) {
+            in.close();
+        }
+        assertEquals(mapped, MappedSpillInputStream.getMappedBytes());
+    }
+
+    @Test
+    public void testMappedBytesCapped() throws Exception {
+        long mapped = MappedSpillInputStream.getMappedBytes();
+        // Two and a half windows for 10 streams read in turn, as in a merge
+        long maxMapped = mapped + 5 * WINDOW_SIZE / 2;
+        List<DataInputStream> streams = new ArrayList<DataInputStream>();
+        for (int i = 0; i < 10; i++) {
+            streams.add(new DataInputStream(new MappedSpillInputStream(file, WINDOW_SIZE, maxMapped)));
+        }
+        Random random = new Random(7);
+        for (int i = 0; i < NUM_LONGS; i++) {
+            long v = i % 2 == 0 ? random.nextLong() : i;
+            for (DataInputStream in : streams) {
+                assertEquals(v, in.readLong());
+            }
+            assertTrue(MappedSpillInputStream.getMappedBytes() <= maxMapped);
+        }
+        for (DataInputStream in : streams) {
+            assertEquals(-1, in.read());
+            in.close();
+        }
+        assertEquals(mapped, MappedSpillInputStream.getMappedBytes());
+    }
+}
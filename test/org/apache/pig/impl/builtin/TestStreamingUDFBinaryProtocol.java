@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.impl.builtin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.data.WritableByteArray;
+import org.apache.pig.impl.streaming.PigStreamingUDF;
+import org.apache.pig.impl.util.UDFContext;
+import org.apache.pig.impl.util.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Exchanges frames of the binary protocol with processes standing in for the
+ * controller: cat answers every frame with the records it was sent.
+ */
+public class TestStreamingUDFBinaryProtocol {
+
+    private TupleFactory tf = TupleFactory.getInstance();
+
+    private Configuration conf;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        conf = new Configuration(false);
+        conf.set(PigConfiguration.PIG_STREAMING_UDF_PROTOCOL, "binary");
+        UDFContext.getUDFContext().addJobConf(conf);
+        file = File.createTempFile("frames", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        UDFContext.getUDFContext().addJobConf(null);
+        file.delete();
+    }
+
+    private void setWorkers(int workers) {
+        conf.setInt(PigConfiguration.PIG_STREAMING_WORKERS, workers);
+    }
+
+    private StreamingUDF newUDF(String command) throws Exception {
+        StreamingUDF udf = new StreamingUDF("python", "udf", "func", "b:bytearray", "1", "local", "false");
+        udf.setInputSchema(Utils.getSchemaFromString("s:chararray, i:int"));
+        udf.setCommand(command);
+        return udf;
+    }
+
+    private List<Tuple> batch(int first, int size) {
+        List<Tuple> inputs = new ArrayList<Tuple>();
+        for (int i = first; i < first + size; i++) {
+            inputs.add(tf.newTuple(Arrays.<Object>asList("a,b\t" + i, i % 3 == 0 ? null : i)));
+        }
+        return inputs;
+    }
+
+    // The text encoding of the arguments, without the record delimiter
+    private static byte[] record(Tuple input) throws IOException {
+        PigStreamingUDF serializer = new PigStreamingUDF();
+        WritableByteArray bytes = serializer.serializeToBytes(input);
+        return Arrays.copyOf(bytes.getData(), bytes.getLength() - serializer.getRecordDelim().length);
+    }
+
+    @Test
+    public void testFrameEncoding() throws Exception {
+        StreamingUDF udf = newUDF("tee " + file.getAbsolutePath());
+        List<Tuple> inputs = batch(0, 5);
+        List<Object> results = udf.execAsync(inputs).get(10, TimeUnit.SECONDS);
+        // tee may write the frame to its output before the file
+        long frameSize = 8;
+        for (Tuple input : inputs) {
+            frameSize += 4 + record(input).length;
+        }
+        for (int i = 0; i < 1000 && file.length() < frameSize; i++) {
+            Thread.sleep(10);
+        }
+
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            int frameLength = in.readInt();
+            assertEquals(inputs.size(), in.readInt());
+            int read = 0;
+            for (int i = 0; i < inputs.size(); i++) {
+                byte[] expected = record(inputs.get(i));
+                int length = in.readInt();
+                byte[] actual = new byte[length];
+                in.readFully(actual);
+                read += 4 + length;
+                assertArrayEquals(expected, actual);
+                // Read back from the echoed frame
+                assertEquals(new DataByteArray(expected), results.get(i));
+            }
+            assertEquals(frameLength, read);
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testBatchesCompleteInOrder() throws Exception {
+        StreamingUDF udf = newUDF("cat");
+        List<List<Tuple>> batches = new ArrayList<List<Tuple>>();
+        List<Future<List<Object>>> futures = new ArrayList<Future<List<Object>>>();
+        // Several batches are in the pipe before any result is read
+        int first = 0;
+        for (int size : new int[] { 3, 1, 0, 200, 7 }) {
+            List<Tuple> inputs = batch(first, size);
+            batches.add(inputs);
+            futures.add(udf.execAsync(inputs));
+            first += size;
+        }
+        for (int i = 0; i < batches.size(); i++) {
+            List<Object> results = futures.get(i).get(10, TimeUnit.SECONDS);
+            assertEquals(batches.get(i).size(), results.size());
+            for (int j = 0; j < results.size(); j++) {
+                assertEquals(new DataByteArray(record(batches.get(i).get(j))), results.get(j));
+            }
+        }
+        // A single tuple is a batch of one
+        Tuple input = batch(first, 1).get(0);
+        assertEquals(new DataByteArray(record(input)), udf.exec(input));
+    }
+
+    @Test
+    public void testWorkersKeepOrder() throws Exception {
+        setWorkers(3);
+        StreamingUDF udf = newUDF("cat");
+        List<List<Tuple>> batches = new ArrayList<List<Tuple>>();
+        List<Future<List<Object>>> futures = new ArrayList<Future<List<Object>>>();
+        // Batches are split between the workers, and short ones go to a
+        // single worker
+        int first = 0;
+        for (int size : new int[] { 200, 2, 1, 0, 7, 301 }) {
+            List<Tuple> inputs = batch(first, size);
+            batches.add(inputs);
+            futures.add(udf.execAsync(inputs));
+            first += size;
+        }
+        for (int i = 0; i < batches.size(); i++) {
+            List<Object> results = futures.get(i).get(10, TimeUnit.SECONDS);
+            assertEquals(batches.get(i).size(), results.size());
+            for (int j = 0; j < results.size(); j++) {
+                assertEquals(new DataByteArray(record(batches.get(i).get(j))), results.get(j));
+            }
+        }
+    }
+
+    @Test
+    public void testWorkersAreRestarted() throws Exception {
+        setWorkers(3);
+        List<Tuple> inputs = new ArrayList<Tuple>();
+        for (int i = 0; i < 3; i++) {
+            inputs.add(tf.newTuple(Arrays.<Object>asList("abc", i + 1)));
+        }
+        // Each process answers a frame of a single record, then exits
+        int frameSize = 8 + 4 + record(inputs.get(0)).length;
+        StreamingUDF udf = newUDF("head -c " + frameSize);
+        List<Object> results = udf.execAsync(inputs).get(10, TimeUnit.SECONDS);
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(new DataByteArray(record(inputs.get(i))), results.get(i));
+        }
+
+        // A batch sent before the exit of a process is noticed fails, then
+        // the dead processes are replaced
+        for (int attempt = 0; ; attempt++) {
+            try {
+                results = udf.execAsync(inputs).get(10, TimeUnit.SECONDS);
+                break;
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            } catch (IOException e) {
+                // The process died while the batch was written
+            }
+            assertTrue("Processes were not restarted", attempt < 50);
+            Thread.sleep(100);
+        }
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(new DataByteArray(record(inputs.get(i))), results.get(i));
+        }
+    }
+
+    @Test
+    public void testProcessFailureFailsBatches() throws Exception {
+        // Reads the first frame header, then dies without answering
+        StreamingUDF udf = newUDF("head -c 8");
+        Future<List<Object>> future = udf.execAsync(batch(0, 4));
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected the batch to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertTrue(future.isDone());
+        try {
+            udf.exec(batch(4, 1).get(0));
+            fail("Expected the process to be reported dead");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
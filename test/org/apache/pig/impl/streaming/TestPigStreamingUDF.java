@@ -409,6 +409,28 @@ public class TestPigStreamingUDF {
         Assert.assertEquals(tf.newTuple(expectedOutput1), out);
     }
     
+    @Test
+    public void testDeserializeField__offset() throws IOException {
+        byte[] input = "C1234|_\n|-_5".getBytes();
+        FieldSchema fs = new FieldSchema("", DataType.CHARARRAY);
+        PigStreamingUDF sp = new PigStreamingUDF(fs);
+
+        Assert.assertEquals("1234", sp.deserializeField(input, 1, 4));
+        Assert.assertNull(sp.deserializeField(input, 8, 3));
+    }
+
+    @Test
+    public void testDeserializeField__shortFieldAtEnd() throws IOException {
+        byte[] input = "|-_5".getBytes();
+        FieldSchema fs = new FieldSchema("", DataType.INTEGER);
+        PigStreamingUDF sp = new PigStreamingUDF(fs);
+
+        Assert.assertNull(sp.deserializeField(input, 0, 3));
+        Assert.assertEquals(5, sp.deserializeField(input, 3, 1));
+        Assert.assertEquals("", new PigStreamingUDF(new FieldSchema("", DataType.CHARARRAY))
+                .deserializeField(input, 4, 0));
+    }
+
     private boolean assertEquals(byte[] expected, WritableByteArray wba) {
         byte[] data = wba.getData();
         if (expected.length != wba.getLength()) {
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.apache.pig.builtin.mock.Storage.resetData;
+import static org.apache.pig.builtin.mock.Storage.tuple;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.AsyncEvalFunc;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.builtin.mock.Storage.Data;
+import org.apache.pig.data.Tuple;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAsyncEvalFunc {
+
+    private static final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+    public static class AsyncUpper extends AsyncEvalFunc<String> {
+        private static final ExecutorService executor = Executors.newCachedThreadPool();
+
+        @Override
+        public Future<List<String>> execAsync(final List<Tuple> inputs) throws IOException {
+            batchSizes.add(inputs.size());
+            return executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    Thread.sleep(5);
+                    List<String> results = new ArrayList<String>();
+                    for (Tuple t : inputs) {
+                        String s = (String) t.get(0);
+                        results.add(s == null ? null : s.toUpperCase());
+                    }
+                    return results;
+                }
+            });
+        }
+    }
+
+    /**
+     * Only batches when the job sets test.async.batch, as StreamingUDF only
+     * batches with the binary protocol.
+     */
+    public static class ConfiguredAsyncUpper extends AsyncUpper {
+        @Override
+        public boolean canBatch(Configuration conf) {
+            return conf.getBoolean("test.async.batch", false);
+        }
+    }
+
+    private File input;
+
+    @Before
+    public void setUp() throws Exception {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 45; i++) {
+            lines.add(i + "\t" + (i % 6 == 0 ? "" : "ab" + i + " cd"));
+        }
+        input = Util.createFile(lines.toArray(new String[0]));
+        batchSizes.clear();
+    }
+
+    private List<Tuple> run(String script, int batchSize, int maxInFlight) throws Exception {
+        return run(script, batchSize, maxInFlight, new Properties());
+    }
+
+    private List<Tuple> run(String script, int batchSize, int maxInFlight, Properties props)
+            throws Exception {
+        props.setProperty(PigConfiguration.PIG_OPT_FETCH, "false");
+        props.setProperty(PigConfiguration.PIG_UDF_ASYNC_BATCH_SIZE, String.valueOf(batchSize));
+        props.setProperty(PigConfiguration.PIG_UDF_ASYNC_MAX_INFLIGHT, String.valueOf(maxInFlight));
+        PigServer pigServer = new PigServer(Util.getLocalTestMode(), props);
+        Data data = resetData(pigServer);
+        pigServer.registerQuery(script.replace("INPUT", Util.encodeEscape(input.getAbsolutePath())));
+        return data.get("out");
+    }
+
+    @Test
+    public void testSameResultsAsTupleAtATime() throws Exception {
+        String udf = AsyncUpper.class.getName();
+        String script = "a = load 'INPUT' as (i:int, s:chararray);"
+                + "b = foreach a generate i, " + udf + "(s) as u, (i > 20 ? " + udf + "(s) : 'small') as v, "
+                + "    flatten(TOKENIZE(s)) as w;"
+                + "store b into 'out' using mock.Storage();";
+        List<Tuple> expected = run(script, 0, 1);
+        assertFalse(expected.isEmpty());
+        assertEquals(tuple(1, "AB1 CD", "small", "ab1"), expected.get(1));
+        for (int size : batchSizes) {
+            assertEquals(1, size);
+        }
+
+        // batch size 7 leaves a partial batch to flush at the end of the input
+        assertEquals(expected, run(script, 7, 2));
+        assertEquals(expected, run(script, 100, 1));
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        Assume.assumeTrue("Batches are only flushed at the end of the input in MR",
+                Util.getLocalTestMode() == ExecType.LOCAL);
+        String script = "a = load 'INPUT' as (i:int, s:chararray);"
+                + "b = foreach a generate " + AsyncUpper.class.getName() + "(s);"
+                + "store b into 'out' using mock.Storage();";
+        assertEquals(45, run(script, 10, 3).size());
+        assertEquals(5, batchSizes.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(10, (int) batchSizes.get(i));
+        }
+        assertEquals(5, (int) batchSizes.get(4));
+    }
+
+    @Test
+    public void testExec() throws Exception {
+        assertEquals("AB", new AsyncUpper().exec(tuple("ab")));
+        assertTrue(batchSizes.contains(1));
+    }
+
+    @Test
+    public void testNoBatchesUnlessUDFCanBatch() throws Exception {
+        String udf = ConfiguredAsyncUpper.class.getName();
+        String script = "a = load 'INPUT' as (i:int, s:chararray);"
+                + "b = foreach a generate i, (i > 20 ? " + udf + "(s) : 'small') as v;"
+                + "store b into 'out' using mock.Storage();";
+        List<Tuple> expected = run(script, 7, 2);
+        assertEquals(45, expected.size());
+        // Called a tuple at a time, only where the branch is taken
+        assertEquals(24, batchSizes.size());
+        for (int size : batchSizes) {
+            assertEquals(1, size);
+        }
+
+        batchSizes.clear();
+        Properties props = new Properties();
+        props.setProperty("test.async.batch", "true");
+        assertEquals(expected, run(script, 7, 2, props));
+        assertTrue(batchSizes.contains(7));
+    }
+}
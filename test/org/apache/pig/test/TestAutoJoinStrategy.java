@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.apache.pig.builtin.mock.Storage.resetData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.ResourceSchema.Order;
+import org.apache.pig.backend.executionengine.ExecJob;
+import org.apache.pig.builtin.PigStorage;
+import org.apache.pig.builtin.mock.Storage.Data;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.util.Utils;
+import org.apache.pig.newplan.logical.optimizer.LogicalPlanOptimizer;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.apache.pig.newplan.optimizer.Rule;
+import org.apache.pig.tools.pigstats.JobStats;
+import org.apache.pig.tools.pigstats.PigStats;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestAutoJoinStrategy {
+
+    private static File big;
+    private static File small;
+    private static File skewed;
+
+    /**
+     * Reports the data as sorted on its first column.
+     */
+    public static class SortedStorage extends PigStorage {
+        @Override
+        public ResourceSchema getSchema(String location, Job job) throws IOException {
+            ResourceSchema schema = new ResourceSchema(Utils.getSchemaFromString("k:bytearray, v:bytearray"));
+            schema.setSortKeys(new int[] {0});
+            schema.setSortKeyOrders(new Order[] {Order.ASCENDING});
+            return schema;
+        }
+    }
+
+    @BeforeClass
+    public static void setUpData() throws Exception {
+        String[] lines = new String[2000];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = (10 + i / 50) + "\tbig-" + i;
+        }
+        // sorted on the key, with keys of the same width their bytes are sorted too
+        big = Util.createFile(lines);
+        lines = new String[20];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = (10 + i) + "\tsmall-" + i;
+        }
+        small = Util.createFile(lines);
+        lines = new String[1000];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = (i % 2 == 0 ? 17 : 10 + i % 20) + "\tskewed-" + i;
+        }
+        skewed = Util.createFile(lines);
+    }
+
+    private Properties props;
+
+    @Before
+    public void setUp() {
+        props = new Properties();
+        props.setProperty(PigConfiguration.PIG_OPT_JOIN_AUTO, "true");
+    }
+
+    private String load(String alias, File file, String loader) {
+        return alias + " = load '" + Util.encodeEscape(file.getAbsolutePath())
+                + "' using " + loader + "() as (k:int, v:chararray);";
+    }
+
+    private List<Tuple> run(String query, List<String> features) throws Exception {
+        PigServer pigServer = new PigServer(Util.getLocalTestMode(), props);
+        Data data = resetData(pigServer);
+        pigServer.setBatchOn();
+        pigServer.registerQuery(query);
+        List<ExecJob> jobs = pigServer.executeBatch();
+        PigStats stats = jobs.get(0).getStatistics();
+        assertTrue(stats.isSuccessful());
+        for (JobStats js : stats.getJobGraph()) {
+            features.add(js.getFeature());
+        }
+        List<Tuple> out = new ArrayList<Tuple>(data.get("out"));
+        Collections.sort(out);
+        return out;
+    }
+
+    private List<Tuple> runWithoutAuto(String query) throws Exception {
+        props.setProperty(PigConfiguration.PIG_OPT_JOIN_AUTO, "false");
+        try {
+            return run(query, new ArrayList<String>());
+        } finally {
+            props.setProperty(PigConfiguration.PIG_OPT_JOIN_AUTO, "true");
+        }
+    }
+
+    private String checkJoin(String query, String feature) throws Exception {
+        List<String> features = new ArrayList<String>();
+        List<Tuple> out = run(query, features);
+        assertEquals(runWithoutAuto(query), out);
+        String all = features.toString();
+        if (feature != null) {
+            assertTrue(all, all.contains(feature));
+        }
+        return all;
+    }
+
+    @Test
+    public void testReplicated() throws Exception {
+        Assume.assumeTrue("Job features are checked in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        // the big input is moved first and fragmented
+        checkJoin(load("a", small, "PigStorage") + load("b", big, "PigStorage")
+                + "c = join a by k, b by k;"
+                + "store c into 'out' using mock.Storage();", "REPLICATED_JOIN");
+    }
+
+    @Test
+    public void testLeftOuterReplicated() throws Exception {
+        Assume.assumeTrue("Job features are checked in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        checkJoin(load("a", big, "PigStorage") + load("b", small, "PigStorage")
+                + "c = join a by k left outer, b by k;"
+                + "store c into 'out' using mock.Storage();", "REPLICATED_JOIN");
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        Assume.assumeTrue("Job features are checked in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        props.setProperty(PigConfiguration.PIG_OPT_REPLICATED_MAX_BYTES, "1");
+        String loader = SortedStorage.class.getName();
+        checkJoin(load("a", big, loader) + load("b", small, loader)
+                + "c = join a by k, b by k;"
+                + "store c into 'out' using mock.Storage();", "MERGE_JOIN");
+    }
+
+    @Test
+    public void testSkewed() throws Exception {
+        Assume.assumeTrue("Job features are checked in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        props.setProperty(PigConfiguration.PIG_OPT_REPLICATED_MAX_BYTES, "1");
+        // the skewed input is second, it is moved first
+        checkJoin(load("a", big, "PigStorage") + load("b", skewed, "PigStorage")
+                + "c = join a by k, b by k;"
+                + "store c into 'out' using mock.Storage();", "SKEWED_JOIN");
+    }
+
+    @Test
+    public void testHash() throws Exception {
+        Assume.assumeTrue("Job features are checked in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        props.setProperty(PigConfiguration.PIG_OPT_REPLICATED_MAX_BYTES, "1");
+        String features = checkJoin(load("a", big, "PigStorage") + load("b", small, "PigStorage")
+                + "c = join a by k, b by k;"
+                + "store c into 'out' using mock.Storage();", "HASH_JOIN");
+        assertFalse(features.contains("SKEWED_JOIN"));
+    }
+
+    @Test
+    public void testHint() throws Exception {
+        Assume.assumeTrue("Job features are checked in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        // an explicit join type is kept
+        String features = checkJoin(load("a", small, "PigStorage") + load("b", big, "PigStorage")
+                + "c = join a by k, b by k using 'hash';"
+                + "store c into 'out' using mock.Storage();", "HASH_JOIN");
+        assertFalse(features.contains("REPLICATED_JOIN"));
+    }
+
+    /**
+     * Exposes the names of the rules of each rule set, in order.
+     */
+    private static class RuleOrderOptimizer extends LogicalPlanOptimizer {
+        RuleOrderOptimizer(PigContext pc) {
+            super(new LogicalPlan(), 3, null, pc);
+        }
+
+        List<List<String>> getRuleNames() {
+            List<List<String>> names = new ArrayList<List<String>>();
+            for (Set<Rule> rs : ruleSets) {
+                List<String> setNames = new ArrayList<String>();
+                for (Rule r : rs) {
+                    setNames.add(r.getName());
+                }
+                Collections.sort(setNames);
+                names.add(setNames);
+            }
+            return names;
+        }
+    }
+
+    private static int indexOfRule(List<List<String>> ruleNames, String name) {
+        for (int i = 0; i < ruleNames.size(); i++) {
+            if (ruleNames.get(i).contains(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testRuleOrder() throws Exception {
+        PigContext pc = new PigServer(Util.getLocalTestMode(), props).getPigContext();
+        List<List<String>> ruleNames = new RuleOrderOptimizer(pc).getRuleNames();
+        int costBased = indexOfRule(ruleNames, "CostBasedJoinOptimizer");
+        assertTrue(costBased >= 0);
+        // runs before the loads are narrowed to the required fields
+        assertTrue(costBased < indexOfRule(ruleNames, "ColumnMapKeyPrune"));
+        assertTrue(costBased < indexOfRule(ruleNames, "AddForEach"));
+
+        props.setProperty(PigConfiguration.PIG_OPT_JOIN_AUTO, "false");
+        pc = new PigServer(Util.getLocalTestMode(), props).getPigContext();
+        List<List<String>> defaultNames = new RuleOrderOptimizer(pc).getRuleNames();
+        assertEquals(-1, indexOfRule(defaultNames, "CostBasedJoinOptimizer"));
+        // the other rule sets keep their order
+        ruleNames.remove(costBased);
+        assertEquals(defaultNames, ruleNames);
+    }
+
+    @Test
+    public void testExplain() throws Exception {
+        PigServer pigServer = new PigServer(Util.getLocalTestMode(), props);
+        pigServer.registerQuery(load("a", small, "PigStorage") + load("b", big, "PigStorage")
+                + "c = join a by k, b by k;");
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        pigServer.explain("c", new PrintStream(bos));
+        String explain = bos.toString();
+        assertTrue(explain, explain.contains("JoinStrategy=REPLICATED (estimated input bytes: a="));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.apache.pig.builtin.mock.Storage.resetData;
+import static org.apache.pig.builtin.mock.Storage.tuple;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Divide;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.ColumnVector;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.TupleBatch;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.vector.VectorExpressionBuilder;
+import org.apache.pig.builtin.mock.Storage.Data;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBatchMode {
+
+    private static final String SCRIPT =
+            "a = load 'INPUT' as (i:int, l:long, f:float, d:double, s:chararray);" +
+            "b = filter a by (i > 2 and d < 50.0) or s == 'x' or i is null;" +
+            "c = foreach b generate i, i + 1 as i1, l * 2L as l2, i / (i - 5) as i2, f / 2.0F as f2, " +
+            "    -d as d2, (i > 4 ? s : 'small') as s2, (int) s as s3, (long) d as d3, UPPER(s) as s4, " +
+            "    (l % 3L == 0L ? 1 : 0) as l3, l - i as l4;" +
+            "store c into 'out' using mock.Storage();";
+
+    private File input;
+
+    @Before
+    public void setUp() throws Exception {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 37; i++) {
+            lines.add(i + "\t" + i * 1000L + "\t" + i / 4.0F + "\t" + i * 2.5 + "\t"
+                    + (i % 3 == 0 ? "x" : String.valueOf(i)));
+        }
+        lines.add("\t\t\t\t");
+        lines.add("3\t7\t-0.0\t-0.0");
+        lines.add("5\t1\t0.0\t0.0\t5");
+        lines.add("abc\t1\t1.0\t1.0\tx");
+        input = Util.createFile(lines.toArray(new String[0]));
+    }
+
+    private List<Tuple> run(boolean batch, int batchSize) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_OPT_FETCH, "false");
+        props.setProperty(PigConfiguration.PIG_EXEC_BATCH, String.valueOf(batch));
+        props.setProperty(PigConfiguration.PIG_EXEC_BATCH_SIZE, String.valueOf(batchSize));
+        PigServer pigServer = new PigServer(Util.getLocalTestMode(), props);
+        Data data = resetData(pigServer);
+        pigServer.registerQuery(SCRIPT.replace("INPUT", Util.encodeEscape(input.getAbsolutePath())));
+        return data.get("out");
+    }
+
+    @Test
+    public void testSameResultsAsRowMode() throws Exception {
+        Assume.assumeTrue("Batch mode is only used in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        List<Tuple> expected = run(false, 0);
+        assertFalse(expected.isEmpty());
+        // batch size 7 leaves a partial batch to flush at the end of the input
+        assertEquals(expected, run(true, 7));
+        assertEquals(expected, run(true, 1024));
+    }
+
+    @Test
+    public void testVectorExpression() throws Exception {
+        // (double) $0 / 0.0
+        PhysicalPlan plan = new PhysicalPlan();
+        POProject proj = new POProject(new OperatorKey("", 1), -1, 0);
+        proj.setResultType(DataType.DOUBLE);
+        ConstantExpression zero = new ConstantExpression(new OperatorKey("", 2));
+        zero.setValue(0.0);
+        zero.setResultType(DataType.DOUBLE);
+        Divide div = new Divide(new OperatorKey("", 3));
+        div.setResultType(DataType.DOUBLE);
+        plan.add(proj);
+        plan.add(zero);
+        plan.add(div);
+        plan.connect(proj, div);
+        plan.connect(zero, div);
+        div.setLhs(proj);
+        div.setRhs(zero);
+
+        assertTrue(VectorExpressionBuilder.isSupported(plan));
+        VectorExpression expr = new VectorExpressionBuilder(plan).build();
+        TupleBatch batch = new TupleBatch(4);
+        batch.add(tuple(1.0));
+        batch.add(tuple((Object) null));
+        batch.add(tuple());
+        ColumnVector out = new ColumnVector(DataType.DOUBLE, true, batch.capacity());
+        expr.evaluate(batch, null, out);
+        for (int i = 0; i < batch.size(); i++) {
+            assertTrue(out.isNull(i));
+            assertNull(out.get(i));
+        }
+
+        zero.setValue(-0.0);
+        expr = new VectorExpressionBuilder(plan).build();
+        expr.evaluate(batch, new boolean[] { true, false, false, false }, out);
+        assertEquals(Double.NEGATIVE_INFINITY, out.get(0));
+    }
+}
@@ -34,7 +34,10 @@ import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.TreeSet;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigMapReduce;
 import org.apache.pig.data.BagFactory;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DefaultDataBag;
@@ -45,6 +48,7 @@ import org.apache.pig.data.InternalDistinctBag;
 import org.apache.pig.data.InternalSortedBag;
 import org.apache.pig.data.LimitedSortedDataBag;
 import org.apache.pig.data.NonSpillableDataBag;
+import org.apache.pig.data.OffHeapDataBag;
 import org.apache.pig.data.SingleTupleBag;
 import org.apache.pig.data.SortedDataBag;
 import org.apache.pig.data.Tuple;
@@ -925,6 +929,47 @@ public class TestDataBag  {
         assertEquals(bg4.size(), 0);
     }
 
+    @Test
+    public void testOffHeapDataBag() throws Exception {
+        DataBag expected = new DefaultDataBag();
+        OffHeapDataBag bg1 = new OffHeapDataBag();
+        assertEquals(0, bg1.size());
+        assertFalse(bg1.isSorted());
+        assertFalse(bg1.isDistinct());
+
+        // enough tuples to fill several pages
+        for (int i = 0; i < 20000; i++) {
+            Tuple t = Util.createTuple(new String[] {"key" + i, "value" + (i % 7)});
+            expected.add(t);
+            bg1.add(t);
+            if (i == 10000) {
+                // spill the pages written so far
+                bg1.spill();
+            }
+        }
+        assertEquals(20000, bg1.size());
+        assertTrue(bg1.getByteSize() > 0);
+        assertTrue(bg1.getOffHeapSize() < bg1.getByteSize());
+        assertEquals(expected, bg1);
+
+        // iterate twice, and call iterator methods with irregular order
+        Iterator<Tuple> iter = bg1.iterator();
+        assertTrue(iter.hasNext());
+        assertTrue(iter.hasNext());
+        DataBag bg2 = new OffHeapDataBag();
+        while (iter.hasNext()) {
+            bg2.add(iter.next());
+        }
+        assertFalse(iter.hasNext());
+        assertEquals(bg1, bg2);
+
+        bg1.clear();
+        assertEquals(0, bg1.size());
+        assertEquals(0, bg1.getByteSize());
+        bg1.add(TupleFactory.getInstance().newTuple());
+        assertEquals(1, bg1.size());
+    }
+
     @Test
     public void testInternalSortedBag() throws Exception {
 
@@ -1277,4 +1322,70 @@ public class TestDataBag  {
         bag1.clear();
         assertEquals(bag1.size(), 0);
     }
+
+    @Test
+    public void testCompressedSpill() throws Exception {
+        for (String codec : new String[] { "snappy", "deflate" }) {
+            Configuration conf = new Configuration(false);
+            conf.setBoolean(PigConfiguration.PIG_SPILL_COMPRESS, true);
+            conf.set(PigConfiguration.PIG_SPILL_COMPRESS_CODEC, codec);
+            PigMapReduce.sJobConfInternal.set(conf);
+            try {
+                // Enough spills for the sorted bags to pre-merge files
+                int numSpills = 150;
+                int rowsPerSpill = 40;
+                DataBag bag = new DefaultDataBag();
+                DataBag sorted = new SortedDataBag(null);
+                DataBag distinct = new DistinctDataBag();
+                InternalSortedBag internalSorted = new InternalSortedBag();
+                for (int i = 0; i < numSpills; i++) {
+                    for (int j = 0; j < rowsPerSpill; j++) {
+                        Tuple t = TupleFactory.getInstance().newTuple(2);
+                        t.set(0, (j * 7919 + i) % 1000);
+                        t.set(1, "value " + j);
+                        bag.add(t);
+                        sorted.add(t);
+                        distinct.add(t);
+                        internalSorted.add(t);
+                    }
+                    bag.spill();
+                    sorted.spill();
+                    distinct.spill();
+                    internalSorted.spill();
+                }
+                assertEquals(numSpills * rowsPerSpill, bag.size());
+
+                Iterator<Tuple> it = bag.iterator();
+                for (int i = 0; i < numSpills; i++) {
+                    for (int j = 0; j < rowsPerSpill; j++) {
+                        assertEquals((j * 7919 + i) % 1000, it.next().get(0));
+                    }
+                }
+                assertFalse(it.hasNext());
+
+                for (DataBag b : new DataBag[] { sorted, internalSorted }) {
+                    Tuple prev = null;
+                    long count = 0;
+                    for (Tuple t : b) {
+                        assertTrue(prev == null || prev.compareTo(t) <= 0);
+                        prev = t;
+                        count++;
+                    }
+                    assertEquals(numSpills * rowsPerSpill, count);
+                }
+
+                TreeSet<Tuple> expected = new TreeSet<Tuple>();
+                for (Tuple t : bag) {
+                    expected.add(t);
+                }
+                Iterator<Tuple> expectedIt = expected.iterator();
+                for (Tuple t : distinct) {
+                    assertEquals(expectedIt.next(), t);
+                }
+                assertFalse(expectedIt.hasNext());
+            } finally {
+                PigMapReduce.sJobConfInternal.remove();
+            }
+        }
+    }
 }
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.apache.pig.builtin.mock.Storage.resetData;
+import static org.apache.pig.builtin.mock.Storage.tuple;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen.CompiledExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.codegen.ExpressionCompiler;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Add;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.ConstantExpression;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.Divide;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POFilter;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POForEach;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
+import org.apache.pig.builtin.mock.Storage.Data;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestExpressionCompiler {
+
+    private static final String SCRIPT =
+            "a = load 'INPUT' as (i:int, l:long, f:float, d:double, s:chararray, b:bytearray);" +
+            "b = filter a by (i > 2 and d < 50.0) or s == 'x' or i is null;" +
+            "c = foreach b generate i, i + 1 as i1, l * 2L as l2, i / (i - 5) as i2, f / 2.0F as f2, " +
+            "    -d as d2, (i > 4 ? s : 'small') as s2, (int) s as s3, (long) d as d3, UPPER(s) as s4, " +
+            "    (l % 3L == 0L ? 1 : 0) as l3, l - i as l4, (int) b + 1 as b1, (not (i == 3) ? 1 : 0) as n;" +
+            "store c into 'out' using mock.Storage();";
+
+    private File input;
+
+    @Before
+    public void setUp() throws Exception {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 37; i++) {
+            lines.add(i + "\t" + i * 1000L + "\t" + i / 4.0F + "\t" + i * 2.5 + "\t"
+                    + (i % 3 == 0 ? "x" : String.valueOf(i)) + "\t" + (i % 5 == 0 ? "y" : String.valueOf(i)));
+        }
+        lines.add("\t\t\t\t\t");
+        lines.add("3\t7\t-0.0\t-0.0");
+        lines.add("5\t1\t0.0\t0.0\t5\t5");
+        lines.add("abc\t1\t1.0\t1.0\tx\tz");
+        input = Util.createFile(lines.toArray(new String[0]));
+    }
+
+    private List<Tuple> run(boolean codegen) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_OPT_FETCH, "false");
+        props.setProperty(PigConfiguration.PIG_EXEC_CODEGEN, String.valueOf(codegen));
+        PigServer pigServer = new PigServer(Util.getLocalTestMode(), props);
+        Data data = resetData(pigServer);
+        pigServer.registerQuery(SCRIPT.replace("INPUT", Util.encodeEscape(input.getAbsolutePath())));
+        return data.get("out");
+    }
+
+    @Test
+    public void testSameResultsAsInterpreted() throws Exception {
+        List<Tuple> expected = run(false);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, run(true));
+    }
+
+    @Test
+    public void testScriptPlansCompiled() throws Exception {
+        PigServer pigServer = new PigServer(Util.getLocalTestMode(), new Properties());
+        resetData(pigServer);
+        PhysicalPlan pp = Util.buildPp(pigServer,
+                SCRIPT.replace("INPUT", Util.encodeEscape(input.getAbsolutePath())));
+
+        // The filter and foreach plans are compiled to generated classes
+        // rather than falling back to the interpreter
+        POFilter filter = PlanHelper.getPhysicalOperators(pp, POFilter.class).get(0);
+        CompiledExpression expr = new ExpressionCompiler(filter.getPlan()).compile();
+        Assume.assumeTrue("No java compiler available", expr != null);
+        assertGenerated(expr);
+        int numCompiled = 0;
+        POForEach foreach = PlanHelper.getPhysicalOperators(pp, POForEach.class).get(0);
+        for (PhysicalPlan plan : foreach.getInputPlans()) {
+            expr = new ExpressionCompiler(plan).compile();
+            if (expr != null) {
+                assertGenerated(expr);
+                numCompiled++;
+            }
+        }
+        assertTrue(numCompiled > 0);
+    }
+
+    private static void assertGenerated(CompiledExpression expr) {
+        assertTrue(expr.getClass().getName().startsWith(CompiledExpression.class.getName()));
+        assertFalse(expr.getClass().getClassLoader() == CompiledExpression.class.getClassLoader());
+    }
+
+    @Test
+    public void testCompiledPlan() throws Exception {
+        // $0 / ($0 + 0)
+        PhysicalPlan plan = new PhysicalPlan();
+        POProject proj = new POProject(new OperatorKey("", 1), -1, 0);
+        proj.setResultType(DataType.INTEGER);
+        POProject proj2 = new POProject(new OperatorKey("", 2), -1, 0);
+        proj2.setResultType(DataType.INTEGER);
+        ConstantExpression zero = new ConstantExpression(new OperatorKey("", 3));
+        zero.setValue(0);
+        zero.setResultType(DataType.INTEGER);
+        Add add = new Add(new OperatorKey("", 4));
+        add.setResultType(DataType.INTEGER);
+        Divide div = new Divide(new OperatorKey("", 5));
+        div.setResultType(DataType.INTEGER);
+        plan.add(proj);
+        plan.add(proj2);
+        plan.add(zero);
+        plan.add(add);
+        plan.add(div);
+        plan.connect(proj2, add);
+        plan.connect(zero, add);
+        add.setLhs(proj2);
+        add.setRhs(zero);
+        plan.connect(proj, div);
+        plan.connect(add, div);
+        div.setLhs(proj);
+        div.setRhs(add);
+
+        ExpressionCompiler compiler = new ExpressionCompiler(plan);
+        CompiledExpression expr = compiler.compile();
+        Assume.assumeTrue("No java compiler available", expr != null);
+        assertEquals(2, compiler.getNumCompiled());
+        assertEquals(1, expr.evaluate(tuple(7)));
+        assertNull(expr.evaluate(tuple(0)));
+        assertNull(expr.evaluate(tuple((Object) null)));
+    }
+}
@@ -49,6 +49,8 @@ import org.apache.pig.impl.plan.OperatorKey;
 import org.apache.pig.newplan.logical.relational.LogicalPlan;
 import org.apache.pig.parser.ParserTestingUtils;
 import org.apache.pig.test.utils.GenPhyOp;
+import org.apache.pig.tools.pigstats.EmptyPigStats;
+import org.apache.pig.tools.pigstats.PigStats;
 import org.joda.time.DateTime;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -309,6 +311,99 @@ public class TestFetch {
         assertNotNull(received);
     }
 
+    /**
+     * Tests a fetch of a group, which is run in memory
+     */
+    @Test
+    public void test8() throws Exception {
+        pigServer.getPigContext().getProperties().setProperty(
+                PigConfiguration.PIG_OPT_FETCH_INPUT_MAXBYTES, "10000000");
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(inputFile2.getAbsolutePath()) + "' "
+                + "using PigStorage(' ') as (a:int, b:int, c:chararray);");
+        pigServer.registerQuery("B = group A by a;");
+        pigServer.registerQuery("C = foreach B generate group, COUNT(A), SUM(A.b);");
+        Iterator<Tuple> it = pigServer.openIterator("C");
+        assertTrue(PigStats.get() instanceof EmptyPigStats);
+
+        Util.checkQueryOutputs(it, Util.getTuplesFromConstantTupleStrings(
+                new String[] { "(1,2L,5L)", "(2,1L,4L)", "(3,2L,13L)", "(5,1L,1L)" }));
+    }
+
+    /**
+     * Tests a fetch of a join, which is run in memory
+     */
+    @Test
+    public void test9() throws Exception {
+        pigServer.getPigContext().getProperties().setProperty(
+                PigConfiguration.PIG_OPT_FETCH_INPUT_MAXBYTES, "10000000");
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(inputFile2.getAbsolutePath()) + "' "
+                + "using PigStorage(' ') as (a:int, b:int, c:chararray);");
+        pigServer.registerQuery("B = load '" + Util.encodeEscape(inputFile2.getAbsolutePath()) + "' "
+                + "using PigStorage(' ') as (a:int, b:int, c:chararray);");
+        pigServer.registerQuery("C = filter B by b > 3;");
+        pigServer.registerQuery("D = join A by a, C by a;");
+        pigServer.registerQuery("E = foreach D generate A::a, A::c, C::c;");
+        Iterator<Tuple> it = pigServer.openIterator("E");
+        assertTrue(PigStats.get() instanceof EmptyPigStats);
+
+        Util.checkQueryOutputsAfterSort(it, Util.getTuplesFromConstantTupleStrings(new String[] {
+                "(2,'k','k')", "(3,'n','n')", "(3,'n','p')", "(3,'p','n')", "(3,'p','p')" }));
+    }
+
+    /**
+     * Tests a fetch of a distinct and an order by, which are run in memory
+     */
+    @Test
+    public void test10() throws Exception {
+        pigServer.getPigContext().getProperties().setProperty(
+                PigConfiguration.PIG_OPT_FETCH_INPUT_MAXBYTES, "10000000");
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(inputFile2.getAbsolutePath()) + "' "
+                + "using PigStorage(' ') as (a:int, b:int, c:chararray);");
+        pigServer.registerQuery("B = foreach A generate a;");
+        pigServer.registerQuery("C = distinct B;");
+        pigServer.registerQuery("D = order C by a desc;");
+        Iterator<Tuple> it = pigServer.openIterator("D");
+        assertTrue(PigStats.get() instanceof EmptyPigStats);
+
+        Util.checkQueryOutputs(it, Util.getTuplesFromConstantTupleStrings(
+                new String[] { "(5)", "(3)", "(2)", "(1)" }));
+    }
+
+    /**
+     * Tests that a group over an input above the threshold is not fetched
+     */
+    @Test
+    public void test11() throws Exception {
+        pigServer.getPigContext().getProperties().setProperty(
+                PigConfiguration.PIG_OPT_FETCH_INPUT_MAXBYTES, "10");
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(inputFile2.getAbsolutePath()) + "' "
+                + "using PigStorage(' ') as (a:int, b:int, c:chararray);");
+        pigServer.registerQuery("B = group A by a;");
+        pigServer.registerQuery("C = foreach B generate group, COUNT(A);");
+        Iterator<Tuple> it = pigServer.openIterator("C");
+        assertFalse(PigStats.get() instanceof EmptyPigStats);
+
+        Util.checkQueryOutputs(it, Util.getTuplesFromConstantTupleStrings(
+                new String[] { "(1,2L)", "(2,1L)", "(3,2L)", "(5,1L)" }));
+    }
+
+    /**
+     * Tests that a group is not fetched unless the input threshold is set
+     */
+    @Test
+    public void test12() throws Exception {
+        pigServer.registerQuery("A = load '" + Util.encodeEscape(inputFile2.getAbsolutePath()) + "' "
+                + "using PigStorage(' ') as (a:int, b:int, c:chararray);");
+        pigServer.registerQuery("B = limit A 10;");
+        pigServer.registerQuery("C = group B by a;");
+        pigServer.registerQuery("D = foreach C generate group, COUNT(B);");
+        Iterator<Tuple> it = pigServer.openIterator("D");
+        assertFalse(PigStats.get() instanceof EmptyPigStats);
+
+        Util.checkQueryOutputs(it, Util.getTuplesFromConstantTupleStrings(
+                new String[] { "(1,2L)", "(2,1L)", "(3,2L)", "(5,1L)" }));
+    }
+
     @AfterClass
     public static void tearDownOnce() throws Exception {
         inputFile1.delete();
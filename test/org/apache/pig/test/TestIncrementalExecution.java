@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.apache.pig.builtin.mock.Storage.resetData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.executionengine.ExecJob;
+import org.apache.pig.builtin.mock.Storage.Data;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.tools.pigstats.InputStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestIncrementalExecution {
+
+    private static final String SCRIPT =
+            "a = load 'INPUT' as (k:chararray, v:int);" +
+            "b = group a by k;" +
+            "c = foreach b generate group, COUNT(a), SUM(a.v), MAX(a.v), AVG(a.v);" +
+            "store c into 'out' using mock.Storage();";
+
+    private File inputDir;
+    private File stateDir;
+
+    @Before
+    public void setUp() throws Exception {
+        inputDir = File.createTempFile("incremental", "input");
+        inputDir.delete();
+        inputDir.mkdirs();
+        stateDir = File.createTempFile("incremental", "state");
+        stateDir.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Util.deleteDirectory(inputDir);
+        Util.deleteDirectory(stateDir);
+    }
+
+    private void writeInput(String name, int first, int count) throws Exception {
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            lines[i] = "k" + ((first + i) % 7) + "\t" + (first + i);
+        }
+        Util.createLocalInputFile(new File(inputDir, name).getAbsolutePath(), lines);
+    }
+
+    private List<Tuple> run(boolean incremental, long expectedRecords) throws Exception {
+        return run(SCRIPT, incremental, expectedRecords);
+    }
+
+    private List<Tuple> run(String script, boolean incremental, long expectedRecords) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_EXEC_INCREMENTAL, String.valueOf(incremental));
+        props.setProperty(PigConfiguration.PIG_EXEC_INCREMENTAL_DIR, stateDir.getAbsolutePath());
+        PigServer pigServer = new PigServer(Util.getLocalTestMode(), props);
+        Data data = resetData(pigServer);
+        pigServer.setBatchOn();
+        pigServer.registerQuery(script.replace("INPUT", Util.encodeEscape(inputDir.getAbsolutePath())));
+        List<ExecJob> jobs = pigServer.executeBatch();
+        assertEquals(ExecJob.JOB_STATUS.COMPLETED, jobs.get(0).getStatus());
+        if (expectedRecords >= 0) {
+            long records = 0;
+            for (InputStats input : jobs.get(0).getStatistics().getInputStats()) {
+                if (input.getLocation().startsWith(inputDir.toURI().getPath())
+                        || input.getLocation().contains(inputDir.getName())) {
+                    records += input.getNumberRecords();
+                }
+            }
+            assertEquals(expectedRecords, records);
+        }
+        List<Tuple> out = new ArrayList<Tuple>(data.get("out"));
+        Collections.sort(out);
+        return out;
+    }
+
+    @Test
+    public void testOnlyNewFilesAreRead() throws Exception {
+        writeInput("part-0", 0, 100);
+        assertEquals(run(false, -1), run(true, 100));
+
+        writeInput("part-1", 100, 30);
+        writeInput("part-2", 130, 20);
+        List<Tuple> expected = run(false, -1);
+        assertEquals(expected, run(true, 50));
+
+        // Nothing new, the output comes from the state only
+        assertEquals(expected, run(true, 0));
+
+        // The manifest and the latest state are kept
+        int numFiles = 0;
+        for (String name : stateDir.listFiles()[0].list()) {
+            if (!name.startsWith(".")) {
+                numFiles++;
+            }
+        }
+        assertEquals(2, numFiles);
+    }
+
+    @Test
+    public void testChangedInputIsReadAgain() throws Exception {
+        writeInput("part-0", 0, 100);
+        writeInput("part-1", 100, 10);
+        run(true, 110);
+
+        // Rewriting a file read before invalidates the state
+        writeInput("part-1", 100, 40);
+        assertTrue(new File(inputDir, "part-1").setLastModified(System.currentTimeMillis() + 10000));
+        List<Tuple> expected = run(false, -1);
+        assertEquals(expected, run(true, 140));
+
+        writeInput("part-2", 140, 5);
+        assertEquals(run(false, -1), run(true, 5));
+    }
+
+    @Test
+    public void testSignatureDoesNotDependOnOperatorKeys() throws Exception {
+        writeInput("part-0", 0, 100);
+        run(true, 100);
+
+        // Unrelated statements before the job shift the keys of its operators
+        writeInput("part-1", 100, 10);
+        String script = "x = load 'other' as (k:chararray);"
+                + "y = foreach x generate k;" + SCRIPT;
+        assertEquals(run(false, -1), run(script, true, 10));
+    }
+
+    @Test
+    public void testFileNamesWithSpecialCharacters() throws Exception {
+        writeInput("part-0", 0, 100);
+        run(true, 100);
+
+        // Commas and glob characters are escaped in the location of the new
+        // files
+        writeInput("part,1", 100, 10);
+        writeInput("part*2", 110, 10);
+        writeInput("part?[3]", 120, 10);
+        writeInput("part{4}", 130, 10);
+        writeInput("part\\5", 140, 10);
+        List<Tuple> expected = run(false, -1);
+        assertEquals(expected, run(true, 50));
+
+        // Unbalanced braces cannot be escaped, so all of the input is read
+        writeInput("part{6", 150, 5);
+        expected = run(false, -1);
+        assertEquals(expected, run(true, 155));
+        assertEquals(expected, run(true, 0));
+    }
+}
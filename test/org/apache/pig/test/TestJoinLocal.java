@@ -19,17 +19,23 @@ package org.apache.pig.test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.apache.pig.builtin.mock.Storage.resetData;
 import static org.apache.pig.builtin.mock.Storage.tuple;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.CompactReplicateTable;
 import org.apache.pig.builtin.mock.Storage.Data;
 import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.Tuple;
@@ -259,4 +265,65 @@ public class TestJoinLocal extends TestJoinBase {
         }
         assertTrue("All expected tuples should have been found, remaining: "+expected, expected.isEmpty());
     }
+
+    @Test
+    public void testCompactReplicatedJoin() throws Exception {
+        String query = "A = load 'big' using mock.Storage();" +
+                "B = load 'small' using mock.Storage();" +
+                "C = join A by (k1, k2), B by (k1, k2) using 'replicated';" +
+                "store C into 'inner' using mock.Storage();" +
+                "D = join A by k1 left outer, B by k1 using 'replicated';" +
+                "store D into 'outer' using mock.Storage();";
+        Set<Tuple> expectedInner = null;
+        Set<Tuple> expectedOuter = null;
+        for (String compact : new String[] {"false", "true"}) {
+            pigServer.getPigContext().getProperties().setProperty(
+                    PigConfiguration.PIG_JOIN_REPLICATED_COMPACT, compact);
+            Data data = resetData(pigServer);
+            data.set("big", Utils.getSchemaFromString("k1:chararray,k2:int,v:long"),
+                    tuple("a", 1, 10L), tuple("a", 2, 20L), tuple("b", 1, 30L),
+                    tuple("c", 3, 40L), tuple(null, 1, 50L));
+            data.set("small", Utils.getSchemaFromString("k1:chararray,k2:int,w:chararray"),
+                    tuple("a", 1, "x"), tuple("a", 1, "y"), tuple("b", 1, "z"),
+                    tuple("c", 4, "w"), tuple(null, 1, "n"));
+            Util.registerMultiLineQuery(pigServer, query);
+            Set<Tuple> inner = Sets.newHashSet(data.get("inner"));
+            Set<Tuple> outer = Sets.newHashSet(data.get("outer"));
+            if (expectedInner == null) {
+                expectedInner = inner;
+                expectedOuter = outer;
+                assertEquals(3, inner.size());
+                assertEquals(7, outer.size());
+            } else {
+                assertEquals(expectedInner, inner);
+                assertEquals(expectedOuter, outer);
+            }
+        }
+    }
+
+    @Test
+    public void testCompactReplicateTable() throws Exception {
+        CompactReplicateTable table = new CompactReplicateTable();
+        Map<Object, List<Tuple>> expected = new HashMap<Object, List<Tuple>>();
+        for (int i = 0; i < 50000; i++) {
+            Object key = i % 3 == 0 ? tuple("k" + (i % 7000), i % 5) : (Object) ("k" + (i % 7000));
+            Tuple value = tuple(i, "value" + i, (long) i * 3);
+            table.add(key, value);
+            List<Tuple> values = expected.get(key);
+            if (values == null) {
+                values = new ArrayList<Tuple>();
+                expected.put(key, values);
+            }
+            values.add(value);
+        }
+        assertEquals(expected.size(), table.size());
+        assertEquals(50000, table.getValueCount());
+        for (Map.Entry<Object, List<Tuple>> e : expected.entrySet()) {
+            assertEquals(e.getValue(), table.get(e.getKey()));
+        }
+        assertEquals(expected, new HashMap<Object, List<Tuple>>(table));
+        assertNull(table.get("missing"));
+        assertNull(table.get(tuple("k1", 7)));
+        assertTrue(table.getMemorySize() > 0);
+    }
 }
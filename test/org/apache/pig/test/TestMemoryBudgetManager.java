@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.apache.pig.builtin.mock.Storage.resetData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.builtin.mock.Storage.Data;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.util.GroupingSpillable;
+import org.apache.pig.impl.util.MemoryBudgetManager;
+import org.apache.pig.impl.util.MemoryBudgetManager.Quota;
+import org.apache.pig.impl.util.Spillable;
+import org.junit.After;
+import org.junit.Test;
+
+public class TestMemoryBudgetManager {
+
+    private static class TestSpillable implements Spillable {
+        long size;
+        int spills;
+
+        @Override
+        public long spill() {
+            if (size == 0) {
+                return 0;
+            }
+            size = 0;
+            spills++;
+            return 1;
+        }
+
+        @Override
+        public long getMemorySize() {
+            return size;
+        }
+    }
+
+    private static class TestGroupingSpillable extends TestSpillable implements GroupingSpillable {
+    }
+
+    private static MemoryBudgetManager configure(boolean enabled, long budget) {
+        Configuration conf = new Configuration(false);
+        if (enabled) {
+            conf.set(PigConfiguration.PIG_SPILL_MEMORY_MANAGER, MemoryBudgetManager.BUDGET);
+        }
+        conf.setLong(PigConfiguration.PIG_SPILL_MEMORY_BUDGET_SIZE, budget);
+        conf.setLong("pig.spill.size.threshold", 1);
+        MemoryBudgetManager.staticDataCleanup();
+        MemoryBudgetManager manager = MemoryBudgetManager.getInstance();
+        manager.configure(conf);
+        return manager;
+    }
+
+    @After
+    public void tearDown() {
+        configure(false, Runtime.getRuntime().maxMemory());
+    }
+
+    @Test
+    public void testSpillLargestConsumer() {
+        MemoryBudgetManager manager = configure(true, 1000);
+        TestSpillable a = new TestSpillable();
+        TestSpillable b = new TestSpillable();
+        Quota qa = manager.register(a, MemoryBudgetManager.BAG);
+        Quota qb = manager.register(b, MemoryBudgetManager.SORT);
+
+        a.size = 600;
+        assertTrue(qa.update(a.size));
+        b.size = 300;
+        assertTrue(qb.update(b.size));
+        assertEquals(900, manager.getUsed());
+
+        // Going over the budget spills the largest consumer, which is enough
+        // to get back under 80% of the budget
+        b.size = 700;
+        assertTrue(qb.reserve(400));
+        assertEquals(0, a.spills);
+        assertEquals(1, b.spills);
+        assertEquals(0, qb.getReserved());
+        assertEquals(600, manager.getUsed());
+        assertEquals(600, manager.getUsage(MemoryBudgetManager.BAG));
+        assertEquals(0, manager.getUsage(MemoryBudgetManager.SORT));
+        assertEquals(700, manager.getPeakUsage(MemoryBudgetManager.SORT));
+        assertEquals(1, manager.getSpillCount(MemoryBudgetManager.SORT));
+        assertEquals(700, manager.getSpilledBytes(MemoryBudgetManager.SORT));
+
+        qa.release(100);
+        assertEquals(500, manager.getUsed());
+        qa.releaseAll();
+        assertEquals(0, manager.getUsed());
+    }
+
+    @Test
+    public void testGroupingSpillableSpillsItself() {
+        MemoryBudgetManager manager = configure(true, 1000);
+        TestSpillable a = new TestSpillable();
+        TestGroupingSpillable g = new TestGroupingSpillable();
+        Quota qa = manager.register(a, MemoryBudgetManager.BAG);
+        Quota qg = manager.register(g, MemoryBudgetManager.PARTIAL_AGG);
+
+        a.size = 200;
+        assertTrue(qa.update(a.size));
+        g.size = 1200;
+        assertFalse(qg.update(g.size));
+        // The other consumers are spilled, but not the GroupingSpillable
+        assertEquals(1, a.spills);
+        assertEquals(0, g.spills);
+        assertEquals(1200, manager.getUsed());
+    }
+
+    @Test
+    public void testDisabled() {
+        MemoryBudgetManager manager = configure(false, 1000);
+        assertFalse(manager.isEnabled());
+    }
+
+    @Test
+    public void testSameResults() throws Exception {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            lines.add(i % 7 + "\t" + i + "\tsome text to make the tuples a bit larger " + i % 13);
+        }
+        File input = Util.createFile(lines.toArray(new String[0]));
+        String script = "a = load '" + Util.encodeEscape(input.getAbsolutePath())
+                + "' as (k:int, v:int, s:chararray);"
+                + "b = group a by k;"
+                + "c = foreach b { d = distinct a.s; o = order a by v desc; t = limit o 2;"
+                + "    generate group, COUNT(a), SUM(a.v), COUNT(d), t; };"
+                + "store c into 'out' using mock.Storage();"
+                + "e = group a all;"
+                + "f = foreach e generate COUNT(a), MAX(a.v);"
+                + "store f into 'out2' using mock.Storage();";
+
+        List<List<Tuple>> expected = run(script, false);
+        assertEquals(7, expected.get(0).size());
+        List<List<Tuple>> actual = run(script, true);
+        assertTrue(MemoryBudgetManager.getInstance().getSpillCount(MemoryBudgetManager.BAG) > 0);
+        assertEquals(expected, actual);
+    }
+
+    private List<List<Tuple>> run(String script, boolean budget) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_OPT_FETCH, "false");
+        props.setProperty(PigConfiguration.PIG_EXEC_MAP_PARTAGG, "true");
+        if (budget) {
+            props.setProperty(PigConfiguration.PIG_SPILL_MEMORY_MANAGER, MemoryBudgetManager.BUDGET);
+            props.setProperty(PigConfiguration.PIG_SPILL_MEMORY_BUDGET_SIZE, "500000");
+            props.setProperty("pig.spill.size.threshold", "100000");
+        }
+        PigServer pigServer = new PigServer(Util.getLocalTestMode(), props);
+        Data data = resetData(pigServer);
+        pigServer.setBatchOn();
+        pigServer.registerQuery(script);
+        pigServer.executeBatch();
+        List<List<Tuple>> result = new ArrayList<List<Tuple>>();
+        result.add(data.get("out"));
+        result.add(data.get("out2"));
+        return result;
+    }
+}
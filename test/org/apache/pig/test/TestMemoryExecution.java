@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.apache.pig.builtin.mock.Storage.resetData;
+import static org.apache.pig.builtin.mock.Storage.tuple;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.ExecTypeProvider;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.executionengine.ExecJob;
+import org.apache.pig.builtin.mock.Storage.Data;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.tools.pigstats.InputStats;
+import org.apache.pig.tools.pigstats.PigStats;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestMemoryExecution {
+
+    private static ExecType memoryMode;
+
+    @BeforeClass
+    public static void oneTimeSetUp() throws Exception {
+        memoryMode = ExecTypeProvider.fromString("memory");
+    }
+
+    private static List<Tuple> input1() {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 200; i++) {
+            tuples.add(tuple(i % 13 == 0 ? null : "k" + (i % 11), i, (double) i / 3));
+        }
+        return tuples;
+    }
+
+    private static List<Tuple> input2() {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 40; i++) {
+            tuples.add(tuple(i % 7 == 0 ? null : "k" + (i % 17), i * 10));
+        }
+        return tuples;
+    }
+
+    private static PigStats lastStats;
+
+    private static List<Tuple> run(ExecType execType, String script, String output, boolean sort)
+            throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_EXEC_MEMORY_THREADS, "3");
+        PigServer pigServer = new PigServer(execType, props);
+        Data data = resetData(pigServer);
+        data.set("in1", "k:chararray, v:int, d:double", input1());
+        data.set("in2", "k:chararray, w:int", input2());
+        pigServer.setBatchOn();
+        pigServer.registerQuery(script);
+        List<ExecJob> jobs = pigServer.executeBatch();
+        for (ExecJob job : jobs) {
+            assertEquals(ExecJob.JOB_STATUS.COMPLETED, job.getStatus());
+        }
+        lastStats = jobs.get(0).getStatistics();
+        List<Tuple> out = new ArrayList<Tuple>(data.get(output));
+        if (sort) {
+            Collections.sort(out);
+        }
+        return out;
+    }
+
+    private static void assertSameResults(String script, String... outputs) throws Exception {
+        for (String output : outputs) {
+            List<Tuple> expected = run(Util.getLocalTestMode(), script, output, true);
+            assertTrue(expected.size() > 0);
+            assertEquals(expected, run(memoryMode, script, output, true));
+        }
+    }
+
+    private static final String LOAD =
+            "a = load 'in1' using mock.Storage();" +
+            "b = load 'in2' using mock.Storage();";
+
+    @Test
+    public void testGroup() throws Exception {
+        assertSameResults(LOAD +
+                "c = group a by k;" +
+                "d = foreach c generate group, COUNT(a), SUM(a.v), MAX(a.d), AVG(a.v);" +
+                "store d into 'out' using mock.Storage();", "out");
+        // The map tasks read the input and the records are counted
+        long records = 0;
+        for (InputStats input : lastStats.getInputStats()) {
+            records += input.getNumberRecords();
+        }
+        assertEquals(200, records);
+        assertEquals(1, lastStats.getNumberJobs());
+    }
+
+    @Test
+    public void testGroupWithNestedForEach() throws Exception {
+        assertSameResults(LOAD +
+                "c = group a by (k, v % 2);" +
+                "d = foreach c { e = order a by v desc; f = limit e 2; g = distinct a.k;" +
+                "  generate flatten(group), f.v, COUNT(g); };" +
+                "store d into 'out' using mock.Storage();", "out");
+    }
+
+    @Test
+    public void testJoins() throws Exception {
+        assertSameResults(LOAD +
+                "c = join a by k, b by k;" +
+                "store c into 'out1' using mock.Storage();" +
+                "d = join a by k left outer, b by k;" +
+                "store d into 'out2' using mock.Storage();" +
+                "e = join a by k, b by k using 'replicated';" +
+                "store e into 'out3' using mock.Storage();", "out1", "out2", "out3");
+    }
+
+    @Test
+    public void testCogroupAndDistinct() throws Exception {
+        assertSameResults(LOAD +
+                "c = cogroup a by k, b by k;" +
+                "d = foreach c generate group, COUNT(a), SUM(b.w);" +
+                "store d into 'out1' using mock.Storage();" +
+                "e = foreach a generate k;" +
+                "f = distinct e;" +
+                "store f into 'out2' using mock.Storage();", "out1", "out2");
+    }
+
+    @Test
+    public void testSplitAndScalar() throws Exception {
+        assertSameResults(LOAD +
+                "split a into x if v > 100, y otherwise;" +
+                "store x into 'out1' using mock.Storage();" +
+                "c = group y all;" +
+                "cnt = foreach c generate COUNT(y) as n;" +
+                "e = foreach x generate k, v / cnt.n;" +
+                "store e into 'out2' using mock.Storage();" +
+                "f = union x, b;" +
+                "store f into 'out3' using mock.Storage();", "out1", "out2", "out3");
+    }
+
+    @Test
+    public void testOrderBy() throws Exception {
+        String script = LOAD +
+                "c = order a by v desc;" +
+                "store c into 'out1' using mock.Storage();" +
+                "d = order b by k, w;" +
+                "e = limit d 5;" +
+                "store e into 'out2' using mock.Storage();";
+        for (String output : new String[] { "out1", "out2" }) {
+            List<Tuple> expected = run(Util.getLocalTestMode(), script, output, false);
+            assertTrue(expected.size() > 0);
+            assertEquals(expected, run(memoryMode, script, output, false));
+        }
+    }
+
+    @Test
+    public void testCross() throws Exception {
+        assertSameResults(LOAD +
+                "c = filter a by v < 20;" +
+                "d = cross c, b;" +
+                "store d into 'out' using mock.Storage();", "out");
+    }
+
+    @Test
+    public void testUnsupportedPlanRunsAsMapReduce() throws Exception {
+        // rank depends on the Hadoop counters
+        assertSameResults(LOAD +
+                "c = rank b by w;" +
+                "store c into 'out' using mock.Storage();", "out");
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.MultiPatternMatcher;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.newplan.DependencyOrderWalker;
+import org.apache.pig.newplan.OperatorPlan;
+import org.apache.pig.newplan.logical.expression.ConstantExpression;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionPlan;
+import org.apache.pig.newplan.logical.expression.LogicalExpressionVisitor;
+import org.apache.pig.newplan.logical.expression.MatchIndexExpression;
+import org.apache.pig.newplan.logical.expression.RegexExpression;
+import org.apache.pig.newplan.logical.optimizer.AllExpressionVisitor;
+import org.apache.pig.newplan.logical.optimizer.LogicalPlanOptimizer;
+import org.apache.pig.newplan.logical.relational.LogicalPlan;
+import org.apache.pig.newplan.logical.rules.MergeMatches;
+import org.apache.pig.newplan.optimizer.PlanOptimizer;
+import org.apache.pig.newplan.optimizer.Rule;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMergeMatches {
+    PigServer pigServer = null;
+
+    @Before
+    public void setUp() throws Exception {
+        pigServer = new PigServer(ExecType.LOCAL, new Properties());
+    }
+
+    @Test
+    public void testMergeDisjunction() throws Exception {
+        assertQuerySame("b = filter (load 'd.txt' as (id:int, s:chararray)) by s matches 'a.*' or s matches '.*b';" +
+                "store b into 'empty';",
+                "b = filter (load 'd.txt' as (id:int, s:chararray)) by s matches '(a.*)|(.*b)';" +
+                "store b into 'empty';");
+
+        // other conditions are kept
+        assertQuerySame("b = filter (load 'd.txt' as (id:int, s:chararray)) by s matches 'a.*' or id > 3 or s matches '.*b' or s matches 'c';" +
+                "store b into 'empty';",
+                "b = filter (load 'd.txt' as (id:int, s:chararray)) by s matches '(a.*)|(.*b)|(c)' or id > 3;" +
+                "store b into 'empty';");
+
+    }
+
+    @Test
+    public void testMergeInForEach() throws Exception {
+        // each reference to s has its own inner load, so compare the number of
+        // MATCHES left instead of the plans
+        LogicalPlan newLogicalPlan = getOptimizedLogicalPlan(
+                "b = foreach (load 'd.txt' as (id:int, s:chararray)) generate (s matches 'a.*' or s matches 'b.*' ? 1 : 0);" +
+                "store b into 'empty';");
+        assertEquals(1, getMatches(newLogicalPlan).size());
+        assertEquals("(a.*)|(b.*)", getMatches(newLogicalPlan).get(0));
+    }
+
+    @Test
+    public void testNotMerged() throws Exception {
+        // different fields
+        assertNotChanged("b = filter (load 'd.txt' as (s:chararray, t:chararray)) by s matches 'a.*' or t matches '.*b';" +
+                "store b into 'empty';");
+
+        // conjunction
+        assertNotChanged("b = filter (load 'd.txt' as (s:chararray, t:chararray)) by s matches 'a.*' and s matches '.*b';" +
+                "store b into 'empty';");
+
+        // pattern which needs java.util.regex
+        assertNotChanged("b = filter (load 'd.txt' as (s:chararray, t:chararray)) by s matches '\\\\d+' or s matches '.*b';" +
+                "store b into 'empty';");
+
+        // pattern which is not constant
+        assertNotChanged("b = filter (load 'd.txt' as (s:chararray, t:chararray)) by s matches t or s matches '.*b';" +
+                "store b into 'empty';");
+    }
+
+    @Test
+    public void testMergeBinCondChain() throws Exception {
+        LogicalPlan newLogicalPlan = getOptimizedLogicalPlan(
+                "b = foreach (load 'd.txt' as (id:int, s:chararray)) generate " +
+                "(case when s matches 'a.*' then 1 when s matches '.*b' then 2 when s matches 'c' then 3 else 0 end);" +
+                "store b into 'empty';");
+        assertEquals(0, getMatches(newLogicalPlan).size());
+        List<List<String>> indexes = getMatchIndexes(newLogicalPlan);
+        assertEquals(3, indexes.size());
+        for (List<String> patterns : indexes) {
+            assertEquals(Arrays.asList("a.*", ".*b", "c"), patterns);
+        }
+
+        // the chain stops at the first condition on another expression
+        newLogicalPlan = getOptimizedLogicalPlan(
+                "b = foreach (load 'd.txt' as (t:chararray, s:chararray)) generate " +
+                "(s matches 'a.*' ? 1 : (s matches '.*b' ? 2 : (t matches 'c' ? 3 : (s matches 'd' ? 4 : 0))));" +
+                "store b into 'empty';");
+        assertEquals(2, getMatches(newLogicalPlan).size());
+        assertEquals(2, getMatchIndexes(newLogicalPlan).size());
+    }
+
+    @Test
+    public void testBinCondNotMerged() throws Exception {
+        // different fields
+        assertNotChanged("b = foreach (load 'd.txt' as (s:chararray, t:chararray)) generate " +
+                "(s matches 'a.*' ? 1 : (t matches '.*b' ? 2 : 0));" +
+                "store b into 'empty';");
+
+        // match in the then branch
+        assertNotChanged("b = foreach (load 'd.txt' as (s:chararray, t:chararray)) generate " +
+                "(s matches 'a.*' ? (s matches '.*b' ? 2 : 1) : 0);" +
+                "store b into 'empty';");
+
+        // pattern which needs java.util.regex
+        assertNotChanged("b = foreach (load 'd.txt' as (s:chararray, t:chararray)) generate " +
+                "(s matches '\\\\d+' ? 1 : (s matches '.*b' ? 2 : 0));" +
+                "store b into 'empty';");
+    }
+
+    @Test
+    public void testBinCondChainResults() throws Exception {
+        File input = Util.createInputFile("test", "txt",
+                new String[] {"1\tapple", "2\tbanana", "3\tcherry", "4\tcab", "5\tb", "6\t"});
+        String chain = "(case when s matches 'a.*' then 'a' when s matches '.*b' then 'b'" +
+                " when s matches 'c.*' then 'c' else 'other' end)";
+        pigServer.registerQuery("a = load '" + Util.encodeEscape(input.getAbsolutePath()) + "' as (id:int, s:chararray);");
+        pigServer.registerQuery("b = foreach a generate id, " + chain + ";");
+        pigServer.registerQuery("c = filter a by " + chain + " == 'c';");
+
+        String[] expected = {"(1,a)", "(2,other)", "(3,c)", "(4,b)", "(5,b)", "(6,)"};
+        Iterator<Tuple> it = pigServer.openIterator("b");
+        for (String tuple : expected) {
+            assertTrue(it.hasNext());
+            assertEquals(tuple, it.next().toString());
+        }
+        assertFalse(it.hasNext());
+
+        it = pigServer.openIterator("c");
+        assertEquals(3, it.next().get(0));
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testMultiPatternMatcher() throws Exception {
+        List<String> patterns = Arrays.asList("a.*", ".*b", "[a-c]+", "(ab)*", "x{2,3}");
+        MultiPatternMatcher matcher = MultiPatternMatcher.compile(patterns);
+        Random random = new Random(11);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder value = new StringBuilder();
+            int length = random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                value.append("abcx\u00e9".charAt(random.nextInt(5)));
+            }
+            String s = value.toString();
+            int expected = -1;
+            for (int p = 0; p < patterns.size() && expected == -1; p++) {
+                if (s.matches(patterns.get(p))) {
+                    expected = p;
+                }
+            }
+            assertEquals(s, expected, matcher.match(s));
+            // the last result is kept
+            assertEquals(s, expected, matcher.match(new String(s)));
+        }
+
+        assertEquals(null, MultiPatternMatcher.compile(Arrays.asList("a.*", "\\d+")));
+    }
+
+    @Test
+    public void testResults() throws Exception {
+        File input = Util.createInputFile("test", "txt",
+                new String[] {"apple", "banana", "cherry", "grape", "kiwi", ""});
+        pigServer.registerQuery("a = load '" + Util.encodeEscape(input.getAbsolutePath()) + "' as (s:chararray);");
+        pigServer.registerQuery("b = filter a by s matches 'a.*' or s matches '.*y' or s matches 'k.*i' or s is null;");
+        Set<String> results = new HashSet<String>();
+        Iterator<Tuple> it = pigServer.openIterator("b");
+        while (it.hasNext()) {
+            results.add((String) it.next().get(0));
+        }
+        Set<String> expected = new HashSet<String>();
+        expected.add("apple");
+        expected.add("cherry");
+        expected.add("kiwi");
+        expected.add(null);
+        assertEquals(expected, results);
+    }
+
+    private void assertQuerySame(String origQuery, String optimizedQuery) throws Exception {
+        LogicalPlan newLogicalPlan = getOptimizedLogicalPlan(origQuery);
+        LogicalPlan expected = Util.buildLp(pigServer, optimizedQuery);
+        assertTrue(expected.isEqual(newLogicalPlan));
+    }
+
+    private void assertNotChanged(String query) throws Exception {
+        LogicalPlan newLogicalPlan = getOptimizedLogicalPlan(query);
+        LogicalPlan expected = Util.buildLp(pigServer, query);
+        assertTrue(expected.isEqual(newLogicalPlan));
+        assertFalse(new MergeMatches("MergeMatches").getNewTransformer().check(newLogicalPlan));
+    }
+
+    private List<Object> getMatches(LogicalPlan plan) throws Exception {
+        final List<Object> patterns = new ArrayList<Object>();
+        new AllExpressionVisitor(plan, new DependencyOrderWalker(plan)) {
+            @Override
+            protected LogicalExpressionVisitor getVisitor(LogicalExpressionPlan expr)
+                    throws FrontendException {
+                return new LogicalExpressionVisitor(expr, new DependencyOrderWalker(expr)) {
+                    @Override
+                    public void visit(RegexExpression regex) throws FrontendException {
+                        patterns.add(((ConstantExpression) regex.getRhs()).getValue());
+                    }
+                };
+            }
+        }.visit();
+        return patterns;
+    }
+
+    private List<List<String>> getMatchIndexes(LogicalPlan plan) throws Exception {
+        final List<List<String>> patterns = new ArrayList<List<String>>();
+        new AllExpressionVisitor(plan, new DependencyOrderWalker(plan)) {
+            @Override
+            protected LogicalExpressionVisitor getVisitor(LogicalExpressionPlan expr)
+                    throws FrontendException {
+                return new LogicalExpressionVisitor(expr, new DependencyOrderWalker(expr)) {
+                    @Override
+                    public void visit(MatchIndexExpression matchIndex) throws FrontendException {
+                        patterns.add(matchIndex.getPatterns());
+                    }
+                };
+            }
+        }.visit();
+        return patterns;
+    }
+
+    private LogicalPlan getOptimizedLogicalPlan(String query) throws Exception {
+        LogicalPlan newLogicalPlan = Util.buildLp(pigServer, query);
+        PlanOptimizer optimizer = new MyPlanOptimizer(newLogicalPlan, 10);
+        optimizer.optimize();
+        return newLogicalPlan;
+    }
+
+    public class MyPlanOptimizer extends LogicalPlanOptimizer {
+
+        protected MyPlanOptimizer(OperatorPlan p, int iterations) {
+            super(p, iterations, null);
+        }
+
+        @Override
+        protected List<Set<Rule>> buildRuleSets() {
+            List<Set<Rule>> ls = new ArrayList<Set<Rule>>();
+            Set<Rule> s = new HashSet<Rule>();
+            s.add(new MergeMatches("MergeMatches"));
+            ls.add(s);
+            return ls;
+        }
+    }
+}
@@ -292,6 +292,51 @@ public class TestPOPartialAgg {
         checkInputAndOutput(inputTups, outputTups, false);
     }
 
+    @Test
+    public void testPrimitiveTableMultiInput() throws Exception {
+        PigMapReduce.sJobConfInternal.get().setBoolean(PigConfiguration.PIG_EXEC_MAP_PARTAGG_PRIMITIVE, true);
+        // input tuple has key, and bag containing SUM.Init output
+        String[] inputTups = { "(1,(1L))", "(2,(2L))", "(1,(2L))", "(null,(2L))", "(null,(3L))", "(2,(null))" };
+        String[] outputTups = { "(1,(3L))", "(2,(2L))", "(null,(5L))" };
+        checkInputAndOutput(inputTups, outputTups, false);
+    }
+
+    @Test
+    public void testPrimitiveTableMultiVals() throws Exception {
+        PigMapReduce.sJobConfInternal.get().setBoolean(PigConfiguration.PIG_EXEC_MAP_PARTAGG_PRIMITIVE, true);
+        createPOPartialPlan(2);
+
+        // input tuple has key, and bag containing SUM.Init output
+        String[] inputTups = { "(1,(1L),(2L))", "(2,(2L),(1L))", "(1,(2L),(2L))", "(3,(null),(null))" };
+        String[] outputTups = { "(1,(3L),(4L))", "(2,(2L),(1L))", "(3,(null),(null))" };
+        checkInputAndOutput(inputTups, outputTups, false);
+    }
+
+    @Test
+    public void testPrimitiveTableCheckNotDisabled() throws Exception {
+        PigMapReduce.sJobConfInternal.get().setBoolean(PigConfiguration.PIG_EXEC_MAP_PARTAGG_PRIMITIVE, true);
+        int numKeys = 500;
+        // Enough inputs to trigger the size check at 10,000
+        int numInputs = 10500;
+        String[] inputTups = new String[numInputs];
+        for (int i = 0; i < numInputs; i++) {
+            inputTups[i] = "(" + (i % numKeys) + ",(1L))";
+        }
+        String[] outputTups = new String[numKeys];
+        for (int i = 0; i < numKeys; i++) {
+            outputTups[i] = "(" + i + ",(" + (numInputs / numKeys) + "L))";
+        }
+        checkInputAndOutput(inputTups, outputTups, false);
+    }
+
+    @Test
+    public void testPrimitiveTableMemEmpty() throws Exception {
+        PigMapReduce.sJobConfInternal.get().setBoolean(PigConfiguration.PIG_EXEC_MAP_PARTAGG_PRIMITIVE, true);
+        String[] inputTups = { "(1,(1L))", "(2,(2L))", "(1,(2L))" };
+        String[] outputTups = { "(1,(1L))", "(2,(2L))", "(1,(2L))" };
+        checkInputAndOutput(inputTups, outputTups, true);
+    }
+
     @Test
     public void testMemorySpill1() throws Exception {
         // Test spill which only does aggregation
@@ -361,6 +406,42 @@ public class TestPOPartialAgg {
         assertEquals(new Long(1), spilled.get());
     }
 
+    @Test
+    public void testPrimitiveTableMemorySpill() throws Exception {
+        // Spill before the reduction is sampled. The sample should be taken from
+        // the records seen so far, which do not reduce, and aggregation disabled
+        PigMapReduce.sJobConfInternal.get().setBoolean(PigConfiguration.PIG_EXEC_MAP_PARTAGG_PRIMITIVE, true);
+        Result res;
+        List<Tuple> expectedValues = new ArrayList<Tuple>();
+        for (long i=1; i <= 15; i ++) {
+            Tuple t = tuple((int) i, tuple(i));
+            expectedValues.add(t);
+            partAggOp.attachInput(t);
+            res = partAggOp.getNextTuple();
+            assertEquals(POStatus.STATUS_EOP, res.returnStatus);
+        }
+        Future<Long> spilled = executor.submit(new Spill(partAggOp));
+        Thread.sleep(100);
+        partAggOp.attachInput(tuple(16, tuple(16L)));
+        expectedValues.add(tuple(16, tuple(16L)));
+        res = partAggOp.getNextTuple();
+        do {
+            assertEquals(POStatus.STATUS_OK, res.returnStatus);
+            assertTrue(expectedValues.remove(res.result));
+            res = partAggOp.getNextTuple();
+        } while (res.returnStatus != POStatus.STATUS_EOP && !expectedValues.isEmpty());
+        assertTrue(expectedValues.isEmpty());
+        Thread.sleep(100);
+        assertTrue(spilled.isDone());
+        assertEquals(new Long(1), spilled.get());
+
+        // Aggregation is disabled, so further records pass through
+        partAggOp.attachInput(tuple(1, tuple(17L)));
+        res = partAggOp.getNextTuple();
+        assertEquals(POStatus.STATUS_OK, res.returnStatus);
+        assertEquals(tuple(1, tuple(17L)), res.result);
+    }
+
     @Test
     public void testGroupAll() throws Exception {
         createPOPartialPlan(1, true);
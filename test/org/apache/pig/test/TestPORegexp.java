@@ -19,6 +19,7 @@ package org.apache.pig.test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Method;
@@ -29,6 +30,7 @@ import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOpe
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.CompiledAutomaton;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.CompiledRegex;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.NonConstantRegex;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.RegexCache;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.regex.RegexInit;
 import org.apache.pig.impl.plan.OperatorKey;
 import org.junit.Test;
@@ -65,6 +67,18 @@ public class TestPORegexp {
         assertTrue(ncr.match("abc", "[a-z]{3}"));
     }
 
+    @Test
+    public void testNonConstantRegexAlternatingPatterns() {
+        NonConstantRegex ncr = new NonConstantRegex();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(ncr.match("1234", "\\d+"));
+            assertTrue(ncr.match("abc", "[a-z]{3}"));
+            assertFalse(ncr.match("abcd", "[a-z]{3}"));
+            assertFalse(ncr.match("abc", "\\d+"));
+        }
+        assertSame(RegexCache.getPattern("\\d+"), RegexCache.getPattern("\\d+"));
+    }
+
     @Test
     public void testRegexDetermination() throws Exception {
         Method m = RegexInit.class.getDeclaredMethod("determineBestRegexMethod", String.class);
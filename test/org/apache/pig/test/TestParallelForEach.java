@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.apache.pig.builtin.mock.Storage.resetData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.builtin.ThreadSafe;
+import org.apache.pig.builtin.mock.Storage.Data;
+import org.apache.pig.data.Tuple;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestParallelForEach {
+
+    private static final String SCRIPT =
+            "a = load 'INPUT' as (i:int, s:chararray);" +
+            "b = foreach a generate i, UPPER(s) as s1, SIZE(s) as n, flatten(TOKENIZE(s)) as w, " +
+            "    REGEX_EXTRACT(s, '([a-z]+)([0-9]*)', 2) as d;" +
+            "store b into 'out' using mock.Storage();";
+
+    @ThreadSafe
+    public static class ThreadName extends EvalFunc<String> {
+        @Override
+        public String exec(Tuple input) throws IOException {
+            return Thread.currentThread().getName();
+        }
+    }
+
+    public static class NotThreadSafe extends EvalFunc<Integer> {
+        @Override
+        public Integer exec(Tuple input) throws IOException {
+            return (Integer) input.get(0);
+        }
+    }
+
+    private File input;
+
+    @Before
+    public void setUp() throws Exception {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 53; i++) {
+            lines.add(i + "\t" + (i % 5 == 0 ? "" : "ab" + i + " cd" + (i % 7 == 0 ? " ef" : "")));
+        }
+        lines.add("\t");
+        input = Util.createFile(lines.toArray(new String[0]));
+    }
+
+    private List<Tuple> run(String script, int threads, int batchSize) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_OPT_FETCH, "false");
+        props.setProperty(PigConfiguration.PIG_EXEC_FOREACH_THREADS, String.valueOf(threads));
+        props.setProperty(PigConfiguration.PIG_EXEC_FOREACH_BATCH_SIZE, String.valueOf(batchSize));
+        PigServer pigServer = new PigServer(Util.getLocalTestMode(), props);
+        Data data = resetData(pigServer);
+        pigServer.registerQuery(script.replace("INPUT", Util.encodeEscape(input.getAbsolutePath())));
+        return data.get("out");
+    }
+
+    @Test
+    public void testSameResultsAsSingleThread() throws Exception {
+        Assume.assumeTrue("Parallel foreach is only used in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        List<Tuple> expected = run(SCRIPT, 0, 0);
+        assertFalse(expected.isEmpty());
+        // batch size 7 leaves a partial batch to flush at the end of the input
+        assertEquals(expected, run(SCRIPT, 4, 7));
+        assertEquals(expected, run(SCRIPT, 3, 1024));
+    }
+
+    @Test
+    public void testThreadSafeUdfsOnly() throws Exception {
+        Assume.assumeTrue("Parallel foreach is only used in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        String udf = ThreadName.class.getName();
+        String script = "a = load 'INPUT' as (i:int, s:chararray);"
+                + "b = foreach a generate " + udf + "(i) as t, UPPER(s);"
+                + "store b into 'out' using mock.Storage();";
+        for (Tuple t : run(script, 2, 5)) {
+            assertTrue(t.toString(), ((String) t.get(0)).startsWith("ForEach-"));
+        }
+
+        script = script.replace("UPPER(s)", NotThreadSafe.class.getName() + "(i)");
+        for (Tuple t : run(script, 2, 5)) {
+            assertFalse(t.toString(), ((String) t.get(0)).startsWith("ForEach-"));
+        }
+    }
+}
@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
@@ -37,12 +38,14 @@ import java.util.Properties;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigServer;
 import org.apache.pig.ResourceSchema;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MRConfiguration;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.expressionOperators.POProject;
+import org.apache.pig.builtin.JsonMetadata;
 import org.apache.pig.builtin.PigStorage;
 import org.apache.pig.builtin.mock.Storage.Data;
 import org.apache.pig.data.DataByteArray;
@@ -777,6 +780,51 @@ public class TestPigStorage  {
 
     }
 
+    @Test
+    public void testLazyTupleWithSchema() throws Exception {
+        File inputDir = new File(datadir, "lazy_tuple");
+        inputDir.mkdirs();
+        Util.writeToFile(new File(inputDir, "part-m-00000"), new String[] {
+                "1\t10\t1.5\tx",
+                "-7\t-9000000000\t-0.25\t",
+                "\t\t\t",
+                "2.9\t12345678901234567890\tabc\ty",
+                " 3 \t5L\t1e3\tz",
+                "99999999999\t-\t7"});
+        String location = Util.encodeEscape(inputDir.getAbsolutePath());
+        ResourceSchema schema = new ResourceSchema(
+                Utils.getSchemaFromString("a:int, b:long, c:double, d:chararray"));
+        new JsonMetadata().storeSchema(schema, inputDir.getAbsolutePath(),
+                new Job(ConfigurationUtil.toConfiguration(pigContext.getProperties())));
+
+        List<Tuple> expected = Arrays.asList(
+                tuple(1, 10L, 1.5, "x"),
+                tuple(-7, -9000000000L, -0.25, null),
+                tuple(null, null, null, null),
+                tuple(2, null, null, "y"),
+                tuple(3, 5L, 1000.0, "z"),
+                tuple(null, null, 7.0, null));
+        List<Tuple> expectedPruned = Arrays.asList(
+                tuple("x", 10L), tuple(null, -9000000000L), tuple(null, null),
+                tuple("y", null), tuple("z", 5L), tuple(null, null));
+
+        for (boolean lazy : new boolean[] {true, false}) {
+            Properties props = new Properties();
+            props.setProperty(PigConfiguration.PIG_STORAGE_LAZY_TUPLE, String.valueOf(lazy));
+            PigServer pigServer = new PigServer(ExecType.LOCAL, props);
+            Data data = resetData(pigServer);
+            pigServer.setBatchOn();
+            pigServer.registerQuery("A = LOAD '" + location + "' using PigStorage('\\t', '-schema');");
+            pigServer.registerQuery("store A into 'all' using mock.Storage();");
+            pigServer.registerQuery("B = foreach A generate d, b;");
+            pigServer.registerQuery("store B into 'pruned' using mock.Storage();");
+            pigServer.executeBatch();
+            assertEquals(expected, data.get("all"));
+            assertEquals(expectedPruned, data.get("pruned"));
+            pigServer.shutdown();
+        }
+    }
+
     public static class PigExtendedStorage extends PigStorage {
 
         @Override
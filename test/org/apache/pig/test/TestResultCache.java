@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.apache.pig.builtin.mock.Storage.resetData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.ExecTypeProvider;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.executionengine.ExecJob;
+import org.apache.pig.builtin.mock.Storage.Data;
+import org.apache.pig.data.Tuple;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestResultCache {
+
+    private static final String SCRIPT =
+            "a = load 'INPUT1' as (k:chararray, v:int);" +
+            "b = load 'INPUT2' as (k:chararray, w:int);" +
+            "a1 = filter a by v > 3;" +
+            "b1 = foreach b generate k, w * 2 as w;" +
+            "c = join a1 by k, b1 by k;" +
+            "d = group c by a1::k;" +
+            "e = foreach d generate group, COUNT(c), SUM(c.w);" +
+            "store e into 'out' using mock.Storage();";
+
+    // Joins the result of the join of SCRIPT with a group of the second input
+    private static final String JOIN_SCRIPT =
+            "a = load 'INPUT1' as (k:chararray, v:int);" +
+            "b = load 'INPUT2' as (k:chararray, w:int);" +
+            "a1 = filter a by v > 3;" +
+            "b1 = foreach b generate k, w * 2 as w;" +
+            "c = join a1 by k, b1 by k;" +
+            "b2 = load 'INPUT2' as (k:chararray, w:int);" +
+            "g = group b2 by k;" +
+            "h = foreach g generate group, COUNT(b2);" +
+            "f = join c by a1::k, h by group;" +
+            "store f into 'out' using mock.Storage();";
+
+    private File input1;
+    private File input2;
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        input1 = createInput(50);
+        input2 = createInput(20);
+        cacheDir = File.createTempFile("resultcache", "");
+        cacheDir.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        input1.delete();
+        input2.delete();
+        Util.deleteDirectory(cacheDir);
+    }
+
+    private File createInput(int count) throws Exception {
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            lines[i] = "k" + (i % 9) + "\t" + i;
+        }
+        return Util.createFile(lines);
+    }
+
+    private List<Tuple> run(boolean cache, String cacheSize, int expectedJobs) throws Exception {
+        return run(Util.getLocalTestMode(), SCRIPT, cache, cacheSize, expectedJobs);
+    }
+
+    private List<Tuple> run(ExecType execType, String script, boolean cache, String cacheSize,
+            int expectedJobs) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_EXEC_RESULT_CACHE, String.valueOf(cache));
+        props.setProperty(PigConfiguration.PIG_EXEC_RESULT_CACHE_DIR, cacheDir.getAbsolutePath());
+        props.setProperty(PigConfiguration.PIG_EXEC_RESULT_CACHE_SIZE, cacheSize);
+        PigServer pigServer = new PigServer(execType, props);
+        Data data = resetData(pigServer);
+        pigServer.setBatchOn();
+        pigServer.registerQuery(script.replace("INPUT1", Util.encodeEscape(input1.getAbsolutePath()))
+                .replace("INPUT2", Util.encodeEscape(input2.getAbsolutePath())));
+        List<ExecJob> jobs = pigServer.executeBatch();
+        assertEquals(ExecJob.JOB_STATUS.COMPLETED, jobs.get(0).getStatus());
+        assertEquals(expectedJobs, jobs.get(0).getStatistics().getNumberJobs());
+        List<Tuple> out = new ArrayList<Tuple>(data.get("out"));
+        Collections.sort(out);
+        return out;
+    }
+
+    @Test
+    public void testCachedJoinIsReused() throws Exception {
+        List<Tuple> expected = run(false, "1000000", 2);
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, run(true, "1000000", 2));
+        // The join is read from the cache
+        assertEquals(expected, run(true, "1000000", 1));
+        assertEquals(expected, run(true, "1000000", 1));
+    }
+
+    @Test
+    public void testChangedInputIsNotCached() throws Exception {
+        run(true, "1000000", 2);
+        input2.delete();
+        input2 = createInput(30);
+        assertTrue(input2.setLastModified(System.currentTimeMillis() + 10000));
+        List<Tuple> expected = run(false, "1000000", 2);
+        assertEquals(expected, run(true, "1000000", 2));
+        assertEquals(expected, run(true, "1000000", 1));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        // The result does not fit in the cache
+        List<Tuple> expected = run(true, "1", 2);
+        assertEquals(expected, run(true, "1", 2));
+        assertEquals(0, cacheDir.list().length);
+    }
+
+    @Test
+    public void testResultsOfRunAreNotEvicted() throws Exception {
+        run(true, "1000000", 2);
+        File[] entries = cacheDir.listFiles();
+        assertEquals(1, entries.length);
+        Properties entry = new Properties();
+        InputStream in = new FileInputStream(new File(entries[0], "entry"));
+        try {
+            entry.load(in);
+        } finally {
+            in.close();
+        }
+
+        // Only the cached join fits in the cache. Adding the group, which
+        // runs first, must not evict the join, which the last job reads. The
+        // in-memory launcher adds each result as soon as its job is done
+        ExecType memoryMode = ExecTypeProvider.fromString("memory");
+        String cacheSize = entry.getProperty("size");
+        List<Tuple> expected = run(memoryMode, JOIN_SCRIPT, false, cacheSize, 3);
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, run(memoryMode, JOIN_SCRIPT, true, cacheSize, 2));
+        // The least recently used result is evicted once the run is over
+        assertEquals(1, cacheDir.list().length);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.apache.pig.builtin.mock.Storage.resetData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.executionengine.ExecJob;
+import org.apache.pig.builtin.mock.Storage.Data;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.tools.pigstats.JobStats;
+import org.apache.pig.tools.pigstats.PigStats;
+import org.apache.pig.tools.pigstats.RuntimeStatsStore;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestRuntimeStats {
+
+    private static File big;
+    private static File medium;
+    private static File small;
+    private File statsDir;
+
+    @BeforeClass
+    public static void setUpData() throws Exception {
+        big = Util.createFile(lines(2000));
+        medium = Util.createFile(lines(500));
+        small = Util.createFile(lines(20));
+    }
+
+    private static String[] lines(int n) {
+        String[] lines = new String[n];
+        for (int i = 0; i < n; i++) {
+            lines[i] = (i % 20) + "\t" + n + "-" + i;
+        }
+        return lines;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        statsDir = Files.createTempDirectory("pigstats").toFile();
+        statsDir.deleteOnExit();
+    }
+
+    private PigServer getPigServer(String maxReplicatedBytes) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_OPT_RUNTIME_STATS, "true");
+        props.setProperty(PigConfiguration.PIG_OPT_RUNTIME_STATS_DIR, statsDir.getAbsolutePath());
+        props.setProperty(PigConfiguration.PIG_OPT_REPLICATED_MAX_BYTES, maxReplicatedBytes);
+        return new PigServer(Util.getLocalTestMode(), props);
+    }
+
+    private String load(String alias, File file) {
+        return alias + " = load '" + Util.encodeEscape(file.getAbsolutePath())
+                + "' as (k:int, v:chararray);";
+    }
+
+    private List<Tuple> run(PigServer pigServer, String query, List<String> features) throws Exception {
+        Data data = resetData(pigServer);
+        pigServer.setBatchOn();
+        pigServer.registerQuery(query);
+        List<ExecJob> jobs = pigServer.executeBatch();
+        PigStats stats = jobs.get(0).getStatistics();
+        assertTrue(stats.isSuccessful());
+        for (JobStats js : stats.getJobGraph()) {
+            features.add(js.getFeature());
+        }
+        List<Tuple> out = new ArrayList<Tuple>(data.get("out"));
+        Collections.sort(out);
+        return out;
+    }
+
+    private boolean hasFeature(List<String> features, String feature) {
+        for (String f : features) {
+            if (f != null && f.contains(feature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testReplicatedJoin() throws Exception {
+        Assume.assumeTrue("Runtime statistics are only collected in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        // the big input is second, it becomes the fragmented one
+        String query = load("a", small) + load("b", big)
+                + "c = filter b by k < 15;"
+                + "d = join a by k, c by k;"
+                + "store d into 'out' using mock.Storage();";
+
+        List<String> features = new ArrayList<String>();
+        List<Tuple> expected = run(getPigServer("100000000"), query, features);
+        assertEquals(20 * 15 * 100 / 20, expected.size());
+        assertFalse(hasFeature(features, "REPLICATED_JOIN"));
+        assertEquals(1, statsDir.listFiles().length);
+
+        features.clear();
+        PigServer pigServer = getPigServer("100000000");
+        List<Tuple> out = run(pigServer, query, features);
+        assertTrue(hasFeature(features, "REPLICATED_JOIN"));
+        // the order of the fields is kept
+        assertEquals(expected, out);
+
+        RuntimeStatsStore store = RuntimeStatsStore.get(pigServer.getPigContext());
+        assertNotNull(store.getAliasStats("d"));
+        assertEquals(expected.size(), store.getAliasStats("d").getRecords());
+    }
+
+    @Test
+    public void testReorderHashJoin() throws Exception {
+        Assume.assumeTrue("Runtime statistics are only collected in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        // c is the intermediate result of a job
+        String query = load("a", big) + load("b", small) + load("m", medium)
+                + "g = group m by k;"
+                + "c = foreach g generate group as k, COUNT(m) as n;"
+                + "d = join a by k, b by k, c by k;"
+                + "store d into 'out' using mock.Storage();";
+
+        List<String> features = new ArrayList<String>();
+        List<Tuple> expected = run(getPigServer("1"), query, features);
+        assertEquals(100 * 1 * 1 * 20, expected.size());
+
+        features.clear();
+        PigServer pigServer = getPigServer("1");
+        List<Tuple> out = run(pigServer, query, features);
+        assertFalse(hasFeature(features, "REPLICATED_JOIN"));
+        assertEquals(expected, out);
+
+        RuntimeStatsStore store = RuntimeStatsStore.get(pigServer.getPigContext());
+        assertEquals(20, store.getAliasStats("c").getRecords());
+        assertTrue(store.getAliasStats("c").getBytes() > 0);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_OPT_RUNTIME_STATS_DIR, statsDir.getAbsolutePath());
+        PigServer pigServer = new PigServer(Util.getLocalTestMode(), props);
+        resetData(pigServer);
+        pigServer.registerQuery(load("a", small) + "store a into 'out' using mock.Storage();");
+        assertEquals(0, statsDir.listFiles().length);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test;
+
+import static org.apache.pig.builtin.mock.Storage.resetData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.ExecType;
+import org.apache.pig.Mergeable;
+import org.apache.pig.PigServer;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.MapReduceOper;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.plans.MROperPlan;
+import org.apache.pig.builtin.LongSum;
+import org.apache.pig.builtin.mock.Storage.Data;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.PigContext;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestSkewedGroup {
+
+    private static File input;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            // one key has most of the tuples
+            String key = i % 10 < 8 ? "hot" : "k" + (i % 37);
+            lines.add(key + "\t" + i + "\t" + (i % 7 == 0 ? "" : "padding-" + i));
+        }
+        input = Util.createFile(lines.toArray(new String[0]));
+    }
+
+    /**
+     * Counts the tuples of a bag, the counts of the parts of a bag are summed.
+     */
+    public static class MergeableCount extends EvalFunc<Long> implements Mergeable {
+        @Override
+        public Long exec(Tuple input) throws IOException {
+            return ((DataBag) input.get(0)).size();
+        }
+
+        @Override
+        public String getMerge() {
+            return LongSum.class.getName();
+        }
+    }
+
+    private PigServer getPigServer() throws Exception {
+        Properties props = new Properties();
+        // small enough for the hot key to be split across reducers
+        props.setProperty("pig.skewedjoin.reduce.memusage", "0.00005");
+        return new PigServer(Util.getLocalTestMode(), props);
+    }
+
+    private String getQuery(String groupType, String generate) {
+        return "a = load '" + Util.encodeEscape(input.getAbsolutePath())
+                + "' as (k:chararray, v:long, s:chararray);"
+                + "b = group a by k using '" + groupType + "' parallel 4;"
+                + "c = foreach b generate " + generate + ";"
+                + "store c into 'out' using mock.Storage();";
+    }
+
+    private List<Tuple> run(String groupType, String generate) throws Exception {
+        PigServer pigServer = getPigServer();
+        Data data = resetData(pigServer);
+        pigServer.registerQuery(getQuery(groupType, generate));
+        List<Tuple> out = new ArrayList<Tuple>(data.get("out"));
+        Collections.sort(out);
+        return out;
+    }
+
+    private int countSkewedGroupJobs(String generate) throws Exception {
+        PigServer pigServer = getPigServer();
+        PigContext pc = pigServer.getPigContext();
+        resetData(pigServer);
+        MROperPlan mrPlan = Util.buildMRPlan(getQuery("skewed", generate), pc);
+        int count = 0;
+        for (MapReduceOper mro : mrPlan) {
+            if (mro.isSkewedGroup()) {
+                // the partial results are merged by the following job
+                assertEquals(1, mrPlan.getSuccessors(mro).size());
+                assertFalse(mrPlan.getSuccessors(mro).get(0).isSkewedGroup());
+                assertTrue(mro.combinePlan.isEmpty());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void checkSameAsRegular(String generate) throws Exception {
+        List<Tuple> expected = run("regular", generate);
+        assertEquals(38, expected.size());
+        assertEquals(expected, run("skewed", generate));
+    }
+
+    @Test
+    public void testAlgebraic() throws Exception {
+        Assume.assumeTrue("Skewed group is only used in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        String generate = "group, COUNT(a), SUM(a.v), MAX(a.s), COUNT(a.s) + 1L";
+        assertEquals(1, countSkewedGroupJobs(generate));
+        checkSameAsRegular(generate);
+    }
+
+    @Test
+    public void testAlgebraicNoCombiner() throws Exception {
+        Assume.assumeTrue("Skewed group is only used in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        PigServer pigServer = getPigServer();
+        pigServer.getPigContext().getProperties().setProperty("pig.exec.nocombiner", "true");
+        Data data = resetData(pigServer);
+        pigServer.registerQuery(getQuery("skewed", "group, SUM(a.v)"));
+        List<Tuple> out = new ArrayList<Tuple>(data.get("out"));
+        Collections.sort(out);
+        assertEquals(run("regular", "group, SUM(a.v)"), out);
+    }
+
+    @Test
+    public void testMergeable() throws Exception {
+        Assume.assumeTrue("Skewed group is only used in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        String generate = "group, " + MergeableCount.class.getName() + "(a)";
+        assertEquals(1, countSkewedGroupJobs(generate));
+        checkSameAsRegular(generate);
+    }
+
+    @Test
+    public void testMergeableOtherArguments() throws Exception {
+        Assume.assumeTrue("Skewed group is only used in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        // only calls on the grouped bag alone can be merged
+        String generate = "group, " + MergeableCount.class.getName() + "(a, a)";
+        assertEquals(0, countSkewedGroupJobs(generate));
+        checkSameAsRegular(generate);
+        generate = "group, " + MergeableCount.class.getName() + "(a.v)";
+        assertEquals(0, countSkewedGroupJobs(generate));
+        checkSameAsRegular(generate);
+    }
+
+    @Test
+    public void testNotMergeable() throws Exception {
+        Assume.assumeTrue("Skewed group is only used in MR", Util.getLocalTestMode() == ExecType.LOCAL);
+        // the bag itself can not be merged, runs as a regular group
+        String generate = "group, a";
+        assertEquals(0, countSkewedGroupJobs(generate));
+        checkSameAsRegular(generate);
+    }
+}
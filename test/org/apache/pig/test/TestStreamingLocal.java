@@ -20,9 +20,12 @@ package org.apache.pig.test;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 
 import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
 import org.apache.pig.PigServer;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.builtin.PigStorage;
@@ -374,6 +377,69 @@ public class TestStreamingLocal {
         }
     }
 
+    @Test
+    public void testStreamingWithWorkers() throws Exception {
+        int numinput = 2000;
+        String[] inputStrings = new String[numinput];
+        for (int i = 0; i < numinput; i++) {
+            inputStrings[i] = Integer.toString(i);
+        }
+        File input = Util.createInputFile("tmp", "", inputStrings);
+
+        pigServer.getPigContext().getProperties().setProperty(
+                PigConfiguration.PIG_STREAMING_WORKERS, "3");
+        String quote = Util.WINDOWS ? "\"" : "'";
+        pigServer.registerQuery("define CMD `perl -pe " + quote + "s/^/$$\\t/" + quote + "`;");
+        pigServer.registerQuery("IP = load '" +
+                Util.generateURI(input.toString(), pigServer.getPigContext()) +
+                "' as (n:int);");
+        pigServer.registerQuery("OP = stream IP through CMD as (pid:int, n:int);");
+
+        // Every input is processed once, by one of at most 3 processes
+        Set<Integer> pids = new HashSet<Integer>();
+        Set<Integer> outputs = new HashSet<Integer>();
+        Iterator<Tuple> it = pigServer.openIterator("OP");
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            pids.add((Integer) t.get(0));
+            Assert.assertTrue(outputs.add((Integer) t.get(1)));
+        }
+        Assert.assertEquals(numinput, outputs.size());
+        Assert.assertTrue("Unexpected processes: " + pids, pids.size() > 1 && pids.size() <= 3);
+    }
+
+    @Test
+    public void testStreamingWithWorkersAfterOrder() throws Exception {
+        int numinput = 2000;
+        String[] inputStrings = new String[numinput];
+        for (int i = 0; i < numinput; i++) {
+            inputStrings[i] = Integer.toString(numinput - i);
+        }
+        File input = Util.createInputFile("tmp", "", inputStrings);
+
+        pigServer.getPigContext().getProperties().setProperty(
+                PigConfiguration.PIG_STREAMING_WORKERS, "3");
+        String quote = Util.WINDOWS ? "\"" : "'";
+        pigServer.registerQuery("define CMD `perl -pe " + quote + "s/^/$$\\t/" + quote + "`;");
+        pigServer.registerQuery("IP = load '" +
+                Util.generateURI(input.toString(), pigServer.getPigContext()) +
+                "' as (n:int);");
+        pigServer.registerQuery("O = order IP by n;");
+        pigServer.registerQuery("OP = stream O through CMD as (pid:int, n:int);");
+
+        // Sorted input goes through a single process, in order
+        Set<Integer> pids = new HashSet<Integer>();
+        int expected = 1;
+        Iterator<Tuple> it = pigServer.openIterator("OP");
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            pids.add((Integer) t.get(0));
+            Assert.assertEquals(expected++, t.get(1));
+        }
+        Assert.assertEquals(numinput + 1, expected);
+        Assert.assertEquals(1, pids.size());
+    }
+
     @Test
     // Perl script with a syntax error, See PIG-4976
     public void testNegativeScriptSyntaxError() throws IOException {
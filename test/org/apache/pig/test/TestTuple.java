@@ -18,6 +18,9 @@
 package org.apache.pig.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
@@ -36,6 +39,7 @@ import org.apache.pig.data.BinInterSedes;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.DefaultBagFactory;
+import org.apache.pig.data.LazyTextTuple;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.util.TupleFormat;
@@ -207,4 +211,41 @@ public class TestTuple {
         }
     }
 
+    @Test
+    public void testLazyTextTuple() throws Exception {
+        byte[] line = "ab\t\t12\tcd".getBytes();
+        LazyTextTuple t = new LazyTextTuple(line, 2);
+        t.appendField(0, 2);
+        t.appendField(3, 3);
+        t.appendField(4, 6);
+        t.appendField(7, 9);
+        assertEquals(4, t.size());
+        assertTrue(t.isRaw(2));
+        assertEquals(4, t.getFieldStart(2));
+        assertEquals(6, t.getFieldEnd(2));
+
+        // fields are copied out on access, empty fields are null
+        assertEquals(new DataByteArray("ab"), t.get(0));
+        assertFalse(t.isRaw(0));
+        assertNull(t.get(1));
+        t.set(2, 12);
+        assertFalse(t.isRaw(2));
+        t.append("ef");
+
+        Tuple expected = mTupleFactory.newTuple(5);
+        expected.set(0, new DataByteArray("ab"));
+        expected.set(2, 12);
+        expected.set(3, new DataByteArray("cd"));
+        expected.set(4, "ef");
+        assertEquals(expected, t);
+        assertEquals(t, expected);
+        assertEquals(expected.hashCode(), t.hashCode());
+        assertEquals(expected.getAll(), t.getAll());
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        t.write(new DataOutputStream(baos));
+        Tuple t2 = (Tuple) bis.readDatum(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+        assertEquals(expected, t2);
+    }
+
 }
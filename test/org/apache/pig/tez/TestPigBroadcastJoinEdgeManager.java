@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.tez;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.pig.backend.hadoop.executionengine.tez.runtime.PigBroadcastJoinEdgeManager;
+import org.apache.tez.dag.api.EdgeManagerPluginContext;
+import org.apache.tez.runtime.api.events.DataMovementEvent;
+import org.apache.tez.runtime.api.events.InputReadErrorEvent;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestPigBroadcastJoinEdgeManager {
+
+    // Partitions of the source task outputs, as compiled for the shuffle join
+    private static final int NUM_PARTITIONS = 5;
+
+    private static final int NUM_SOURCE_TASKS = 3;
+
+    private PigBroadcastJoinEdgeManager newEdgeManager(boolean broadcast, int numDestinationTasks) {
+        EdgeManagerPluginContext context = Mockito.mock(EdgeManagerPluginContext.class);
+        Mockito.when(context.getUserPayload()).thenReturn(
+                PigBroadcastJoinEdgeManager.getDescriptor(NUM_PARTITIONS, broadcast).getUserPayload());
+        Mockito.when(context.getSourceVertexNumTasks()).thenReturn(NUM_SOURCE_TASKS);
+        Mockito.when(context.getDestinationVertexNumTasks()).thenReturn(numDestinationTasks);
+        PigBroadcastJoinEdgeManager edgeManager = new PigBroadcastJoinEdgeManager(context);
+        edgeManager.initialize();
+        return edgeManager;
+    }
+
+    private Map<Integer, List<Integer>> route(PigBroadcastJoinEdgeManager edgeManager,
+            int sourceTask, int sourceOutput) throws Exception {
+        Map<Integer, List<Integer>> destinations = new HashMap<Integer, List<Integer>>();
+        DataMovementEvent event = DataMovementEvent.create(sourceOutput, ByteBuffer.allocate(0));
+        edgeManager.routeDataMovementEventToDestination(event, sourceTask, sourceOutput, destinations);
+        return destinations;
+    }
+
+    @Test
+    public void testBroadcastEventRouting() throws Exception {
+        // The join runs as many tasks as the other input, 4 here
+        PigBroadcastJoinEdgeManager edgeManager = newEdgeManager(true, 4);
+        assertEquals(NUM_PARTITIONS, edgeManager.getNumSourceTaskPhysicalOutputs(1));
+        assertEquals(NUM_SOURCE_TASKS * NUM_PARTITIONS, edgeManager.getNumDestinationTaskPhysicalInputs(2));
+        assertEquals(4, edgeManager.getNumDestinationConsumerTasks(1));
+
+        Map<Integer, List<Integer>> destinations = route(edgeManager, 2, 3);
+        assertEquals(4, destinations.size());
+        for (int task = 0; task < 4; task++) {
+            assertEquals(Collections.singletonList(13), destinations.get(task));
+        }
+
+        // Every partition of every source task goes to its own input
+        Set<Integer> inputs = new HashSet<Integer>();
+        for (int sourceTask = 0; sourceTask < NUM_SOURCE_TASKS; sourceTask++) {
+            for (int output = 0; output < NUM_PARTITIONS; output++) {
+                int input = route(edgeManager, sourceTask, output).get(0).get(0);
+                assertTrue(inputs.add(input));
+                assertEquals(sourceTask, edgeManager.routeInputErrorEventToSource(
+                        InputReadErrorEvent.create("", input, 0), 0, input));
+            }
+        }
+        assertEquals(NUM_SOURCE_TASKS * NUM_PARTITIONS, inputs.size());
+        for (int input : inputs) {
+            assertTrue(input >= 0 && input < NUM_SOURCE_TASKS * NUM_PARTITIONS);
+        }
+    }
+
+    @Test
+    public void testOneToOneEventRouting() throws Exception {
+        // The join runs as many tasks as this input
+        PigBroadcastJoinEdgeManager edgeManager = newEdgeManager(false, NUM_SOURCE_TASKS);
+        assertEquals(NUM_PARTITIONS, edgeManager.getNumSourceTaskPhysicalOutputs(1));
+        assertEquals(NUM_PARTITIONS, edgeManager.getNumDestinationTaskPhysicalInputs(2));
+        assertEquals(1, edgeManager.getNumDestinationConsumerTasks(1));
+
+        for (int sourceTask = 0; sourceTask < NUM_SOURCE_TASKS; sourceTask++) {
+            for (int output = 0; output < NUM_PARTITIONS; output++) {
+                Map<Integer, List<Integer>> destinations = route(edgeManager, sourceTask, output);
+                assertEquals(1, destinations.size());
+                assertEquals(Collections.singletonList(output), destinations.get(sourceTask));
+            }
+        }
+    }
+
+    @Test
+    public void testSourceTaskFailedRouting() throws Exception {
+        PigBroadcastJoinEdgeManager edgeManager = newEdgeManager(true, 4);
+        Map<Integer, List<Integer>> destinations = new HashMap<Integer, List<Integer>>();
+        edgeManager.routeInputSourceTaskFailedEventToDestination(1, destinations);
+        assertEquals(4, destinations.size());
+        for (int task = 0; task < 4; task++) {
+            assertEquals(Arrays.asList(5, 6, 7, 8, 9), destinations.get(task));
+        }
+
+        edgeManager = newEdgeManager(false, NUM_SOURCE_TASKS);
+        destinations.clear();
+        edgeManager.routeInputSourceTaskFailedEventToDestination(1, destinations);
+        assertEquals(1, destinations.size());
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), destinations.get(1));
+    }
+
+    @Test
+    public void testInputErrorRoutedToSource() throws Exception {
+        PigBroadcastJoinEdgeManager edgeManager = newEdgeManager(true, 4);
+        assertEquals(0, edgeManager.routeInputErrorEventToSource(
+                InputReadErrorEvent.create("", 4, 0), 3, 4));
+        assertEquals(2, edgeManager.routeInputErrorEventToSource(
+                InputReadErrorEvent.create("", 13, 0), 3, 13));
+
+        edgeManager = newEdgeManager(false, NUM_SOURCE_TASKS);
+        assertEquals(2, edgeManager.routeInputErrorEventToSource(
+                InputReadErrorEvent.create("", 4, 0), 2, 4));
+        assertEquals(0, edgeManager.routeInputErrorEventToSource(
+                InputReadErrorEvent.create("", 0, 0), 0, 0));
+    }
+}
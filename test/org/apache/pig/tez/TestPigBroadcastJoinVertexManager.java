@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.tez;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.executionengine.tez.runtime.PigBroadcastJoinEdgeManager;
+import org.apache.pig.backend.hadoop.executionengine.tez.runtime.PigBroadcastJoinVertexManager;
+import org.apache.tez.common.TezUtils;
+import org.apache.tez.dag.api.EdgeProperty;
+import org.apache.tez.dag.api.EdgeProperty.DataMovementType;
+import org.apache.tez.dag.api.EdgeProperty.DataSourceType;
+import org.apache.tez.dag.api.EdgeProperty.SchedulingType;
+import org.apache.tez.dag.api.InputDescriptor;
+import org.apache.tez.dag.api.OutputDescriptor;
+import org.apache.tez.dag.api.VertexLocationHint;
+import org.apache.tez.dag.api.VertexManagerPluginContext;
+import org.apache.tez.dag.api.VertexManagerPluginContext.TaskWithLocationHint;
+import org.apache.tez.dag.api.event.VertexState;
+import org.apache.tez.dag.api.event.VertexStateUpdate;
+import org.apache.tez.runtime.api.OutputStatistics;
+import org.apache.tez.runtime.api.VertexStatistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Join vertex "join" of inputs "big", with 4 tasks, and "small", with 2
+ * tasks. It is compiled with 10 tasks and both inputs can be broadcast.
+ */
+public class TestPigBroadcastJoinVertexManager {
+
+    private static final String JOIN = "join";
+    private static final String BIG = "big";
+    private static final String SMALL = "small";
+    private static final long THRESHOLD = 1000;
+
+    private VertexManagerPluginContext context;
+    private Map<String, Long> outputSizes;
+
+    @Before
+    public void setUp() throws Exception {
+        Configuration conf = new Configuration(false);
+        conf.setLong(PigConfiguration.PIG_TEZ_DYNAMIC_BROADCAST_JOIN_THRESHOLD, THRESHOLD);
+        conf.setStrings(PigBroadcastJoinVertexManager.BROADCAST_INPUTS, BIG, SMALL);
+
+        Map<String, EdgeProperty> edges = new HashMap<String, EdgeProperty>();
+        for (String input : new String[] { BIG, SMALL }) {
+            edges.put(input, EdgeProperty.create(DataMovementType.SCATTER_GATHER,
+                    DataSourceType.PERSISTED, SchedulingType.SEQUENTIAL,
+                    OutputDescriptor.create("output"), InputDescriptor.create("input")));
+        }
+
+        outputSizes = new HashMap<String, Long>();
+        context = Mockito.mock(VertexManagerPluginContext.class);
+        Mockito.when(context.getUserPayload()).thenReturn(TezUtils.createUserPayloadFromConf(conf));
+        Mockito.when(context.getVertexName()).thenReturn(JOIN);
+        Mockito.when(context.getInputVertexEdgeProperties()).thenReturn(edges);
+        Mockito.when(context.getVertexNumTasks(JOIN)).thenReturn(10);
+        Mockito.when(context.getVertexNumTasks(BIG)).thenReturn(4);
+        Mockito.when(context.getVertexNumTasks(SMALL)).thenReturn(2);
+        for (final String input : new String[] { BIG, SMALL }) {
+            OutputStatistics outputStats = Mockito.mock(OutputStatistics.class);
+            Mockito.when(outputStats.getDataSize()).thenAnswer(new Answer<Long>() {
+                @Override
+                public Long answer(InvocationOnMock invocation) {
+                    return outputSizes.get(input);
+                }
+            });
+            VertexStatistics stats = Mockito.mock(VertexStatistics.class);
+            Mockito.when(stats.getOutputStatistics(JOIN)).thenReturn(outputStats);
+            Mockito.when(context.getVertexStatistics(input)).thenReturn(stats);
+        }
+    }
+
+    private PigBroadcastJoinVertexManager newVertexManager() {
+        PigBroadcastJoinVertexManager manager = new PigBroadcastJoinVertexManager(context);
+        manager.initialize();
+        Mockito.verify(context).vertexReconfigurationPlanned();
+        return manager;
+    }
+
+    private void configured(PigBroadcastJoinVertexManager manager, String... inputs) {
+        for (String input : inputs) {
+            manager.onVertexStateUpdated(new VertexStateUpdate(input, VertexState.CONFIGURED));
+        }
+    }
+
+    private void succeeded(PigBroadcastJoinVertexManager manager, String input, long outputSize) {
+        outputSizes.put(input, outputSize);
+        manager.onVertexStateUpdated(new VertexStateUpdate(input, VertexState.SUCCEEDED));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<TaskWithLocationHint> getScheduledTasks() {
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(context, Mockito.atLeast(0)).scheduleVertexTasks(captor.capture());
+        List<TaskWithLocationHint> tasks = new ArrayList<TaskWithLocationHint>();
+        for (List<TaskWithLocationHint> scheduled : captor.getAllValues()) {
+            tasks.addAll(scheduled);
+        }
+        return tasks;
+    }
+
+    private void assertShuffleJoinTasks(List<TaskWithLocationHint> tasks) {
+        assertEquals(10, tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            assertEquals(i, tasks.get(i).getTaskIndex().intValue());
+            assertNull(tasks.get(i).getTaskLocationHint());
+        }
+    }
+
+    // Partitions and broadcast flag of the edge
+    private static void assertEdge(EdgeProperty edge, int numPartitions, boolean broadcast) {
+        ByteBuffer payload = edge.getEdgeManagerDescriptor().getUserPayload().getPayload();
+        assertEquals(PigBroadcastJoinEdgeManager.class.getName(),
+                edge.getEdgeManagerDescriptor().getClassName());
+        assertEquals(numPartitions, payload.getInt(0));
+        assertEquals(broadcast ? 1 : 0, payload.get(4));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSmallInputFinishesFirst() throws Exception {
+        PigBroadcastJoinVertexManager manager = newVertexManager();
+        // Started before it is configured, with a task of the big input done
+        manager.onVertexStarted(Collections.singletonMap(BIG, Collections.singletonList(2)));
+        configured(manager, BIG, SMALL);
+        Mockito.verify(context, Mockito.never()).doneReconfiguringVertex();
+
+        succeeded(manager, SMALL, THRESHOLD);
+        ArgumentCaptor<Map> edges = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(context).reconfigureVertex(Mockito.eq(4), (VertexLocationHint) Mockito.isNull(),
+                edges.capture());
+        assertEdge((EdgeProperty) edges.getValue().get(SMALL), 10, true);
+        assertEdge((EdgeProperty) edges.getValue().get(BIG), 10, false);
+        Mockito.verify(context).doneReconfiguringVertex();
+
+        // Join task i runs next to task i of the big input once it is done
+        List<TaskWithLocationHint> tasks = getScheduledTasks();
+        assertEquals(1, tasks.size());
+        assertEquals(2, tasks.get(0).getTaskIndex().intValue());
+        assertEquals(BIG, tasks.get(0).getTaskLocationHint().getAffinitizedTask().getVertexName());
+        assertEquals(2, tasks.get(0).getTaskLocationHint().getAffinitizedTask().getTaskIndex());
+
+        manager.onSourceTaskCompleted(SMALL, 0);
+        manager.onSourceTaskCompleted(BIG, 0);
+        manager.onSourceTaskCompleted(BIG, 2);
+        tasks = getScheduledTasks();
+        assertEquals(2, tasks.size());
+        assertEquals(0, tasks.get(1).getTaskIndex().intValue());
+        assertEquals(0, tasks.get(1).getTaskLocationHint().getAffinitizedTask().getTaskIndex());
+
+        manager.onSourceTaskCompleted(BIG, 1);
+        manager.onSourceTaskCompleted(BIG, 3);
+        assertEquals(4, getScheduledTasks().size());
+
+        // The big input finishing does not change the plan
+        succeeded(manager, BIG, 10 * THRESHOLD);
+        Mockito.verify(context).doneReconfiguringVertex();
+        Mockito.verify(context).reconfigureVertex(Mockito.anyInt(), Mockito.any(VertexLocationHint.class),
+                Mockito.anyMap());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAllCandidatesTooBig() throws Exception {
+        PigBroadcastJoinVertexManager manager = newVertexManager();
+        configured(manager, BIG, SMALL);
+        succeeded(manager, SMALL, THRESHOLD + 1);
+        // Still waiting for the other input that can be broadcast
+        Mockito.verify(context, Mockito.never()).doneReconfiguringVertex();
+
+        succeeded(manager, BIG, 10 * THRESHOLD);
+        Mockito.verify(context).doneReconfiguringVertex();
+        Mockito.verify(context, Mockito.never()).reconfigureVertex(Mockito.anyInt(),
+                Mockito.any(VertexLocationHint.class), Mockito.anyMap());
+        // Nothing is scheduled until the vertex has started
+        assertEquals(0, getScheduledTasks().size());
+
+        manager.onVertexStarted(null);
+        assertShuffleJoinTasks(getScheduledTasks());
+        manager.onSourceTaskCompleted(BIG, 1);
+        assertShuffleJoinTasks(getScheduledTasks());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStreamInputWithoutTasks() throws Exception {
+        Mockito.when(context.getVertexNumTasks(BIG)).thenReturn(0);
+        PigBroadcastJoinVertexManager manager = newVertexManager();
+        manager.onVertexStarted(null);
+        succeeded(manager, SMALL, 1);
+        // Waits for the inputs to be configured
+        Mockito.verify(context, Mockito.never()).doneReconfiguringVertex();
+
+        configured(manager, BIG, SMALL);
+        Mockito.verify(context).doneReconfiguringVertex();
+        Mockito.verify(context, Mockito.never()).reconfigureVertex(Mockito.anyInt(),
+                Mockito.any(VertexLocationHint.class), Mockito.anyMap());
+        assertShuffleJoinTasks(getScheduledTasks());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.tez;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.CompactReplicateTable;
+import org.apache.pig.backend.hadoop.executionengine.tez.runtime.SharedReplicateTables;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.util.MemoryBudgetManager;
+import org.apache.pig.impl.util.SpillableMemoryManager;
+import org.junit.Test;
+
+public class TestSharedReplicateTables {
+
+    private static List<Map<? extends Object, ? extends List<Tuple>>> createTables() throws Exception {
+        CompactReplicateTable table = new CompactReplicateTable();
+        for (int i = 0; i < 100; i++) {
+            Tuple t = TupleFactory.getInstance().newTuple(2);
+            t.set(0, i);
+            t.set(1, "value" + i);
+            table.add(i % 10, t);
+        }
+        List<Map<? extends Object, ? extends List<Tuple>>> replicates =
+                new ArrayList<Map<? extends Object, ? extends List<Tuple>>>();
+        replicates.add(null);
+        replicates.add(table);
+        return replicates;
+    }
+
+    @Test
+    public void testEvictOnlyWhenReleased() throws Exception {
+        List<Map<? extends Object, ? extends List<Tuple>>> replicates = createTables();
+        SharedReplicateTables shared = new SharedReplicateTables("test", replicates, true);
+        assertTrue(shared.getMemorySize() > 0);
+
+        // Held by two joins, cannot be dropped
+        assertSame(replicates, shared.acquire());
+        assertSame(replicates, shared.acquire());
+        assertEquals(0, shared.getMemorySize());
+        assertEquals(0, shared.spill());
+        shared.release();
+        assertEquals(0, shared.spill());
+        assertFalse(shared.isEvicted());
+
+        shared.release();
+        long size = shared.getMemorySize();
+        assertTrue(size > 0);
+        assertEquals(size, shared.spill());
+        assertTrue(shared.isEvicted());
+        assertEquals(0, shared.getMemorySize());
+        assertNull(shared.acquire());
+    }
+
+    @Test
+    public void testNotEvictable() throws Exception {
+        SharedReplicateTables shared = new SharedReplicateTables("test", createTables(), false);
+        assertEquals(0, shared.getMemorySize());
+        assertEquals(0, shared.spill());
+        assertFalse(shared.isEvicted());
+    }
+
+    @Test
+    public void testRegisterOncePerTask() throws Exception {
+        Configuration conf = new Configuration(false);
+        conf.set(PigConfiguration.PIG_SPILL_MEMORY_MANAGER, MemoryBudgetManager.BUDGET);
+        conf.setLong(PigConfiguration.PIG_SPILL_MEMORY_BUDGET_SIZE, Long.MAX_VALUE);
+        SpillableMemoryManager.staticDataCleanup();
+        MemoryBudgetManager manager = MemoryBudgetManager.getInstance();
+        manager.configure(conf);
+        try {
+            SharedReplicateTables shared = new SharedReplicateTables("test", createTables(), true);
+            long size = shared.getEstimatedSize();
+            assertTrue(size > 0);
+
+            // Acquired by two joins in the same task
+            shared.register();
+            shared.register();
+            assertEquals(size, manager.getUsage(MemoryBudgetManager.REPLICATED));
+
+            // Registered again by the next task
+            SpillableMemoryManager.staticDataCleanup();
+            assertEquals(0, manager.getUsage(MemoryBudgetManager.REPLICATED));
+            shared.register();
+            assertEquals(size, manager.getUsage(MemoryBudgetManager.REPLICATED));
+        } finally {
+            SpillableMemoryManager.staticDataCleanup();
+            manager.configure(new Configuration(false));
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -46,14 +47,21 @@ import org.apache.pig.PigServer;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.InputSizeReducerEstimator;
 import org.apache.pig.backend.hadoop.executionengine.physicalLayer.plans.PhysicalPlan;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.relationalOperators.POLoad;
+import org.apache.pig.backend.hadoop.executionengine.physicalLayer.util.PlanHelper;
 import org.apache.pig.backend.hadoop.executionengine.tez.TezJobCompiler;
 import org.apache.pig.backend.hadoop.executionengine.tez.TezLauncher;
 import org.apache.pig.backend.hadoop.executionengine.tez.TezLocalExecType;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.TezCompiler;
+import org.apache.pig.backend.hadoop.executionengine.tez.plan.TezEdgeDescriptor;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.TezOperPlan;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.TezOperator;
 import org.apache.pig.backend.hadoop.executionengine.tez.plan.TezPlanContainerNode;
+import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POReservoirSampleTez;
+import org.apache.pig.backend.hadoop.executionengine.tez.plan.operator.POSampleShuffleTezLoad;
+import org.apache.pig.backend.hadoop.executionengine.tez.runtime.PigBroadcastJoinVertexManager;
 import org.apache.pig.backend.hadoop.executionengine.tez.runtime.PigGraceShuffleVertexManager;
+import org.apache.pig.backend.hadoop.executionengine.tez.runtime.PigSampleAggregationVertexManager;
 import org.apache.pig.builtin.PigStorage;
 import org.apache.pig.impl.PigContext;
 import org.apache.pig.impl.plan.OperatorKey;
@@ -65,9 +73,11 @@ import org.apache.pig.tools.pigstats.ScriptState;
 import org.apache.pig.tools.pigstats.tez.TezScriptState;
 import org.apache.tez.common.TezUtils;
 import org.apache.tez.dag.api.DAG;
+import org.apache.tez.dag.api.EdgeProperty.DataMovementType;
 import org.apache.tez.dag.api.Vertex;
 import org.apache.tez.dag.api.VertexManagerPluginDescriptor;
 import org.apache.tez.dag.library.vertexmanager.ShuffleVertexManager;
+import org.apache.tez.runtime.library.input.UnorderedKVInput;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -87,7 +97,9 @@ import org.junit.runner.RunWith;
     "testTezParallelismEstimatorHashJoin",
     "testTezParallelismEstimatorSplitBranch",
     "testTezParallelismDefaultParallelism",
-    "testShuffleVertexManagerConfig"
+    "testShuffleVertexManagerConfig",
+    "testBroadcastJoinVertexManagerConfig",
+    "testSampleAggregationVertexManagerConfig"
 })
 public class TestTezJobControlCompiler {
     private static PigContext pc;
@@ -358,13 +370,117 @@ public class TestTezJobControlCompiler {
         }
     }
 
+    @Test
+    public void testBroadcastJoinVertexManagerConfig() throws Exception{
+        pc.getProperties().setProperty(PigConfiguration.PIG_TEZ_DYNAMIC_BROADCAST_JOIN, "true");
+        pc.getProperties().setProperty(PigConfiguration.PIG_TEZ_DYNAMIC_BROADCAST_JOIN_THRESHOLD, "1000");
+
+        try {
+            String query = "a = load '10' using " + ArbitarySplitsLoader.class.getName()
+                    + "() as (name:chararray, age:int, gpa:double);"
+                    + "b = load '5' using " + ArbitarySplitsLoader.class.getName()
+                    + "() as (name:chararray, course:chararray);"
+                    + "c = join a by name, b by name;"
+                    + "store c into 'output';";
+
+            VertexManagerPluginDescriptor vmPlugin = getLeafVertexVMPlugin(query);
+            Configuration vmPluginConf = TezUtils.createConfFromUserPayload(vmPlugin.getUserPayload());
+            assertEquals(PigBroadcastJoinVertexManager.class.getName(), vmPlugin.getClassName());
+            assertEquals("1000", vmPluginConf.get(PigConfiguration.PIG_TEZ_DYNAMIC_BROADCAST_JOIN_THRESHOLD));
+            // Either input of an inner join can be broadcast
+            assertEquals(Arrays.asList("10", "5"), getBroadcastJoinInputs(query));
+
+            // Only the input which is not preserved by an outer join
+            assertEquals(Collections.singletonList("5"),
+                    getBroadcastJoinInputs(query.replace("by name, b", "by name left outer, b")));
+            assertEquals(Collections.singletonList("10"),
+                    getBroadcastJoinInputs(query.replace("by name, b", "by name right outer, b")));
+
+            vmPlugin = getLeafVertexVMPlugin(query.replace("by name, b", "by name full outer, b"));
+            assertEquals(ShuffleVertexManager.class.getName(), vmPlugin.getClassName());
+        } finally {
+            pc.getProperties().remove(PigConfiguration.PIG_TEZ_DYNAMIC_BROADCAST_JOIN);
+            pc.getProperties().remove(PigConfiguration.PIG_TEZ_DYNAMIC_BROADCAST_JOIN_THRESHOLD);
+        }
+    }
+
+    @Test
+    public void testSampleAggregationVertexManagerConfig() throws Exception{
+        String query = "a = load '10' using " + ArbitarySplitsLoader.class.getName()
+                + "() as (name:chararray, age:int, gpa:double);"
+                + "b = order a by age;"
+                + "store b into 'output';";
+
+        Pair<TezOperPlan, DAG> compiledPlan = compile(query);
+        VertexManagerPluginDescriptor vmPlugin = getVertexVMPlugin(compiledPlan, getSampleAggregationOper(compiledPlan.first));
+        assertEquals(ShuffleVertexManager.class.getName(), vmPlugin.getClassName());
+
+        pc.getProperties().setProperty(PigConfiguration.PIG_TEZ_ORDERBY_SAMPLED_TASK_FRACTION, "0.25");
+        try {
+            compiledPlan = compile(query);
+            TezOperator sampleAggregationOper = getSampleAggregationOper(compiledPlan.first);
+            vmPlugin = getVertexVMPlugin(compiledPlan, sampleAggregationOper);
+            assertEquals(PigSampleAggregationVertexManager.class.getName(), vmPlugin.getClassName());
+
+            TezOperator samplerOper = compiledPlan.first.getPredecessors(sampleAggregationOper).get(0);
+            List<POReservoirSampleTez> samples = PlanHelper.getPhysicalOperators(samplerOper.plan, POReservoirSampleTez.class);
+            assertEquals(1, samples.size());
+            assertEquals(0.25f, samples.get(0).getSampledTaskFraction(), 0);
+
+            // The samples of every task are shuffled, unordered
+            TezEdgeDescriptor sampleEdge = sampleAggregationOper.inEdges.get(samplerOper.getOperatorKey());
+            assertEquals(DataMovementType.SCATTER_GATHER, sampleEdge.dataMovementType);
+            assertEquals(UnorderedKVInput.class.getName(), sampleEdge.inputClassName);
+            List<POSampleShuffleTezLoad> loads = PlanHelper.getPhysicalOperators(
+                    sampleAggregationOper.plan, POSampleShuffleTezLoad.class);
+            assertEquals(1, loads.size());
+            assertEquals(0.25f, loads.get(0).getSampledTaskFraction(), 0);
+        } finally {
+            pc.getProperties().remove(PigConfiguration.PIG_TEZ_ORDERBY_SAMPLED_TASK_FRACTION);
+        }
+
+        assertEquals(3, POReservoirSampleTez.getNumSampledTasks(10, 0.25f));
+        assertEquals(1, POReservoirSampleTez.getNumSampledTasks(2, 0.25f));
+        assertEquals(10, POReservoirSampleTez.getNumSampledTasks(10, 1));
+    }
+
+    private TezOperator getSampleAggregationOper(TezOperPlan tezPlan) {
+        for (TezOperator tezOp : tezPlan) {
+            if (tezOp.isSampleAggregation()) {
+                return tezOp;
+            }
+        }
+        return null;
+    }
+
+    // Files loaded by the inputs of the join which can be broadcast
+    private List<String> getBroadcastJoinInputs(String query) throws Exception {
+        Pair<TezOperPlan, DAG> compiledPlan = compile(query);
+        VertexManagerPluginDescriptor vmPlugin = getVertexVMPlugin(compiledPlan,
+                compiledPlan.first.getLeaves().get(0));
+        assertEquals(PigBroadcastJoinVertexManager.class.getName(), vmPlugin.getClassName());
+        Configuration vmPluginConf = TezUtils.createConfFromUserPayload(vmPlugin.getUserPayload());
+        List<String> files = new ArrayList<String>();
+        for (String input : vmPluginConf.getStrings(PigBroadcastJoinVertexManager.BROADCAST_INPUTS)) {
+            TezOperator tezOp = compiledPlan.first.getOperator(OperatorKey.fromString(input));
+            POLoad load = PlanHelper.getPhysicalOperators(tezOp.plan, POLoad.class).get(0);
+            files.add(new Path(load.getLFile().getFileName()).getName());
+        }
+        Collections.sort(files);
+        return files;
+    }
+
     private VertexManagerPluginDescriptor getLeafVertexVMPlugin(String query) throws Exception {
         Pair<TezOperPlan, DAG> compiledPlan = compile(query);
-        TezOperator leafOper = compiledPlan.first.getLeaves().get(0);
-        Vertex leafVertex = compiledPlan.second.getVertex(leafOper.getOperatorKey().toString());
+        return getVertexVMPlugin(compiledPlan, compiledPlan.first.getLeaves().get(0));
+    }
+
+    private VertexManagerPluginDescriptor getVertexVMPlugin(Pair<TezOperPlan, DAG> compiledPlan,
+            TezOperator tezOp) throws Exception {
+        Vertex vertex = compiledPlan.second.getVertex(tezOp.getOperatorKey().toString());
         Field vmPluginField = Vertex.class.getDeclaredField("vertexManagerPlugin");
         vmPluginField.setAccessible(true);
-        VertexManagerPluginDescriptor vmPlugin = (VertexManagerPluginDescriptor) vmPluginField.get(leafVertex);
+        VertexManagerPluginDescriptor vmPlugin = (VertexManagerPluginDescriptor) vmPluginField.get(vertex);
         return vmPlugin;
     }
 
@@ -21,8 +21,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
@@ -123,6 +129,53 @@ public class TestTezJobExecution {
     }
 
 
+    @Test
+    public void testOrderBySampledTaskFraction() throws IOException {
+        // One sampling task per file
+        String input = TEST_DIR + Path.SEPARATOR + "orderby-input";
+        new File(input).mkdirs();
+        List<Long> expected = new ArrayList<Long>();
+        for (int file = 0; file < 4; file++) {
+            String[] lines = new String[250];
+            for (int i = 0; i < lines.length; i++) {
+                // Past the int range, to check long sort keys
+                long n = (i * 4 + file) * 7919 % 1000 + (1L << 40);
+                lines[i] = Long.toString(n);
+                expected.add(n);
+            }
+            Util.createLocalInputFile(input + Path.SEPARATOR + "part-" + file, lines);
+        }
+        Collections.sort(expected);
+
+        Properties props = pigServer.getPigContext().getProperties();
+        props.setProperty(PigConfiguration.PIG_TEZ_ORDERBY_SAMPLED_TASK_FRACTION, "0.5");
+        props.setProperty(PigConfiguration.PIG_NO_SPLIT_COMBINATION, "true");
+        props.setProperty(PigConfiguration.PIG_OPT_FETCH, "false");
+        for (String type : new String[] { "long", "chararray" }) {
+            String output = TEST_DIR + Path.SEPARATOR + "orderby-output-" + type;
+            String query = "A = LOAD '" + input + "' AS (n:" + type + ");"
+                    + "B = ORDER A BY n PARALLEL 3;"
+                    + "STORE B into '" + output + "';";
+            pigServer.registerQuery(query);
+
+            File[] parts = new File(output).listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.startsWith("part-");
+                }
+            });
+            assertEquals(3, parts.length);
+            Arrays.sort(parts);
+            List<Long> actual = new ArrayList<Long>();
+            for (File part : parts) {
+                for (String line : FileUtils.readLines(part)) {
+                    actual.add(Long.valueOf(line));
+                }
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
     private static class TestNotificationListener implements PigProgressNotificationListener {
 
         private Set<String> jobsStarted = new HashSet<String>();
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.joda.time.DateTime;
+
+/**
+ * Generates the random values the benchmarks run on. A fixed seed is used so
+ * the input is the same from one run to the next.
+ */
+public class BenchmarkData {
+
+    private static final long SEED = 20180101L;
+
+    private final Random random = new Random(SEED);
+
+    /**
+     * @return a random value of the given type
+     */
+    public Object value(byte type) {
+        switch (type) {
+        case DataType.BOOLEAN:
+            return random.nextBoolean();
+        case DataType.INTEGER:
+            return random.nextInt();
+        case DataType.LONG:
+            return random.nextLong();
+        case DataType.FLOAT:
+            return random.nextFloat() * 1000;
+        case DataType.DOUBLE:
+            return random.nextDouble() * 1000;
+        case DataType.DATETIME:
+            return new DateTime((random.nextInt() & 0x7fffffffL) * 1000);
+        case DataType.CHARARRAY:
+            return string(4 + random.nextInt(28));
+        case DataType.BYTEARRAY:
+            return new DataByteArray(string(4 + random.nextInt(28)));
+        case DataType.BIGINTEGER:
+            return new BigInteger(96, random);
+        case DataType.BIGDECIMAL:
+            return new BigDecimal(new BigInteger(96, random), 4);
+        default:
+            throw new IllegalArgumentException("Unsupported type " + DataType.findTypeName(type));
+        }
+    }
+
+    /**
+     * @return a random ascii string of the given length
+     */
+    public String string(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return a tuple with a random value of each of the given types
+     */
+    public Tuple tuple(byte... types) throws ExecException {
+        Tuple t = TupleFactory.getInstance().newTuple(types.length);
+        for (int i = 0; i < types.length; i++) {
+            t.set(i, value(types[i]));
+        }
+        return t;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adding tuples to a bag, iterating over it, and spilling it to disk and
+ * reading it back, for the different bag implementations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataBagBenchmark {
+
+    @Param({"default", "sorted", "distinct", "offheap"})
+    public String bagType;
+
+    @Param({"10000"})
+    public int tuples;
+
+    private Tuple[] input;
+
+    private DataBag filled;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkData data = new BenchmarkData();
+        input = new Tuple[tuples];
+        for (int i = 0; i < tuples; i++) {
+            input[i] = data.tuple(DataType.INTEGER, DataType.LONG, DataType.CHARARRAY,
+                    DataType.DOUBLE);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        filled = newBag();
+        for (Tuple t : input) {
+            filled.add(t);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() {
+        filled.clear();
+    }
+
+    private DataBag newBag() {
+        BagFactory bf = BagFactory.getInstance();
+        if ("default".equals(bagType)) {
+            return bf.newDefaultBag();
+        } else if ("sorted".equals(bagType)) {
+            return bf.newSortedBag(null);
+        } else if ("distinct".equals(bagType)) {
+            return bf.newDistinctBag();
+        } else if ("offheap".equals(bagType)) {
+            return bf.newOffHeapBag();
+        }
+        throw new IllegalArgumentException("Unknown bag type " + bagType);
+    }
+
+    @Benchmark
+    public long add() {
+        DataBag bag = newBag();
+        for (Tuple t : input) {
+            bag.add(t);
+        }
+        long size = bag.size();
+        bag.clear();
+        return size;
+    }
+
+    @Benchmark
+    public long iterate() {
+        long n = 0;
+        Iterator<Tuple> it = filled.iterator();
+        while (it.hasNext()) {
+            n += it.next().size();
+        }
+        return n;
+    }
+
+    /**
+     * Add the tuples, spill them all to disk and read them back.
+     */
+    @Benchmark
+    public long spillAndIterate() {
+        DataBag bag = newBag();
+        for (Tuple t : input) {
+            bag.add(t);
+        }
+        bag.spill();
+        long n = 0;
+        Iterator<Tuple> it = bag.iterator();
+        while (it.hasNext()) {
+            n += it.next().size();
+        }
+        bag.clear();
+        return n;
+    }
+}
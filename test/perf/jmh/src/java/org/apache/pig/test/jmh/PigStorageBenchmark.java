@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.pig.LoadPushDown.RequiredField;
+import org.apache.pig.LoadPushDown.RequiredFieldList;
+import org.apache.pig.builtin.PigStorage;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Splitting text lines into tuples with {@link PigStorage#getNext()}. The
+ * lines are served from memory so only the parsing is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PigStorageBenchmark {
+
+    private static final int LINES = 1000;
+
+    @Param({"5", "20"})
+    public int columns;
+
+    /**
+     * Whether only the first two columns are requested, as after projection
+     * push down.
+     */
+    @Param({"false", "true"})
+    public boolean projected;
+
+    private Text[] lines;
+
+    private PigStorage storage;
+
+    private LineReader reader;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkData data = new BenchmarkData();
+        lines = new Text[LINES];
+        for (int i = 0; i < LINES; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < columns; j++) {
+                if (j > 0) {
+                    sb.append('\t');
+                }
+                switch (j % 3) {
+                case 0:
+                    sb.append(data.value(DataType.INTEGER));
+                    break;
+                case 1:
+                    sb.append(data.value(DataType.DOUBLE));
+                    break;
+                default:
+                    sb.append(data.value(DataType.CHARARRAY));
+                }
+            }
+            lines[i] = new Text(sb.toString());
+        }
+
+        storage = new PigStorage();
+        storage.setUDFContextSignature("jmh-" + columns + "-" + projected);
+        if (projected) {
+            RequiredFieldList fields = new RequiredFieldList();
+            fields.add(new RequiredField(null, 0, null, DataType.BYTEARRAY));
+            fields.add(new RequiredField(null, 1, null, DataType.BYTEARRAY));
+            storage.pushProjection(fields);
+        }
+        reader = new LineReader(lines);
+        storage.prepareToRead(reader, null);
+    }
+
+    @Benchmark
+    public int parse() throws IOException {
+        reader.reset();
+        int fields = 0;
+        Tuple t;
+        while ((t = storage.getNext()) != null) {
+            fields += t.size();
+        }
+        return fields;
+    }
+
+    /**
+     * Serves the same lines again on each call to {@link #reset()}.
+     */
+    private static class LineReader extends RecordReader<LongWritable, Text> {
+
+        private final Text[] lines;
+
+        private final LongWritable key = new LongWritable();
+
+        private int pos;
+
+        LineReader(Text[] lines) {
+            this.lines = lines;
+        }
+
+        void reset() {
+            pos = -1;
+        }
+
+        @Override
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+        }
+
+        @Override
+        public boolean nextKeyValue() {
+            return ++pos < lines.length;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            key.set(pos);
+            return key;
+        }
+
+        @Override
+        public Text getCurrentValue() {
+            return lines[pos];
+        }
+
+        @Override
+        public float getProgress() {
+            return (float) pos / lines.length;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.pig.backend.hadoop.HDataType;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigBigDecimalRawComparator;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigBigIntegerRawComparator;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigBooleanRawComparator;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigBytesRawComparator;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigDateTimeRawComparator;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigDoubleRawComparator;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigFloatRawComparator;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigIntRawComparator;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigLongRawComparator;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigTextRawComparator;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigTupleSortComparator;
+import org.apache.pig.data.DataType;
+import org.apache.pig.impl.io.PigNullableWritable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the raw comparators used to sort map output, for each key
+ * type. The keys are serialized the way they are in the map output and
+ * compared pairwise on their bytes. The same keys are also compared as
+ * objects with {@link DataType#compare}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RawComparatorBenchmark {
+
+    private static final int KEYS = 1024;
+
+    @Param({"boolean", "int", "long", "float", "double", "datetime", "chararray",
+        "bytearray", "biginteger", "bigdecimal", "tuple"})
+    public String type;
+
+    /**
+     * Percentage of null keys.
+     */
+    @Param({"0", "10"})
+    public int nullPercent;
+
+    private byte keyType;
+
+    private WritableComparator comparator;
+
+    private Object[] keys;
+
+    private byte[] buf;
+
+    private int[] offsets;
+
+    private int[] lengths;
+
+    @Setup
+    public void setup() throws IOException {
+        keyType = DataType.findTypeByName(type);
+        comparator = comparatorFor(keyType);
+        ((Configurable) comparator).setConf(new Configuration(false));
+
+        BenchmarkData data = new BenchmarkData();
+        DataOutputBuffer out = new DataOutputBuffer();
+        keys = new Object[KEYS];
+        offsets = new int[KEYS];
+        lengths = new int[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            Object key = null;
+            if (data.getRandom().nextInt(100) >= nullPercent) {
+                key = keyType == DataType.TUPLE
+                        ? data.tuple(DataType.INTEGER, DataType.CHARARRAY, DataType.LONG)
+                        : data.value(keyType);
+            }
+            keys[i] = key;
+            PigNullableWritable w = HDataType.getWritableComparableTypes(key, keyType);
+            offsets[i] = out.getLength();
+            w.write(out);
+            lengths[i] = out.getLength() - offsets[i];
+        }
+        buf = out.getData();
+    }
+
+    private static WritableComparator comparatorFor(byte keyType) {
+        switch (keyType) {
+        case DataType.BOOLEAN:
+            return new PigBooleanRawComparator();
+        case DataType.INTEGER:
+            return new PigIntRawComparator();
+        case DataType.LONG:
+            return new PigLongRawComparator();
+        case DataType.FLOAT:
+            return new PigFloatRawComparator();
+        case DataType.DOUBLE:
+            return new PigDoubleRawComparator();
+        case DataType.DATETIME:
+            return new PigDateTimeRawComparator();
+        case DataType.CHARARRAY:
+            return new PigTextRawComparator();
+        case DataType.BYTEARRAY:
+            return new PigBytesRawComparator();
+        case DataType.BIGINTEGER:
+            return new PigBigIntegerRawComparator();
+        case DataType.BIGDECIMAL:
+            return new PigBigDecimalRawComparator();
+        case DataType.TUPLE:
+            return new PigTupleSortComparator();
+        default:
+            throw new IllegalArgumentException("No raw comparator for " + DataType.findTypeName(keyType));
+        }
+    }
+
+    @Benchmark
+    public int compare() {
+        int sum = 0;
+        for (int i = 1; i < KEYS; i++) {
+            sum += comparator.compare(buf, offsets[i - 1], lengths[i - 1], buf, offsets[i], lengths[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int compareObjects() {
+        int sum = 0;
+        for (int i = 1; i < KEYS; i++) {
+            sum += DataType.compare(keys[i - 1], keys[i], keyType, keyType);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.ExecType;
+import org.apache.pig.PigConfiguration;
+import org.apache.pig.backend.hadoop.datastorage.ConfigurationUtil;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.SchemaTuple;
+import org.apache.pig.data.SchemaTupleBackend;
+import org.apache.pig.data.SchemaTupleClassGenerator.GenContext;
+import org.apache.pig.data.SchemaTupleFactory;
+import org.apache.pig.data.SchemaTupleFrontend;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.PigContext;
+import org.apache.pig.impl.logicalLayer.schema.Schema;
+import org.apache.pig.impl.util.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Field access on a {@link org.apache.pig.data.DefaultTuple} compared to a
+ * generated {@link SchemaTuple} of the same schema. The schema tuple class is
+ * generated and loaded the way it is for a job, through
+ * {@link SchemaTupleFrontend} and {@link SchemaTupleBackend}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaTupleBenchmark {
+
+    private static final String SCHEMA = "a:int, b:long, c:double, d:chararray, e:int, f:long";
+
+    private static final int TUPLES = 1000;
+
+    private Tuple[] defaultTuples;
+
+    private SchemaTuple<?>[] schemaTuples;
+
+    private SchemaTupleFactory schemaTupleFactory;
+
+    @Setup
+    public void setup() throws IOException {
+        Properties props = new Properties();
+        props.setProperty(PigConfiguration.PIG_SCHEMA_TUPLE_ENABLED, "true");
+        Configuration conf = ConfigurationUtil.toConfiguration(props);
+        PigContext pigContext = new PigContext(ExecType.LOCAL, props);
+
+        Schema schema = Utils.getSchemaFromString(SCHEMA);
+        SchemaTupleFrontend.registerToGenerateIfPossible(schema, false, GenContext.UDF);
+        SchemaTupleFrontend.copyAllGeneratedToDistributedCache(pigContext, conf);
+        SchemaTupleBackend.initialize(conf, pigContext);
+        schemaTupleFactory = SchemaTupleFactory.getInstance(schema, false, GenContext.UDF);
+        if (schemaTupleFactory == null) {
+            throw new IllegalStateException("Unable to generate a SchemaTuple for " + SCHEMA);
+        }
+
+        BenchmarkData data = new BenchmarkData();
+        defaultTuples = new Tuple[TUPLES];
+        schemaTuples = new SchemaTuple<?>[TUPLES];
+        for (int i = 0; i < TUPLES; i++) {
+            defaultTuples[i] = data.tuple(DataType.INTEGER, DataType.LONG, DataType.DOUBLE,
+                    DataType.CHARARRAY, DataType.INTEGER, DataType.LONG);
+            schemaTuples[i] = schemaTupleFactory.newTuple();
+            schemaTuples[i].set(defaultTuples[i]);
+        }
+    }
+
+    @Benchmark
+    public double defaultTupleGet() throws IOException {
+        double sum = 0;
+        for (Tuple t : defaultTuples) {
+            sum += (Integer) t.get(0) + (Long) t.get(1) + (Double) t.get(2)
+                    + ((String) t.get(3)).length() + (Integer) t.get(4) + (Long) t.get(5);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double schemaTupleGet() throws IOException {
+        double sum = 0;
+        for (Tuple t : schemaTuples) {
+            sum += (Integer) t.get(0) + (Long) t.get(1) + (Double) t.get(2)
+                    + ((String) t.get(3)).length() + (Integer) t.get(4) + (Long) t.get(5);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double schemaTupleTypedGet() throws IOException {
+        double sum = 0;
+        for (SchemaTuple<?> t : schemaTuples) {
+            sum += t.getInt(0) + t.getLong(1) + t.getDouble(2)
+                    + t.getString(3).length() + t.getInt(4) + t.getLong(5);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Tuple defaultTupleCreate() throws IOException {
+        Tuple last = null;
+        TupleFactory tf = TupleFactory.getInstance();
+        for (Tuple src : defaultTuples) {
+            last = tf.newTuple(6);
+            for (int i = 0; i < 6; i++) {
+                last.set(i, src.get(i));
+            }
+        }
+        return last;
+    }
+
+    @Benchmark
+    public Tuple schemaTupleCreate() throws IOException {
+        Tuple last = null;
+        for (Tuple src : defaultTuples) {
+            last = schemaTupleFactory.newTuple();
+            for (int i = 0; i < 6; i++) {
+                last.set(i, src.get(i));
+            }
+        }
+        return last;
+    }
+}
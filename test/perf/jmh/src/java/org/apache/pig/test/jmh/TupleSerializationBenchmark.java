@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.BinInterSedes;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization and deserialization of tuples with {@link BinInterSedes},
+ * the format used between map and reduce and for spilled bags.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TupleSerializationBenchmark {
+
+    private static final BinInterSedes SEDES = new BinInterSedes();
+
+    private static final int TUPLES = 1000;
+
+    /**
+     * Shape of the tuples: only numbers, only strings, a mix of the scalar
+     * types, or tuples holding a bag of the mixed ones.
+     */
+    @Param({"numeric", "chararray", "mixed", "nested"})
+    public String shape;
+
+    private Tuple[] tuples;
+
+    private ByteArrayOutputStream bytes;
+
+    private DataOutputStream out;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkData data = new BenchmarkData();
+        tuples = new Tuple[TUPLES];
+        for (int i = 0; i < TUPLES; i++) {
+            if ("numeric".equals(shape)) {
+                tuples[i] = data.tuple(DataType.INTEGER, DataType.LONG, DataType.DOUBLE,
+                        DataType.INTEGER, DataType.FLOAT);
+            } else if ("chararray".equals(shape)) {
+                tuples[i] = data.tuple(DataType.CHARARRAY, DataType.CHARARRAY,
+                        DataType.CHARARRAY, DataType.CHARARRAY);
+            } else if ("mixed".equals(shape)) {
+                tuples[i] = mixed(data);
+            } else if ("nested".equals(shape)) {
+                DataBag bag = BagFactory.getInstance().newDefaultBag();
+                for (int j = 0; j < 10; j++) {
+                    bag.add(mixed(data));
+                }
+                tuples[i] = data.tuple(DataType.CHARARRAY);
+                tuples[i].append(bag);
+            } else {
+                throw new IllegalArgumentException("Unknown shape " + shape);
+            }
+        }
+        bytes = new ByteArrayOutputStream(TUPLES * 256);
+        out = new DataOutputStream(bytes);
+        for (Tuple t : tuples) {
+            SEDES.writeDatum(out, t, DataType.TUPLE);
+        }
+        out.flush();
+        serialized = bytes.toByteArray();
+    }
+
+    private static Tuple mixed(BenchmarkData data) throws IOException {
+        return data.tuple(DataType.INTEGER, DataType.LONG, DataType.DOUBLE, DataType.CHARARRAY,
+                DataType.BYTEARRAY, DataType.BOOLEAN, DataType.DATETIME, DataType.BIGDECIMAL);
+    }
+
+    @Benchmark
+    public int serialize() throws IOException {
+        bytes.reset();
+        for (Tuple t : tuples) {
+            SEDES.writeDatum(out, t, DataType.TUPLE);
+        }
+        out.flush();
+        return bytes.size();
+    }
+
+    @Benchmark
+    public int deserialize() throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(serialized));
+        int size = 0;
+        for (int i = 0; i < TUPLES; i++) {
+            size += ((Tuple) SEDES.readDatum(in)).size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pig.test.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pig.ResourceSchema.ResourceFieldSchema;
+import org.apache.pig.builtin.Utf8StorageConverter;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.impl.util.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Casts from bytearray with {@link Utf8StorageConverter}, the LoadCaster of
+ * PigStorage and TextLoader, for each target type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Utf8StorageConverterBenchmark {
+
+    private static final int VALUES = 1000;
+
+    private static final String TUPLE_SCHEMA = "t:(a:int, b:chararray, c:double)";
+
+    private static final String BAG_SCHEMA = "b:{t:(a:int, b:chararray, c:double)}";
+
+    @Param({"int", "long", "float", "double", "chararray", "datetime", "bigdecimal",
+        "tuple", "bag"})
+    public String type;
+
+    private byte castType;
+
+    private ResourceFieldSchema fieldSchema;
+
+    private byte[][] values;
+
+    private final Utf8StorageConverter converter = new Utf8StorageConverter();
+
+    @Setup
+    public void setup() throws IOException {
+        castType = DataType.findTypeByName(type);
+        BenchmarkData data = new BenchmarkData();
+        if (castType == DataType.TUPLE) {
+            fieldSchema = new ResourceFieldSchema(
+                    Utils.getSchemaFromString(TUPLE_SCHEMA).getField(0));
+        } else if (castType == DataType.BAG) {
+            fieldSchema = new ResourceFieldSchema(
+                    Utils.getSchemaFromString(BAG_SCHEMA).getField(0));
+        }
+        values = new byte[VALUES][];
+        for (int i = 0; i < VALUES; i++) {
+            Object value;
+            if (castType == DataType.TUPLE) {
+                value = data.tuple(DataType.INTEGER, DataType.CHARARRAY, DataType.DOUBLE);
+            } else if (castType == DataType.BAG) {
+                DataBag bag = BagFactory.getInstance().newDefaultBag();
+                for (int j = 0; j < 5; j++) {
+                    bag.add(data.tuple(DataType.INTEGER, DataType.CHARARRAY, DataType.DOUBLE));
+                }
+                value = bag;
+            } else {
+                value = data.value(castType);
+            }
+            values[i] = value.toString().getBytes("UTF-8");
+        }
+    }
+
+    @Benchmark
+    public int cast() throws IOException {
+        int nonNull = 0;
+        for (byte[] b : values) {
+            Object o;
+            switch (castType) {
+            case DataType.INTEGER:
+                o = converter.bytesToInteger(b);
+                break;
+            case DataType.LONG:
+                o = converter.bytesToLong(b);
+                break;
+            case DataType.FLOAT:
+                o = converter.bytesToFloat(b);
+                break;
+            case DataType.DOUBLE:
+                o = converter.bytesToDouble(b);
+                break;
+            case DataType.CHARARRAY:
+                o = converter.bytesToCharArray(b);
+                break;
+            case DataType.DATETIME:
+                o = converter.bytesToDateTime(b);
+                break;
+            case DataType.BIGDECIMAL:
+                o = converter.bytesToBigDecimal(b);
+                break;
+            case DataType.TUPLE:
+                o = converter.bytesToTuple(b, fieldSchema);
+                break;
+            case DataType.BAG:
+                o = converter.bytesToBag(b, fieldSchema);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported type " + type);
+            }
+            if (o != null) {
+                nonNull++;
+            }
+        }
+        return nonNull;
+    }
+}